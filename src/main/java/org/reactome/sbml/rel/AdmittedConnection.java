@@ -0,0 +1,129 @@
+package org.reactome.sbml.rel;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.reactome.server.tools.sbml.util.QueryAdmission;
+
+/**
+ * Wraps a JDBC connection so that the statements created from it are executed through a QueryAdmission.
+ * This covers the queries MySQLAdaptor runs on its connection outside of the methods overridden by
+ * AdmittedMySQLAdaptor. A statement run from one of those methods is admitted with it, as QueryAdmission
+ * admits nested queries with their parent. Only the execute methods are admitted: preparing statements,
+ * reading results and checking the connection are not.
+ */
+final class AdmittedConnection {
+
+    private AdmittedConnection() {
+    }
+
+    /**
+     * @param connection
+     * @param admission
+     * @return a proxy of the connection, or the connection itself if it is null or wrapped already
+     */
+    static Connection wrap(Connection connection, QueryAdmission admission) {
+        if (connection == null || isWrapped(connection))
+            return connection;
+        return (Connection) Proxy.newProxyInstance(AdmittedConnection.class.getClassLoader(),
+                                                   new Class<?>[]{Connection.class},
+                                                   new ConnectionHandler(connection, admission));
+    }
+
+    static boolean isWrapped(Connection connection) {
+        return Proxy.isProxyClass(connection.getClass()) &&
+               Proxy.getInvocationHandler(connection) instanceof ConnectionHandler;
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Exception {
+        try {
+            return method.invoke(target, args);
+        }
+        catch(InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception)
+                throw (Exception) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw e;
+        }
+    }
+
+    /**
+     * Handles the methods every proxy has to implement itself.
+     * @return null if the method is not one of them
+     */
+    private static Object invokeObjectMethod(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "equals":
+                return method.getParameterCount() == 1 ? proxy == args[0] : null;
+            case "hashCode":
+                return method.getParameterCount() == 0 ? System.identityHashCode(proxy) : null;
+            default:
+                return null;
+        }
+    }
+
+    private static class ConnectionHandler implements InvocationHandler {
+        private final Connection connection;
+        private final QueryAdmission admission;
+
+        ConnectionHandler(Connection connection, QueryAdmission admission) {
+            this.connection = connection;
+            this.admission = admission;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object rtn = invokeObjectMethod(proxy, method, args);
+            if (rtn != null)
+                return rtn;
+            rtn = AdmittedConnection.invoke(connection, method, args);
+            if (!(rtn instanceof Statement))
+                return rtn;
+            Class<?> type = rtn instanceof CallableStatement ? CallableStatement.class
+                          : rtn instanceof PreparedStatement ? PreparedStatement.class
+                          : Statement.class;
+            return Proxy.newProxyInstance(AdmittedConnection.class.getClassLoader(),
+                                          new Class<?>[]{type},
+                                          new StatementHandler((Statement) rtn, (Connection) proxy, admission));
+        }
+    }
+
+    private static class StatementHandler implements InvocationHandler {
+        private final Statement statement;
+        private final Connection connection;
+        private final QueryAdmission admission;
+
+        StatementHandler(Statement statement, Connection connection, QueryAdmission admission) {
+            this.statement = statement;
+            this.connection = connection;
+            this.admission = admission;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object rtn = invokeObjectMethod(proxy, method, args);
+            if (rtn != null)
+                return rtn;
+            if (method.getName().equals("getConnection"))
+                return connection;
+            if (!method.getName().startsWith("execute"))
+                return AdmittedConnection.invoke(statement, method, args);
+            try {
+                return admission.call(() -> AdmittedConnection.invoke(statement, method, args));
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for the query to be admitted", e);
+            }
+        }
+    }
+}
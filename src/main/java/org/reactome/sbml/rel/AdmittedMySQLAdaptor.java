@@ -0,0 +1,128 @@
+package org.reactome.sbml.rel;
+
+import java.sql.Connection;
+import java.util.Collection;
+
+import org.gk.model.GKInstance;
+import org.gk.persistence.MySQLAdaptor;
+import org.gk.schema.SchemaAttribute;
+import org.gk.schema.SchemaClass;
+import org.reactome.server.tools.sbml.util.QueryAdmission;
+
+/**
+ * A MySQLAdaptor sending its queries through a QueryAdmission so that the exporter does not flood a
+ * database shared with other services. The fetch and load methods are admitted as a whole, including
+ * loadInstanceAttributeValues(GKInstance, SchemaAttribute), which is called when an attribute of a
+ * GKInstance is read for the first time. Any other query run on the connection of the adaptor is
+ * admitted by the statements of {@link #getConnection()}.
+ */
+@SuppressWarnings("rawtypes")
+public class AdmittedMySQLAdaptor extends MySQLAdaptor {
+    private final QueryAdmission admission;
+
+    public AdmittedMySQLAdaptor(String host,
+                                String database,
+                                String username,
+                                String password,
+                                int port,
+                                QueryAdmission admission) throws Exception {
+        super(host, database, username, password, port);
+        this.admission = admission;
+    }
+
+    public QueryAdmission getAdmission() {
+        return admission;
+    }
+
+    /**
+     * @return the connection of the adaptor, whose statements are executed once admitted
+     */
+    @Override
+    public Connection getConnection() {
+        // Not admitted while MySQLAdaptor is being constructed (e.g. loading the schema)
+        if (admission == null)
+            return super.getConnection();
+        return AdmittedConnection.wrap(super.getConnection(), admission);
+    }
+
+    @Override
+    public Integer getReleaseNumber() throws Exception {
+        return admission.call(() -> super.getReleaseNumber());
+    }
+
+    @Override
+    public GKInstance fetchInstance(Long dbID) throws Exception {
+        return admission.call(() -> super.fetchInstance(dbID));
+    }
+
+    @Override
+    public GKInstance fetchInstance(String className, Long dbID) throws Exception {
+        return admission.call(() -> super.fetchInstance(className, dbID));
+    }
+
+    @Override
+    public Collection fetchInstancesByClass(String className) throws Exception {
+        return admission.call(() -> super.fetchInstancesByClass(className));
+    }
+
+    @Override
+    public Collection fetchInstancesByClass(SchemaClass schemaClass) throws Exception {
+        return admission.call(() -> super.fetchInstancesByClass(schemaClass));
+    }
+
+    @Override
+    public Collection fetchInstanceByAttribute(String className,
+                                               String attributeName,
+                                               String operator,
+                                               Object value) throws Exception {
+        return admission.call(() -> super.fetchInstanceByAttribute(className, attributeName, operator, value));
+    }
+
+    @Override
+    public Collection fetchInstanceByAttribute(SchemaAttribute attribute,
+                                               String operator,
+                                               Object value) throws Exception {
+        return admission.call(() -> super.fetchInstanceByAttribute(attribute, operator, value));
+    }
+
+    @Override
+    public void loadInstanceAttributeValues(GKInstance instance) throws Exception {
+        admission.call(() -> {
+            super.loadInstanceAttributeValues(instance);
+            return null;
+        });
+    }
+
+    @Override
+    public void loadInstanceAttributeValues(GKInstance instance, SchemaAttribute attribute) throws Exception {
+        admission.call(() -> {
+            super.loadInstanceAttributeValues(instance, attribute);
+            return null;
+        });
+    }
+
+    @Override
+    public void loadInstanceAttributeValues(Collection instances) throws Exception {
+        admission.call(() -> {
+            super.loadInstanceAttributeValues(instances);
+            return null;
+        });
+    }
+
+    @Override
+    public void loadInstanceAttributeValues(Collection instances, SchemaAttribute attribute) throws Exception {
+        admission.call(() -> {
+            super.loadInstanceAttributeValues(instances, attribute);
+            return null;
+        });
+    }
+
+    @Override
+    public void loadInstanceAttributeValues(Collection instances, String[] attNames) throws Exception {
+        admission.call(() -> {
+            super.loadInstanceAttributeValues(instances, attNames);
+            return null;
+        });
+    }
+
+}
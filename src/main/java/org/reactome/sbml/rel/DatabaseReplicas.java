@@ -0,0 +1,176 @@
+package org.reactome.sbml.rel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.gk.persistence.MySQLAdaptor;
+import org.reactome.server.tools.sbml.util.QueryAdmission;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A set of read-only copies of the release database (e.g. a primary and its replicas) to spread the
+ * converters across. Every converter gets the adaptor of the next healthy host in turn. A host whose
+ * connection is found broken is taken out and its adaptor discarded; a new adaptor is tried again
+ * after RETRY_INTERVAL so the host comes back once it is up.
+ */
+public class DatabaseReplicas {
+    private static final Logger logger = LoggerFactory.getLogger(DatabaseReplicas.class);
+    // Milliseconds before a host found down is tried again
+    private static final long RETRY_INTERVAL = 30000L;
+    // Seconds to wait for a connection to be validated
+    private static final int CHECK_TIMEOUT = 5;
+    private final List<Host> hosts = new ArrayList<>();
+    private final String database;
+    private final String username;
+    private final String password;
+    private final int maxQueries;
+    private final double maxQPS;
+    private int next = 0;
+
+    private class Host {
+        private final String name;
+        private final int port;
+        private final QueryAdmission admission;
+        private MySQLAdaptor dba;
+        private long retryAt = 0L;
+        private int assigned = 0;
+        private int failures = 0;
+
+        Host(String name, int port) {
+            this.name = name;
+            this.port = port;
+            this.admission = (maxQueries > 0 || maxQPS > 0) ? new QueryAdmission(maxQueries, maxQPS) : null;
+        }
+
+        boolean connect() {
+            try {
+                if (admission == null)
+                    dba = new MySQLAdaptor(name, database, username, password, port);
+                else
+                    dba = new AdmittedMySQLAdaptor(name, database, username, password, port, admission);
+                return true;
+            }
+            catch(Exception e) {
+                logger.warn("Cannot connect to " + this + ": " + e.getMessage());
+                markDown();
+                return false;
+            }
+        }
+
+        void markDown() {
+            dba = null;
+            failures ++;
+            retryAt = System.currentTimeMillis() + RETRY_INTERVAL;
+        }
+
+        @Override
+        public String toString() {
+            return name + ":" + port;
+        }
+    }
+
+    /**
+     * @param hostNames the hosts, each one as "host" or "host:port"
+     * @param port the port of the hosts without one
+     * @param database
+     * @param username
+     * @param password
+     * @param maxQueries maximum number of queries in flight on each host (0 for no limit)
+     * @param maxQPS maximum number of queries per second on each host (0 for no limit)
+     * @throws IllegalStateException if none of the hosts can be connected to
+     */
+    public DatabaseReplicas(List<String> hostNames,
+                            int port,
+                            String database,
+                            String username,
+                            String password,
+                            int maxQueries,
+                            double maxQPS) {
+        this.database = database;
+        this.username = username;
+        this.password = password;
+        this.maxQueries = maxQueries;
+        this.maxQPS = maxQPS;
+        for (String hostName : hostNames) {
+            hostName = hostName.trim();
+            if (hostName.isEmpty())
+                continue;
+            int index = hostName.lastIndexOf(':');
+            Host host = index > 0 ? new Host(hostName.substring(0, index), Integer.parseInt(hostName.substring(index + 1)))
+                                  : new Host(hostName, port);
+            host.connect();
+            hosts.add(host);
+        }
+        if (hosts.stream().noneMatch(h -> h.dba != null))
+            throw new IllegalStateException("Cannot connect to any of the mysql hosts " + hosts);
+    }
+
+    /**
+     * @return true if there are several hosts so that a pathway can be converted again from another one
+     */
+    public boolean canFailover() {
+        return hosts.size() > 1;
+    }
+
+    /**
+     * @return the adaptor of the next healthy host
+     * @throws IllegalStateException if all the hosts are down
+     */
+    public synchronized MySQLAdaptor acquire() {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < hosts.size(); i++) {
+            Host host = hosts.get(next);
+            next = (next + 1) % hosts.size();
+            if (host.dba == null && now >= host.retryAt && host.connect())
+                logger.info(host + " is back");
+            if (host.dba != null) {
+                host.assigned ++;
+                return host.dba;
+            }
+        }
+        throw new IllegalStateException("All the mysql hosts are down: " + hosts);
+    }
+
+    /**
+     * Check the connection of an adaptor returned by acquire(). The host is taken out if it is broken.
+     * @param dba
+     * @return false if the connection is broken
+     */
+    public synchronized boolean check(MySQLAdaptor dba) {
+        for (Host host : hosts) {
+            if (host.dba != dba)
+                continue;
+            try {
+                if (dba.getConnection().isValid(CHECK_TIMEOUT))
+                    return true;
+            }
+            catch(Exception e) {
+                logger.warn("Error checking " + host + ": " + e.getMessage());
+            }
+            logger.warn(host + " is down");
+            host.markDown();
+            return false;
+        }
+        // Already taken out
+        return false;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (Host host : hosts) {
+            if (builder.length() > 0)
+                builder.append("; ");
+            builder.append(String.format("%s %s, %d pathways, %d failures",
+                                         host,
+                                         host.dba == null ? "down" : "up",
+                                         host.assigned,
+                                         host.failures));
+            if (host.admission != null)
+                builder.append(", ").append(host.admission);
+        }
+        return builder.toString();
+    }
+
+}
@@ -0,0 +1,17 @@
+package org.reactome.sbml.rel;
+
+/**
+ * Thrown when the database a pathway is read from is found down, so that nothing read from it is written
+ * and the pathway can be converted again from another copy of the database.
+ */
+public class DatabaseUnavailableException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public DatabaseUnavailableException(String message) {
+        super(message);
+    }
+
+    public DatabaseUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,120 @@
+package org.reactome.sbml.rel;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.gk.render.RenderablePathway;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A run-wide cache of parsed and validated pathway diagrams keyed by the DB_ID of their PathwayDiagram
+ * instances. Diagrams are kept as serialized snapshots so every caller gets its own copy that can be
+ * modified freely (e.g. by LayoutConverter.manipulateReactionPoints()) without affecting the cached
+ * one, and so the memory used is known. The least recently used diagrams are evicted when the budget
+ * is exceeded.
+ */
+class DiagramCache {
+    private static final Logger logger = LoggerFactory.getLogger(DiagramCache.class);
+    // Used for pathways without a diagram
+    private static final Long NO_DIAGRAM = -1L;
+    private final long budget;
+    private long used = 0L;
+    private final LinkedHashMap<Long, byte[]> diagrams = new LinkedHashMap<>(16, 0.75f, true);
+    // Pathway DB_ID to PathwayDiagram DB_ID
+    private final Map<Long, Long> pathwayToDiagram = new HashMap<>();
+    private long hits = 0L;
+    private long misses = 0L;
+
+    DiagramCache(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * @param pathwayId
+     * @return the DB_ID of the PathwayDiagram, NO_DIAGRAM if the pathway has none or null if it is unknown
+     */
+    synchronized Long getDiagramId(Long pathwayId) {
+        return pathwayToDiagram.get(pathwayId);
+    }
+
+    synchronized void setDiagramId(Long pathwayId, Long diagramId) {
+        pathwayToDiagram.put(pathwayId, diagramId == null ? NO_DIAGRAM : diagramId);
+    }
+
+    static boolean isNoDiagram(Long diagramId) {
+        return NO_DIAGRAM.equals(diagramId);
+    }
+
+    /**
+     * @param diagramId
+     * @return a private copy of the cached diagram or null if it is not cached
+     */
+    RenderablePathway get(Long diagramId) {
+        byte[] snapshot;
+        synchronized (this) {
+            snapshot = diagrams.get(diagramId);
+            if (snapshot == null) {
+                misses ++;
+                return null;
+            }
+            hits ++;
+        }
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(snapshot))) {
+            return (RenderablePathway) ois.readObject();
+        }
+        catch(IOException | ClassNotFoundException e) {
+            logger.error("Cannot restore the cached diagram " + diagramId, e);
+            return null;
+        }
+    }
+
+    void put(Long diagramId, RenderablePathway diagram) {
+        byte[] snapshot;
+        try {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+                oos.writeObject(diagram);
+            }
+            snapshot = bos.toByteArray();
+        }
+        catch(IOException e) {
+            logger.warn("Diagram " + diagramId + " cannot be cached: " + e.getMessage());
+            return;
+        }
+        if (snapshot.length > budget)
+            return;
+        synchronized (this) {
+            byte[] previous = diagrams.put(diagramId, snapshot);
+            if (previous != null)
+                used -= previous.length;
+            used += snapshot.length;
+            Iterator<Map.Entry<Long, byte[]>> it = diagrams.entrySet().iterator();
+            while (used > budget && it.hasNext()) {
+                Map.Entry<Long, byte[]> eldest = it.next();
+                used -= eldest.getValue().length;
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Drop the cached diagrams (but not the pathway to diagram mapping, which is small)
+     */
+    synchronized void clear() {
+        diagrams.clear();
+        used = 0L;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d diagrams cached (%d bytes), %d hits, %d misses", diagrams.size(), used, hits, misses);
+    }
+}
@@ -0,0 +1,172 @@
+package org.reactome.sbml.rel;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.gk.model.GKInstance;
+import org.gk.model.ReactomeJavaConstants;
+import org.gk.persistence.MySQLAdaptor;
+
+/**
+ * Resolve lists of stable ids and DB_IDs to events with a few set-based queries per batch of ids,
+ * instead of looking every id up on its own. A resolver is kept for the whole run and keeps the
+ * events it has resolved, so that a SbmlConverterForRel given the resolver fetches a resolved event
+ * directly by its DB_ID.
+ */
+@SuppressWarnings("unchecked")
+public class EventResolver {
+    private static final int BATCH_SIZE = 1000;
+    // Stable id or DB_ID to the event
+    private final Map<String, ResolvedEvent> resolved = new ConcurrentHashMap<>();
+    private final MySQLAdaptor dba;
+
+    public static class ResolvedEvent {
+        private final Long dbId;
+        private final String stId;
+        private final String displayName;
+
+        ResolvedEvent(Long dbId, String stId, String displayName) {
+            this.dbId = dbId;
+            this.stId = stId;
+            this.displayName = displayName;
+        }
+
+        public Long getDbId() {
+            return dbId;
+        }
+
+        /**
+         * @return the stable id or the DB_ID if the event has no stable id
+         */
+        public String getStId() {
+            return stId;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    public EventResolver(MySQLAdaptor dba) {
+        this.dba = dba;
+    }
+
+    /**
+     * @param identifier a stable id or a DB_ID
+     * @return the event if it has been resolved by this resolver
+     */
+    public ResolvedEvent get(String identifier) {
+        return resolved.get(identifier);
+    }
+
+    /**
+     * @param identifiers stable ids and DB_IDs
+     * @return the identifiers that do not belong to any event
+     * @throws Exception
+     */
+    public List<String> resolve(Collection<String> identifiers) throws Exception {
+        Set<String> stIds = new LinkedHashSet<>();
+        Set<Long> dbIds = new LinkedHashSet<>();
+        Set<String> unknown = new LinkedHashSet<>();
+        for (String identifier : identifiers) {
+            if (resolved.containsKey(identifier))
+                continue;
+            if (identifier.startsWith("R-"))
+                stIds.add(identifier);
+            else {
+                try {
+                    dbIds.add(Long.valueOf(identifier));
+                }
+                catch(NumberFormatException e) {
+                    unknown.add(identifier);
+                }
+            }
+        }
+        for (List<String> batch : split(stIds))
+            resolveStableIds(batch);
+        for (List<Long> batch : split(dbIds))
+            resolveDbIds(batch);
+        for (String identifier : identifiers) {
+            if (!resolved.containsKey(identifier))
+                unknown.add(identifier);
+        }
+        return new ArrayList<>(unknown);
+    }
+
+    /**
+     * StableIdentifier instances first, then the events referring to them.
+     */
+    private void resolveStableIds(List<String> stIds) throws Exception {
+        Collection<GKInstance> stableIds = dba.fetchInstanceByAttribute(ReactomeJavaConstants.StableIdentifier,
+                                                                        ReactomeJavaConstants.identifier,
+                                                                        "IN",
+                                                                        stIds);
+        if (stableIds == null || stableIds.isEmpty())
+            return;
+        dba.loadInstanceAttributeValues(stableIds, new String[]{ReactomeJavaConstants.identifier});
+        Map<Long, String> stableIdToId = new HashMap<>();
+        for (GKInstance stableId : stableIds)
+            stableIdToId.put(stableId.getDBID(), (String) stableId.getAttributeValue(ReactomeJavaConstants.identifier));
+        Collection<GKInstance> events = dba.fetchInstanceByAttribute(ReactomeJavaConstants.Event,
+                                                                     ReactomeJavaConstants.stableIdentifier,
+                                                                     "IN",
+                                                                     stableIdToId.keySet());
+        if (events == null || events.isEmpty())
+            return;
+        dba.loadInstanceAttributeValues(events, new String[]{ReactomeJavaConstants.stableIdentifier});
+        for (GKInstance event : events) {
+            GKInstance stableId = (GKInstance) event.getAttributeValue(ReactomeJavaConstants.stableIdentifier);
+            String stId = stableId == null ? null : stableIdToId.get(stableId.getDBID());
+            if (stId != null)
+                resolved.put(stId, new ResolvedEvent(event.getDBID(), stId, event.getDisplayName()));
+        }
+    }
+
+    private void resolveDbIds(List<Long> dbIds) throws Exception {
+        Collection<GKInstance> events = dba.fetchInstanceByAttribute(ReactomeJavaConstants.Event,
+                                                                     ReactomeJavaConstants.DB_ID,
+                                                                     "IN",
+                                                                     dbIds);
+        if (events == null || events.isEmpty())
+            return;
+        dba.loadInstanceAttributeValues(events, new String[]{ReactomeJavaConstants.stableIdentifier});
+        List<GKInstance> stableIds = new ArrayList<>();
+        for (GKInstance event : events) {
+            GKInstance stableId = (GKInstance) event.getAttributeValue(ReactomeJavaConstants.stableIdentifier);
+            if (stableId != null)
+                stableIds.add(stableId);
+        }
+        if (!stableIds.isEmpty())
+            dba.loadInstanceAttributeValues(stableIds, new String[]{ReactomeJavaConstants.identifier});
+        for (GKInstance event : events) {
+            GKInstance stableId = (GKInstance) event.getAttributeValue(ReactomeJavaConstants.stableIdentifier);
+            String stId = stableId == null ? event.getDBID().toString()
+                                           : (String) stableId.getAttributeValue(ReactomeJavaConstants.identifier);
+            ResolvedEvent resolvedEvent = new ResolvedEvent(event.getDBID(), stId, event.getDisplayName());
+            resolved.put(event.getDBID().toString(), resolvedEvent);
+            resolved.putIfAbsent(stId, resolvedEvent);
+        }
+    }
+
+    private static <T> List<List<T>> split(Collection<T> values) {
+        List<List<T>> batches = new ArrayList<>();
+        List<T> batch = new ArrayList<>();
+        for (T value : values) {
+            batch.add(value);
+            if (batch.size() == BATCH_SIZE) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+            }
+        }
+        if (!batch.isEmpty())
+            batches.add(batch);
+        return batches;
+    }
+
+}
@@ -0,0 +1,134 @@
+package org.reactome.sbml.rel;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An on-disk cache of the layout geometry of pathway diagrams kept across runs. There is one file per
+ * PathwayDiagram named after its DB_ID, which starts with the hash of the stored diagram XML it was
+ * computed from. An entry whose hash does not match the current XML (i.e. the diagram has been edited)
+ * is ignored and overwritten.
+ */
+class LayoutCache {
+    private static final Logger logger = LoggerFactory.getLogger(LayoutCache.class);
+    private static final String EXTENSION = ".layout";
+    // Change it when LayoutGeometry or the way it is computed changes
+    private static final int FORMAT_VERSION = 1;
+    private final File dir;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong stale = new AtomicLong();
+    private final AtomicLong stored = new AtomicLong();
+
+    /**
+     * Identifies the geometry of a diagram as computed from a given version of its XML.
+     */
+    static class Key {
+        private final Long diagramId;
+        private final String hash;
+
+        /**
+         * @param diagramId the DB_ID of the PathwayDiagram
+         * @param xml the stored diagram XML
+         * @param headless true if the layout is validated in the headless mode
+         */
+        Key(Long diagramId, String xml, boolean headless) {
+            this.diagramId = diagramId;
+            this.hash = hash(FORMAT_VERSION + "\n" + headless + "\n" + (xml == null ? "" : xml));
+        }
+    }
+
+    LayoutCache(File dir) throws IOException {
+        if (!dir.exists() && !dir.mkdirs() && !dir.exists())
+            throw new IOException("Cannot create the layout cache directory " + dir.getAbsolutePath());
+        this.dir = dir;
+    }
+
+    /**
+     * @param key
+     * @return the cached geometry or null if there is none for the current diagram XML
+     */
+    LayoutGeometry get(Key key) {
+        File file = getFile(key);
+        if (!file.exists()) {
+            misses.incrementAndGet();
+            return null;
+        }
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (!key.hash.equals(ois.readUTF())) {
+                stale.incrementAndGet();
+                return null;
+            }
+            LayoutGeometry rtn = (LayoutGeometry) ois.readObject();
+            hits.incrementAndGet();
+            return rtn;
+        }
+        catch(IOException | ClassNotFoundException | ClassCastException e) {
+            logger.warn("Cannot read the cached layout " + file.getName() + ": " + e.getMessage());
+            stale.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Write the geometry to a temporary file first so that concurrent readers never see a partial entry.
+     * @param key
+     * @param geometry
+     */
+    void put(Key key, LayoutGeometry geometry) {
+        File file = getFile(key);
+        File tmp = null;
+        try {
+            tmp = File.createTempFile(key.diagramId + "-", ".tmp", dir);
+            try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                oos.writeUTF(key.hash);
+                oos.writeObject(geometry);
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            stored.incrementAndGet();
+        }
+        catch(IOException e) {
+            logger.warn("Cannot cache the layout of diagram " + key.diagramId + ": " + e.getMessage());
+            if (tmp != null)
+                tmp.delete();
+        }
+    }
+
+    private File getFile(Key key) {
+        return new File(dir, key.diagramId + EXTENSION);
+    }
+
+    private static String hash(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            StringBuilder builder = new StringBuilder();
+            for (byte b : digest.digest(text.getBytes(StandardCharsets.UTF_8)))
+                builder.append(String.format("%02x", b));
+            return builder.toString();
+        }
+        catch(NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d layouts reused, %d computed (%d outdated), %d stored",
+                             hits.get(), misses.get() + stale.get(), stale.get(), stored.get());
+    }
+}
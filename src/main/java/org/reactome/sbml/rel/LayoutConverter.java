@@ -2,14 +2,31 @@ package org.reactome.sbml.rel;
 
 import static org.gk.render.DefaultRenderConstants.EDGE_TYPE_WIDGET_WIDTH;
 
+import java.awt.Graphics2D;
 import java.awt.Rectangle;
+import java.awt.RenderingHints;
 import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.gk.graphEditor.PathwayEditor;
 import org.gk.model.GKInstance;
@@ -34,6 +51,7 @@ import org.gk.render.RenderableRNA;
 import org.gk.render.RenderableRNADrug;
 import org.gk.render.RenderableReaction;
 import org.reactome.server.tools.sbml.converter.SbmlConverter;
+import org.reactome.server.tools.sbml.util.Deadline;
 import org.sbml.jsbml.Compartment;
 import org.sbml.jsbml.ListOf;
 import org.sbml.jsbml.Model;
@@ -66,14 +84,147 @@ public class LayoutConverter {
     public static final String TEXT_PREFIX = "text_";
     private static final Logger logger = LoggerFactory.getLogger(LayoutConverter.class);
     private static final double SHIFT_VALUE = 0.5d;
+    // Tolerance, in pixels, when comparing the headless validation with the image based one
+    static final double HEADLESS_TOLERANCE = 1.0d;
     private MySQLAdaptor dba;
+    // Validate the layout without painting the whole diagram on an image
+    private static boolean headless = false;
+    // Check the headless validation against the image based one (for testing only)
+    private static boolean verifyHeadless = false;
+    // Run-wide cache of the validated diagrams (null when disabled)
+    private static DiagramCache diagramCache = null;
+    // Diagrams that have been validated already before being cached
+    private final Set<RenderablePathway> validated = Collections.newSetFromMap(new IdentityHashMap<>());
+    // Diagrams to be put into the diagram cache once validated, with the DB_IDs of their PathwayDiagrams
+    private final Map<RenderablePathway, Long> diagramsToCache = new IdentityHashMap<>();
+    // Threads validating the diagrams and computing their geometry (null to do it in addLayout())
+    private static ExecutorService layoutPool = null;
+    // Geometry being computed by the layout threads
+    private final Map<RenderablePathway, Future<LayoutGeometry>> pendingGeometries = new IdentityHashMap<>();
+    // Cross-run cache of the layout geometry (null when disabled)
+    private static LayoutCache layoutCache = null;
+    // Diagrams whose geometry has been found in the layout cache, which are not validated
+    private final Map<RenderablePathway, LayoutGeometry> cachedGeometries = new IdentityHashMap<>();
+    // Keys to cache the geometry of the other diagrams once computed
+    private final Map<RenderablePathway, LayoutCache.Key> layoutKeys = new IdentityHashMap<>();
+    // Run-wide results of InstanceUtilities.hasDrug() for the entity sets drawn in diagrams
+    private static final Map<Long, Boolean> drugSets = new ConcurrentHashMap<>();
+    // Attributes followed by InstanceUtilities.hasDrug()
+    private static final String[] CONTAINER_ATTRIBUTES = {ReactomeJavaConstants.hasMember,
+                                                          ReactomeJavaConstants.hasCandidate,
+                                                          ReactomeJavaConstants.hasComponent,
+                                                          ReactomeJavaConstants.repeatedUnit};
+    // Time budget of the conversion the layout is for (null for no limit). It is read by the layout threads.
+    private volatile Deadline deadline;
 
     public LayoutConverter() {
     }
     
+    /**
+     * Validate the diagram geometry without rendering it to an image of the diagram size. The same
+     * validation code is run on a 1x1 image graphics, so only the font metrics and geometry are 
+     * computed and the drawing is clipped away.
+     * @param headless
+     */
+    public static void setHeadless(boolean headless) {
+        LayoutConverter.headless = headless;
+    }
+    
+    /**
+     * When the headless validation is used, also run the image based validation afterwards and
+     * report any node, text or reaction position moving more than the tolerance. This doubles the
+     * validation cost and should be used for checking only.
+     * @param verify
+     */
+    public static void setVerifyHeadless(boolean verify) {
+        LayoutConverter.verifyHeadless = verify;
+    }
+    
+    /**
+     * Keep the parsed and validated diagrams across the run so a diagram shared by several pathways
+     * (e.g. sub-pathways drawn in their parent diagram) is loaded and validated only once.
+     * @param bytes the memory budget of the cache or 0 to disable it
+     */
+    public static void setDiagramCacheBudget(long bytes) {
+        diagramCache = bytes > 0 ? new DiagramCache(bytes) : null;
+    }
+    
+    /**
+     * Free the memory used by the diagram cache, which stays enabled.
+     */
+    public static void clearDiagramCache() {
+        DiagramCache cache = diagramCache;
+        if (cache != null)
+            cache.clear();
+    }
+    
+    /**
+     * @return the cache usage or null if the cache is disabled
+     */
+    public static String getDiagramCacheStats() {
+        DiagramCache cache = diagramCache;
+        return cache == null ? null : cache.toString();
+    }
+    
+    /**
+     * Keep the layout geometry of the diagrams in the given directory across runs. A diagram whose
+     * stored XML has not changed since its geometry was cached is then neither validated nor laid out
+     * again: the cached glyphs are only bound to the objects of the model being converted.
+     * @param dir the cache directory or null to disable it
+     * @throws IOException if the directory cannot be created
+     */
+    public static void setLayoutCacheDir(File dir) throws IOException {
+        layoutCache = dir == null ? null : new LayoutCache(dir);
+    }
+    
+    /**
+     * @return the cache usage or null if the cache is disabled
+     */
+    public static String getLayoutCacheStats() {
+        LayoutCache cache = layoutCache;
+        return cache == null ? null : cache.toString();
+    }
+    
+    /**
+     * Validate the diagrams and compute their layout geometry on a pool of the given number of threads
+     * when {@link #prepareLayout(RenderablePathway)} is called, so that it can be done while the model is
+     * being built and for several pathways at once. The layout is attached to the model when
+     * {@link #addLayout(Model, GKInstance, RenderablePathway)} is called.
+     * @param threads the number of layout threads or 0 to lay out the diagrams in addLayout()
+     */
+    public static synchronized void setLayoutThreads(int threads) {
+        if (layoutPool != null)
+            layoutPool.shutdown();
+        if (threads <= 0) {
+            layoutPool = null;
+            return;
+        }
+        layoutPool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "sbml-layout");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+    
     public void setDBA(MySQLAdaptor dba) {
         this.dba = dba;
     }
+    
+    /**
+     * Bound the layout by the time budget of the conversion. The geometry computation and the binding of
+     * the glyphs throw a CancellationException once the budget is used up, and addLayout() stops waiting
+     * for a layout thread at that point.
+     * @param deadline the time budget or null for no limit
+     */
+    public void setDeadline(Deadline deadline) {
+        this.deadline = deadline;
+    }
+    
+    private void checkDeadline() {
+        Deadline deadline = this.deadline;
+        if (deadline != null)
+            deadline.check();
+    }
 
     public void addLayout(Model model,
                           GKInstance pathway,
@@ -85,23 +236,225 @@ public class LayoutConverter {
         }
         try {
             logger.info("Adding layout for " + pathway + "...");
-            validateLayout(diagram);
+            LayoutGeometry geometry = getLayoutGeometry(diagram);
             // The following code is modified from https://github.com/sbmlteam/jsbml/blob/master/extensions/layout/test/org/sbml/jsbml/ext/layout/test/CurveSegmentTest.java
             LayoutModelPlugin lModel = new LayoutModelPlugin(model);
             model.addExtension(LayoutConstants.namespaceURI,
                                lModel);
             Layout layout = lModel.createLayout();
-            handleCompartments(layout, diagram);
-            handleNodes(layout, diagram);
-            handleReactions(layout, diagram);
+            handleCompartments(layout, geometry);
+            handleNodes(layout, geometry);
+            handleReactions(layout, geometry);
             logger.info("Done layout.");
         }
+        catch(CancellationException e) {
+            throw e; // Timed out: the conversion is abandoned
+        }
         catch(Exception e) {
             logger.error(e.getMessage(), e);
         }
     }
+
+    /**
+     * Get the geometry of the diagram from the layout cache if it has been cached for the same diagram XML.
+     * Otherwise, validate the diagram (unless done already) and compute its geometry, which is then cached.
+     * @param diagram
+     * @return
+     */
+    private LayoutGeometry getLayoutGeometry(RenderablePathway diagram) throws Exception {
+        Future<LayoutGeometry> pending = pendingGeometries.remove(diagram);
+        if (pending != null) {
+            Deadline deadline = this.deadline;
+            try {
+                if (deadline == null)
+                    return pending.get();
+                return pending.get(deadline.getRemaining(), TimeUnit.MILLISECONDS);
+            }
+            catch(TimeoutException e) {
+                // The task checks the deadline too, so it stops soon after unless it is in the validation
+                pending.cancel(true);
+                throw new CancellationException(String.format("Time budget of %d ms exceeded while laying out", deadline.getBudget()));
+            }
+            catch(ExecutionException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+        }
+        LayoutGeometry geometry = cachedGeometries.remove(diagram);
+        LayoutCache.Key key = layoutKeys.remove(diagram);
+        boolean isValidated = validated.remove(diagram);
+        Long diagramId = diagramsToCache.remove(diagram);
+        if (geometry != null)
+            return geometry;
+        return computeGeometry(diagram, isValidated, key, diagramId);
+    }
     
+    /**
+     * Start validating the diagram and computing its geometry on the layout threads if they are used.
+     * Only the diagram is needed: the glyphs are bound to the model objects in
+     * {@link #addLayout(Model, GKInstance, RenderablePathway)}, which waits for the geometry.
+     * @param diagram a diagram returned by {@link #getDiagram(GKInstance)}
+     */
+    public void prepareLayout(RenderablePathway diagram) {
+        ExecutorService pool = layoutPool;
+        if (pool == null || diagram == null)
+            return;
+        if (cachedGeometries.containsKey(diagram) || pendingGeometries.containsKey(diagram))
+            return;
+        // The bookkeeping stays on this thread: the task works on the diagram only
+        LayoutCache.Key key = layoutKeys.remove(diagram);
+        boolean isValidated = validated.remove(diagram);
+        Long diagramId = diagramsToCache.remove(diagram);
+        pendingGeometries.put(diagram, pool.submit(() -> computeGeometry(diagram, isValidated, key, diagramId)));
+    }
+    
+    /**
+     * Validate the diagram if needed and compute its geometry. This doesn't access the database so that it
+     * can run on any thread.
+     * @param diagram
+     * @param isValidated true if the diagram has been validated already
+     * @param key the key to store the geometry into the layout cache or null
+     * @param diagramId the DB_ID used to put the diagram into the diagram cache once validated or null
+     * @return
+     */
+    private LayoutGeometry computeGeometry(RenderablePathway diagram,
+                                           boolean isValidated,
+                                           LayoutCache.Key key,
+                                           Long diagramId) {
+        checkDeadline();
+        if (!isValidated) {
+            validateLayout(diagram);
+            checkDeadline();
+            // Cache it validated so that the validation is not repeated either. This has to be done
+            // before extractGeometry(), which modifies the reactions.
+            DiagramCache cache = diagramCache;
+            if (diagramId != null && cache != null)
+                cache.put(diagramId, diagram);
+        }
+        LayoutGeometry geometry = extractGeometry(diagram);
+        LayoutCache cache = layoutCache;
+        if (key != null && cache != null)
+            cache.put(key, geometry);
+        return geometry;
+    }
+
+    /**
+     * Collect the geometry of all objects in a validated diagram, whether they are in the model or not.
+     * @param diagram
+     * @return
+     */
+    private LayoutGeometry extractGeometry(RenderablePathway diagram) {
+        LayoutGeometry geometry = new LayoutGeometry();
+        List<Renderable> comps = diagram.getComponents();
+        for (Renderable comp : comps) {
+            checkDeadline();
+            if (comp instanceof RenderableCompartment)
+                geometry.compartments.add(extractNode((Node) comp, comp.getBounds(), null));
+            else if (comp instanceof Node) {
+                if (comp.getReactomeId() == null)
+                    continue;
+                // The term of an entity set is checked against the database when the geometry is bound
+                String sboTerm = comp instanceof RenderableEntitySet ? null : getSBOTerm(comp);
+                geometry.nodes.add(extractNode((Node) comp, getNodeRect((Node) comp), sboTerm));
+            }
+            else if ((comp instanceof RenderableReaction) && (comp.getReactomeId() != null))
+                geometry.reactions.add(extractReaction((RenderableReaction) comp));
+        }
+        geometry.diagramBounds = getDiagramBounds(comps);
+        return geometry;
+    }
+
+    private LayoutGeometry.NodeShape extractNode(Node node, Rectangle bounds, String sboTerm) {
+        LayoutGeometry.NodeShape shape = new LayoutGeometry.NodeShape();
+        shape.reactomeId = node.getReactomeId();
+        shape.id = node.getID();
+        shape.bounds = copy(bounds);
+        shape.textBounds = copy(node.getTextBounds());
+        shape.displayName = node.getDisplayName();
+        shape.sboTerm = sboTerm;
+        return shape;
+    }
+
+    private Rectangle copy(Rectangle rect) {
+        return rect == null ? null : new Rectangle(rect);
+    }
+
     private void validateLayout(RenderablePathway diagram) {
+        long time = System.currentTimeMillis();
+        if (headless) {
+            validateLayoutHeadless(diagram);
+            if (verifyHeadless)
+                verifyLayout(diagram);
+        }
+        else
+            validateLayoutOnImage(diagram);
+        logger.debug("Layout validated in " + (System.currentTimeMillis() - time) + " ms (headless: " + headless + ").");
+    }
+    
+    void validateLayoutHeadless(RenderablePathway diagram) {
+        PathwayEditor pathwayEditor = new PathwayEditor();
+        pathwayEditor.setRenderable(diagram);
+        BufferedImage image = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = image.createGraphics();
+        try {
+            // Same hints as the image based painting so that the text metrics are the same
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g2.setClip(0, 0, 1, 1);
+            pathwayEditor.paint(g2);
+            pathwayEditor.tightNodes(true);
+            pathwayEditor.paint(g2);
+        }
+        finally {
+            g2.dispose();
+        }
+    }
+    
+    /**
+     * Run the image based validation on a diagram already validated in the headless mode and report
+     * the differences.
+     * @param diagram
+     */
+    private void verifyLayout(RenderablePathway diagram) {
+        Map<Renderable, double[]> headlessGeometry = getGeometry(diagram);
+        validateLayoutOnImage(diagram);
+        Map<Renderable, double[]> onImage = getGeometry(diagram);
+        int mismatches = 0;
+        for (Renderable r : headlessGeometry.keySet()) {
+            double[] expected = onImage.get(r);
+            double[] found = headlessGeometry.get(r);
+            for (int i = 0; i < found.length; i++) {
+                if (Math.abs(expected[i] - found[i]) > HEADLESS_TOLERANCE) {
+                    logger.warn("Headless layout differs for " + r.getDisplayName() + " (" + r.getID() + "): " + 
+                                Arrays.toString(found) + " vs " + Arrays.toString(expected));
+                    mismatches ++;
+                    break;
+                }
+            }
+        }
+        if (mismatches == 0)
+            logger.info("Headless layout matches the image based one for " + diagram.getDisplayName() + ".");
+    }
+    
+    Map<Renderable, double[]> getGeometry(RenderablePathway diagram) {
+        Map<Renderable, double[]> rtn = new HashMap<>();
+        for (Renderable r : (List<Renderable>) diagram.getComponents()) {
+            if (r instanceof Node) {
+                Rectangle bounds = r.getBounds();
+                Rectangle text = ((Node) r).getTextBounds();
+                rtn.put(r, new double[] {bounds.x, bounds.y, bounds.width, bounds.height,
+                                         text == null ? 0 : text.x, text == null ? 0 : text.y,
+                                         text == null ? 0 : text.width, text == null ? 0 : text.height});
+            }
+            else if (r instanceof RenderableReaction) {
+                java.awt.Point position = r.getPosition();
+                if (position != null)
+                    rtn.put(r, new double[] {position.x, position.y});
+            }
+        }
+        return rtn;
+    }
+    
+    void validateLayoutOnImage(RenderablePathway diagram) {
         // Force to make sure all points are correct validated
         PathwayEditor pathwayEditor = new PathwayEditor();
         pathwayEditor.setRenderable(diagram);
@@ -114,13 +467,10 @@ public class LayoutConverter {
         helper.paintOnImage(pathwayEditor);
     }
     
-    private void handleReactions(Layout layout, RenderablePathway diagram) {
-        List<Renderable> comps = diagram.getComponents();
-        for (Renderable comp : comps) {
-            if ((comp instanceof RenderableReaction) && (comp.getReactomeId() != null)) {
-                RenderableReaction rxt = (RenderableReaction) comp;
-                handleReaction(layout, rxt);
-            }
+    private void handleReactions(Layout layout, LayoutGeometry geometry) {
+        for (LayoutGeometry.ReactionShape rxt : geometry.reactions) {
+            checkDeadline();
+            handleReaction(layout, rxt);
         }
     }
     
@@ -172,81 +522,91 @@ public class LayoutConverter {
     
     /**
      * The implementation of this method is based on the logic in class org.gk.render.DefaultReactionRender.
-     * @param layout
      * @param rxt
+     * @return
      */
-    private void handleReaction(Layout layout, RenderableReaction rxt) {
-        String rxtId = SbmlConverter.REACTION_PREFIX + rxt.getReactomeId();
+    private LayoutGeometry.ReactionShape extractReaction(RenderableReaction rxt) {
+        // Nothing can be done with less than two points
+        if (rxt.getBackbonePoints().size() > 1)
+            manipulateReactionPoints(rxt);
+        List<java.awt.Point> backbonePoints = rxt.getBackbonePoints();
+        LayoutGeometry.ReactionShape shape = new LayoutGeometry.ReactionShape();
+        shape.reactomeId = rxt.getReactomeId();
+        shape.id = rxt.getID();
+        shape.position = rxt.getPosition() == null ? null : new java.awt.Point(rxt.getPosition());
+        shape.backbone = new ArrayList<>(backbonePoints);
+        // Basic requirement for converting, which is reported when the reaction is in the model
+        if (backbonePoints.size() < 3)
+            return shape;
+        java.awt.Point inputHub = backbonePoints.get(0);
+        java.awt.Point outputHub = backbonePoints.get(backbonePoints.size() - 1);
+        java.awt.Point reactionHub = rxt.getPosition();
+        // Input
+        extractBranches(rxt.getInputNodes(),
+                        rxt.getInputPoints(),
+                        inputHub,
+                        SpeciesReferenceRole.SUBSTRATE,
+                        shape);
+        // output
+        extractBranches(rxt.getOutputNodes(),
+                        rxt.getOutputPoints(),
+                        outputHub,
+                        SpeciesReferenceRole.PRODUCT,
+                        shape);
+        // Catalysts
+        extractBranches(rxt.getHelperNodes(),
+                        rxt.getHelperPoints(),
+                        reactionHub,
+                        SpeciesReferenceRole.MODIFIER, // This may not be right
+                        shape);
+        // Activators
+        extractBranches(rxt.getActivatorNodes(),
+                        rxt.getActivatorPoints(),
+                        reactionHub,
+                        SpeciesReferenceRole.ACTIVATOR,
+                        shape);
+        // Inhibitors
+        extractBranches(rxt.getInhibitorNodes(),
+                        rxt.getInhibitorPoints(),
+                        reactionHub,
+                        SpeciesReferenceRole.INHIBITOR,
+                        shape);
+        return shape;
+    }
+    
+    private void handleReaction(Layout layout, LayoutGeometry.ReactionShape rxt) {
+        String rxtId = SbmlConverter.REACTION_PREFIX + rxt.reactomeId;
         if (!layout.getModel().containsReaction(rxtId))
             return;
-        manipulateReactionPoints(rxt);
-        List<java.awt.Point> backbonePoints = rxt.getBackbonePoints();
         // Basic requirement for converting
-        if (backbonePoints.size() < 3) {
-            logger.error("The backbone of reaction with DB_ID " + rxt.getReactomeId() + " has less than 3 points.");
+        if (rxt.backbone.size() < 3) {
+            logger.error("The backbone of reaction with DB_ID " + rxt.reactomeId + " has less than 3 points.");
             return;
         }
-        java.awt.Point inputHub = backbonePoints.get(0);
-        java.awt.Point outputHub = backbonePoints.get(backbonePoints.size() - 1);
-        java.awt.Point reactionHub = rxt.getPosition();
-        String layoutId = LAYOUT_ID_PREFIX + rxt.getID();
+        String layoutId = LAYOUT_ID_PREFIX + rxt.id;
         ReactionGlyph rg = layout.createReactionGlyph(layoutId);
         rg.setReaction(rxtId);
         // Position as a bounding box
-        createBoundingBox(rxt, rg);
+        createBoundingBox(rxt.position, rg);
         // Backbone
         Curve curve = rg.createCurve();
-        convertToCurve(backbonePoints, curve);
-        // Input
-        List<Node> inputs = rxt.getInputNodes();
-        List<List<java.awt.Point>> inputPoints = rxt.getInputPoints();
-        handleBranches(inputs,
-                       inputPoints,
-                       inputHub,
-                       SpeciesReferenceRole.SUBSTRATE,
-                       rg,
-                       layoutId);
-        // output
-        List<Node> outputs = rxt.getOutputNodes();
-        List<List<java.awt.Point>> outputPoints = rxt.getOutputPoints();
-        handleBranches(outputs,
-                       outputPoints,
-                       outputHub,
-                       SpeciesReferenceRole.PRODUCT,
-                       rg,
-                       layoutId);
-        // Catalysts
-        List<Node> catalysts = rxt.getHelperNodes();
-        List<List<java.awt.Point>> catalystPoints = rxt.getHelperPoints();
-        handleBranches(catalysts,
-                       catalystPoints,
-                       reactionHub,
-                       SpeciesReferenceRole.MODIFIER, // This may not be right
-                       rg,
-                       layoutId);
-        // Activators
-        List<Node> activators = rxt.getActivatorNodes();
-        List<List<java.awt.Point>> activatorPoints = rxt.getActivatorPoints();
-        handleBranches(activators, 
-                       activatorPoints, 
-                       reactionHub, 
-                       SpeciesReferenceRole.ACTIVATOR,
-                       rg,
-                       layoutId);
-        // Inhibitors
-        List<Node> inhibitors = rxt.getInhibitorNodes();
-        List<List<java.awt.Point>> inhibitorPoints = rxt.getInhibitorPoints();
-        handleBranches(inhibitors, 
-                       inhibitorPoints, 
-                       reactionHub, 
-                       SpeciesReferenceRole.INHIBITOR,
-                       rg,
-                       layoutId);
+        convertToCurve(rxt.backbone, curve);
+        for (LayoutGeometry.BranchShape branch : rxt.branches) {
+            // Need a unique id
+            String speciesRefGraphId = layoutId + "_" + branch.role.toString().toLowerCase()+ "_" + branch.index;
+            SpeciesReferenceGlyph speciesRefGraph = createSpeciesRefGraph(rg, branch.nodeId, speciesRefGraphId);
+            // This is weird with Minerva. It seems that the parser there cannot take these two roles
+            // and have to convert them into MODIFIER. However, the actual role is still correct.
+//            speciesRefGraph.setRole(role == SpeciesReferenceRole.INHIBITOR || role == SpeciesReferenceRole.ACTIVATOR ?
+//                                    SpeciesReferenceRole.MODIFIER :
+//                                    role);
+            Curve branchCurve = speciesRefGraph.createCurve();
+            convertToCurve(branch.points, branchCurve);
+        }
     }
     
-    private void createBoundingBox(RenderableReaction rxt, ReactionGlyph rg) {
+    private void createBoundingBox(java.awt.Point point, ReactionGlyph rg) {
         BoundingBox box = rg.createBoundingBox();
-        java.awt.Point point = rxt.getPosition();
         Point boxPos = new Point(point.getX() - EDGE_TYPE_WIDGET_WIDTH / 2.0d,
                                  point.getY() - EDGE_TYPE_WIDGET_WIDTH / 2.0d);
         box.setPosition(boxPos);
@@ -256,25 +616,17 @@ public class LayoutConverter {
         box.setDimensions(dim);
     }
 
-    private void handleBranches(List<Node> nodes,
-                                List<List<java.awt.Point>> branches,
-                                java.awt.Point hub,
-                                SpeciesReferenceRole role,
-                                ReactionGlyph rg,
-                                String layoutId) {
+    private void extractBranches(List<Node> nodes,
+                                 List<List<java.awt.Point>> branches,
+                                 java.awt.Point hub,
+                                 SpeciesReferenceRole role,
+                                 LayoutGeometry.ReactionShape shape) {
         if (nodes == null || nodes.size() == 0)
             return;
         // There are two cases: if there is only one input, no inputPoints is expected
         // Otherwise, the same number of inputs and inputPoints is expected.
         for (int i = 0; i < nodes.size(); i++) {
             Node node = nodes.get(i);
-            String speciesRefGraphId = layoutId + "_" + role.toString().toLowerCase()+ "_" + i;
-            SpeciesReferenceGlyph speciesRefGraph = createSpeciesRefGraph(rg, node, speciesRefGraphId);
-            // This is weird with Minerva. It seems that the parser there cannot take these two roles
-            // and have to convert them into MODIFIER. However, the actual role is still correct.
-//            speciesRefGraph.setRole(role == SpeciesReferenceRole.INHIBITOR || role == SpeciesReferenceRole.ACTIVATOR ?
-//                                    SpeciesReferenceRole.MODIFIER :
-//                                    role);
             List<? extends Point2D> branch = null;
             if (branches != null && branches.size() > 0) {
                 branch = branches.get(i);
@@ -286,13 +638,16 @@ public class LayoutConverter {
                 branch = Collections.singletonList(shifted);
             }
             // Make sure this is reversed
-            // Need a unique id
             List<Point2D> copy = new ArrayList<>(branch);
             copy.add(hub);
             if (role == SpeciesReferenceRole.SUBSTRATE || role == SpeciesReferenceRole.PRODUCT)
                 Collections.reverse(copy);
-            Curve curve = speciesRefGraph.createCurve();
-            convertToCurve(copy, curve);
+            LayoutGeometry.BranchShape branchShape = new LayoutGeometry.BranchShape();
+            branchShape.role = role;
+            branchShape.index = i;
+            branchShape.nodeId = node.getID();
+            branchShape.points = copy;
+            shape.branches.add(branchShape);
         }
     }
     
@@ -303,9 +658,9 @@ public class LayoutConverter {
         return shifted;
     }
 
-    private SpeciesReferenceGlyph createSpeciesRefGraph(ReactionGlyph rg, Node input, String speciesRefGraphId) {
+    private SpeciesReferenceGlyph createSpeciesRefGraph(ReactionGlyph rg, int nodeId, String speciesRefGraphId) {
         SpeciesReferenceGlyph speciesRefGraph = rg.createSpeciesReferenceGlyph(speciesRefGraphId);
-        speciesRefGraph.setSpeciesGlyph(LAYOUT_ID_PREFIX + input.getID());
+        speciesRefGraph.setSpeciesGlyph(LAYOUT_ID_PREFIX + nodeId);
         return speciesRefGraph;
     }
     
@@ -327,35 +682,55 @@ public class LayoutConverter {
         return rtn;
     }
     
-    private void handleNodes(Layout layout, RenderablePathway diagram) {
-        List<Renderable> comps = diagram.getComponents();
-        for (Renderable comp : comps) {
+    private void handleNodes(Layout layout, LayoutGeometry geometry) {
+        Set<Long> setIds = new HashSet<>();
+        for (LayoutGeometry.NodeShape node : geometry.nodes) {
+            if (node.sboTerm == null)
+                setIds.add(node.reactomeId);
+        }
+        resolveDrugSets(setIds);
+        for (LayoutGeometry.NodeShape node : geometry.nodes) {
+            checkDeadline();
             // This is a species
-            if ((comp instanceof Node) && (!(comp instanceof RenderableCompartment))) {
-                Node node = (Node) comp;
-                if (node.getReactomeId() == null)
-                    continue;
-                String speciesId = SbmlConverter.SPECIES_PREFIX + node.getReactomeId();
-                // Some nodes may not be in the SBML model (e.g. a pathway)
-                if (!layout.getModel().containsSpecies(speciesId))
-                    continue;
-                // A species may be drawn multiple times (e.g. ATP). Therefore,
-                // we cannot use speciesId since layout should not be duplicated.
-                String layoutId = LAYOUT_ID_PREFIX + node.getID();
-                SpeciesGlyph sg = layout.createSpeciesGlyph(layoutId);
-                sg.setSpecies(speciesId);
-                sg.setBoundingBox(createBox(getNodeRect(node)));
-                TextGlyph textGlyph = handleText(layoutId, layout, node, speciesId);
-                // It seems that the text cannot be honored at Minerva. Reset the _displayName
-                Species species = layout.getModel().getSpecies(speciesId);
-//                species.setName(textGlyph.getText());
-                // Need to reset SBO term for minerva
-                String sboTerm = getSBOTerm(comp);
-                species.setSBOTerm(sboTerm);
-            }
+            String speciesId = SbmlConverter.SPECIES_PREFIX + node.reactomeId;
+            // Some nodes may not be in the SBML model (e.g. a pathway)
+            if (!layout.getModel().containsSpecies(speciesId))
+                continue;
+            // A species may be drawn multiple times (e.g. ATP). Therefore,
+            // we cannot use speciesId since layout should not be duplicated.
+            String layoutId = LAYOUT_ID_PREFIX + node.id;
+            SpeciesGlyph sg = layout.createSpeciesGlyph(layoutId);
+            sg.setSpecies(speciesId);
+            sg.setBoundingBox(createBox(node.bounds));
+            TextGlyph textGlyph = handleText(layoutId, layout, node, speciesId);
+            // It seems that the text cannot be honored at Minerva. Reset the _displayName
+            Species species = layout.getModel().getSpecies(speciesId);
+//            species.setName(textGlyph.getText());
+            // Need to reset SBO term for minerva
+            String sboTerm = node.sboTerm == null ? getEntitySetSBOTerm(node.reactomeId) : node.sboTerm;
+            species.setSBOTerm(sboTerm);
         }
     }
     
+    /**
+     * The SBO terms set by {@link #addLayout(Model, GKInstance, RenderablePathway)} for the species drawn in the
+     * diagram, keyed by their DB_IDs. Used when the document is streamed and the model has no species objects.
+     */
+    public Map<Long, String> getSBOTerms(RenderablePathway diagram) {
+        Set<Long> setIds = new HashSet<>();
+        for (Renderable comp : (List<Renderable>) diagram.getComponents()) {
+            if ((comp instanceof RenderableEntitySet) && comp.getReactomeId() != null)
+                setIds.add(comp.getReactomeId());
+        }
+        resolveDrugSets(setIds);
+        Map<Long, String> rtn = new HashMap<>();
+        for (Renderable comp : (List<Renderable>) diagram.getComponents()) {
+            if ((comp instanceof Node) && !(comp instanceof RenderableCompartment) && comp.getReactomeId() != null)
+                rtn.put(comp.getReactomeId(), getSBOTerm(comp));
+        }
+        return rtn;
+    }
+    
     private Rectangle getNodeRect(Node node) {
         Rectangle rtn = node.getBounds();
         // Special case for RNA since the arrow points inside the bounding box
@@ -371,43 +746,39 @@ public class LayoutConverter {
     
     private TextGlyph handleText(String layoutId,
                             Layout layout,
-                            Node node,
+                            LayoutGeometry.NodeShape node,
                             String speciesId) {
         // Text label
         String textId = TEXT_PREFIX + layoutId;
         TextGlyph textGlyph = layout.createTextGlyph(textId);
-        textGlyph.setBoundingBox(createBox(node.getTextBounds()));
+        textGlyph.setBoundingBox(createBox(node.textBounds));
         // Remove compartment information from species
-        String name = node.getDisplayName();
+        String name = node.displayName;
         textGlyph.setText(name);
         textGlyph.setGraphicalObject(layoutId);
         return textGlyph;
     }
     
-    private void handleCompartments(Layout layout, RenderablePathway diagram) {
-        List<Renderable> comps = diagram.getComponents();
+    private void handleCompartments(Layout layout, LayoutGeometry geometry) {
         Set<String> handled = new HashSet<>();
-        for (Renderable comp : comps) {
-            if (comp instanceof RenderableCompartment) {
-                String compartmentId = SbmlConverter.COMPARTMENT_PREFIX + comp.getReactomeId();
-                if (!layout.getModel().containsCompartment(compartmentId))
-                    continue;
-                String id = LAYOUT_ID_PREFIX + comp.getID();
-                CompartmentGlyph cg = layout.createCompartmentGlyph(id);
-                cg.setCompartment(compartmentId);
-                // Get the bounding box
-                Rectangle bounding = comp.getBounds();
-                cg.setBoundingBox(createBox(bounding));
-                handleText(id, layout, (Node)comp, compartmentId);
-                handled.add(compartmentId);
-            }
+        for (LayoutGeometry.NodeShape comp : geometry.compartments) {
+            String compartmentId = SbmlConverter.COMPARTMENT_PREFIX + comp.reactomeId;
+            if (!layout.getModel().containsCompartment(compartmentId))
+                continue;
+            String id = LAYOUT_ID_PREFIX + comp.id;
+            CompartmentGlyph cg = layout.createCompartmentGlyph(id);
+            cg.setCompartment(compartmentId);
+            // Get the bounding box
+            cg.setBoundingBox(createBox(comp.bounds));
+            handleText(id, layout, comp, compartmentId);
+            handled.add(compartmentId);
         }
         // This is a hack to avoid drawing compartments automatically in Minerva
         ListOf<Compartment> compartments = layout.getModel().getListOfCompartments();
         if (handled.size() == compartments.size())
             return;
         int count = 0;
-        Rectangle diagramBounds = getDiagramBounds(comps);
+        Rectangle diagramBounds = geometry.diagramBounds;
         // Put them at the bottom
         Rectangle location = new Rectangle();
         location.x = (int)diagramBounds.getCenterX();
@@ -456,6 +827,49 @@ public class LayoutConverter {
     }
 
     public RenderablePathway getDiagram(GKInstance pathway) throws Exception {
+        DiagramCache cache = diagramCache;
+        if (cache == null) {
+            GKInstance diagram = fetchDiagram(pathway);
+            return diagram == null ? null : openDiagram(diagram);
+        }
+        Long diagramId = cache.getDiagramId(pathway.getDBID());
+        if (DiagramCache.isNoDiagram(diagramId))
+            return null;
+        if (diagramId != null) {
+            RenderablePathway diagram = cache.get(diagramId);
+            if (diagram != null) {
+                validated.add(diagram);
+                return diagram;
+            }
+        }
+        GKInstance instance = fetchDiagram(pathway);
+        cache.setDiagramId(pathway.getDBID(), instance == null ? null : instance.getDBID());
+        if (instance == null)
+            return null;
+        RenderablePathway diagram = openDiagram(instance);
+        // Its layout is in the layout cache: there is no need to validate it or to keep it.
+        // Otherwise, it is cached once validated, which is done with the layout.
+        if (!cachedGeometries.containsKey(diagram))
+            diagramsToCache.put(diagram, instance.getDBID());
+        return diagram;
+    }
+    
+    private RenderablePathway openDiagram(GKInstance instance) throws Exception {
+        RenderablePathway diagram = new DiagramGKBReader().openDiagram(instance);
+        LayoutCache cache = layoutCache;
+        if (cache != null) {
+            String xml = (String) instance.getAttributeValue(ReactomeJavaConstants.storedATXML);
+            LayoutCache.Key key = new LayoutCache.Key(instance.getDBID(), xml, headless);
+            LayoutGeometry geometry = cache.get(key);
+            if (geometry != null)
+                cachedGeometries.put(diagram, geometry);
+            else
+                layoutKeys.put(diagram, key);
+        }
+        return diagram;
+    }
+    
+    private GKInstance fetchDiagram(GKInstance pathway) throws Exception {
         PersistenceAdaptor dba = pathway.getDbAdaptor();
         Collection<GKInstance> diagrams = dba.fetchInstanceByAttribute(ReactomeJavaConstants.PathwayDiagram,
                                                                        ReactomeJavaConstants.representedPathway,
@@ -463,8 +877,7 @@ public class LayoutConverter {
                                                                        pathway);
         if (diagrams == null || diagrams.size() == 0)
             return null;
-        GKInstance diagram = diagrams.iterator().next();
-        return new DiagramGKBReader().openDiagram(diagram);
+        return diagrams.iterator().next();
     }
     
     /**
@@ -519,20 +932,90 @@ public class LayoutConverter {
             r instanceof RenderableProteinDrug)
             return "SBO:0000298";
         // Special case
-        if (r instanceof RenderableEntitySet) {
-            try {
-                GKInstance inst = dba.fetchInstance(r.getReactomeId());
-                if (InstanceUtilities.hasDrug(inst))
-                    return "SBO:0000298";
-                // This term is for functional compartment. Following Marek's advice
-                // from Minerva to use this term for the time being.
-                else return "SBO:0000289";
-            }
-            catch(Exception e) {
-                logger.error(e.getMessage(), e);
+        if (r instanceof RenderableEntitySet)
+            return getEntitySetSBOTerm(r.getReactomeId());
+        return "SBO:0000285";
+    }
+    
+    private String getEntitySetSBOTerm(Long dbId) {
+        try {
+            Boolean hasDrug = drugSets.get(dbId);
+            if (hasDrug == null) {
+                // Not resolved in batch (e.g. not an EntitySet in the database)
+                GKInstance inst = dba.fetchInstance(dbId);
+                hasDrug = InstanceUtilities.hasDrug(inst);
+                drugSets.put(dbId, hasDrug);
             }
+            if (hasDrug)
+                return "SBO:0000298";
+            // This term is for functional compartment. Following Marek's advice
+            // from Minerva to use this term for the time being.
+            else return "SBO:0000289";
+        }
+        catch(Exception e) {
+            logger.error(e.getMessage(), e);
         }
         return "SBO:0000285";
     }
     
+    /**
+     * Work out which of the given entity sets contain drugs in one pass: the sets are fetched with a single
+     * query and the instances they contain are loaded level by level in batch before InstanceUtilities.hasDrug()
+     * walks them, so that no query is issued per set. The results are kept for the whole run since the same
+     * sets are drawn in many diagrams.
+     * @param setIds DB_IDs of the sets drawn in a diagram
+     */
+    private void resolveDrugSets(Collection<Long> setIds) {
+        Set<Long> unknown = new HashSet<>();
+        for (Long dbId : setIds) {
+            if (dbId != null && !drugSets.containsKey(dbId))
+                unknown.add(dbId);
+        }
+        if (unknown.size() == 0)
+            return;
+        try {
+            Collection<GKInstance> sets = dba.fetchInstanceByAttribute(ReactomeJavaConstants.EntitySet,
+                                                                       ReactomeJavaConstants.DB_ID,
+                                                                       "IN",
+                                                                       unknown);
+            if (sets == null || sets.size() == 0)
+                return;
+            loadContainedInstances(sets);
+            for (GKInstance set : sets)
+                drugSets.put(set.getDBID(), InstanceUtilities.hasDrug(set));
+        }
+        catch(Exception e) {
+            // getEntitySetSBOTerm() will check them one by one
+            logger.error(e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Load the values of the container attributes of the given instances and of all instances they contain,
+     * one query per level and attribute rather than one per instance.
+     * @param instances
+     * @throws Exception
+     */
+    private void loadContainedInstances(Collection<GKInstance> instances) throws Exception {
+        Set<GKInstance> loaded = new HashSet<>();
+        Collection<GKInstance> current = instances;
+        while (current.size() > 0) {
+            loaded.addAll(current);
+            dba.loadInstanceAttributeValues(current, CONTAINER_ATTRIBUTES);
+            Set<GKInstance> next = new HashSet<>();
+            for (GKInstance inst : current) {
+                for (String attName : CONTAINER_ATTRIBUTES) {
+                    if (!inst.getSchemClass().isValidAttribute(attName))
+                        continue;
+                    List<?> values = inst.getAttributeValuesList(attName);
+                    for (Object value : values) {
+                        if (value instanceof GKInstance && !loaded.contains(value))
+                            next.add((GKInstance) value);
+                    }
+                }
+            }
+            current = next;
+        }
+    }
+    
 }
@@ -0,0 +1,54 @@
+package org.reactome.sbml.rel;
+
+import java.awt.Rectangle;
+import java.awt.geom.Point2D;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.sbml.jsbml.ext.layout.SpeciesReferenceRole;
+
+/**
+ * The geometry of a validated pathway diagram as needed for the SBML layout: compartment, species and
+ * text boxes and reaction curves. It refers to the diagram objects by their DB_IDs and renderable ids
+ * only, so it can be stored and bound later to any model converted from the same diagram without
+ * validating the diagram again.
+ */
+class LayoutGeometry implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    final List<NodeShape> compartments = new ArrayList<>();
+    final List<NodeShape> nodes = new ArrayList<>();
+    final List<ReactionShape> reactions = new ArrayList<>();
+    // Bounds of all nodes in the diagram, used to place the compartments not drawn
+    Rectangle diagramBounds;
+
+    static class NodeShape implements Serializable {
+        private static final long serialVersionUID = 1L;
+        Long reactomeId;
+        int id;
+        Rectangle bounds;
+        Rectangle textBounds;
+        String displayName;
+        // Null for entity sets since their term depends on the database content
+        String sboTerm;
+    }
+
+    static class ReactionShape implements Serializable {
+        private static final long serialVersionUID = 1L;
+        Long reactomeId;
+        int id;
+        java.awt.Point position;
+        List<Point2D> backbone;
+        final List<BranchShape> branches = new ArrayList<>();
+    }
+
+    static class BranchShape implements Serializable {
+        private static final long serialVersionUID = 1L;
+        SpeciesReferenceRole role;
+        int index;
+        // Renderable id of the connected node
+        int nodeId;
+        List<Point2D> points;
+    }
+}
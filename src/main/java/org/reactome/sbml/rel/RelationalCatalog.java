@@ -0,0 +1,105 @@
+package org.reactome.sbml.rel;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.gk.model.GKInstance;
+import org.gk.model.ReactomeJavaConstants;
+import org.gk.persistence.MySQLAdaptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The release version, species and pathways to be exported as found in the relational database, so
+ * that the exporter can run without the graph database: this is all the graph database was used for,
+ * since the conversion itself goes through SbmlConverterForRel.
+ */
+@SuppressWarnings("unchecked")
+public class RelationalCatalog {
+    private static final Logger logger = LoggerFactory.getLogger(RelationalCatalog.class);
+    private final MySQLAdaptor dba;
+    // Stable ids of the pathways of each species, sorted by species DB_ID
+    private Map<GKInstance, List<String>> speciesToPathways;
+
+    public RelationalCatalog(MySQLAdaptor dba) {
+        this.dba = dba;
+    }
+
+    public Integer getReleaseNumber() throws Exception {
+        return dba.getReleaseNumber();
+    }
+
+    /**
+     * @return the species having pathways
+     * @throws Exception
+     */
+    public List<GKInstance> getSpecies() throws Exception {
+        return new ArrayList<>(getSpeciesToPathways().keySet());
+    }
+
+    /**
+     * @param name the name or the DB_ID of a species
+     * @return null if there is no species with pathways for it
+     * @throws Exception
+     */
+    public GKInstance getSpecies(String name) throws Exception {
+        for (GKInstance species : getSpeciesToPathways().keySet()) {
+            if (species.getDisplayName().equalsIgnoreCase(name) || species.getDBID().toString().equals(name))
+                return species;
+        }
+        return null;
+    }
+
+    /**
+     * @param species
+     * @return the stable ids of the pathways of the species
+     * @throws Exception
+     */
+    public List<String> getPathways(GKInstance species) throws Exception {
+        List<String> pathways = getSpeciesToPathways().get(species);
+        return pathways == null ? new ArrayList<>() : pathways;
+    }
+
+    /**
+     * Load all pathways with their species and stable ids in two batches of queries instead of
+     * querying the pathways of every species.
+     */
+    private Map<GKInstance, List<String>> getSpeciesToPathways() throws Exception {
+        if (speciesToPathways != null)
+            return speciesToPathways;
+        Collection<GKInstance> pathways = dba.fetchInstancesByClass(ReactomeJavaConstants.Pathway);
+        dba.loadInstanceAttributeValues(pathways, new String[]{ReactomeJavaConstants.species,
+                                                               ReactomeJavaConstants.stableIdentifier});
+        List<GKInstance> stableIds = new ArrayList<>();
+        for (GKInstance pathway : pathways) {
+            GKInstance stableId = (GKInstance) pathway.getAttributeValue(ReactomeJavaConstants.stableIdentifier);
+            if (stableId != null)
+                stableIds.add(stableId);
+        }
+        dba.loadInstanceAttributeValues(stableIds, new String[]{ReactomeJavaConstants.identifier});
+        List<GKInstance> sorted = new ArrayList<>(pathways);
+        sorted.sort(Comparator.comparing(GKInstance::getDBID));
+        Map<GKInstance, List<String>> map = new LinkedHashMap<>();
+        for (GKInstance pathway : sorted) {
+            GKInstance stableId = (GKInstance) pathway.getAttributeValue(ReactomeJavaConstants.stableIdentifier);
+            if (stableId == null) {
+                logger.warn(pathway + " has no stable id and is not exported.");
+                continue;
+            }
+            String identifier = (String) stableId.getAttributeValue(ReactomeJavaConstants.identifier);
+            List<GKInstance> speciesList = pathway.getAttributeValuesList(ReactomeJavaConstants.species);
+            for (GKInstance species : speciesList)
+                map.computeIfAbsent(species, s -> new ArrayList<>()).add(identifier);
+        }
+        speciesToPathways = new LinkedHashMap<>();
+        map.keySet().stream()
+                    .sorted(Comparator.comparing(GKInstance::getDBID))
+                    .forEach(species -> speciesToPathways.put(species, map.get(species)));
+        return speciesToPathways;
+    }
+
+}
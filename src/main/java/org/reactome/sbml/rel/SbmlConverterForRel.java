@@ -1,11 +1,19 @@
 package org.reactome.sbml.rel;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import org.gk.model.GKInstance;
@@ -24,10 +32,16 @@ import org.reactome.server.tools.sbml.converter.Helper;
 import org.reactome.server.tools.sbml.converter.SbmlConverter;
 import org.reactome.server.tools.sbml.data.model.ParticipantDetails;
 import org.reactome.server.tools.sbml.data.model.ReactionBase;
+import org.reactome.server.tools.sbml.util.Deadline;
+import org.sbml.jsbml.ListOf;
+import org.sbml.jsbml.Model;
 import org.sbml.jsbml.SBMLDocument;
 import org.sbml.jsbml.SBMLReader;
 import org.sbml.jsbml.SBMLWriter;
 import org.sbml.jsbml.TidySBMLWriter;
+import org.sbml.jsbml.ext.layout.Layout;
+import org.sbml.jsbml.ext.layout.LayoutConstants;
+import org.sbml.jsbml.ext.layout.LayoutModelPlugin;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,6 +59,13 @@ public class SbmlConverterForRel extends SbmlConverter {
     private GKInstance topEvent;
     // Cache the diagram is useDiagram is true and the diagram is in the database for repearting query
     private RenderablePathway pathwayDiagram;
+    // SBO terms of the species drawn in pathwayDiagram, used when streaming
+    private Map<Long, String> diagramSBOTerms;
+    private boolean diagramLoaded = false;
+    // Checks the host of the adaptor once a failure may have come from it (null for no check)
+    private Predicate<MySQLAdaptor> hostCheck;
+    // Events resolved in bulk for the run (null to look the event up on its own)
+    private EventResolver eventResolver;
 
     public SbmlConverterForRel(String targetId) {
         this(targetId, 0); // Default version is 0, meaning it is not defined.
@@ -79,6 +100,36 @@ public class SbmlConverterForRel extends SbmlConverter {
 //        context.getBean(LazyFetchAspect.class).setEnableAOP(false);
     }
 
+    public MySQLAdaptor getDBA() {
+        return dba;
+    }
+
+    /**
+     * Fetch the event directly by its DB_ID when the resolver of the run has resolved it already. To be
+     * called before {@link #setDBA(MySQLAdaptor)}, which fetches the event.
+     * @param eventResolver the resolver of the run or null to look the event up on its own
+     */
+    public void setEventResolver(EventResolver eventResolver) {
+        this.eventResolver = eventResolver;
+    }
+
+    /**
+     * Check the host of the adaptor when the event cannot be loaded in {@link #setDBA(MySQLAdaptor)} and
+     * before anything is written, so that a pathway read from a host gone down meanwhile is not written
+     * but reported with a {@link DatabaseUnavailableException}.
+     * @param hostCheck returns false if the host of the given adaptor is down, or null for no check
+     */
+    public void setHostCheck(Predicate<MySQLAdaptor> hostCheck) {
+        this.hostCheck = hostCheck;
+    }
+
+    private boolean isHostAvailable() {
+        return hostCheck == null || hostCheck.test(dba);
+    }
+
+    /**
+     * @throws DatabaseUnavailableException if the event cannot be loaded because the host is down
+     */
     public void setDBA(MySQLAdaptor dba) {
         this.dba = dba;
         layoutConverter.setDBA(this.dba);
@@ -93,15 +144,40 @@ public class SbmlConverterForRel extends SbmlConverter {
             }
             topEvent = instance;
             pathwayDiagram = null; // Just in case
+            diagramSBOTerms = null;
+            diagramLoaded = false;
         }
         catch(Exception e) {
+            if (!isHostAvailable())
+                throw new DatabaseUnavailableException("Cannot load " + targetStId + ": the database is not available", e);
             logger.error(e.getMessage(), e);
         }
     }
 
+    /**
+     * @throws DatabaseUnavailableException if the host has gone down while the document was read from it
+     */
+    @Override
+    protected void beforeWriting() {
+        if (!isHostAvailable())
+            throw new DatabaseUnavailableException(targetStId + " is not written: the database has gone down while reading it");
+    }
+
+    /**
+     * The deadline is shared with the LayoutConverter so that the layout is bounded by the same budget.
+     */
+    @Override
+    public void setDeadline(Deadline deadline) {
+        super.setDeadline(deadline);
+        layoutConverter.setDeadline(deadline);
+    }
+
     private GKInstance fetchEvent(String eventId) throws Exception {
         GKInstance instance = null;
-        if (targetStId.startsWith("R-")) // This is a stable id
+        EventResolver.ResolvedEvent resolved = eventResolver == null ? null : eventResolver.get(targetStId);
+        if (resolved != null) // Resolved in bulk already
+            instance = dba.fetchInstance(resolved.getDbId());
+        else if (targetStId.startsWith("R-")) // This is a stable id
             instance = fetchEventForStableId(dba, targetStId);
         else
             instance = dba.fetchInstance(new Long(targetStId));
@@ -141,18 +217,69 @@ public class SbmlConverterForRel extends SbmlConverter {
             layoutConverter.addLayout(doc.getModel(), 
                                       topEvent,
                                       pathwayDiagram);
+            // The layout is read after the document has been checked
+            beforeWriting();
         }
         return doc;
     }
 
+    @Override
+    public void convert(OutputStream os) throws IOException {
+        if (dba == null)
+            throw new IllegalStateException("No MySQLAdaptor specified.");
+        if (targetStId == null)
+            throw new IllegalStateException("No target id specified.");
+        instanceConverter.reset();
+        logger.info("Starting streaming " + targetStId + "...");
+        super.convert(os);
+        logger.info("Finished streaming " + targetStId + ".");
+    }
+
+    @Override
+    protected String getSpeciesSBOTerm(ParticipantDetails participant) {
+        if (pathwayDiagram == null)
+            return super.getSpeciesSBOTerm(participant);
+        if (diagramSBOTerms == null)
+            diagramSBOTerms = layoutConverter.getSBOTerms(pathwayDiagram);
+        String term = diagramSBOTerms.get(participant.getPhysicalEntity().getDbId());
+        return term == null ? super.getSpeciesSBOTerm(participant) : term;
+    }
+
+    /**
+     * The layout is created by the LayoutConverter as for {@link #convert()}, on a model holding only the
+     * identifiers of the streamed elements.
+     */
+    @Override
+    protected ListOf<Layout> getLayouts(Collection<String> compartments, Collection<String> species, Collection<String> reactions) {
+        if (pathwayDiagram == null)
+            return null;
+        SBMLDocument skeleton = new SBMLDocument(SBML_LEVEL, SBML_VERSION);
+        Model model = skeleton.createModel();
+        compartments.forEach(model::createCompartment);
+        species.forEach(model::createSpecies);
+        reactions.forEach(model::createReaction);
+        layoutConverter.addLayout(model, topEvent, pathwayDiagram);
+        LayoutModelPlugin plugin = (LayoutModelPlugin) model.getExtension(LayoutConstants.namespaceURI);
+        return plugin == null ? null : plugin.getListOfLayouts();
+    }
+
     @Override
     protected Collection<ParticipantDetails> getParticipantDetails() {
         List<ParticipantDetails> rtn = new ArrayList<>();
+        forEachParticipant(rtn::add);
+        return rtn;
+    }
+
+    @Override
+    protected void forEachParticipant(Consumer<ParticipantDetails> action) {
         try {
-            Set<GKInstance> reactions = getReactions();
-            Set<GKInstance> pes = new HashSet<>();
-            for (GKInstance rxt : reactions)
+            List<GKInstance> reactions = getReactions();
+            // Sorted so that the documents are the same from one run to the next
+            Set<GKInstance> pes = new TreeSet<>(Comparator.comparing(GKInstance::getDBID));
+            for (GKInstance rxt : reactions) {
+                checkDeadline();
                 pes.addAll(InstanceUtilities.getReactionParticipants(rxt));
+            }
             for (GKInstance pe : pes) {
                 // Need the attributes for PhysicalEntity
                 DatabaseObject databaseObj = instanceConverter.convert(pe);
@@ -163,27 +290,56 @@ public class SbmlConverterForRel extends SbmlConverter {
                 PhysicalEntity peObj = (PhysicalEntity) databaseObj;
                 details.setPhysicalEntity(peObj);
                 instanceConverter.fillInPEDetails(pe, details);
-                rtn.add(details);
+                action.accept(details);
             }
         }
+        catch(CancellationException e) {
+            throw e; // Timed out: the conversion is abandoned
+        }
+        catch(Exception e) {
+            logger.error(e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Load the diagram of the pathway and start laying it out on the layout threads (see
+     * {@link LayoutConverter#setLayoutThreads(int)}), so that the layout is computed while the model is
+     * built or while other pathways are converted. This is called at the start of the conversion anyway.
+     */
+    public void prepareLayout() {
+        try {
+            loadDiagram();
+        }
         catch(Exception e) {
             logger.error(e.getMessage(), e);
         }
-        return rtn;
     }
     
-    private Set<GKInstance> getReactions() throws Exception {
+    /**
+     * @return the reactions of the event sorted by DB_ID, so that the documents are the same from one run to the next
+     */
+    private List<GKInstance> getReactions() throws Exception {
+        loadDiagram();
+        Set<GKInstance> contained = InstanceUtilities.getContainedEvents(topEvent);
+        contained.add(topEvent); // In case event itself is a RLE
+        return contained.stream()
+                .filter(e -> e.getSchemClass().isa(ReactomeJavaConstants.ReactionlikeEvent))
+                .sorted(Comparator.comparing(GKInstance::getDBID))
+                .collect(Collectors.toList());
+    }
+    
+    private void loadDiagram() throws Exception {
+        // The diagram is needed for both participants and reactions but has to be loaded only once
+        if (diagramLoaded)
+            return;
         RenderablePathway diagram = layoutConverter.getDiagram(topEvent);
         if (diagram != null && layoutConverter.hasReactions(diagram)) {
             this.pathwayDiagram = diagram;
+            layoutConverter.prepareLayout(diagram);
             // We will convert all contained reactions regardless if they are laid out in the diagram.
 //            return getReactionsInDiagram(diagram);
         }
-        Set<GKInstance> contained = InstanceUtilities.getContainedEvents(topEvent);
-        contained.add(topEvent); // In case event itself is a RLE
-        return contained.stream()
-                .filter(e -> e.getSchemClass().isa(ReactomeJavaConstants.ReactionlikeEvent))
-                .collect(Collectors.toSet());
+        diagramLoaded = true;
     }
     
     private Set<GKInstance> getReactionsInDiagram(RenderablePathway pathwayDiagram) throws Exception {
@@ -209,8 +365,14 @@ public class SbmlConverterForRel extends SbmlConverter {
     @Override
     protected Collection<ReactionBase> getReactionList() {
         List<ReactionBase> rtn = new ArrayList<>();
+        forEachReaction(rtn::add);
+        return rtn;
+    }
+
+    @Override
+    protected void forEachReaction(Consumer<ReactionBase> action) {
         try {
-            Set<GKInstance> reactions = getReactions();
+            List<GKInstance> reactions = getReactions();
             for (GKInstance reaction : reactions) {
                 DatabaseObject dob = instanceConverter.convert(reaction);
                 if (!(dob instanceof ReactionLikeEvent))
@@ -219,13 +381,15 @@ public class SbmlConverterForRel extends SbmlConverter {
                 ReactionBase reactionBase = new ReactionBase();
                 reactionBase.setRle(rle);
                 instanceConverter.fillInReactionDetails(reaction, reactionBase);
-                rtn.add(reactionBase);
+                action.accept(reactionBase);
             }
         }
+        catch(CancellationException e) {
+            throw e;
+        }
         catch(Exception e) {
             logger.error(e.getMessage(), e);
         }
-        return rtn;
     }
 
     public static void main(String[] args) throws Exception {
@@ -1,14 +1,29 @@
 package org.reactome.server.tools.sbml;
 
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.ArrayUtils;
-import org.gk.persistence.MySQLAdaptor;
+import org.gk.model.GKInstance;
+import org.reactome.sbml.rel.DatabaseReplicas;
+import org.reactome.sbml.rel.DatabaseUnavailableException;
+import org.reactome.sbml.rel.EventResolver;
+import org.reactome.sbml.rel.LayoutConverter;
+import org.reactome.sbml.rel.RelationalCatalog;
 import org.reactome.sbml.rel.SbmlConverterForRel;
-import org.reactome.server.graph.domain.model.DBInfo;
+import org.reactome.server.graph.domain.model.DatabaseObject;
 import org.reactome.server.graph.domain.model.Event;
 import org.reactome.server.graph.domain.model.Pathway;
 import org.reactome.server.graph.domain.model.Species;
@@ -20,7 +35,18 @@ import org.reactome.server.graph.service.SpeciesService;
 import org.reactome.server.graph.service.util.DatabaseObjectUtils;
 import org.reactome.server.graph.utils.ReactomeGraphCore;
 import org.reactome.server.tools.sbml.config.GraphNeo4jConfig;
+import org.reactome.server.tools.sbml.converter.SbmlConverter;
+import org.reactome.server.tools.sbml.data.CompositionTable;
+import org.reactome.server.tools.sbml.data.DataFactory;
+import org.reactome.server.tools.sbml.util.AsyncWriter;
+import org.reactome.server.tools.sbml.util.ContentHashes;
+import org.reactome.server.tools.sbml.util.Deadline;
+import org.reactome.server.tools.sbml.util.MemoryGovernor;
+import org.reactome.server.tools.sbml.util.OutputSummary;
 import org.reactome.server.tools.sbml.util.ProgressBar;
+import org.reactome.server.tools.sbml.util.SbmlArchive;
+import org.reactome.server.tools.sbml.util.SbmlPack;
+import org.reactome.server.tools.sbml.util.ShardedLayout;
 import org.reactome.server.tools.sbml.util.Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,6 +57,7 @@ import com.martiansoftware.jsap.JSAPResult;
 import com.martiansoftware.jsap.Parameter;
 import com.martiansoftware.jsap.QualifiedSwitch;
 import com.martiansoftware.jsap.SimpleJSAP;
+import com.martiansoftware.jsap.Switch;
 
 /**
  * Converts {@link org.reactome.server.graph.domain.model.Event} class instances to SBML file(s).
@@ -43,8 +70,28 @@ public class Main {
     private static Logger logger = LoggerFactory.getLogger("sbml-exporter");
 
     private static Boolean verbose = false;
+    private static boolean stream = false;
+    private static boolean useArchive = false;
+    private static boolean relationalOnly = false;
+    private static boolean graphData = false;
+    private static int layoutThreads = 0;
+    private static MemoryGovernor memoryGovernor;
+    // Time budget of each pathway in milliseconds (0 for no limit)
+    private static long pathwayTimeout = 0;
+    // Pathways that went over their budget, retried at the end with a larger one
+    private static final List<String> timedOut = new ArrayList<>();
+    // Pathways that went over the larger budget as well
+    private static final List<String> notConverted = new ArrayList<>();
+    // Targets that do not belong to any event
+    private static final List<String> unknownIds = new ArrayList<>();
+
+    private static final int ASYNC_WRITER_THREADS = 2;
+    private static final int ASYNC_WRITER_SYNC_EVERY = 32;
+    private static final int RETRY_BUDGET_FACTOR = 4;
     
-    private static MySQLAdaptor mysqlDba;
+    private static DatabaseReplicas replicas;
+    // Keeps the events resolved in bulk for the whole run
+    private static EventResolver eventResolver;
 
     public static void main(String[] args) throws Exception {
 
@@ -53,14 +100,40 @@ public class Main {
                         new FlaggedOption("host", JSAP.STRING_PARSER, "localhost", JSAP.REQUIRED, 'h', "host", "The neo4j host"),
                         new FlaggedOption("port", JSAP.STRING_PARSER, "7474", JSAP.NOT_REQUIRED, 'b', "port", "The neo4j port"),
                         new FlaggedOption("user", JSAP.STRING_PARSER, "neo4j", JSAP.REQUIRED, 'u', "user", "The neo4j user"),
-                        new FlaggedOption("password", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.REQUIRED, 'p', "password", "The neo4j password"),
-                        new FlaggedOption("mysql_host", JSAP.STRING_PARSER, "localhost", JSAP.REQUIRED, 'm', "mysql_host", "The mysql host"),
+                        new FlaggedOption("password", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.NOT_REQUIRED, 'p', "password", "The neo4j password (not needed with --relational-only)"),
+                        new FlaggedOption("driver", JSAP.STRING_PARSER, GraphNeo4jConfig.HTTP_DRIVER, JSAP.NOT_REQUIRED, 'r', "driver", "The neo4j driver: 'http' or 'bolt' (the port has to match the driver, e.g. 7687 for bolt)"),
+                        new FlaggedOption("pool", JSAP.INTEGER_PARSER, "10", JSAP.NOT_REQUIRED, 'c', "pool", "The neo4j connection pool size (bolt driver only)"),
+                        new FlaggedOption("mysql_host", JSAP.STRING_PARSER, "localhost", JSAP.REQUIRED, 'm', "mysql_host", "The mysql host, or comma separated hosts ('host' or 'host:port') holding copies of the database to spread the load across"),
                         new FlaggedOption("mysql_db", JSAP.STRING_PARSER, "release_current", JSAP.REQUIRED, 'd', "mysql_db", "The mysql host"),
                         new FlaggedOption("mysql_port", JSAP.STRING_PARSER, "3306", JSAP.NOT_REQUIRED, 'n', "mysql_port", "The mysql port"),
                         new FlaggedOption("mysql_user", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.REQUIRED, 'l', "mysql_user", "The mysql user"),
                         new FlaggedOption("mysql_password", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.REQUIRED, 'w', "mysql_password", "The mysql password"),
+                        new Switch("relational_only", JSAP.NO_SHORTFLAG, "relational-only", "Takes the release version, the species and the pathways from the mysql database instead of the neo4j one, which is not used at all"),
+                        new Switch("graph_data", JSAP.NO_SHORTFLAG, "graph-data", "Retrieves the pathway data from the neo4j database instead of the mysql one (no layout is exported)"),
+                        new Switch("projections", JSAP.NO_SHORTFLAG, "projections", "With --graph-data, maps the query results straight into the objects used by the converter instead of loading the domain objects"),
+                        new FlaggedOption("page_size", JSAP.INTEGER_PARSER, "0", JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "page-size", "With --graph-data, retrieves the participants and reactions of each pathway in pages of this number of objects (0 to retrieve them at once)"),
+                        new Switch("split_queries", JSAP.NO_SHORTFLAG, "split-queries", "With --graph-data, retrieves the reactions with one query per aspect (GO terms, literature, participants...) instead of a single query"),
+                        new FlaggedOption("composition_table", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "composition-table", "With --graph-data, file keeping the composition of every physical entity of the release, built when missing or out of date"),
+                        new FlaggedOption("mysql_max_queries", JSAP.INTEGER_PARSER, "0", JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "mysql-max-queries", "Maximum number of queries in flight on each mysql host (0 for no limit)"),
+                        new FlaggedOption("mysql_qps", JSAP.DOUBLE_PARSER, "0", JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "mysql-qps", "Maximum number of queries per second sent to each mysql host (0 for no limit)"),
                         new FlaggedOption("output", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.REQUIRED, 'o', "output", "The output directory"),
                         new QualifiedSwitch("target", JSAP.STRING_PARSER, "ALL", JSAP.NOT_REQUIRED, 't', "target", "Target events to convert. Use either (1) comma separated event identifiers, (2) a given species (e.g. 'Homo sapiens') or  (3)'all' to export every pathway").setList(true).setListSeparator(','),
+                        new Switch("stream", 's', "stream", "Streams the SBML files instead of building the whole document in memory"),
+                        new Switch("compact", 'k', "compact", "Writes the SBML files without indentation"),
+                        new Switch("gzip", 'z', "gzip", "Writes gzipped SBML files (.sbml.gz)"),
+                        new Switch("archive", 'a', "archive", "Writes the SBML files of each species into a single ZIP archive with a manifest"),
+                        new Switch("pack", 'x', "pack", "Writes all the SBML files into one indexed pack file (sbml.pack and sbml.pack.idx)"),
+                        new Switch("headless_layout", JSAP.NO_SHORTFLAG, "headless-layout", "Validates the diagram layouts from font metrics and geometry without painting them on images"),
+                        new FlaggedOption("diagram_cache", JSAP.INTEGER_PARSER, "0", JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "diagram-cache", "Memory budget, in MB, of the run-wide cache of validated diagrams (0 to disable it)"),
+                        new FlaggedOption("builder_threads", JSAP.INTEGER_PARSER, "0", JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "builder-threads", "Number of threads building the species and reactions of each document (0 to build them on the conversion thread)"),
+                        new FlaggedOption("layout_threads", JSAP.INTEGER_PARSER, "0", JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "layout-threads", "Number of threads laying out the diagrams while the models are built (0 to lay them out after building each model)"),
+                        new FlaggedOption("memory_threshold", JSAP.INTEGER_PARSER, "75", JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "memory-threshold", "Heap occupancy (%) over which the caches are cleared"),
+                        new FlaggedOption("pathway_timeout", JSAP.INTEGER_PARSER, "0", JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "pathway-timeout", "Time budget, in seconds, of each pathway. Pathways going over it are retried at the end with a " + RETRY_BUDGET_FACTOR + " times larger budget (0 for no limit)"),
+                        new FlaggedOption("layout_cache", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "layout-cache", "Directory keeping the diagram layouts across runs so unchanged diagrams are not laid out again"),
+                        new Switch("sharded", JSAP.NO_SHORTFLAG, "sharded", "Places the SBML files in species and hash-prefix subdirectories listed in index.tsv"),
+                        new Switch("skip_unchanged", JSAP.NO_SHORTFLAG, "skip-unchanged", "Does not rewrite the SBML files whose content (provenance date apart) has not changed since the previous run"),
+                        new FlaggedOption("async_queue", JSAP.INTEGER_PARSER, "0", JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "async-queue", "Size of the queue of the write-behind stage writing the SBML files (0 to write them on the conversion thread)"),
+                        new FlaggedOption("backpressure", JSAP.STRING_PARSER, "block", JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "backpressure", "What to do when the write-behind queue is full: 'block' the conversion or write on the conversion thread ('caller')"),
                         new QualifiedSwitch("verbose", JSAP.BOOLEAN_PARSER, null, JSAP.NOT_REQUIRED, 'v', "verbose", "Requests verbose output.")
                 }
         );
@@ -69,64 +142,169 @@ public class Main {
         if (jsap.messagePrinted()) System.exit(1);
 
         verbose = config.getBoolean("verbose");
+        relationalOnly = config.getBoolean("relational_only");
+        if (!relationalOnly && !config.contains("password")) {
+            System.err.println("The neo4j password is required unless --relational-only is used");
+            System.exit(1);
+        }
+        graphData = config.getBoolean("graph_data");
+        if (graphData && relationalOnly) {
+            System.err.println("--graph-data cannot be used with --relational-only");
+            System.exit(1);
+        }
+        if (config.getBoolean("pack") && config.getBoolean("archive")) {
+            System.err.println("--pack cannot be used with --archive");
+            System.exit(1);
+        }
+        DataFactory.setUseProjections(config.getBoolean("projections"));
+        DataFactory.setPageSize(config.getInt("page_size"));
+        DataFactory.setSplitQueries(config.getBoolean("split_queries"));
 
         String output = config.getString("output");
         Utils.outputCheck(output);
 
+        if (config.getBoolean("headless_layout")) {
+            System.setProperty("java.awt.headless", "true");
+            LayoutConverter.setHeadless(true);
+        }
+        LayoutConverter.setDiagramCacheBudget(config.getInt("diagram_cache") * 1024L * 1024L);
+        SbmlConverter.setBuilderThreads(config.getInt("builder_threads"));
+        layoutThreads = config.getInt("layout_threads");
+        LayoutConverter.setLayoutThreads(layoutThreads);
+        memoryGovernor = new MemoryGovernor(config.getInt("memory_threshold") / 100d, layoutThreads);
+        if (!relationalOnly) memoryGovernor.addCache(() -> ReactomeGraphCore.getService(GeneralService.class).clearCache());
+        memoryGovernor.addCache(LayoutConverter::clearDiagramCache);
+        pathwayTimeout = config.getInt("pathway_timeout") * 1000L;
+        if (config.contains("layout_cache")) LayoutConverter.setLayoutCacheDir(new File(config.getString("layout_cache")));
+        stream = config.getBoolean("stream");
+        Utils.setCompact(config.getBoolean("compact"));
+        Utils.setCompress(config.getBoolean("gzip"));
+        useArchive = config.getBoolean("archive");
+        SbmlPack pack = config.getBoolean("pack") ? new SbmlPack(new File(output, SbmlPack.PACK_FILE)) : null;
+        Utils.setPack(pack);
+        ShardedLayout shardedLayout = config.getBoolean("sharded") ? new ShardedLayout(new File(output)) : null;
+        Utils.setShardedLayout(shardedLayout);
+        ContentHashes contentHashes = config.getBoolean("skip_unchanged") ? ContentHashes.load(new File(output, ContentHashes.FILE_NAME)) : null;
+        Utils.setContentHashes(contentHashes);
+        AsyncWriter asyncWriter = null;
+        if (config.getInt("async_queue") > 0) {
+            AsyncWriter.Backpressure backpressure = config.getString("backpressure").equalsIgnoreCase("caller") ? AsyncWriter.Backpressure.CALLER_RUNS : AsyncWriter.Backpressure.BLOCK;
+            asyncWriter = new AsyncWriter(ASYNC_WRITER_THREADS, config.getInt("async_queue"), ASYNC_WRITER_SYNC_EVERY, backpressure);
+        }
+        Utils.setAsyncWriter(asyncWriter);
+
         //Initialising ReactomeCore Neo4j configuration
-        mysqlDba = new MySQLAdaptor(config.getString("mysql_host"),
-                                    config.getString("mysql_db"),
-                                    config.getString("mysql_user"),
-                                    config.getString("mysql_password"),
-                                    Integer.parseInt(config.getString("mysql_port"))); // Cannot auto-parse? This is weird.
-        ReactomeGraphCore.initialise(config.getString("host"), config.getString("port"), config.getString("user"), config.getString("password"), GraphNeo4jConfig.class);
+        replicas = new DatabaseReplicas(Arrays.asList(config.getString("mysql_host").split(",")),
+                                        Integer.parseInt(config.getString("mysql_port")), // Cannot auto-parse? This is weird.
+                                        config.getString("mysql_db"),
+                                        config.getString("mysql_user"),
+                                        config.getString("mysql_password"),
+                                        config.getInt("mysql_max_queries"),
+                                        config.getDouble("mysql_qps"));
+        eventResolver = new EventResolver(replicas.acquire());
+        RelationalCatalog catalog = null;
+        Integer version;
+        if (relationalOnly) {
+            catalog = new RelationalCatalog(replicas.acquire());
+            version = catalog.getReleaseNumber();
+        } else {
+            System.setProperty("neo4j.driver", config.getString("driver"));
+            System.setProperty("neo4j.pool", String.valueOf(config.getInt("pool")));
+            ReactomeGraphCore.initialise(config.getString("host"), config.getString("port"), config.getString("user"), config.getString("password"), GraphNeo4jConfig.class);
+            version = ReactomeGraphCore.getService(GeneralService.class).getDBInfo().getVersion();
+            if (graphData && config.contains("composition_table")) {
+                CompositionTable table = CompositionTable.getInstance(new File(config.getString("composition_table")), version, ReactomeGraphCore.getService(AdvancedDatabaseObjectService.class));
+                if (table == null) error("The composition table is not available. The composition of the participants is computed for every pathway");
+                DataFactory.setCompositionTable(table);
+            }
+        }
+        info(String.format("Started in %d ms with %d MB of heap used", ManagementFactory.getRuntimeMXBean().getUptime(),
+                ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() / (1024 * 1024)));
 
         //Check if target pathways are specified
         String[] target = config.getStringArray("target");
 
-        DBInfo dbInfo = ReactomeGraphCore.getService(GeneralService.class).getDBInfo();
-
         long start = System.currentTimeMillis();
         if (target.length > 1) {
-            convertPathways(ArrayUtils.toArray(target), dbInfo.getVersion(), output);
+            convertPathways(ArrayUtils.toArray(target), version, output);
         } else {
             String aux = target[0];
             if (DatabaseObjectUtils.isStId(aux) || DatabaseObjectUtils.isDbId(aux)) {
-                convertPathways(target, dbInfo.getVersion(), output);
+                convertPathways(target, version, output);
+            } else if (catalog != null) {
+                if (aux.toLowerCase().equals("all")) {
+                    convertSpeciesList(catalog, catalog.getSpecies(), version, output);
+                } else {
+                    GKInstance species = catalog.getSpecies(aux);
+                    if (species != null) {
+                        convertSpeciesList(catalog, Collections.singletonList(species), version, output);
+                    } else {
+                        error(aux + " cannot be converted. Reason: This identifier does not belong to a Pathway or a Species");
+                    }
+                }
             } else {
                 SpeciesService speciesService = ReactomeGraphCore.getService(SpeciesService.class);
                 if (aux.toLowerCase().equals("all")) {
-                    convertSpeciesList(speciesService.getSpecies(), dbInfo.getVersion(), output);
+                    convertSpeciesList(speciesService.getSpecies(), version, output);
                 } else {
                     Species species = speciesService.getSpecies(aux);
                     if (species != null) {
-                        convertSpecies(species, dbInfo.getVersion(), output);
+                        convertSpecies(species, version, output);
                     } else {
                         error(aux + " cannot be converted. Reason: This identifier does not belong to a Pathway or a Species");
                     }
                 }
             }
         }
+        if (pack != null) {
+            Utils.setPack(null);
+            pack.close();
+        }
+        if (asyncWriter != null) {
+            Utils.setAsyncWriter(null);
+            asyncWriter.close();
+            info("Write-behind: " + asyncWriter);
+        }
+        if (shardedLayout != null) {
+            Utils.setShardedLayout(null);
+            shardedLayout.close();
+        }
+        if (contentHashes != null) {
+            contentHashes.save();
+            info(String.format("%d unchanged file%s not rewritten", contentHashes.getSkipped(), contentHashes.getSkipped() == 1 ? "" : "s"));
+        }
+        if (LayoutConverter.getDiagramCacheStats() != null) info("Diagram cache: " + LayoutConverter.getDiagramCacheStats());
+        info("Memory: " + memoryGovernor);
+        info("Database: " + replicas);
+        if (LayoutConverter.getLayoutCacheStats() != null) info("Layout cache: " + LayoutConverter.getLayoutCacheStats());
         info(String.format("Finished in %s", Utils.getTimeFormatted(System.currentTimeMillis() - start)));
+        writeSummary(output);
+        writeNotConverted(output);
+        if (!unknownIds.isEmpty()) {
+            error(String.format("%d identifier%s cannot be converted. Reason: They do not belong to an Event: %s", unknownIds.size(), unknownIds.size() > 1 ? "s" : "", String.join(", ", unknownIds)));
+        }
     }
 
-    private static void convertPathways(String[] identifiers, Integer version, String output) {
+    /**
+     * All identifiers are resolved to events at once (see {@link EventResolver}). The unknown ones are reported
+     * together at the end of the run.
+     */
+    private static void convertPathways(String[] identifiers, Integer version, String output) throws Exception {
         info(String.format("Converting %d event%s", identifiers.length, identifiers.length > 1 ? "s" : ""));
-        DatabaseObjectService dbs = ReactomeGraphCore.getService(DatabaseObjectService.class);
+        unknownIds.addAll(eventResolver.resolve(Arrays.asList(identifiers)));
         for (String identifier : identifiers) {
-            try {
-                Event p = dbs.findById(identifier);
-                info(String.format("\t>%s: %s", p.getStId(), p.getDisplayName()));
-                SbmlConverterForRel c = new SbmlConverterForRel(p.getStId(), 
-                                                                version, 
-                                                                ReactomeGraphCore.getService(AdvancedDatabaseObjectService.class));
-                c.setDBA(mysqlDba);
-                c.convert();
-                c.writeToFile(output);
-            } catch (ClassCastException e) {
-                error(identifier + " cannot be converted. Reason: This identifier does not belong to a Pathway");
-            }
+            EventResolver.ResolvedEvent event = eventResolver.get(identifier);
+            if (event == null) continue;
+            info(String.format("\t>%s: %s", event.getStId(), event.getDisplayName()));
+            convertPathway(event.getStId(), version, output);
         }
+        retryTimedOut(version, output);
+    }
+
+    private static void convertPathway(String stId, Integer version, String output) {
+        SbmlConverter c = getConverter(stId, version, pathwayTimeout);
+        if (!convert(c, version, output)) timedOut.add(stId);
+        memoryGovernor.check();
     }
 
     private static void convertSpecies(Species species, Integer version, String output) {
@@ -140,28 +318,192 @@ public class Main {
         SchemaService schemaService = ReactomeGraphCore.getService(SchemaService.class);
         for (Species species : speciesList) {
             Collection<Pathway> pathways = schemaService.getByClass(Pathway.class, species);
-            int total = pathways.size();
-            AtomicInteger i = new AtomicInteger(0);
-            ProgressBar progressBar = new ProgressBar(species.getDisplayName(), total, verbose);
-            progressBar.start();
+            convertSpecies(species.getDisplayName(), pathways.stream().map(Pathway::getStId).collect(Collectors.toList()), version, output);
+        }
+    }
+
+    private static void convertSpeciesList(RelationalCatalog catalog, List<GKInstance> speciesList, Integer version, String output) throws Exception {
+        info(String.format("Converting %d species", speciesList.size()));
+        for (GKInstance species : speciesList) {
+            convertSpecies(species.getDisplayName(), catalog.getPathways(species), version, output);
+        }
+    }
+
+    private static void convertSpecies(String speciesName, List<String> list, Integer version, String output) {
+        int total = list.size();
+        AtomicInteger i = new AtomicInteger(0);
+        ProgressBar progressBar = new ProgressBar(speciesName, total, verbose);
+        progressBar.start();
+        SbmlArchive archive = null;
+        try {
+            if (useArchive) {
+                archive = new SbmlArchive(new File(output, SbmlArchive.getFileName(speciesName)));
+                Utils.setArchive(archive);
+            }
+            // So that every converter fetches its pathway with a single query
+            unknownIds.addAll(eventResolver.resolve(list));
+            // Check from parallel to avoid any thread issues for the time being
+//            pathways.stream().parallel().forEach(pathway -> {
+            // Converters created ahead so that their diagrams are laid out by the layout threads meanwhile
+            Deque<SbmlConverter> ahead = new ArrayDeque<>();
+            for (String stId : list) {
+                progressBar.update(stId, i.get());
+                while (ahead.size() <= memoryGovernor.getWorkers() && i.get() + ahead.size() < total) {
+                    ahead.add(getConverter(list.get(i.get() + ahead.size()), version));
+                }
+                SbmlConverter c = ahead.poll();
+                if (!convert(c, version, output)) timedOut.add(c.getTargetStId());
+                i.incrementAndGet();
+                memoryGovernor.check();
+            }
+            progressBar.done();
+            // Before closing the archive so the retried pathways end up in it
+            retryTimedOut(version, output);
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+            progressBar.interrupt();
+        } finally {
+            if (archive != null) {
+                Utils.setArchive(null);
+                try {
+                    archive.close();
+                } catch (IOException e) {
+                    logger.error(String.format("Error closing the archive for '%s'", speciesName), e);
+                }
+            }
+        }
+    }
+
+    private static SbmlConverter getConverter(String stId, Integer version) {
+        SbmlConverter c = getConverter(stId, version, pathwayTimeout);
+        if (layoutThreads > 0 && c instanceof SbmlConverterForRel) ((SbmlConverterForRel) c).prepareLayout();
+        return c;
+    }
+
+    private static SbmlConverter getConverter(String stId, Integer version, long budget) {
+        SbmlConverter c;
+        if (graphData) {
+            c = new SbmlConverter(getEvent(stId), version, ReactomeGraphCore.getService(AdvancedDatabaseObjectService.class));
+        } else {
+            SbmlConverterForRel rc = relationalOnly ? new SbmlConverterForRel(stId, version)
+                                                    : new SbmlConverterForRel(stId,
+                                                                              version,
+                                                                              ReactomeGraphCore.getService(AdvancedDatabaseObjectService.class));
+            rc.setEventResolver(eventResolver);
+            setDBA(rc);
+            c = rc;
+        }
+        if (budget > 0) c.setDeadline(new Deadline(budget));
+        return c;
+    }
+
+    /**
+     * Loads the event of the converter from the next healthy host. With several hosts, a host found down is taken
+     * out and the event is loaded from another one, and the converter checks its host again before writing.
+     */
+    private static void setDBA(SbmlConverterForRel rc) {
+        if (!replicas.canFailover()) {
+            rc.setDBA(replicas.acquire());
+            return;
+        }
+        rc.setHostCheck(replicas::check);
+        while (true) {
+            try {
+                rc.setDBA(replicas.acquire());
+                return;
+            } catch (DatabaseUnavailableException e) {
+                logger.warn(String.format("'%s' is loaded again from another host: %s", rc.getTargetStId(), e.getMessage()));
+            }
+        }
+    }
+
+    private static Event getEvent(String stId) {
+        DatabaseObject object = ReactomeGraphCore.getService(DatabaseObjectService.class).findById(stId);
+        if (!(object instanceof Event)) throw new IllegalArgumentException(String.format("'%s' is not an Event in the graph database", stId));
+        return (Event) object;
+    }
+
+    /**
+     * The converter logs most database errors instead of throwing them, so it checks the host the pathway has been
+     * read from before writing anything (see {@link #setDBA(SbmlConverterForRel)}). The pathway is converted again
+     * from another host if that host is down.
+     *
+     * @return false if the conversion went over its time budget (nothing is written then)
+     */
+    private static boolean convert(SbmlConverter c, Integer version, String output) {
+        while (true) {
             try {
-                // Check from parallel to avoid any thread issues for the time being
-//                pathways.stream().parallel().forEach(pathway -> {
-                pathways.stream().forEach(pathway -> {
-                    progressBar.update(pathway.getStId(), i.get());
-                    SbmlConverterForRel c = new SbmlConverterForRel(pathway.getStId(), 
-                                                                    version,
-                                                                    ReactomeGraphCore.getService(AdvancedDatabaseObjectService.class));
-                    c.setDBA(mysqlDba);
-                    c.convert();
-                    c.writeToFile(output);
-                    if (i.incrementAndGet() % 10 == 0) ReactomeGraphCore.getService(GeneralService.class).clearCache();
-                });
-                progressBar.done();
-            } catch (Exception e) {
-                logger.error(e.getMessage(), e);
-                progressBar.interrupt();
+                return convert(c, output);
+            } catch (DatabaseUnavailableException e) {
+                logger.warn(String.format("'%s' is converted again from another host: %s", c.getTargetStId(), e.getMessage()));
+                Deadline deadline = c.getDeadline();
+                c = getConverter(c.getTargetStId(), version, deadline == null ? 0 : deadline.getBudget());
+            }
+        }
+    }
+
+    /**
+     * @return false if the conversion went over its time budget (nothing is written then)
+     */
+    private static boolean convert(SbmlConverter c, String output) {
+        try {
+            if (stream) {
+                try {
+                    c.streamToFile(output);
+                } catch (IOException e) {
+                    logger.error(e.getMessage(), e);
+                }
+            } else {
+                c.convert();
+                c.writeToFile(output);
             }
+            return true;
+        } catch (CancellationException e) {
+            logger.warn(String.format("'%s' cancelled: %s", c.getTargetStId(), e.getMessage()));
+            return false;
+        }
+    }
+
+    /**
+     * The pathways that went over their time budget are converted again once the others are done, so a few
+     * pathological pathways do not hold back the rest of the export. The ones going over the larger budget as well
+     * are reported at the end of the run.
+     */
+    private static void retryTimedOut(Integer version, String output) {
+        if (timedOut.isEmpty()) return;
+        long budget = pathwayTimeout * RETRY_BUDGET_FACTOR;
+        info(String.format("Retrying %d timed out pathway%s with a budget of %d s", timedOut.size(), timedOut.size() > 1 ? "s" : "", budget / 1000));
+        List<String> retries = new ArrayList<>(timedOut);
+        timedOut.clear();
+        for (String stId : retries) {
+            if (!convert(getConverter(stId, version, budget), version, output)) {
+                error(String.format("%s cannot be converted. Reason: It went over the time budget of %d s", stId, budget / 1000));
+                notConverted.add(stId);
+            }
+            memoryGovernor.check();
+        }
+    }
+
+    private static void writeSummary(String output) {
+        OutputSummary summary = Utils.getSummary();
+        if (summary.isEmpty()) return;
+        info("Output: " + summary);
+        File file = new File(output, "output-summary.tsv");
+        try {
+            summary.write(file);
+        } catch (IOException e) {
+            logger.error(String.format("The output summary cannot be written to '%s'", file.getAbsolutePath()), e);
+        }
+    }
+
+    private static void writeNotConverted(String output) {
+        if (notConverted.isEmpty()) return;
+        File file = new File(output, "timed-out.txt");
+        try {
+            Files.write(file.toPath(), notConverted);
+            error(String.format("%d pathway%s not converted in time, listed in '%s'", notConverted.size(), notConverted.size() > 1 ? "s" : "", file.getAbsolutePath()));
+        } catch (IOException e) {
+            logger.error(String.format("The timed out pathways cannot be written to '%s'", file.getAbsolutePath()), e);
         }
     }
 
@@ -1,12 +1,15 @@
 package org.reactome.server.tools.sbml.config;
 
 import org.neo4j.ogm.config.Configuration;
+import org.neo4j.ogm.session.Session;
 import org.neo4j.ogm.session.SessionFactory;
 import org.reactome.server.graph.config.Neo4jConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Scope;
+import org.springframework.context.annotation.ScopedProxyMode;
 import org.springframework.context.annotation.aspectj.EnableSpringConfigured;
 import org.springframework.data.neo4j.repository.config.EnableNeo4jRepositories;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
@@ -25,13 +28,38 @@ public class GraphNeo4jConfig extends Neo4jConfig {
 
     private SessionFactory sessionFactory;
 
+    public static final String HTTP_DRIVER = "http";
+    public static final String BOLT_DRIVER = "bolt";
+
+    // Beans living as long as the thread (worker) using them
+    public static final String WORKER_SCOPE = "worker";
+
+    @Bean
+    public static WorkerScope getWorkerScope() {
+        return new WorkerScope(WORKER_SCOPE);
+    }
+
     @Bean
     public Configuration getConfiguration() {
+        String driver = System.getProperty("neo4j.driver", HTTP_DRIVER);
+        String uri = System.getProperty("neo4j.host").concat(":").concat(System.getProperty("neo4j.port"));
         Configuration config = new Configuration();
-        config.driverConfiguration()
-                .setDriverClassName("org.neo4j.ogm.drivers.http.driver.HttpDriver")
-                .setURI("http://".concat(System.getProperty("neo4j.host")).concat(":").concat(System.getProperty("neo4j.port")))
-                .setCredentials(System.getProperty("neo4j.user"), System.getProperty("neo4j.password"));
+        if (driver.equalsIgnoreCase(BOLT_DRIVER)) {
+            // Bolt keeps a pool of connections so concurrent workers get their own session without HTTP round trips
+            config.driverConfiguration()
+                    .setDriverClassName("org.neo4j.ogm.drivers.bolt.driver.BoltDriver")
+                    .setURI("bolt://".concat(uri))
+                    .setCredentials(System.getProperty("neo4j.user"), System.getProperty("neo4j.password"))
+                    .setConnectionPoolSize(Integer.getInteger("neo4j.pool", 10));
+        } else if (driver.equalsIgnoreCase(HTTP_DRIVER)) {
+            config.driverConfiguration()
+                    .setDriverClassName("org.neo4j.ogm.drivers.http.driver.HttpDriver")
+                    .setURI("http://".concat(uri))
+                    .setCredentials(System.getProperty("neo4j.user"), System.getProperty("neo4j.password"));
+        } else {
+            throw new IllegalArgumentException(String.format("Unknown neo4j driver '%s'. Please use '%s' or '%s'", driver, HTTP_DRIVER, BOLT_DRIVER));
+        }
+        logger.info(String.format("Using the %s driver for %s", driver.toLowerCase(), uri));
         return config;
     }
 
@@ -46,4 +74,18 @@ public class GraphNeo4jConfig extends Neo4jConfig {
         return sessionFactory;
     }
 
+    /**
+     * OGM sessions are not thread safe, so every worker thread querying the graph database gets its own session (and
+     * object cache) from the shared SessionFactory. Clearing the cache through this bean only clears the one of the
+     * calling thread. The session is cleared and dropped when its worker calls {@link WorkerScope#release()}, and the
+     * ones of the workers that did not when the context is closed.
+     */
+    @Override
+    @Bean(destroyMethod = "clear")
+    @Scope(value = WORKER_SCOPE, proxyMode = ScopedProxyMode.INTERFACES)
+    public Session getSession() {
+        logger.info("Opening a Neo4j session for " + Thread.currentThread().getName());
+        return getSessionFactory().openSession();
+    }
+
 }
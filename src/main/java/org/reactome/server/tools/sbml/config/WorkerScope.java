@@ -0,0 +1,126 @@
+package org.reactome.server.tools.sbml.config;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.config.Scope;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * Scope of the beans living as long as the thread (worker) using them. Unlike Spring's SimpleThreadScope, it keeps
+ * the destruction callbacks of the beans and runs them when the worker releases its beans with {@link #release()},
+ * and for the workers that did not when the application context is closed. Registers itself in the bean factory
+ * under the given name.
+ */
+public class WorkerScope implements Scope, BeanFactoryPostProcessor, DisposableBean {
+
+    // Scopes of the open application contexts, so a worker can release its beans without knowing them
+    private static final Set<WorkerScope> scopes = new CopyOnWriteArraySet<>();
+
+    private final String name;
+    private final Map<Thread, Beans> workers = new ConcurrentHashMap<>();
+
+    public WorkerScope(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Destroys the beans of the calling thread in every worker scope. The next bean it asks for is a new one.
+     */
+    public static void release() {
+        for (WorkerScope scope : scopes) {
+            Beans beans = scope.workers.remove(Thread.currentThread());
+            if (beans != null) beans.destroy();
+        }
+    }
+
+    /**
+     * @return the number of threads holding beans of this scope
+     */
+    public int getWorkers() {
+        return workers.size();
+    }
+
+    @Override
+    public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) throws BeansException {
+        beanFactory.registerScope(name, this);
+        scopes.add(this);
+    }
+
+    @Override
+    public void destroy() {
+        scopes.remove(this);
+        for (Thread thread : new ArrayList<>(workers.keySet())) {
+            Beans beans = workers.remove(thread);
+            if (beans != null) beans.destroy();
+        }
+    }
+
+    @Override
+    public Object get(String name, ObjectFactory<?> objectFactory) {
+        Beans beans = workers.computeIfAbsent(Thread.currentThread(), t -> new Beans());
+        synchronized (beans) {
+            Object bean = beans.objects.get(name);
+            if (bean == null) {
+                bean = objectFactory.getObject();
+                beans.objects.put(name, bean);
+            }
+            return bean;
+        }
+    }
+
+    @Override
+    public Object remove(String name) {
+        Beans beans = workers.get(Thread.currentThread());
+        if (beans == null) return null;
+        synchronized (beans) {
+            beans.callbacks.remove(name);
+            return beans.objects.remove(name);
+        }
+    }
+
+    @Override
+    public void registerDestructionCallback(String name, Runnable callback) {
+        Beans beans = workers.computeIfAbsent(Thread.currentThread(), t -> new Beans());
+        synchronized (beans) {
+            beans.callbacks.put(name, callback);
+        }
+    }
+
+    @Override
+    public Object resolveContextualObject(String key) {
+        return null;
+    }
+
+    @Override
+    public String getConversationId() {
+        return Thread.currentThread().getName();
+    }
+
+    /**
+     * The beans of one worker and their destruction callbacks
+     */
+    private static class Beans {
+        private final Map<String, Object> objects = new LinkedHashMap<>();
+        private final Map<String, Runnable> callbacks = new LinkedHashMap<>();
+
+        /**
+         * Runs the destruction callbacks in the reverse order of the beans creation
+         */
+        private synchronized void destroy() {
+            List<Runnable> pending = new ArrayList<>(callbacks.values());
+            callbacks.clear();
+            objects.clear();
+            for (int i = pending.size() - 1; i >= 0; i--) pending.get(i).run();
+        }
+    }
+}
@@ -41,6 +41,7 @@ import org.sbml.jsbml.CVTerm;
 import org.sbml.jsbml.Creator;
 import org.sbml.jsbml.History;
 import org.sbml.jsbml.Reaction;
+import org.sbml.jsbml.SBMLDocument;
 import org.sbml.jsbml.SBase;
 import org.sbml.jsbml.Species;
 import org.sbml.jsbml.xml.XMLNode;
@@ -62,7 +63,6 @@ public class Helper {
     
     // To control is we should use identifier URLs
     private static boolean useIdentifierURL = false;
-    private static Map<String, String> url2identifier;
     
     public static void setUseIdentifierURL(boolean use) {
         useIdentifierURL = use;
@@ -195,6 +195,102 @@ public class Helper {
         sBase.setAnnotation(annotation);
     }
 
+    /**
+     * Streaming counterpart of {@link #addAnnotations(Species, ParticipantDetails)} for {@link SbmlStreamWriter}
+     */
+    static SbmlStreamWriter.Annotation getAnnotation(ParticipantDetails participant) {
+        PhysicalEntity pe = participant.getPhysicalEntity();
+        SbmlStreamWriter.Annotation annotation = new SbmlStreamWriter.Annotation();
+
+        List<String> litrefs = new ArrayList<>();
+        for (Publication l : pe.getLiteratureReference()) {
+            if (l instanceof LiteratureReference) litrefs.add(((LiteratureReference) l).getUrl());
+        }
+        annotation.addTerm(CVTerm.Qualifier.BQB_IS_DESCRIBED_BY, litrefs);
+
+        if (pe instanceof Complex || pe instanceof EntitySet || pe instanceof Polymer) {
+            annotation.addTerm(CVTerm.Qualifier.BQB_IS, REACTOME_URI + pe.getStId());
+            annotation.addTerm(CVTerm.Qualifier.BQB_HAS_PART, participant.getUrls());
+        } else {
+            participant.addUrl(REACTOME_URI + pe.getStId());
+            annotation.addTerm(CVTerm.Qualifier.BQB_IS, participant.getUrls());
+
+            if (pe instanceof EntityWithAccessionedSequence) {
+                List<String> psis = new ArrayList<>();
+                for (AbstractModifiedResidue r : ((EntityWithAccessionedSequence) pe).getHasModifiedResidue()) {
+                    if (r instanceof TranslationalModification && ((TranslationalModification) r).getPsiMod() != null) {
+                        psis.add(((TranslationalModification) r).getPsiMod().getUrl());
+                    }
+                }
+                annotation.addTerm(CVTerm.Qualifier.BQB_HAS_VERSION, psis);
+            }
+        }
+
+        List<String> infTos = new ArrayList<>();
+        for (PhysicalEntity p : pe.getInferredTo()) infTos.add(REACTOME_URI + p.getStId());
+        annotation.addTerm(CVTerm.Qualifier.BQB_IS_HOMOLOG_TO, infTos);
+
+        List<String> infFroms = new ArrayList<>();
+        for (PhysicalEntity p : pe.getInferredFrom()) infFroms.add(REACTOME_URI + p.getStId());
+        annotation.addTerm(CVTerm.Qualifier.BQB_IS_HOMOLOG_TO, infFroms);
+        return annotation;
+    }
+
+    /**
+     * Streaming counterpart of {@link #addAnnotations(SBase, Event)}
+     */
+    static SbmlStreamWriter.Annotation getAnnotation(Event event) {
+        SbmlStreamWriter.Annotation annotation = new SbmlStreamWriter.Annotation();
+        if (event == null) return annotation;
+        annotation.addHistory(event);
+
+        List<String> uris = new ArrayList<>();
+        uris.add(REACTOME_URI + event.getStId());
+        GO_BiologicalProcess go = event.getGoBiologicalProcess();
+        if (go != null) uris.add(go.getUrl());
+        annotation.addTerm(CVTerm.Qualifier.BQB_IS, uris);
+
+        List<String> litRefs = new ArrayList<>();
+        for (Publication p : event.getLiteratureReference()) {
+            if (p instanceof LiteratureReference && ((LiteratureReference) p).getUrl() != null) {
+                litRefs.add(((LiteratureReference) p).getUrl());
+            }
+        }
+        annotation.addTerm(CVTerm.Qualifier.BQB_IS_DESCRIBED_BY, litRefs);
+        return annotation;
+    }
+
+    /**
+     * Streaming counterpart of {@link #addAnnotations(SBase, Event)} followed by {@link #addCVTerms(Reaction, ReactionBase)}
+     */
+    static SbmlStreamWriter.Annotation getAnnotation(ReactionBase rxn) {
+        return getAnnotation(rxn.getReactionLikeEvent())
+                .addTerm(CVTerm.Qualifier.BQB_IS, REACTOME_URI + rxn.getStId())
+                .addTerm(CVTerm.Qualifier.BQB_IS, rxn.getGoTerms())
+                .addTerm(CVTerm.Qualifier.BQB_IS, rxn.getEcNumbers())
+                .addTerm(CVTerm.Qualifier.BQB_IS_DESCRIBED_BY, rxn.getLiteratureRefs())
+                .addTerm(CVTerm.Qualifier.BQB_OCCURS_IN, rxn.getDiseases())
+                .addTerm(CVTerm.Qualifier.BQM_HAS_INSTANCE, rxn.getCrossReferences());
+    }
+
+    /**
+     * @return the notes paragraph for the summations or null if there are none
+     */
+    static String getSummationText(List<Summation> summations) {
+        List<String> texts = new ArrayList<>();
+        for (Summation summation : summations) {
+            if (summation.getText() != null) texts.add(summation.getText());
+        }
+        return texts.isEmpty() ? null : getNotesText(texts.toArray(new String[0]));
+    }
+
+    /**
+     * @return the SBO term formatted as in the sboTerm attribute or null if it is not a valid term
+     */
+    static String getSBOTerm(Integer term) {
+        return term >= 0 && term <= 9999999 ? String.format("SBO:%07d", term) : null;
+    }
+
     private static void addCVTerm(SBase sBase, CVTerm.Qualifier qualifier, List<String> uris) {
         addCVTerm(sBase, qualifier, uris == null ? null : uris.toArray(new String[0]));
     }
@@ -215,13 +311,10 @@ public class Helper {
         }
     }
     
-    private static String convertUrl(String url) {
+    static String convertUrl(String url) {
         if (!useIdentifierURL)
             return url;
-        if (url2identifier == null) {
-            // Need to load
-            url2identifier = loadUrl2identigier();
-        }
+        Map<String, String> url2identifier = getUrl2identifier();
         for (String key : url2identifier.keySet()) {
             if (url.startsWith(key)) {
                 // Get the id from url
@@ -235,6 +328,15 @@ public class Helper {
         return url;
     }
     
+    private static Map<String, String> getUrl2identifier() {
+        return Url2Identifier.MAP;
+    }
+
+    // Documents may be built on several threads: the map is loaded once, when first used, by the class loader
+    private static class Url2Identifier {
+        private static final Map<String, String> MAP = loadUrl2identigier();
+    }
+
     private static Map<String, String> loadUrl2identigier() {
         Map<String, String> rtn = new HashedMap<>();
         try {
@@ -263,16 +365,11 @@ public class Helper {
         if (content != null) addNotes(sBase, content.toArray(new String[0]));
     }
 
+    // Documents may be built on several threads and the notes are parsed by JSBML's XML reader, which is not known to be
+    // thread safe. Parsing the notes is a small part of the build, so the calls are serialised
     static synchronized void addNotes(SBase sBase, String... content) {
         if (content != null && content.length > 0) {
-            StringJoiner joiner = new StringJoiner(System.lineSeparator(), "<notes><p xmlns=\"http://www.w3.org/1999/xhtml\">", "</p></notes>");
-            for (String s : content) {
-                if (s != null) {
-                    String removeTags = removeTags(s);
-                    joiner.add(removeTags);
-                }
-            }
-            String notes = joiner.toString();
+            String notes = "<notes><p xmlns=\"http://www.w3.org/1999/xhtml\">" + getNotesText(content) + "</p></notes>";
 
             try {
                 XMLNode node = XMLNode.convertStringToXMLNode(notes);
@@ -283,19 +380,27 @@ public class Helper {
         }
     }
 
+    /**
+     * Joins the content of a notes paragraph, one line per non null entry, without html tags
+     */
+    static String getNotesText(String... content) {
+        StringJoiner joiner = new StringJoiner(System.lineSeparator());
+        for (String s : content) {
+            if (s != null) joiner.add(removeTags(s));
+        }
+        return joiner.toString();
+    }
+
     /**
      * Adds information about the reactomeDB version and jsbml version
      */
     static void addProvenanceAnnotation(SBase sBase, Integer version) {
-        Date date = new Date();
-        DateFormat dateFormat = new SimpleDateFormat();
-        String jsbml = String.format("" +
-                        "<annotation>" +
-                        "<p xmlns=\"http://www.w3.org/1999/xhtml\">" +
-                        "SBML generated from Reactome version %d on %s using JSBML version %s." +
-                        "</p>" +
-                        "</annotation>",
-                version, dateFormat.format(date), getJSBMLDottedVersion());
+        String jsbml = "" +
+                "<annotation>" +
+                "<p xmlns=\"http://www.w3.org/1999/xhtml\">" +
+                getProvenanceText(version) +
+                "</p>" +
+                "</annotation>";
 
         try {
             XMLNode node = XMLNode.convertStringToXMLNode(jsbml);
@@ -305,6 +410,27 @@ public class Helper {
         }
     }
 
+    /**
+     * @return the notes added by {@link #addProvenanceAnnotation(SBase, Integer)} to a document, as JSBML writes them
+     */
+    static String getProvenanceNotes(Integer version) {
+        SBMLDocument document = new SBMLDocument(SbmlConverter.SBML_LEVEL, SbmlConverter.SBML_VERSION);
+        addProvenanceAnnotation(document, version);
+        try {
+            return document.isSetNotes() ? document.getNotesString() : null;
+        } catch (XMLStreamException e) {
+            logger.error("An error occurred while writing the provenance annotation", e);
+            return null;
+        }
+    }
+
+    static String getProvenanceText(Integer version) {
+        Date date = new Date();
+        DateFormat dateFormat = new SimpleDateFormat();
+        return String.format("SBML generated from Reactome version %d on %s using JSBML version %s.",
+                version, dateFormat.format(date), getJSBMLDottedVersion());
+    }
+
     static void addSBOTerm(SBase sBase, Integer term) {
         if (term >= 0 && term <= 9999999) {
             sBase.setSBOTerm(term);
@@ -325,7 +451,7 @@ public class Helper {
      * @param notes String to be adjusted.
      * @return String with any <></> removed.
      */
-    private static String removeTags(String notes) {
+    static String removeTags(String notes) {
         // if we have an xhtml tags in the text it messes up parsing copied from old reactome code with some additions
         return notes.replaceAll("<->", " to ")
                 .replaceAll("\\p{Cntrl}+", " ")
@@ -344,7 +470,7 @@ public class Helper {
      * @return Date object created from the String or null if this
      * cannot be parsed.
      */
-    private static Date formatDate(String datetime) {
+    static Date formatDate(String datetime) {
         DateFormat format = new SimpleDateFormat("yyyy-MM-dd hh:mm:ss", Locale.ENGLISH);
         try {
             return format.parse(datetime);
@@ -1,9 +1,27 @@
 package org.reactome.server.tools.sbml.converter;
 
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.EnumMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 
 import org.reactome.server.graph.domain.model.Event;
 import org.reactome.server.graph.domain.model.NegativeRegulation;
@@ -15,10 +33,12 @@ import org.reactome.server.tools.sbml.data.DataFactory;
 import org.reactome.server.tools.sbml.data.model.Participant;
 import org.reactome.server.tools.sbml.data.model.ParticipantDetails;
 import org.reactome.server.tools.sbml.data.model.ReactionBase;
+import org.reactome.server.tools.sbml.util.Deadline;
 import org.reactome.server.tools.sbml.util.Utils;
 import org.sbml.jsbml.CVTerm;
 import org.sbml.jsbml.Compartment;
 import org.sbml.jsbml.CompartmentalizedSBase;
+import org.sbml.jsbml.ListOf;
 import org.sbml.jsbml.Model;
 import org.sbml.jsbml.ModifierSpeciesReference;
 import org.sbml.jsbml.Reaction;
@@ -27,6 +47,7 @@ import org.sbml.jsbml.SBMLWriter;
 import org.sbml.jsbml.Species;
 import org.sbml.jsbml.SpeciesReference;
 import org.sbml.jsbml.TidySBMLWriter;
+import org.sbml.jsbml.ext.layout.Layout;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -63,6 +84,12 @@ public class SbmlConverter {
     private Set<String> existingObjects = new HashSet<>();
     private final Integer reactomeVersion;
 
+    // Time budget of the conversion (null for no limit)
+    private Deadline deadline = null;
+
+    // Threads building the species and reactions of a document (null to build them on the calling thread)
+    private static ExecutorService builders = null;
+
     protected SbmlConverter(String targetId, Integer version) {
         this.targetStId = targetId;
         this.reactomeVersion = version;
@@ -80,10 +107,79 @@ public class SbmlConverter {
         }
     }
 
+    /**
+     * Builds the JSBML species and reactions of the documents created by {@link #convert()} on the given number of
+     * threads, which helps with very large pathways. The data is still retrieved on the calling thread and the
+     * elements are added to the model in the same order, with the same identifiers, as when built sequentially.
+     *
+     * @param threads the number of threads or 0 to build the documents on the calling thread
+     */
+    public static synchronized void setBuilderThreads(int threads) {
+        if (builders != null) builders.shutdown();
+        builders = threads > 0 ? Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "sbml-builder");
+            t.setDaemon(true);
+            return t;
+        }) : null;
+    }
+
+    /**
+     * Bounds the time spent by {@link #convert()} and {@link #convert(OutputStream)}. The deadline is started when the
+     * conversion starts and checked for every retrieved participant and reaction, so a pathway going over its budget
+     * is cancelled with a {@link CancellationException} instead of stalling the export.
+     *
+     * @param deadline the time budget or null for no limit
+     */
+    public void setDeadline(Deadline deadline) {
+        this.deadline = deadline;
+    }
+
+    public Deadline getDeadline() {
+        return deadline;
+    }
+
+    public String getTargetStId() {
+        return targetStId;
+    }
+
+    /**
+     * @throws CancellationException if the time budget of the conversion has been used up
+     */
+    protected void checkDeadline() {
+        if (deadline != null) deadline.check();
+    }
+
+    private void startDeadline() {
+        if (deadline != null) deadline.start();
+    }
+
     @SuppressWarnings("UnusedReturnValue")
     public SBMLDocument convert() {
         if (sbmlDocument != null) return sbmlDocument;
 
+        startDeadline();
+        try {
+            SBMLDocument rtn = build();
+            beforeWriting();
+            return rtn;
+        } catch (RuntimeException e) {
+            sbmlDocument = null; //Nothing partial is kept
+            throw e;
+        }
+    }
+
+    /**
+     * Called once everything has been retrieved and before anything is written: after the document is built by
+     * {@link #convert()} and before the first byte is written by {@link #convert(OutputStream)}. Subclasses can throw
+     * a RuntimeException to abandon a document whose data cannot be trusted, which leaves the output untouched.
+     */
+    protected void beforeWriting() {
+    }
+
+    private SBMLDocument build() {
+        // Also when built again after being cancelled
+        metaid_count = 0L;
+        existingObjects = new HashSet<>();
         sbmlDocument = new SBMLDocument(SBML_LEVEL, SBML_VERSION);
 
         String modelId, pathwayName;
@@ -101,33 +197,139 @@ public class SbmlConverter {
         Helper.addProvenanceAnnotation(sbmlDocument, reactomeVersion);
         Helper.addAnnotations(model, pathway);
 
-        Collection<ParticipantDetails> participants = getParticipantDetails();
-        for (ParticipantDetails p : participants) addParticipant(model, p);
+        ExecutorService executor = builders;
+        if (executor != null) {
+            addInParallel(model, executor);
+        } else {
+            forEachParticipant(p -> addParticipant(model, p));
+            forEachReaction(rxn -> addReaction(model, rxn));
+        }
 
-        for (ReactionBase rxn : getReactionList()) {
-            String id = REACTION_PREFIX + rxn.getDbId();
-            Reaction rn = model.createReaction(id);
-            rn.setMetaId(META_ID_PREFIX + metaid_count++);
-            //noinspection deprecation
-            rn.setFast(false);
-            rn.setReversible(false);
-            rn.setName(rxn.getDisplayName());
+        return sbmlDocument;
+    }
+    
+    /**
+     * Streams the SBML document to the given output stream without building the JSBML object tree, so the memory
+     * needed does not depend on the size of the pathway. SBML expects the compartments before the species and the
+     * reactions but they are only known once everything has been retrieved, so species and reactions are written to
+     * temporary files as they arrive and copied into place at the end. The content is the same as for
+     * {@link #convert()} (including the layout provided by {@link #getLayouts(Collection, Collection, Collection)}),
+     * only the indentation differs. Nothing is written to the output stream before everything has been retrieved, so
+     * a conversion cancelled by its {@link #setDeadline(Deadline) deadline} leaves it untouched. The output stream is
+     * not closed.
+     */
+    public void convert(OutputStream os) throws IOException {
+        metaid_count = 0L;
+        existingObjects = new HashSet<>();
+        Map<String, StreamedCompartment> compartments = new LinkedHashMap<>();
+        Set<String> species = new LinkedHashSet<>();
+        Set<String> reactions = new LinkedHashSet<>();
 
-            addCompartment(rn, rxn.getCompartments());
+        String modelId, pathwayName;
+        if (pathway != null) {
+            modelId = PATHWAY_PREFIX + pathway.getDbId();
+            pathwayName = pathway.getDisplayName();
+        } else {
+            modelId = "no_parent_pathway";
+            pathwayName = "No parent pathway detected";
+        }
+        String modelMetaId = META_ID_PREFIX + metaid_count++;
 
-            addInputs(rxn.getDbId(), rn, rxn.getInputs());
-            addOutputs(rxn.getDbId(), rn, rxn.getOutpus());
-            addModifier(rxn.getDbId(), rn, rxn.getCatalysts(), Role.CATALYST);
-            addModifier(rxn.getDbId(), rn, rxn.getPositiveRegulators(), Role.POSITIVE_REGULATOR);
-            addModifier(rxn.getDbId(), rn, rxn.getNegativeRegulators(), Role.NEGATIVE_REGULATOR);
+        startDeadline();
+        File speciesFile = File.createTempFile("sbml-species-", ".xml");
+        File reactionsFile = File.createTempFile("sbml-reactions-", ".xml");
+        try {
+            try (SbmlStreamWriter writer = new SbmlStreamWriter(new BufferedOutputStream(new FileOutputStream(speciesFile)))) {
+                writer.startElement("listOfSpecies");
+                forEachParticipant(p -> streamParticipant(writer, p, compartments, species));
+                writer.endElement();
+            }
+            try (SbmlStreamWriter writer = new SbmlStreamWriter(new BufferedOutputStream(new FileOutputStream(reactionsFile)))) {
+                writer.startElement("listOfReactions");
+                forEachReaction(rxn -> streamReaction(writer, rxn, compartments, reactions));
+                writer.endElement();
+            }
+            ListOf<Layout> layouts = getLayouts(compartments.keySet(), species, reactions);
+            checkDeadline();
+            boolean hasLayout = layouts != null && !layouts.isEmpty();
+            beforeWriting();
+
+            SbmlStreamWriter writer = new SbmlStreamWriter(os);
+            writer.startDocument(hasLayout);
+            writer.writeRaw(Helper.getProvenanceNotes(reactomeVersion));
+            writer.startElement("model", "metaid", modelMetaId, "id", modelId, "name", pathwayName);
+            writer.writeNotes(pathway == null ? null : Helper.getSummationText(pathway.getSummation()));
+            writer.writeAnnotation(modelMetaId, Helper.getAnnotation(pathway));
+            if (!compartments.isEmpty()) {
+                writer.startElement("listOfCompartments");
+                for (Map.Entry<String, StreamedCompartment> entry : compartments.entrySet()) {
+                    StreamedCompartment c = entry.getValue();
+                    writer.startElement("compartment",
+                            "metaid", c.metaId,
+                            "sboTerm", Helper.getSBOTerm(SBOTermLookup.get(c.compartment)),
+                            "id", entry.getKey(),
+                            "name", c.compartment.getDisplayName(),
+                            "constant", "true");
+                    writer.writeAnnotation(c.metaId, new SbmlStreamWriter.Annotation().addTerm(CVTerm.Qualifier.BQB_IS, c.compartment.getUrl()));
+                    writer.endElement();
+                }
+                writer.endElement();
+            }
+            if (!species.isEmpty()) writer.copy(speciesFile);
+            if (!reactions.isEmpty()) writer.copy(reactionsFile);
+            if (hasLayout) writer.writeLayouts(layouts);
+            writer.endElement(); //model
+            writer.endDocument();
+        } finally {
+            if (!speciesFile.delete()) speciesFile.deleteOnExit();
+            if (!reactionsFile.delete()) reactionsFile.deleteOnExit();
+        }
+    }
 
-            Helper.addAnnotations(rn, rxn.getReactionLikeEvent());
-            Helper.addCVTerms(rn, rxn);
+    /**
+     * Streams the SBML document to the output file provided by {@link Utils#getOutputStream(String, String)}, which
+     * is only opened once the document starts being written so no empty file is left by a cancelled conversion.
+     * See {@link #convert(OutputStream)}
+     */
+    public void streamToFile(String output) throws IOException {
+        try (OutputStream os = new DeferredOutputStream(output, targetStId)) {
+            convert(os);
         }
+    }
 
-        return sbmlDocument;
+    /**
+     * The layout to be added when streaming the document. The identifiers of the elements written so far are passed
+     * so a model skeleton can be built for the layout to refer to.
+     *
+     * @return null when there is no layout
+     */
+    protected ListOf<Layout> getLayouts(Collection<String> compartments, Collection<String> species, Collection<String> reactions) {
+        return null;
     }
-    
+
+    /**
+     * The SBO term written for a species when streaming the document
+     */
+    protected String getSpeciesSBOTerm(ParticipantDetails participant) {
+        return Helper.getSBOTerm(SBOTermLookup.get(participant.getPhysicalEntity()));
+    }
+
+    /**
+     * Passes every participant to the action as soon as it is retrieved, so the whole collection does not need to be
+     * held in memory when {@link DataFactory#setPageSize(int)} is used. Subclasses providing their own data should
+     * override this method as well as {@link #getParticipantDetails()}.
+     */
+    protected void forEachParticipant(Consumer<ParticipantDetails> action) {
+        DataFactory.getParticipantDetails(targetStId, ads, action);
+    }
+
+    /**
+     * Streaming counterpart of {@link #getReactionList()}
+     */
+    protected void forEachReaction(Consumer<ReactionBase> action) {
+        DataFactory.getReactionList(targetStId, ads, action);
+    }
+
     /**
      * Refactored method for subclassing.
      * @param targetStId
@@ -151,70 +353,208 @@ public class SbmlConverter {
         Utils.writeSBML(output, targetStId, sbmlDocument);
     }
 
+    /**
+     * Builds the species and reactions on the builder threads as they are retrieved. Everything depending on the
+     * document order (metaids, compartments and species references added first) is decided here on the calling
+     * thread and the built objects are added to the model in the retrieval order, so the document is the same as
+     * the one built sequentially.
+     */
+    private void addInParallel(Model model, ExecutorService executor) {
+        List<Planned> speciesPlans = new ArrayList<>();
+        List<Future<Species>> species = new ArrayList<>();
+        List<Planned> reactionPlans = new ArrayList<>();
+        List<Future<Reaction>> reactions = new ArrayList<>();
+        try {
+            forEachParticipant(p -> {
+                Planned planned = planSpecies(p);
+                speciesPlans.add(planned);
+                species.add(executor.submit(() -> buildSpecies(p, planned)));
+            });
+            forEachReaction(rxn -> {
+                Planned planned = planReaction(rxn);
+                reactionPlans.add(planned);
+                reactions.add(executor.submit(() -> buildReaction(rxn, planned)));
+            });
+            for (int i = 0; i < species.size(); i++) {
+                Species s = getBuilt(species.get(i));
+                model.addSpecies(s);
+                setCompartment(s, speciesPlans.get(i));
+            }
+            for (int i = 0; i < reactions.size(); i++) {
+                Reaction rn = getBuilt(reactions.get(i));
+                model.addReaction(rn);
+                setCompartment(rn, reactionPlans.get(i));
+            }
+        } catch (CancellationException e) {
+            // The builders are shared with the other conversions
+            species.forEach(f -> f.cancel(false));
+            reactions.forEach(f -> f.cancel(false));
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for a built element no longer than the time left to the conversion
+     *
+     * @throws CancellationException if the time budget of the conversion is used up before the element is built
+     */
+    private <T> T getBuilt(Future<T> future) {
+        try {
+            if (deadline == null) return future.get();
+            return future.get(deadline.getRemaining(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(false);
+            throw new CancellationException(String.format("Time budget of %d ms exceeded while building the document", deadline.getBudget()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while building the document", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * The metaids, compartment and new species references of a species or a reaction, which depend on the elements
+     * added before it
+     */
+    private static class Planned {
+        private final String metaId;
+        private org.reactome.server.graph.domain.model.Compartment compartment;
+        // Only set when the compartment is added with this element
+        private String compartmentMetaId;
+        private final Map<Role, List<Participant>> references = new EnumMap<>(Role.class);
+
+        Planned(String metaId) {
+            this.metaId = metaId;
+        }
+    }
+
+    private Planned planSpecies(ParticipantDetails participant) {
+        checkDeadline();
+        PhysicalEntity pe = participant.getPhysicalEntity();
+        Planned planned = new Planned(META_ID_PREFIX + metaid_count++);
+        planCompartment(SPECIES_PREFIX + pe.getDbId(), pe.getCompartment(), planned);
+        return planned;
+    }
+
+    private Planned planReaction(ReactionBase rxn) {
+        checkDeadline();
+        Planned planned = new Planned(META_ID_PREFIX + metaid_count++);
+        planCompartment(REACTION_PREFIX + rxn.getDbId(), rxn.getCompartments(), planned);
+        planned.references.put(Role.INPUT, getNewReferences(rxn.getDbId(), rxn.getInputs(), Role.INPUT));
+        planned.references.put(Role.OUTPUT, getNewReferences(rxn.getDbId(), rxn.getOutpus(), Role.OUTPUT));
+        planned.references.put(Role.CATALYST, getNewReferences(rxn.getDbId(), rxn.getCatalysts(), Role.CATALYST));
+        planned.references.put(Role.POSITIVE_REGULATOR, getNewReferences(rxn.getDbId(), rxn.getPositiveRegulators(), Role.POSITIVE_REGULATOR));
+        planned.references.put(Role.NEGATIVE_REGULATOR, getNewReferences(rxn.getDbId(), rxn.getNegativeRegulators(), Role.NEGATIVE_REGULATOR));
+        return planned;
+    }
+
+    private void planCompartment(String id, List<org.reactome.server.graph.domain.model.Compartment> compartments, Planned planned) {
+        if (compartments.size() > 0) {
+            org.reactome.server.graph.domain.model.Compartment compartment = compartments.get(0);
+            planned.compartment = compartment;
+            if (existingObjects.add(COMPARTMENT_PREFIX + compartment.getDbId())) {
+                planned.compartmentMetaId = META_ID_PREFIX + metaid_count++;
+            }
+//            if (compartments.size() > 1) logger.warn(String.format("More than one compartment found for '%s'. ONLY the first one has been added", id));
+        } else {
+            logger.warn(String.format("No compartment found for '%s'", id));
+        }
+    }
+
+    private void addReaction(Model model, ReactionBase rxn) {
+        Planned planned = planReaction(rxn);
+        Reaction rn = buildReaction(rxn, planned);
+        model.addReaction(rn);
+        setCompartment(rn, planned);
+    }
+
+    /**
+     * Builds the reaction outside of the model. This does not depend on the state of the converter and can run
+     * on any thread.
+     */
+    private Reaction buildReaction(ReactionBase rxn, Planned planned) {
+        String id = REACTION_PREFIX + rxn.getDbId();
+        Reaction rn = new Reaction(id, SBML_LEVEL, SBML_VERSION);
+        rn.setMetaId(planned.metaId);
+        //noinspection deprecation
+        rn.setFast(false);
+        rn.setReversible(false);
+        rn.setName(rxn.getDisplayName());
+
+        addInputs(rxn.getDbId(), rn, planned.references.get(Role.INPUT));
+        addOutputs(rxn.getDbId(), rn, planned.references.get(Role.OUTPUT));
+        addModifier(rxn.getDbId(), rn, planned.references.get(Role.CATALYST), Role.CATALYST);
+        addModifier(rxn.getDbId(), rn, planned.references.get(Role.POSITIVE_REGULATOR), Role.POSITIVE_REGULATOR);
+        addModifier(rxn.getDbId(), rn, planned.references.get(Role.NEGATIVE_REGULATOR), Role.NEGATIVE_REGULATOR);
+
+        Helper.addAnnotations(rn, rxn.getReactionLikeEvent());
+        Helper.addCVTerms(rn, rxn);
+        return rn;
+    }
+
     private void addInputs(Long reactionDbId, Reaction rn, List<Participant> participants) {
         for (Participant participant : participants) {
             String sr_id = Role.INPUT.getIdentifier(reactionDbId, participant.getPhysicalEntity());
-            if (!existingObjects.contains(sr_id)) {
-                String speciesId = SPECIES_PREFIX + participant.getPhysicalEntity().getDbId();
-
-                SpeciesReference sr = rn.createReactant(sr_id, speciesId);
-                sr.setConstant(true);
-                Helper.addSBOTerm(sr, Role.INPUT.term);
-                sr.setStoichiometry(participant.getStoichiometry());
+            String speciesId = SPECIES_PREFIX + participant.getPhysicalEntity().getDbId();
 
-                existingObjects.add(sr_id);
-            }
+            SpeciesReference sr = rn.createReactant(sr_id, speciesId);
+            sr.setConstant(true);
+            Helper.addSBOTerm(sr, Role.INPUT.term);
+            sr.setStoichiometry(participant.getStoichiometry());
         }
     }
 
     private void addOutputs(Long reactionDbId, Reaction rn, List<Participant> participants) {
         for (Participant participant : participants) {
             String sr_id = Role.OUTPUT.getIdentifier(reactionDbId, participant.getPhysicalEntity());
+            String speciesId = SPECIES_PREFIX + participant.getPhysicalEntity().getDbId();
 
-            if (!existingObjects.contains(sr_id)) {
-                String speciesId = SPECIES_PREFIX + participant.getPhysicalEntity().getDbId();
-
-                SpeciesReference sr = rn.createProduct(sr_id, speciesId);
-                sr.setConstant(true);
-                Helper.addSBOTerm(sr, Role.OUTPUT.term);
-                sr.setStoichiometry(participant.getStoichiometry());
-
-                existingObjects.add(sr_id);
-            }
+            SpeciesReference sr = rn.createProduct(sr_id, speciesId);
+            sr.setConstant(true);
+            Helper.addSBOTerm(sr, Role.OUTPUT.term);
+            sr.setStoichiometry(participant.getStoichiometry());
         }
     }
 
     private void addModifier(Long reactionDbId, Reaction rn, List<Participant> participants, Role role) {
         for (Participant participant : participants) {
             String sr_id = role.getIdentifier(reactionDbId, participant.getPhysicalEntity());
-
-            if (!existingObjects.contains(sr_id)) {
-                String speciesId = SPECIES_PREFIX + participant.getPhysicalEntity().getDbId();
-
-                ModifierSpeciesReference sr = rn.createModifier(sr_id, speciesId);
-                Helper.addSBOTerm(sr, role.term);
-
-                String explanation = null;
-                switch (role) {
-                    case POSITIVE_REGULATOR:
-                        explanation = (new PositiveRegulation()).getExplanation();
-                        break;
-                    case NEGATIVE_REGULATOR:
-                        explanation = (new NegativeRegulation()).getExplanation();
-                }
-                if (explanation != null) Helper.addNotes(sr, explanation);
-
-                existingObjects.add(sr_id);
+            String speciesId = SPECIES_PREFIX + participant.getPhysicalEntity().getDbId();
+
+            ModifierSpeciesReference sr = rn.createModifier(sr_id, speciesId);
+            Helper.addSBOTerm(sr, role.term);
+
+            String explanation = null;
+            switch (role) {
+                case POSITIVE_REGULATOR:
+                    explanation = (new PositiveRegulation()).getExplanation();
+                    break;
+                case NEGATIVE_REGULATOR:
+                    explanation = (new NegativeRegulation()).getExplanation();
             }
+            if (explanation != null) Helper.addNotes(sr, explanation);
         }
     }
 
     private void addParticipant(Model model, ParticipantDetails participant) {
+        Planned planned = planSpecies(participant);
+        Species s = buildSpecies(participant, planned);
+        model.addSpecies(s);
+        setCompartment(s, planned);
+    }
+
+    /**
+     * Builds the species outside of the model. This does not depend on the state of the converter and can run
+     * on any thread.
+     */
+    private Species buildSpecies(ParticipantDetails participant, Planned planned) {
         String speciesId = SPECIES_PREFIX + participant.getPhysicalEntity().getDbId();
 
         PhysicalEntity pe = participant.getPhysicalEntity();
-        Species s = model.createSpecies(speciesId);
-        s.setMetaId(META_ID_PREFIX + metaid_count++);
+        Species s = new Species(speciesId, SBML_LEVEL, SBML_VERSION);
+        s.setMetaId(planned.metaId);
         s.setName(pe.getDisplayName());
         // set other required fields for SBML L3
         s.setBoundaryCondition(false);
@@ -222,35 +562,183 @@ public class SbmlConverter {
         s.setConstant(false);
         Helper.addSBOTerm(s, SBOTermLookup.get(pe));
         Helper.addAnnotations(s, participant);
-
-        addCompartment(s, pe.getCompartment());
+        return s;
     }
 
-    private void addCompartment(CompartmentalizedSBase s, List<org.reactome.server.graph.domain.model.Compartment> compartments) {
-        if (compartments.size() > 0) {
-            org.reactome.server.graph.domain.model.Compartment compartment = compartments.get(0);
-            addCompartment(s, compartment);
-//            if (compartments.size() > 1) logger.warn(String.format("More than one compartment found for '%s'. ONLY the first one has been added", s.getId()));
-        } else {
-            logger.warn(String.format("No compartment found for '%s'", s.getId()));
-        }
-    }
-
-    private void addCompartment(CompartmentalizedSBase s, org.reactome.server.graph.domain.model.Compartment compartment) {
+    /**
+     * Sets the compartment of an element added to the model, adding the compartment first when planned so
+     */
+    private void setCompartment(CompartmentalizedSBase s, Planned planned) {
+        org.reactome.server.graph.domain.model.Compartment compartment = planned.compartment;
+        if (compartment == null) return;
         String comp_id = COMPARTMENT_PREFIX + compartment.getDbId();
-        if (!existingObjects.contains(comp_id)) {
+        if (planned.compartmentMetaId != null) {
             Compartment c = sbmlDocument.getModel().createCompartment(comp_id);
-            c.setMetaId(META_ID_PREFIX + metaid_count++);
+            c.setMetaId(planned.compartmentMetaId);
             c.setName(compartment.getDisplayName());
             c.setConstant(true);
             Helper.addSBOTerm(c, SBOTermLookup.get(compartment));
 
             Helper.addCVTerm(c, CVTerm.Qualifier.BQB_IS, compartment.getUrl());
-            existingObjects.add(comp_id);
         }
         s.setCompartment(comp_id);
     }
 
+    /**
+     * Opens the output provided by {@link Utils#getOutputStream(String, String)} on the first write
+     */
+    private static class DeferredOutputStream extends OutputStream {
+        private final String output;
+        private final String fileName;
+        private OutputStream os = null;
+
+        DeferredOutputStream(String output, String fileName) {
+            this.output = output;
+            this.fileName = fileName;
+        }
+
+        private OutputStream get() throws IOException {
+            if (os == null) os = Utils.getOutputStream(output, fileName);
+            return os;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            get().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            get().write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (os != null) os.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (os != null) os.close();
+        }
+    }
+
+    private static class StreamedCompartment {
+        private final String metaId;
+        private final org.reactome.server.graph.domain.model.Compartment compartment;
+
+        StreamedCompartment(String metaId, org.reactome.server.graph.domain.model.Compartment compartment) {
+            this.metaId = metaId;
+            this.compartment = compartment;
+        }
+    }
+
+    private void streamParticipant(SbmlStreamWriter writer, ParticipantDetails participant, Map<String, StreamedCompartment> compartments, Set<String> species) {
+        checkDeadline();
+        PhysicalEntity pe = participant.getPhysicalEntity();
+        String speciesId = SPECIES_PREFIX + pe.getDbId();
+        String metaId = META_ID_PREFIX + metaid_count++;
+        String sboTerm = getSpeciesSBOTerm(participant);
+        String compartment = streamCompartment(speciesId, pe.getCompartment(), compartments);
+
+        writer.startElement("species",
+                "metaid", metaId,
+                "sboTerm", sboTerm,
+                "id", speciesId,
+                "name", pe.getDisplayName(),
+                "compartment", compartment,
+                "hasOnlySubstanceUnits", "false",
+                "boundaryCondition", "false",
+                "constant", "false");
+        writer.writeNotes(Helper.getNotesText(participant.getExplanation()), Helper.getSummationText(pe.getSummation()));
+        writer.writeAnnotation(metaId, Helper.getAnnotation(participant));
+        writer.endElement();
+        species.add(speciesId);
+    }
+
+    private void streamReaction(SbmlStreamWriter writer, ReactionBase rxn, Map<String, StreamedCompartment> compartments, Set<String> reactions) {
+        checkDeadline();
+        String id = REACTION_PREFIX + rxn.getDbId();
+        String metaId = META_ID_PREFIX + metaid_count++;
+        String compartment = streamCompartment(id, rxn.getCompartments(), compartments);
+
+        writer.startElement("reaction",
+                "metaid", metaId,
+                "id", id,
+                "name", rxn.getDisplayName(),
+                "reversible", "false",
+                "fast", "false",
+                "compartment", compartment);
+        Event rle = rxn.getReactionLikeEvent();
+        writer.writeNotes(rle == null ? null : Helper.getSummationText(rle.getSummation()));
+        writer.writeAnnotation(metaId, Helper.getAnnotation(rxn));
+
+        streamSpeciesReferences(writer, "listOfReactants", rxn.getDbId(), getNewReferences(rxn.getDbId(), rxn.getInputs(), Role.INPUT), Role.INPUT);
+        streamSpeciesReferences(writer, "listOfProducts", rxn.getDbId(), getNewReferences(rxn.getDbId(), rxn.getOutpus(), Role.OUTPUT), Role.OUTPUT);
+        List<Participant> catalysts = getNewReferences(rxn.getDbId(), rxn.getCatalysts(), Role.CATALYST);
+        List<Participant> positiveRegulators = getNewReferences(rxn.getDbId(), rxn.getPositiveRegulators(), Role.POSITIVE_REGULATOR);
+        List<Participant> negativeRegulators = getNewReferences(rxn.getDbId(), rxn.getNegativeRegulators(), Role.NEGATIVE_REGULATOR);
+        if (!catalysts.isEmpty() || !positiveRegulators.isEmpty() || !negativeRegulators.isEmpty()) {
+            writer.startElement("listOfModifiers");
+            streamModifiers(writer, rxn.getDbId(), catalysts, Role.CATALYST, null);
+            streamModifiers(writer, rxn.getDbId(), positiveRegulators, Role.POSITIVE_REGULATOR, (new PositiveRegulation()).getExplanation());
+            streamModifiers(writer, rxn.getDbId(), negativeRegulators, Role.NEGATIVE_REGULATOR, (new NegativeRegulation()).getExplanation());
+            writer.endElement();
+        }
+        writer.endElement();
+        reactions.add(id);
+    }
+
+    /**
+     * @return the participants whose species reference has not been added yet
+     */
+    private List<Participant> getNewReferences(Long reactionDbId, List<Participant> participants, Role role) {
+        List<Participant> rtn = new ArrayList<>();
+        for (Participant participant : participants) {
+            if (existingObjects.add(role.getIdentifier(reactionDbId, participant.getPhysicalEntity()))) rtn.add(participant);
+        }
+        return rtn;
+    }
+
+    private void streamSpeciesReferences(SbmlStreamWriter writer, String list, Long reactionDbId, List<Participant> participants, Role role) {
+        if (participants.isEmpty()) return;
+        writer.startElement(list);
+        for (Participant participant : participants) {
+            writer.startElement("speciesReference",
+                    "sboTerm", Helper.getSBOTerm(role.term),
+                    "id", role.getIdentifier(reactionDbId, participant.getPhysicalEntity()),
+                    "species", SPECIES_PREFIX + participant.getPhysicalEntity().getDbId(),
+                    "stoichiometry", String.valueOf(participant.getStoichiometry()),
+                    "constant", "true");
+            writer.endElement();
+        }
+        writer.endElement();
+    }
+
+    private void streamModifiers(SbmlStreamWriter writer, Long reactionDbId, List<Participant> participants, Role role, String explanation) {
+        for (Participant participant : participants) {
+            writer.startElement("modifierSpeciesReference",
+                    "sboTerm", Helper.getSBOTerm(role.term),
+                    "id", role.getIdentifier(reactionDbId, participant.getPhysicalEntity()),
+                    "species", SPECIES_PREFIX + participant.getPhysicalEntity().getDbId());
+            if (explanation != null) writer.writeNotes(Helper.getNotesText(explanation));
+            writer.endElement();
+        }
+    }
+
+    private String streamCompartment(String id, List<org.reactome.server.graph.domain.model.Compartment> list, Map<String, StreamedCompartment> compartments) {
+        if (list.isEmpty()) {
+            logger.warn(String.format("No compartment found for '%s'", id));
+            return null;
+        }
+        org.reactome.server.graph.domain.model.Compartment compartment = list.get(0);
+        String comp_id = COMPARTMENT_PREFIX + compartment.getDbId();
+        if (existingObjects.add(comp_id)) {
+            compartments.put(comp_id, new StreamedCompartment(META_ID_PREFIX + metaid_count++, compartment));
+        }
+        return comp_id;
+    }
+
     /**
      * Write the SBMLDocument to a String.
      *
@@ -0,0 +1,330 @@
+package org.reactome.server.tools.sbml.converter;
+
+import org.reactome.server.graph.domain.model.Affiliation;
+import org.reactome.server.graph.domain.model.Event;
+import org.reactome.server.graph.domain.model.InstanceEdit;
+import org.reactome.server.graph.domain.model.Person;
+import org.reactome.server.tools.sbml.util.Utils;
+import org.sbml.jsbml.CVTerm;
+import org.sbml.jsbml.ListOf;
+import org.sbml.jsbml.SBMLException;
+import org.sbml.jsbml.SBMLWriter;
+import org.sbml.jsbml.ext.layout.Layout;
+import org.sbml.jsbml.ext.layout.LayoutConstants;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes SBML Level 3 Version 1 elements (and the layout extension) straight to an {@link OutputStream} with StAX.
+ * It is used by {@link SbmlConverter#convert(OutputStream)} to serialise the data as it arrives instead of building
+ * and then walking a complete {@link org.sbml.jsbml.SBMLDocument}. The elements are written the same way
+ * {@link org.sbml.jsbml.TidySBMLWriter} writes the ones created by {@link Helper}, without indentation. The parts
+ * JSBML generates itself (the provenance notes and the layouts) are serialised by JSBML and written with
+ * {@link #writeRaw(String)}.
+ *
+ * XML errors are rethrown as {@link UncheckedIOException} so the writer can be used from the converter callbacks.
+ */
+public class SbmlStreamWriter implements Closeable {
+
+    private static final String SBML_NS = "http://www.sbml.org/sbml/level3/version1/core";
+    private static final String XHTML_NS = "http://www.w3.org/1999/xhtml";
+    private static final String RDF_NS = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+    private static final String DC_NS = "http://purl.org/dc/elements/1.1/";
+    private static final String DCTERMS_NS = "http://purl.org/dc/terms/";
+    private static final String VCARD_NS = "http://www.w3.org/2001/vcard-rdf/3.0#";
+    private static final String BQBIOL_NS = "http://biomodels.net/biology-qualifiers/";
+    private static final String BQMODEL_NS = "http://biomodels.net/model-qualifiers/";
+    private static final String LAYOUT_NS = LayoutConstants.namespaceURI;
+
+    private static final XMLOutputFactory factory = XMLOutputFactory.newInstance();
+
+    private final OutputStream os;
+    private final XMLStreamWriter writer;
+
+    /**
+     * Collects the content of an annotation: the history and the controlled vocabulary terms
+     */
+    static class Annotation {
+        private final List<Person> creators = new ArrayList<>();
+        private Date created;
+        private final List<Date> modified = new ArrayList<>();
+        private final List<Map.Entry<CVTerm.Qualifier, List<String>>> terms = new ArrayList<>();
+
+        Annotation addHistory(Event event) {
+            if (event == null) return this;
+            InstanceEdit created = event.getCreated();
+            if (created != null) {
+                creators.addAll(created.getAuthor());
+                this.created = Helper.formatDate(created.getDateTime());
+            }
+            InstanceEdit modified = event.getModified();
+            if (modified != null) addModified(modified);
+            for (InstanceEdit authored : event.getAuthored()) addModified(authored);
+            for (InstanceEdit revised : event.getRevised()) addModified(revised);
+            return this;
+        }
+
+        private void addModified(InstanceEdit edit) {
+            creators.addAll(edit.getAuthor());
+            Date date = Helper.formatDate(edit.getDateTime());
+            if (date != null) modified.add(date);
+        }
+
+        Annotation addTerm(CVTerm.Qualifier qualifier, List<String> uris) {
+            if (uris != null && !uris.isEmpty()) terms.add(new AbstractMap.SimpleEntry<>(qualifier, uris));
+            return this;
+        }
+
+        Annotation addTerm(CVTerm.Qualifier qualifier, String uri) {
+            return uri == null ? this : addTerm(qualifier, Collections.singletonList(uri));
+        }
+
+        boolean isEmpty() {
+            return creators.isEmpty() && created == null && modified.isEmpty() && terms.isEmpty();
+        }
+    }
+
+    public SbmlStreamWriter(OutputStream os) {
+        this.os = os;
+        try {
+            this.writer = factory.createXMLStreamWriter(os, "UTF-8");
+        } catch (XMLStreamException e) {
+            throw new UncheckedIOException(new IOException(e));
+        }
+    }
+
+    void startDocument(boolean layout) {
+        try {
+            writer.writeStartDocument("UTF-8", "1.0");
+            writer.writeStartElement("sbml");
+            writer.writeDefaultNamespace(SBML_NS);
+            if (layout) writer.writeNamespace("layout", LAYOUT_NS);
+            writer.writeAttribute("level", String.valueOf(SbmlConverter.SBML_LEVEL));
+            writer.writeAttribute("version", String.valueOf(SbmlConverter.SBML_VERSION));
+            if (layout) writer.writeAttribute("layout", LAYOUT_NS, "required", "false");
+        } catch (XMLStreamException e) {
+            throw new UncheckedIOException(new IOException(e));
+        }
+    }
+
+    void startElement(String name, String... attributes) {
+        try {
+            writer.writeStartElement(name);
+            for (int i = 0; i + 1 < attributes.length; i += 2) {
+                if (attributes[i + 1] != null) writer.writeAttribute(attributes[i], attributes[i + 1]);
+            }
+        } catch (XMLStreamException e) {
+            throw new UncheckedIOException(new IOException(e));
+        }
+    }
+
+    void endElement() {
+        try {
+            writer.writeEndElement();
+        } catch (XMLStreamException e) {
+            throw new UncheckedIOException(new IOException(e));
+        }
+    }
+
+    void endDocument() {
+        try {
+            writer.writeEndDocument();
+            writer.flush();
+        } catch (XMLStreamException e) {
+            throw new UncheckedIOException(new IOException(e));
+        }
+    }
+
+    /**
+     * Writes a notes element with one xhtml paragraph per entry. Null entries are skipped
+     */
+    void writeNotes(String... paragraphs) {
+        List<String> content = new ArrayList<>();
+        for (String p : paragraphs) if (p != null) content.add(p);
+        if (content.isEmpty()) return;
+        try {
+            writer.writeStartElement("notes");
+            for (String p : content) {
+                writer.writeStartElement("p");
+                writer.writeDefaultNamespace(XHTML_NS);
+                writer.writeCharacters(p);
+                writer.writeEndElement();
+            }
+            writer.writeEndElement();
+        } catch (XMLStreamException e) {
+            throw new UncheckedIOException(new IOException(e));
+        }
+    }
+
+    void writeAnnotation(String metaId, Annotation annotation) {
+        if (annotation.isEmpty()) return;
+        try {
+            writer.writeStartElement("annotation");
+            writer.writeStartElement("rdf", "RDF", RDF_NS);
+            writer.writeNamespace("rdf", RDF_NS);
+            writer.writeNamespace("dc", DC_NS);
+            writer.writeNamespace("dcterms", DCTERMS_NS);
+            writer.writeNamespace("vCard", VCARD_NS);
+            writer.writeNamespace("bqbiol", BQBIOL_NS);
+            writer.writeNamespace("bqmodel", BQMODEL_NS);
+            writer.writeStartElement("rdf", "Description", RDF_NS);
+            writer.writeAttribute("rdf", RDF_NS, "about", "#" + metaId);
+
+            if (!annotation.creators.isEmpty()) {
+                writer.writeStartElement("dc", "creator", DC_NS);
+                writer.writeStartElement("rdf", "Bag", RDF_NS);
+                for (Person person : annotation.creators) writeCreator(person);
+                writer.writeEndElement();
+                writer.writeEndElement();
+            }
+            if (annotation.created != null) writeDate("created", annotation.created);
+            for (Date date : annotation.modified) writeDate("modified", date);
+
+            for (Map.Entry<CVTerm.Qualifier, List<String>> term : annotation.terms) {
+                CVTerm.Qualifier qualifier = term.getKey();
+                if (qualifier.isBiologicalQualifier()) {
+                    writer.writeStartElement("bqbiol", qualifier.getElementNameEquivalent(), BQBIOL_NS);
+                } else {
+                    writer.writeStartElement("bqmodel", qualifier.getElementNameEquivalent(), BQMODEL_NS);
+                }
+                writer.writeStartElement("rdf", "Bag", RDF_NS);
+                for (String uri : term.getValue()) {
+                    writer.writeEmptyElement("rdf", "li", RDF_NS);
+                    writer.writeAttribute("rdf", RDF_NS, "resource", Helper.convertUrl(uri));
+                }
+                writer.writeEndElement();
+                writer.writeEndElement();
+            }
+
+            writer.writeEndElement(); //rdf:Description
+            writer.writeEndElement(); //rdf:RDF
+            writer.writeEndElement(); //annotation
+        } catch (XMLStreamException e) {
+            throw new UncheckedIOException(new IOException(e));
+        }
+    }
+
+    private void writeCreator(Person person) throws XMLStreamException {
+        writer.writeStartElement("rdf", "li", RDF_NS);
+        writer.writeAttribute("rdf", RDF_NS, "parseType", "Resource");
+        writer.writeStartElement("vCard", "N", VCARD_NS);
+        writer.writeAttribute("rdf", RDF_NS, "parseType", "Resource");
+        writeTextElement("vCard", "Family", VCARD_NS, person.getSurname() == null ? "" : person.getSurname());
+        writeTextElement("vCard", "Given", VCARD_NS, person.getFirstname() == null ? "" : person.getFirstname());
+        writer.writeEndElement();
+        String organisation = null;
+        for (Affiliation a : person.getAffiliation()) organisation = a.getName().get(a.getName().size() - 1);
+        if (organisation != null) {
+            writer.writeStartElement("vCard", "ORG", VCARD_NS);
+            writer.writeAttribute("rdf", RDF_NS, "parseType", "Resource");
+            writeTextElement("vCard", "Orgname", VCARD_NS, organisation);
+            writer.writeEndElement();
+        }
+        writer.writeEndElement();
+    }
+
+    private void writeDate(String name, Date date) throws XMLStreamException {
+        writer.writeStartElement("dcterms", name, DCTERMS_NS);
+        writer.writeAttribute("rdf", RDF_NS, "parseType", "Resource");
+        writeTextElement("dcterms", "W3CDTF", DCTERMS_NS, new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssXXX").format(date));
+        writer.writeEndElement();
+    }
+
+    private void writeTextElement(String prefix, String name, String ns, String text) throws XMLStreamException {
+        writer.writeStartElement(prefix, name, ns);
+        writer.writeCharacters(text);
+        writer.writeEndElement();
+    }
+
+    /**
+     * Copies a previously written fragment (e.g. the list of species streamed to a temporary file) into this document
+     */
+    void copy(File fragment) throws IOException {
+        flushPending();
+        Files.copy(fragment.toPath(), os);
+    }
+
+    private void flushPending() throws IOException {
+        try {
+            writer.writeCharacters(""); //closes any pending start tag
+            writer.flush();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Writes the list of layouts the way JSBML writes it: the document holding the layouts (a model skeleton) is
+     * serialised by JSBML and its listOfLayouts element is copied into this document, so the numbers and the
+     * attributes of the glyphs are the same as in the documents written by {@link Utils}
+     */
+    void writeLayouts(ListOf<Layout> layouts) {
+        try {
+            String sbml = new SBMLWriter().writeSBMLToString(layouts.getSBMLDocument());
+            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+            dbf.setNamespaceAware(true);
+            Document document = dbf.newDocumentBuilder().parse(new InputSource(new StringReader(sbml)));
+            Node listOfLayouts = document.getElementsByTagNameNS(LAYOUT_NS, "listOfLayouts").item(0);
+            if (listOfLayouts == null) return;
+            Transformer transformer = TransformerFactory.newInstance().newTransformer();
+            transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+            StringWriter fragment = new StringWriter();
+            transformer.transform(new DOMSource(listOfLayouts), new StreamResult(fragment));
+            writeRaw(fragment.toString());
+        } catch (XMLStreamException | SBMLException | ParserConfigurationException | SAXException | TransformerException e) {
+            throw new UncheckedIOException(new IOException(e));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes an already serialised fragment (e.g. notes created with JSBML) at the current position
+     */
+    void writeRaw(String fragment) throws IOException {
+        if (fragment == null) return;
+        flushPending();
+        os.write(fragment.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            writer.flush();
+            writer.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+        os.close();
+    }
+}
@@ -0,0 +1,158 @@
+package org.reactome.server.tools.sbml.data;
+
+import org.reactome.server.graph.exception.CustomQueryException;
+import org.reactome.server.graph.service.AdvancedDatabaseObjectService;
+import org.reactome.server.tools.sbml.data.model.IdentifierBase;
+import org.reactome.server.tools.sbml.data.model.ParticipantDetails;
+import org.reactome.server.tools.sbml.data.model.ParticipantProjection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.StringJoiner;
+
+/**
+ * Flattened composition of every PhysicalEntity: the (identifier, multiplicity) pairs and the urls of the reference
+ * entities found through hasComponent, hasMember, repeatedUnit and referenceEntity. Computing it for every pathway
+ * means walking the same nested complexes and sets again and again, so the table is built once per release, kept
+ * in a side file and used by {@link DataFactory} as a simple lookup.
+ *
+ * File format: a "#version" header followed by one line per PhysicalEntity with the tab separated dbId,
+ * identifiers ("n*identifier" joined by '|') and urls (joined by '|').
+ */
+public class CompositionTable {
+
+    private static Logger logger = LoggerFactory.getLogger("sbml-exporter");
+
+    private static final String VERSION_HEADER = "#version";
+    private static final String SEPARATOR = "|";
+
+    private final Integer version;
+    private final Map<Long, Composition> compositions = new HashMap<>();
+
+    private static class Composition {
+        private final List<IdentifierBase> ids = new ArrayList<>();
+        private final List<String> urls = new ArrayList<>();
+    }
+
+    private CompositionTable(Integer version) {
+        this.version = version;
+    }
+
+    /**
+     * Loads the table from the given file when it was built for the given version. Otherwise it is built from the
+     * database and stored in the file for the following runs.
+     *
+     * @return the table or null if it could neither be loaded nor built
+     */
+    public static CompositionTable getInstance(File file, Integer version, AdvancedDatabaseObjectService ads) {
+        if (file.exists()) {
+            try {
+                CompositionTable table = load(file);
+                if (Objects.equals(table.version, version)) return table;
+                logger.info(String.format("'%s' was built for version %s. Rebuilding it for version %s", file.getAbsolutePath(), table.version, version));
+            } catch (IOException | RuntimeException e) {
+                logger.error(String.format("'%s' cannot be loaded. Rebuilding it", file.getAbsolutePath()), e);
+            }
+        }
+        try {
+            CompositionTable table = build(ads, version);
+            table.save(file);
+            return table;
+        } catch (CustomQueryException e) {
+            logger.error("The composition table cannot be built", e);
+        } catch (IOException e) {
+            logger.error(String.format("The composition table cannot be saved to '%s'", file.getAbsolutePath()), e);
+        }
+        return null;
+    }
+
+    public static CompositionTable build(AdvancedDatabaseObjectService ads, Integer version) throws CustomQueryException {
+        long start = System.currentTimeMillis();
+        CompositionTable table = new CompositionTable(version);
+        for (ParticipantProjection row : DataFactory.getCompositions(ads)) {
+            Composition composition = new Composition();
+            if (row.getIds() != null) composition.ids.addAll(row.getIds());
+            if (row.getUrls() != null) composition.urls.addAll(row.getUrls());
+            table.compositions.put(row.getDbId(), composition);
+        }
+        logger.info(String.format("Composition table built for %d physical entities in %d ms", table.compositions.size(), System.currentTimeMillis() - start));
+        return table;
+    }
+
+    public static CompositionTable load(File file) throws IOException {
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line = br.readLine();
+            if (line == null || !line.startsWith(VERSION_HEADER)) throw new IOException("Missing version header");
+            CompositionTable table = new CompositionTable(Integer.valueOf(line.split("\t")[1]));
+            while ((line = br.readLine()) != null) {
+                String[] tokens = line.split("\t", -1);
+                Composition composition = new Composition();
+                for (String id : split(tokens[1])) {
+                    int index = id.indexOf('*');
+                    IdentifierBase base = new IdentifierBase();
+                    base.setN(Integer.valueOf(id.substring(0, index)));
+                    base.setId(id.substring(index + 1));
+                    composition.ids.add(base);
+                }
+                composition.urls.addAll(split(tokens[2]));
+                table.compositions.put(Long.valueOf(tokens[0]), composition);
+            }
+            return table;
+        }
+    }
+
+    public void save(File file) throws IOException {
+        try (PrintWriter pw = new PrintWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)))) {
+            pw.println(VERSION_HEADER + "\t" + version);
+            for (Map.Entry<Long, Composition> entry : compositions.entrySet()) {
+                StringJoiner ids = new StringJoiner(SEPARATOR);
+                for (IdentifierBase id : entry.getValue().ids) ids.add(id.getN() + "*" + id.getId());
+                pw.println(entry.getKey() + "\t" + ids + "\t" + String.join(SEPARATOR, entry.getValue().urls));
+            }
+            if (pw.checkError()) throw new IOException("Error writing " + file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Adds the identifiers and urls of the participant's PhysicalEntity
+     *
+     * @return false if the PhysicalEntity is not in the table, in which case nothing is added
+     */
+    boolean fill(ParticipantDetails details) {
+        Composition composition = compositions.get(details.getPhysicalEntity().getDbId());
+        if (composition == null) return false;
+        for (IdentifierBase id : composition.ids) details.addIdentifierBase(id);
+        for (String url : composition.urls) details.addUrl(url);
+        return true;
+    }
+
+    public Integer getVersion() {
+        return version;
+    }
+
+    public int size() {
+        return compositions.size();
+    }
+
+    private static List<String> split(String value) {
+        if (value.isEmpty()) return Collections.emptyList();
+        return Arrays.asList(value.split("\\|", -1));
+    }
+}
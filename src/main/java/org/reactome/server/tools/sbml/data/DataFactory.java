@@ -2,14 +2,28 @@ package org.reactome.server.tools.sbml.data;
 
 import org.reactome.server.graph.exception.CustomQueryException;
 import org.reactome.server.graph.service.AdvancedDatabaseObjectService;
+import org.reactome.server.tools.sbml.config.WorkerScope;
 import org.reactome.server.tools.sbml.data.model.ParticipantDetails;
+import org.reactome.server.tools.sbml.data.model.ParticipantProjection;
+import org.reactome.server.tools.sbml.data.model.ReactionAspect;
 import org.reactome.server.tools.sbml.data.model.ReactionBase;
+import org.reactome.server.tools.sbml.data.model.ReactionProjection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 
 /**
  * Retrieves the data in an efficient way in order to speed up the conversion process
@@ -20,11 +34,56 @@ public abstract class DataFactory {
 
     private static Logger logger = LoggerFactory.getLogger("sbml-exporter");
 
-    private static final String REACTIONS_QUERY = "" +
+    // When true, the projection queries are used and no OGM domain objects are hydrated
+    private static boolean useProjections = false;
+
+    public static void setUseProjections(boolean use) {
+        useProjections = use;
+    }
+
+    // When greater than zero, the streaming variants retrieve the data in pages of this number of objects
+    private static int pageSize = 0;
+
+    public static void setPageSize(int size) {
+        pageSize = size;
+    }
+
+    // When true, the reaction data is retrieved with one query per aspect run concurrently and merged afterwards
+    private static boolean splitQueries = false;
+
+    public static void setSplitQueries(boolean split) {
+        splitQueries = split;
+    }
+
+    private static ExecutorService splitExecutor;
+
+    // When set, the participants composition is looked up instead of being computed for every pathway
+    private static CompositionTable compositionTable = null;
+
+    public static void setCompositionTable(CompositionTable table) {
+        compositionTable = table;
+    }
+
+    // Reactions contained in the target event (or the event itself when it is a reaction)
+    private static final String TARGET_REACTIONS = "" +
             "OPTIONAL MATCH (rle1:ReactionLikeEvent{stId:{stId}}) " +
             "OPTIONAL MATCH (:Pathway{stId:{stId}})-[:hasEvent*]->(rle2:ReactionLikeEvent) " +
             "WITH DISTINCT COLLECT(DISTINCT rle1) + COLLECT(DISTINCT rle2) AS rles " +
-            "UNWIND rles AS rle " +
+            "UNWIND rles AS rle ";
+
+    private static final String TARGET_PARTICIPANTS = TARGET_REACTIONS +
+            "MATCH (rle)-[:input|output|catalystActivity|physicalEntity|regulatedBy|regulator*]->(pe:PhysicalEntity) " +
+            "WITH COLLECT(DISTINCT pe) AS pes " +
+            "UNWIND pes AS pe ";
+
+    // Used to retrieve the data in pages of database identifiers
+    private static final String REACTIONS_BY_ID = "MATCH (rle:ReactionLikeEvent) WHERE rle.dbId IN {dbIds} ";
+    private static final String PARTICIPANTS_BY_ID = "MATCH (pe:PhysicalEntity) WHERE pe.dbId IN {dbIds} ";
+
+    private static final String REACTION_IDS_QUERY = TARGET_REACTIONS + "RETURN DISTINCT rle.dbId ORDER BY rle.dbId";
+    private static final String PARTICIPANT_IDS_QUERY = TARGET_PARTICIPANTS + "RETURN pe.dbId ORDER BY pe.dbId";
+
+    private static final String REACTIONS_BODY = "" +
             "OPTIONAL MATCH (rle)-[:goBiologicalProcess]->(gobp:GO_BiologicalProcess)  " +
             "OPTIONAL MATCH (rle)-[:catalystActivity]->(cat:CatalystActivity) " +
             "OPTIONAL MATCH (cat)-[:activity]->(gomf:GO_MolecularFunction)  " +
@@ -47,14 +106,7 @@ public abstract class DataFactory {
             "OPTIONAL MATCH (rle)-[:regulatedBy]->(:NegativeRegulation)-[:regulator]->(penr:PhysicalEntity) " +
             "RETURN DISTINCT rle, goTerms, ecNumbers, literatureRefs, xrefs, diseases, inputs, outputs, catalysts, positiveRegulators, COLLECT(DISTINCT CASE penr WHEN NULL THEN NULL ELSE {n: 0,  pe: penr} END) AS negativeRegulators";
 
-    private static final String PARTICIPANTS_QUERY = "" +
-            "OPTIONAL MATCH (rle1:ReactionLikeEvent{stId:{stId}}) " +
-            "OPTIONAL MATCH (:Pathway{stId:{stId}})-[:hasEvent*]->(rle2:ReactionLikeEvent) " +
-            "WITH DISTINCT COLLECT(DISTINCT rle1) + COLLECT(DISTINCT rle2) AS rles " +
-            "UNWIND rles AS rle " +
-            "MATCH (rle)-[:input|output|catalystActivity|physicalEntity|regulatedBy|regulator*]->(pe:PhysicalEntity) " +
-            "WITH COLLECT(DISTINCT pe) AS pes " +
-            "UNWIND pes AS pe " +
+    private static final String PARTICIPANTS_BODY = "" +
             //GEE do not have RE but they must be in the species (without identifier)
             "OPTIONAL MATCH path=(pe)-[:hasComponent|hasMember|repeatedUnit|referenceEntity*]->(re:ReferenceEntity) " +
             "WITH pe, re, REDUCE(s = 1, x IN RELATIONSHIPS(path) | s * x.stoichiometry) AS n " +
@@ -67,9 +119,131 @@ public abstract class DataFactory {
             "       }) AS ids, " +
             "       COLLECT(DISTINCT re.url) AS urls";
 
+    // Scalar fields of the reactions, shared by the single and the split projection queries
+    private static final String REACTIONS_PROJECTION_SCALARS = "" +
+            "OPTIONAL MATCH (rle)-[cr:compartment]->(c:Compartment) " +
+            "WITH rle, c ORDER BY cr.order " +
+            "WITH rle, COLLECT(DISTINCT CASE c WHEN NULL THEN NULL ELSE {dbId: c.dbId, displayName: c.displayName, url: c.url} END) AS compartments " +
+            "OPTIONAL MATCH (rle)-[:summation]->(s:Summation) " +
+            "WITH rle, compartments, COLLECT(DISTINCT s.text) AS summations " +
+            "OPTIONAL MATCH (rle)-[:literatureReference]->(l:LiteratureReference) " +
+            "WITH rle, compartments, summations, COLLECT(DISTINCT l.url) AS literatureReferences " +
+            "OPTIONAL MATCH (rle)-[e:created|modified|authored|revised]->(ie:InstanceEdit) " +
+            "OPTIONAL MATCH (ie)-[:author]->(p:Person) " +
+            "OPTIONAL MATCH (p)-[:affiliation]->(a:Affiliation) " +
+            "WITH rle, compartments, summations, literatureReferences, COLLECT(CASE ie WHEN NULL THEN NULL ELSE {type: TYPE(e), dbId: ie.dbId, dateTime: ie.dateTime, person: p.dbId, surname: p.surname, firstname: p.firstname, affiliation: LAST(a.name)} END) AS edits " +
+            "OPTIONAL MATCH (rle)-[:goBiologicalProcess]->(bp:GO_BiologicalProcess) " +
+            "WITH rle, compartments, summations, literatureReferences, edits, HEAD(COLLECT(DISTINCT bp.url)) AS goBiologicalProcess ";
+
+    private static final String REACTIONS_PROJECTION_BODY = REACTIONS_PROJECTION_SCALARS +
+            "OPTIONAL MATCH (rle)-[:goBiologicalProcess]->(gobp:GO_BiologicalProcess)  " +
+            "OPTIONAL MATCH (rle)-[:catalystActivity]->(cat:CatalystActivity) " +
+            "OPTIONAL MATCH (cat)-[:activity]->(gomf:GO_MolecularFunction)  " +
+            "WITH DISTINCT rle, compartments, summations, literatureReferences, edits, goBiologicalProcess, COLLECT(DISTINCT \"https://identifiers.org/ec-code/\" + gomf.ecNumber) AS ecNumbers, COLLECT(DISTINCT gomf.url) AS gomfs, COLLECT(DISTINCT gobp.url) AS gobps " +
+            "WITH DISTINCT rle, compartments, summations, literatureReferences, edits, goBiologicalProcess, ecNumbers, CASE SIZE(gomfs) WHEN 0 THEN gobps ELSE gomfs END as goTerms " +
+            "OPTIONAL MATCH (rle)-[:summation|literatureReference*]->(lit:LiteratureReference) " +
+            "WITH DISTINCT rle, compartments, summations, literatureReferences, edits, goBiologicalProcess, goTerms, ecNumbers, COLLECT(DISTINCT lit.url) AS literatureRefs " +
+            "OPTIONAL MATCH (rle)-[:crossReference]->(xref:DatabaseIdentifier) " +
+            "WITH DISTINCT rle, compartments, summations, literatureReferences, edits, goBiologicalProcess, goTerms, ecNumbers, literatureRefs, COLLECT(DISTINCT xref.url) AS xrefs " +
+            "OPTIONAL MATCH (rle)-[:disease]->(d:Disease) " +
+            "WITH DISTINCT rle, compartments, summations, literatureReferences, edits, goBiologicalProcess, goTerms, ecNumbers, literatureRefs, xrefs, COLLECT(DISTINCT d.url) AS diseases " +
+            "OPTIONAL MATCH (rle)-[i:input]->(pei:PhysicalEntity) " +
+            "WITH DISTINCT rle, compartments, summations, literatureReferences, edits, goBiologicalProcess, goTerms, ecNumbers, literatureRefs, xrefs, diseases, COLLECT(DISTINCT CASE pei WHEN NULL THEN NULL ELSE {n: i.stoichiometry, dbId: pei.dbId, schemaClass: pei.schemaClass} END) AS inputs " +
+            "OPTIONAL MATCH (rle)-[o:output]->(peo:PhysicalEntity) " +
+            "WITH DISTINCT rle, compartments, summations, literatureReferences, edits, goBiologicalProcess, goTerms, ecNumbers, literatureRefs, xrefs, diseases, inputs, COLLECT(DISTINCT CASE peo WHEN NULL THEN NULL ELSE {n: o.stoichiometry, dbId: peo.dbId, schemaClass: peo.schemaClass} END) AS outputs " +
+            "OPTIONAL MATCH (rle)-[:catalystActivity]->(:CatalystActivity)-[:physicalEntity]->(pec:PhysicalEntity) " +
+            "WITH DISTINCT rle, compartments, summations, literatureReferences, edits, goBiologicalProcess, goTerms, ecNumbers, literatureRefs, xrefs, diseases, inputs, outputs, COLLECT(DISTINCT CASE pec WHEN NULL THEN NULL ELSE {n: 0, dbId: pec.dbId, schemaClass: pec.schemaClass} END) AS catalysts " +
+            "OPTIONAL MATCH (rle)-[:regulatedBy]->(:PositiveRegulation)-[:regulator]->(pepr:PhysicalEntity) " +
+            "WITH DISTINCT rle, compartments, summations, literatureReferences, edits, goBiologicalProcess, goTerms, ecNumbers, literatureRefs, xrefs, diseases, inputs, outputs, catalysts, COLLECT(DISTINCT CASE pepr WHEN NULL THEN NULL ELSE {n: 0, dbId: pepr.dbId, schemaClass: pepr.schemaClass} END) AS positiveRegulators " +
+            "OPTIONAL MATCH (rle)-[:regulatedBy]->(:NegativeRegulation)-[:regulator]->(penr:PhysicalEntity) " +
+            "RETURN DISTINCT rle.dbId AS dbId, rle.stId AS stId, rle.displayName AS displayName, rle.schemaClass AS schemaClass, " +
+            "       compartments, summations, literatureReferences, edits, goBiologicalProcess, goTerms, ecNumbers, literatureRefs, xrefs, diseases, inputs, outputs, catalysts, positiveRegulators, " +
+            "       COLLECT(DISTINCT CASE penr WHEN NULL THEN NULL ELSE {n: 0, dbId: penr.dbId, schemaClass: penr.schemaClass} END) AS negativeRegulators";
+
+    // Independent per-aspect reaction queries used when splitQueries is set. Participants are always projected
+    private static final String[] REACTION_ASPECTS = {
+            "OPTIONAL MATCH (rle)-[:goBiologicalProcess]->(gobp:GO_BiologicalProcess)  " +
+            "OPTIONAL MATCH (rle)-[:catalystActivity]->(cat:CatalystActivity) " +
+            "OPTIONAL MATCH (cat)-[:activity]->(gomf:GO_MolecularFunction)  " +
+            "WITH rle, COLLECT(DISTINCT \"https://identifiers.org/ec-code/\" + gomf.ecNumber) AS ecNumbers, COLLECT(DISTINCT gomf.url) AS gomfs, COLLECT(DISTINCT gobp.url) AS gobps " +
+            "RETURN rle.dbId AS dbId, ecNumbers, CASE SIZE(gomfs) WHEN 0 THEN gobps ELSE gomfs END as goTerms",
+
+            "OPTIONAL MATCH (rle)-[:summation|literatureReference*]->(lit:LiteratureReference) " +
+            "RETURN rle.dbId AS dbId, COLLECT(DISTINCT lit.url) AS literatureRefs",
+
+            "OPTIONAL MATCH (rle)-[:crossReference]->(xref:DatabaseIdentifier) " +
+            "RETURN rle.dbId AS dbId, COLLECT(DISTINCT xref.url) AS xrefs",
+
+            "OPTIONAL MATCH (rle)-[:disease]->(d:Disease) " +
+            "RETURN rle.dbId AS dbId, COLLECT(DISTINCT d.url) AS diseases",
+
+            "OPTIONAL MATCH (rle)-[i:input]->(pei:PhysicalEntity) " +
+            "RETURN rle.dbId AS dbId, COLLECT(DISTINCT CASE pei WHEN NULL THEN NULL ELSE {n: i.stoichiometry, dbId: pei.dbId, schemaClass: pei.schemaClass} END) AS inputs",
+
+            "OPTIONAL MATCH (rle)-[o:output]->(peo:PhysicalEntity) " +
+            "RETURN rle.dbId AS dbId, COLLECT(DISTINCT CASE peo WHEN NULL THEN NULL ELSE {n: o.stoichiometry, dbId: peo.dbId, schemaClass: peo.schemaClass} END) AS outputs",
+
+            "OPTIONAL MATCH (rle)-[:catalystActivity]->(:CatalystActivity)-[:physicalEntity]->(pec:PhysicalEntity) " +
+            "RETURN rle.dbId AS dbId, COLLECT(DISTINCT CASE pec WHEN NULL THEN NULL ELSE {n: 0, dbId: pec.dbId, schemaClass: pec.schemaClass} END) AS catalysts",
+
+            "OPTIONAL MATCH (rle)-[:regulatedBy]->(:PositiveRegulation)-[:regulator]->(pepr:PhysicalEntity) " +
+            "WITH rle, COLLECT(DISTINCT CASE pepr WHEN NULL THEN NULL ELSE {n: 0, dbId: pepr.dbId, schemaClass: pepr.schemaClass} END) AS positiveRegulators " +
+            "OPTIONAL MATCH (rle)-[:regulatedBy]->(:NegativeRegulation)-[:regulator]->(penr:PhysicalEntity) " +
+            "RETURN rle.dbId AS dbId, positiveRegulators, COLLECT(DISTINCT CASE penr WHEN NULL THEN NULL ELSE {n: 0, dbId: penr.dbId, schemaClass: penr.schemaClass} END) AS negativeRegulators"
+    };
+
+    private static final String REACTIONS_SPLIT_BODY = "RETURN DISTINCT rle";
+
+    private static final String REACTIONS_SPLIT_PROJECTION_BODY = REACTIONS_PROJECTION_SCALARS +
+            "RETURN rle.dbId AS dbId, rle.stId AS stId, rle.displayName AS displayName, rle.schemaClass AS schemaClass, " +
+            "       compartments, summations, literatureReferences, edits, goBiologicalProcess";
+
+    // Flattened composition (identifier, multiplicity, url) of every participant
+    private static final String PARTICIPANTS_COMPOSITION = "" +
+            "OPTIONAL MATCH path=(pe)-[:hasComponent|hasMember|repeatedUnit|referenceEntity*]->(re:ReferenceEntity) " +
+            "WITH pe, re, REDUCE(s = 1, x IN RELATIONSHIPS(path) | s * x.stoichiometry) AS n " +
+            "WITH pe, " +
+            "     COLLECT(DISTINCT {" +
+            "             n:  CASE n WHEN NULL THEN 1 ELSE n END, " +
+            "             id: CASE re WHEN NULL THEN '' " +
+            "                         ELSE CASE re.variantIdentifier WHEN NULL THEN re.identifier ELSE re.variantIdentifier END " +
+            "                 END " +
+            "     }) AS ids, " +
+            "     COLLECT(DISTINCT re.url) AS urls ";
+
+    private static final String PARTICIPANTS_PROJECTION_DETAILS = "" +
+            "OPTIONAL MATCH (pe)-[cr:compartment]->(c:Compartment) " +
+            "WITH pe, ids, urls, c ORDER BY cr.order " +
+            "WITH pe, ids, urls, COLLECT(DISTINCT CASE c WHEN NULL THEN NULL ELSE {dbId: c.dbId, displayName: c.displayName, url: c.url} END) AS compartments " +
+            "OPTIONAL MATCH (pe)-[:summation]->(s:Summation) " +
+            "WITH pe, ids, urls, compartments, COLLECT(DISTINCT s.text) AS summations " +
+            "OPTIONAL MATCH (pe)-[:literatureReference]->(l:LiteratureReference) " +
+            "WITH pe, ids, urls, compartments, summations, COLLECT(DISTINCT l.url) AS literatureReferences " +
+            "OPTIONAL MATCH (pe)-[:inferredTo]->(it:PhysicalEntity) " +
+            "WITH pe, ids, urls, compartments, summations, literatureReferences, COLLECT(DISTINCT CASE it WHEN NULL THEN NULL ELSE {stId: it.stId, schemaClass: it.schemaClass} END) AS inferredTo " +
+            "OPTIONAL MATCH (pe)<-[:inferredTo]-(inf:PhysicalEntity) " +
+            "WITH pe, ids, urls, compartments, summations, literatureReferences, inferredTo, COLLECT(DISTINCT CASE inf WHEN NULL THEN NULL ELSE {stId: inf.stId, schemaClass: inf.schemaClass} END) AS inferredFrom " +
+            "OPTIONAL MATCH (pe)-[:hasModifiedResidue]->(r:TranslationalModification)-[:psiMod]->(psi:PsiMod) " +
+            "RETURN pe.dbId AS dbId, pe.stId AS stId, pe.displayName AS displayName, pe.schemaClass AS schemaClass, " +
+            "       compartments, summations, literatureReferences, inferredTo, inferredFrom, ids, urls, " +
+            "       COLLECT(CASE psi WHEN NULL THEN NULL ELSE {schemaClass: r.schemaClass, url: psi.url} END) AS modifiedResidues";
+
+    private static final String PARTICIPANTS_PROJECTION_BODY = PARTICIPANTS_COMPOSITION + PARTICIPANTS_PROJECTION_DETAILS;
+
+    // Used when the composition is looked up in a precomputed CompositionTable
+    private static final String PARTICIPANTS_LOOKUP_BODY = "RETURN pe";
+    private static final String PARTICIPANTS_LOOKUP_PROJECTION_BODY = "WITH pe, [] AS ids, [] AS urls " + PARTICIPANTS_PROJECTION_DETAILS;
+
+    // Release-wide composition used to build the CompositionTable
+    private static final String COMPOSITION_QUERY = "MATCH (pe:PhysicalEntity) " + PARTICIPANTS_COMPOSITION +
+            "RETURN pe.dbId AS dbId, ids, urls";
+
     public static Collection<ReactionBase> getReactionList(String eventStId, AdvancedDatabaseObjectService ads) {
+        long start = System.currentTimeMillis();
         try {
-            return ads.getCustomQueryResults(ReactionBase.class, REACTIONS_QUERY, Collections.singletonMap("stId", eventStId));
+            Collection<ReactionBase> rtn = queryReactions(TARGET_REACTIONS, Collections.singletonMap("stId", eventStId), ads);
+            logger.debug(String.format("%d reactions retrieved for '%s' in %d ms (projections: %s, split: %s)", rtn.size(), eventStId, System.currentTimeMillis() - start, useProjections, splitQueries));
+            return rtn;
         } catch (CustomQueryException e) {
             logger.error(e.getMessage(), e);
             return new ArrayList<>();
@@ -77,11 +251,207 @@ public abstract class DataFactory {
     }
 
     public static Collection<ParticipantDetails> getParticipantDetails(String eventStId, AdvancedDatabaseObjectService ads){
+        long start = System.currentTimeMillis();
         try {
-            return ads.getCustomQueryResults(ParticipantDetails.class, PARTICIPANTS_QUERY, Collections.singletonMap("stId", eventStId));
+            Collection<ParticipantDetails> rtn = queryParticipants(TARGET_PARTICIPANTS, Collections.singletonMap("stId", eventStId), ads);
+            logger.debug(String.format("%d participants retrieved for '%s' in %d ms (projections: %s)", rtn.size(), eventStId, System.currentTimeMillis() - start, useProjections));
+            return rtn;
         } catch (CustomQueryException e) {
             logger.error(e.getMessage(), e);
             return new ArrayList<>();
         }
     }
+
+    /**
+     * Streaming variant of {@link #getReactionList(String, AdvancedDatabaseObjectService)}. When a page size is set,
+     * the reactions are retrieved in pages of database identifiers and passed to the action as each page arrives,
+     * so only one page is held in memory at a time. The pages are taken in database identifier order, which is the
+     * order of the whole list too, so the document does not depend on the page size.
+     */
+    public static void getReactionList(String eventStId, AdvancedDatabaseObjectService ads, Consumer<ReactionBase> action) {
+        if (pageSize <= 0) {
+            getReactionList(eventStId, ads).forEach(action);
+            return;
+        }
+        try {
+            List<Long> dbIds = new ArrayList<>(ads.getCustomQueryResults(Long.class, REACTION_IDS_QUERY, Collections.singletonMap("stId", eventStId)));
+            for (int i = 0; i < dbIds.size(); i += pageSize) {
+                List<Long> page = dbIds.subList(i, Math.min(i + pageSize, dbIds.size()));
+                queryReactions(REACTIONS_BY_ID, Collections.singletonMap("dbIds", page), ads).forEach(action);
+            }
+        } catch (CustomQueryException e) {
+            logger.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Streaming variant of {@link #getParticipantDetails(String, AdvancedDatabaseObjectService)}
+     */
+    public static void getParticipantDetails(String eventStId, AdvancedDatabaseObjectService ads, Consumer<ParticipantDetails> action) {
+        if (pageSize <= 0) {
+            getParticipantDetails(eventStId, ads).forEach(action);
+            return;
+        }
+        try {
+            List<Long> dbIds = new ArrayList<>(ads.getCustomQueryResults(Long.class, PARTICIPANT_IDS_QUERY, Collections.singletonMap("stId", eventStId)));
+            for (int i = 0; i < dbIds.size(); i += pageSize) {
+                List<Long> page = dbIds.subList(i, Math.min(i + pageSize, dbIds.size()));
+                queryParticipants(PARTICIPANTS_BY_ID, Collections.singletonMap("dbIds", page), ads).forEach(action);
+            }
+        } catch (CustomQueryException e) {
+            logger.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Whatever the query used, the reactions are returned sorted by database identifier so that every mode (and
+     * every page) produces the same document
+     */
+    private static Collection<ReactionBase> queryReactions(String selection, Map<String, Object> params, AdvancedDatabaseObjectService ads) throws CustomQueryException {
+        List<ReactionBase> rtn = new ArrayList<>();
+        if (splitQueries) {
+            rtn.addAll(querySplitReactions(selection, params, ads));
+        } else if (!useProjections) {
+            rtn.addAll(ads.getCustomQueryResults(ReactionBase.class, selection + REACTIONS_BODY, params));
+        } else {
+            for (ReactionProjection row : ads.getCustomQueryResults(ReactionProjection.class, selection + REACTIONS_PROJECTION_BODY, params)) {
+                rtn.add(ProjectionMapper.toReactionBase(row));
+            }
+        }
+        rtn.sort(Comparator.comparing(ReactionBase::getDbId));
+        return rtn;
+    }
+
+    /**
+     * Runs the reaction base query and every query in {@link #REACTION_ASPECTS} concurrently and merges the aspects
+     * into the reactions by database identifier. This avoids the multiplicative growth of intermediate rows that the
+     * chained OPTIONAL MATCH / COLLECT stages of the single query suffer for reactions with many related objects. The
+     * rows are merged on the calling thread in the order of {@link #REACTION_ASPECTS}, whatever the order the queries
+     * finish in.
+     */
+    private static Collection<ReactionBase> querySplitReactions(String selection, Map<String, Object> params, AdvancedDatabaseObjectService ads) throws CustomQueryException {
+        CompletableFuture<Collection<ReactionBase>> base = submit(() -> querySplitBase(selection, params, ads));
+        List<CompletableFuture<Collection<ReactionAspect>>> aspects = new ArrayList<>();
+        for (String aspect : REACTION_ASPECTS) {
+            aspects.add(submit(() -> ads.getCustomQueryResults(ReactionAspect.class, selection + aspect, params)));
+        }
+        try {
+            Map<Long, ReactionBase> reactions = new LinkedHashMap<>();
+            for (ReactionBase rxn : join(base)) {
+                reactions.put(rxn.getDbId(), rxn);
+            }
+            for (CompletableFuture<Collection<ReactionAspect>> aspect : aspects) {
+                for (ReactionAspect row : join(aspect)) {
+                    ReactionBase rxn = reactions.get(row.getDbId());
+                    if (rxn != null) ProjectionMapper.merge(rxn, row);
+                }
+            }
+            return reactions.values();
+        } finally {
+            // The ones not started yet when a query failed
+            for (CompletableFuture<?> aspect : aspects) aspect.cancel(false);
+        }
+    }
+
+    private static Collection<ReactionBase> querySplitBase(String selection, Map<String, Object> params, AdvancedDatabaseObjectService ads) throws CustomQueryException {
+        if (!useProjections) {
+            return ads.getCustomQueryResults(ReactionBase.class, selection + REACTIONS_SPLIT_BODY, params);
+        }
+        List<ReactionBase> rtn = new ArrayList<>();
+        for (ReactionProjection row : ads.getCustomQueryResults(ReactionProjection.class, selection + REACTIONS_SPLIT_PROJECTION_BODY, params)) {
+            rtn.add(ProjectionMapper.toReactionBase(row));
+        }
+        return rtn;
+    }
+
+    private interface SplitQuery<T> {
+        Collection<T> run() throws CustomQueryException;
+    }
+
+    /**
+     * Every thread of the pool queries the graph database through a session of its own, which it releases after the
+     * query so the objects it loaded are not kept in its cache for the rest of the run
+     */
+    private static <T> CompletableFuture<Collection<T>> submit(SplitQuery<T> query) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return query.run();
+            } catch (CustomQueryException e) {
+                throw new CompletionException(e);
+            } finally {
+                WorkerScope.release();
+            }
+        }, getSplitExecutor());
+    }
+
+    private static <T> Collection<T> join(CompletableFuture<Collection<T>> future) throws CustomQueryException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof CustomQueryException) throw (CustomQueryException) e.getCause();
+            throw e;
+        }
+    }
+
+    private static synchronized ExecutorService getSplitExecutor() {
+        if (splitExecutor == null) {
+            splitExecutor = Executors.newFixedThreadPool(REACTION_ASPECTS.length + 1, r -> {
+                Thread t = new Thread(r, "sbml-split-query");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return splitExecutor;
+    }
+
+    /**
+     * Sorted by database identifier as in {@link #queryReactions(String, Map, AdvancedDatabaseObjectService)}. With a
+     * {@link CompositionTable}, the participants missing from it (e.g. the table is out of date) are queried again
+     * with their composition computed as usual.
+     */
+    private static Collection<ParticipantDetails> queryParticipants(String selection, Map<String, Object> params, AdvancedDatabaseObjectService ads) throws CustomQueryException {
+        CompositionTable table = compositionTable;
+        List<ParticipantDetails> rtn = runParticipantsQuery(selection, params, ads, table != null);
+        if (table != null) {
+            List<Long> missing = new ArrayList<>();
+            for (Iterator<ParticipantDetails> it = rtn.iterator(); it.hasNext(); ) {
+                ParticipantDetails details = it.next();
+                if (!table.fill(details)) {
+                    missing.add(details.getPhysicalEntity().getDbId());
+                    it.remove();
+                }
+            }
+            if (!missing.isEmpty()) {
+                logger.warn(String.format("%d participant%s not found in the composition table: %s", missing.size(), missing.size() > 1 ? "s" : "", missing));
+                rtn.addAll(runParticipantsQuery(PARTICIPANTS_BY_ID, Collections.singletonMap("dbIds", missing), ads, false));
+            }
+        }
+        rtn.sort(Comparator.comparing(p -> p.getPhysicalEntity().getDbId()));
+        return rtn;
+    }
+
+    /**
+     * @param lookup true to leave the composition out, so it is taken from the {@link CompositionTable}
+     */
+    private static List<ParticipantDetails> runParticipantsQuery(String selection, Map<String, Object> params, AdvancedDatabaseObjectService ads, boolean lookup) throws CustomQueryException {
+        List<ParticipantDetails> rtn = new ArrayList<>();
+        if (useProjections) {
+            String body = lookup ? PARTICIPANTS_LOOKUP_PROJECTION_BODY : PARTICIPANTS_PROJECTION_BODY;
+            for (ParticipantProjection row : ads.getCustomQueryResults(ParticipantProjection.class, selection + body, params)) {
+                rtn.add(ProjectionMapper.toParticipantDetails(row));
+            }
+        } else {
+            String body = lookup ? PARTICIPANTS_LOOKUP_BODY : PARTICIPANTS_BODY;
+            rtn.addAll(ads.getCustomQueryResults(ParticipantDetails.class, selection + body, params));
+        }
+        return rtn;
+    }
+
+    /**
+     * Computes the composition of every PhysicalEntity in the database. Only meant to be called once per release
+     * by {@link CompositionTable#build(AdvancedDatabaseObjectService, Integer)}
+     */
+    static Collection<ParticipantProjection> getCompositions(AdvancedDatabaseObjectService ads) throws CustomQueryException {
+        return ads.getCustomQueryResults(ParticipantProjection.class, COMPOSITION_QUERY, Collections.emptyMap());
+    }
 }
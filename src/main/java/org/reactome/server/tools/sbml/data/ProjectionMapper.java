@@ -0,0 +1,239 @@
+package org.reactome.server.tools.sbml.data;
+
+import org.reactome.server.graph.domain.model.AbstractModifiedResidue;
+import org.reactome.server.graph.domain.model.Affiliation;
+import org.reactome.server.graph.domain.model.Compartment;
+import org.reactome.server.graph.domain.model.DatabaseObject;
+import org.reactome.server.graph.domain.model.EntityWithAccessionedSequence;
+import org.reactome.server.graph.domain.model.Event;
+import org.reactome.server.graph.domain.model.GO_BiologicalProcess;
+import org.reactome.server.graph.domain.model.InstanceEdit;
+import org.reactome.server.graph.domain.model.LiteratureReference;
+import org.reactome.server.graph.domain.model.Person;
+import org.reactome.server.graph.domain.model.PhysicalEntity;
+import org.reactome.server.graph.domain.model.PsiMod;
+import org.reactome.server.graph.domain.model.Publication;
+import org.reactome.server.graph.domain.model.ReactionLikeEvent;
+import org.reactome.server.graph.domain.model.Summation;
+import org.reactome.server.graph.domain.model.TranslationalModification;
+import org.reactome.server.tools.sbml.data.model.EditProjection;
+import org.reactome.server.tools.sbml.data.model.IdentifierBase;
+import org.reactome.server.tools.sbml.data.model.ObjectProjection;
+import org.reactome.server.tools.sbml.data.model.Participant;
+import org.reactome.server.tools.sbml.data.model.ParticipantDetails;
+import org.reactome.server.tools.sbml.data.model.ParticipantProjection;
+import org.reactome.server.tools.sbml.data.model.ReactionAspect;
+import org.reactome.server.tools.sbml.data.model.ReactionBase;
+import org.reactome.server.tools.sbml.data.model.ReactionProjection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps the rows of the projection queries straight into detached domain objects so that the converter can use them
+ * in the same way as the hydrated ones. Only the fields read by the converter are populated and every collection is
+ * initialised, so no lazy loading is triggered afterwards.
+ */
+abstract class ProjectionMapper {
+
+    private static final String MODEL_PACKAGE_NAME = "org.reactome.server.graph.domain.model";
+
+    static ReactionBase toReactionBase(ReactionProjection row) {
+        ReactionLikeEvent rle = create(row.getSchemaClass(), row.getDbId(), row.getStId(), row.getDisplayName());
+        rle.setCompartment(getCompartments(row.getCompartments()));
+        rle.setSummation(getSummations(row.getSummations()));
+        rle.setLiteratureReference(getLiteratureReferences(row.getLiteratureReferences()));
+        if (row.getGoBiologicalProcess() != null) {
+            GO_BiologicalProcess go = new GO_BiologicalProcess();
+            go.setUrl(row.getGoBiologicalProcess());
+            rle.setGoBiologicalProcess(go);
+        }
+        setInstanceEdits(rle, row.getEdits());
+
+        ReactionBase rtn = new ReactionBase();
+        rtn.setRle(rle);
+        rtn.setGoTerms(nonNull(row.getGoTerms()));
+        rtn.setEcNumbers(nonNull(row.getEcNumbers()));
+        rtn.setLiteratureRefs(nonNull(row.getLiteratureRefs()));
+        rtn.setXrefs(nonNull(row.getXrefs()));
+        rtn.setDiseases(nonNull(row.getDiseases()));
+        rtn.setInputs(getParticipants(row.getInputs()));
+        rtn.setOutputs(getParticipants(row.getOutputs()));
+        rtn.setCatalysts(getParticipants(row.getCatalysts()));
+        rtn.setPositiveRegulators(getParticipants(row.getPositiveRegulators()));
+        rtn.setNegativeRegulators(getParticipants(row.getNegativeRegulators()));
+        return rtn;
+    }
+
+    static ParticipantDetails toParticipantDetails(ParticipantProjection row) {
+        PhysicalEntity pe = create(row.getSchemaClass(), row.getDbId(), row.getStId(), row.getDisplayName());
+        pe.setCompartment(getCompartments(row.getCompartments()));
+        pe.setSummation(getSummations(row.getSummations()));
+        pe.setLiteratureReference(getLiteratureReferences(row.getLiteratureReferences()));
+        pe.setInferredTo(getEntities(row.getInferredTo()));
+        pe.setInferredFrom(getEntities(row.getInferredFrom()));
+        if (pe instanceof EntityWithAccessionedSequence) {
+            List<AbstractModifiedResidue> residues = new ArrayList<>();
+            for (ObjectProjection r : nonNull(row.getModifiedResidues())) {
+                AbstractModifiedResidue residue = create(r.getSchemaClass(), null, null, null);
+                if (residue instanceof TranslationalModification) {
+                    PsiMod psiMod = new PsiMod();
+                    psiMod.setUrl(r.getUrl());
+                    ((TranslationalModification) residue).setPsiMod(psiMod);
+                }
+                residues.add(residue);
+            }
+            ((EntityWithAccessionedSequence) pe).setHasModifiedResidue(residues);
+        }
+
+        ParticipantDetails rtn = new ParticipantDetails();
+        rtn.setPhysicalEntity(pe);
+        for (IdentifierBase id : nonNull(row.getIds())) rtn.addIdentifierBase(id);
+        for (String url : nonNull(row.getUrls())) rtn.addUrl(url);
+        return rtn;
+    }
+
+    /**
+     * Copies the fields of the given aspect that have been retrieved into the reaction
+     */
+    static void merge(ReactionBase rxn, ReactionAspect aspect) {
+        if (aspect.getGoTerms() != null) rxn.setGoTerms(aspect.getGoTerms());
+        if (aspect.getEcNumbers() != null) rxn.setEcNumbers(aspect.getEcNumbers());
+        if (aspect.getLiteratureRefs() != null) rxn.setLiteratureRefs(aspect.getLiteratureRefs());
+        if (aspect.getXrefs() != null) rxn.setXrefs(aspect.getXrefs());
+        if (aspect.getDiseases() != null) rxn.setDiseases(aspect.getDiseases());
+        if (aspect.getInputs() != null) rxn.setInputs(getParticipants(aspect.getInputs()));
+        if (aspect.getOutputs() != null) rxn.setOutputs(getParticipants(aspect.getOutputs()));
+        if (aspect.getCatalysts() != null) rxn.setCatalysts(getParticipants(aspect.getCatalysts()));
+        if (aspect.getPositiveRegulators() != null) rxn.setPositiveRegulators(getParticipants(aspect.getPositiveRegulators()));
+        if (aspect.getNegativeRegulators() != null) rxn.setNegativeRegulators(getParticipants(aspect.getNegativeRegulators()));
+    }
+
+    private static List<Participant> getParticipants(List<ObjectProjection> rows) {
+        List<Participant> rtn = new ArrayList<>();
+        for (ObjectProjection row : nonNull(rows)) {
+            Participant participant = new Participant();
+            participant.setStoichiometry(row.getN());
+            participant.setPhysicalEntity(create(row.getSchemaClass(), row.getDbId(), row.getStId(), row.getDisplayName()));
+            rtn.add(participant);
+        }
+        return rtn;
+    }
+
+    private static List<Compartment> getCompartments(List<ObjectProjection> rows) {
+        List<Compartment> rtn = new ArrayList<>();
+        for (ObjectProjection row : nonNull(rows)) {
+            Compartment compartment = new Compartment();
+            compartment.setDbId(row.getDbId());
+            compartment.setDisplayName(row.getDisplayName());
+            compartment.setUrl(row.getUrl());
+            rtn.add(compartment);
+        }
+        return rtn;
+    }
+
+    private static List<Summation> getSummations(List<String> texts) {
+        List<Summation> rtn = new ArrayList<>();
+        for (String text : nonNull(texts)) {
+            Summation summation = new Summation();
+            summation.setText(text);
+            rtn.add(summation);
+        }
+        return rtn;
+    }
+
+    private static List<Publication> getLiteratureReferences(List<String> urls) {
+        List<Publication> rtn = new ArrayList<>();
+        for (String url : nonNull(urls)) {
+            LiteratureReference literatureReference = new LiteratureReference();
+            literatureReference.setUrl(url);
+            rtn.add(literatureReference);
+        }
+        return rtn;
+    }
+
+    private static List<PhysicalEntity> getEntities(List<ObjectProjection> rows) {
+        List<PhysicalEntity> rtn = new ArrayList<>();
+        for (ObjectProjection row : nonNull(rows)) {
+            rtn.add(create(row.getSchemaClass(), row.getDbId(), row.getStId(), row.getDisplayName()));
+        }
+        return rtn;
+    }
+
+    /**
+     * Rebuilds the InstanceEdits of an event from the (edit, author) pairs. Authors keep the order in which they
+     * first appear and, as in {@link org.reactome.server.tools.sbml.converter.Helper}, only the last affiliation
+     * of each person is used.
+     */
+    private static void setInstanceEdits(Event event, List<EditProjection> rows) {
+        Map<String, InstanceEdit> edits = new LinkedHashMap<>();
+        Map<String, Map<Long, Person>> authors = new LinkedHashMap<>();
+        for (EditProjection row : nonNull(rows)) {
+            String key = row.getType() + ":" + row.getDbId();
+            edits.computeIfAbsent(key, k -> {
+                InstanceEdit ie = new InstanceEdit();
+                ie.setDbId(row.getDbId());
+                ie.setDateTime(row.getDateTime());
+                return ie;
+            });
+            Map<Long, Person> people = authors.computeIfAbsent(key, k -> new LinkedHashMap<>());
+            if (row.getPerson() == null) continue;
+            Person person = people.computeIfAbsent(row.getPerson(), id -> {
+                Person p = new Person();
+                p.setDbId(id);
+                p.setSurname(row.getSurname());
+                p.setFirstname(row.getFirstname());
+                p.setAffiliation(new ArrayList<>());
+                return p;
+            });
+            if (row.getAffiliation() != null) {
+                Affiliation affiliation = new Affiliation();
+                affiliation.setName(Collections.singletonList(row.getAffiliation()));
+                person.setAffiliation(Collections.singletonList(affiliation));
+            }
+        }
+
+        List<InstanceEdit> authored = new ArrayList<>();
+        List<InstanceEdit> revised = new ArrayList<>();
+        for (Map.Entry<String, InstanceEdit> entry : edits.entrySet()) {
+            InstanceEdit edit = entry.getValue();
+            edit.setAuthor(new ArrayList<>(authors.get(entry.getKey()).values()));
+            switch (entry.getKey().substring(0, entry.getKey().indexOf(':'))) {
+                case "created":
+                    event.setCreated(edit);
+                    break;
+                case "modified":
+                    event.setModified(edit);
+                    break;
+                case "authored":
+                    authored.add(edit);
+                    break;
+                case "revised":
+                    revised.add(edit);
+                    break;
+            }
+        }
+        event.setAuthored(authored);
+        event.setRevised(revised);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends DatabaseObject> T create(String schemaClass, Long dbId, String stId, String displayName) {
+        try {
+            T rtn = (T) Class.forName(MODEL_PACKAGE_NAME + "." + schemaClass).newInstance();
+            rtn.setDbId(dbId);
+            rtn.setStId(stId);
+            rtn.setDisplayName(displayName);
+            return rtn;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException(schemaClass + " is not defined.", e);
+        }
+    }
+
+    private static <T> List<T> nonNull(List<T> list) {
+        return list == null ? new ArrayList<>() : list;
+    }
+}
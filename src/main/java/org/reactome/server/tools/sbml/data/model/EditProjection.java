@@ -0,0 +1,73 @@
+package org.reactome.server.tools.sbml.data.model;
+
+/**
+ * Holds one (InstanceEdit, author) pair of the history of an event as returned by the projection queries.
+ * Edits without authors come with null person fields
+ */
+@SuppressWarnings("unused")
+public class EditProjection {
+
+    private String type;    //created, modified, authored or revised
+    private Long dbId;
+    private String dateTime;
+    private Long person;
+    private String surname;
+    private String firstname;
+    private String affiliation;
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public Long getDbId() {
+        return dbId;
+    }
+
+    public void setDbId(Long dbId) {
+        this.dbId = dbId;
+    }
+
+    public String getDateTime() {
+        return dateTime;
+    }
+
+    public void setDateTime(String dateTime) {
+        this.dateTime = dateTime;
+    }
+
+    public Long getPerson() {
+        return person;
+    }
+
+    public void setPerson(Long person) {
+        this.person = person;
+    }
+
+    public String getSurname() {
+        return surname;
+    }
+
+    public void setSurname(String surname) {
+        this.surname = surname;
+    }
+
+    public String getFirstname() {
+        return firstname;
+    }
+
+    public void setFirstname(String firstname) {
+        this.firstname = firstname;
+    }
+
+    public String getAffiliation() {
+        return affiliation;
+    }
+
+    public void setAffiliation(String affiliation) {
+        this.affiliation = affiliation;
+    }
+}
@@ -0,0 +1,64 @@
+package org.reactome.server.tools.sbml.data.model;
+
+/**
+ * Holds the scalar fields of a related object (compartment, participant, inferred entity or modified residue)
+ * as returned by the projection queries in {@link org.reactome.server.tools.sbml.data.DataFactory}
+ */
+@SuppressWarnings("unused")
+public class ObjectProjection {
+
+    private Long dbId;
+    private String stId;
+    private String displayName;
+    private String schemaClass;
+    private String url;
+    private Integer n;  //stoichiometry (only for reaction participants)
+
+    public Long getDbId() {
+        return dbId;
+    }
+
+    public void setDbId(Long dbId) {
+        this.dbId = dbId;
+    }
+
+    public String getStId() {
+        return stId;
+    }
+
+    public void setStId(String stId) {
+        this.stId = stId;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public void setDisplayName(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getSchemaClass() {
+        return schemaClass;
+    }
+
+    public void setSchemaClass(String schemaClass) {
+        this.schemaClass = schemaClass;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public Integer getN() {
+        return n;
+    }
+
+    public void setN(Integer n) {
+        this.n = n;
+    }
+}
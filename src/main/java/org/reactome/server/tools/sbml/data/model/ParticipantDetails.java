@@ -44,6 +44,10 @@ public class ParticipantDetails {
         return urls;
     }
 
+    public List<IdentifierBase> getIds() {
+        return ids;
+    }
+
     private String getAccessions() {
         if (ids == null)
             return ""; // Added by GW to avoid null exception on July 8, 2021.
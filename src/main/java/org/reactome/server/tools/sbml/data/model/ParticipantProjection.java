@@ -0,0 +1,119 @@
+package org.reactome.server.tools.sbml.data.model;
+
+import java.util.List;
+
+/**
+ * Holds the scalar data of a given participant (aka PhysicalEntity) as returned by the projection query in {@link org.reactome.server.tools.sbml.data.DataFactory}
+ */
+@SuppressWarnings("unused")
+public class ParticipantProjection {
+
+    private Long dbId;
+    private String stId;
+    private String displayName;
+    private String schemaClass;
+    private List<ObjectProjection> compartments;
+    private List<String> summations;
+    private List<String> literatureReferences;
+    private List<ObjectProjection> inferredTo;
+    private List<ObjectProjection> inferredFrom;
+    private List<ObjectProjection> modifiedResidues;
+    private List<IdentifierBase> ids;
+    private List<String> urls;
+
+    public Long getDbId() {
+        return dbId;
+    }
+
+    public void setDbId(Long dbId) {
+        this.dbId = dbId;
+    }
+
+    public String getStId() {
+        return stId;
+    }
+
+    public void setStId(String stId) {
+        this.stId = stId;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public void setDisplayName(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getSchemaClass() {
+        return schemaClass;
+    }
+
+    public void setSchemaClass(String schemaClass) {
+        this.schemaClass = schemaClass;
+    }
+
+    public List<ObjectProjection> getCompartments() {
+        return compartments;
+    }
+
+    public void setCompartments(List<ObjectProjection> compartments) {
+        this.compartments = compartments;
+    }
+
+    public List<String> getSummations() {
+        return summations;
+    }
+
+    public void setSummations(List<String> summations) {
+        this.summations = summations;
+    }
+
+    public List<String> getLiteratureReferences() {
+        return literatureReferences;
+    }
+
+    public void setLiteratureReferences(List<String> literatureReferences) {
+        this.literatureReferences = literatureReferences;
+    }
+
+    public List<ObjectProjection> getInferredTo() {
+        return inferredTo;
+    }
+
+    public void setInferredTo(List<ObjectProjection> inferredTo) {
+        this.inferredTo = inferredTo;
+    }
+
+    public List<ObjectProjection> getInferredFrom() {
+        return inferredFrom;
+    }
+
+    public void setInferredFrom(List<ObjectProjection> inferredFrom) {
+        this.inferredFrom = inferredFrom;
+    }
+
+    public List<ObjectProjection> getModifiedResidues() {
+        return modifiedResidues;
+    }
+
+    public void setModifiedResidues(List<ObjectProjection> modifiedResidues) {
+        this.modifiedResidues = modifiedResidues;
+    }
+
+    public List<IdentifierBase> getIds() {
+        return ids;
+    }
+
+    public void setIds(List<IdentifierBase> ids) {
+        this.ids = ids;
+    }
+
+    public List<String> getUrls() {
+        return urls;
+    }
+
+    public void setUrls(List<String> urls) {
+        this.urls = urls;
+    }
+}
@@ -0,0 +1,112 @@
+package org.reactome.server.tools.sbml.data.model;
+
+import java.util.List;
+
+/**
+ * Holds one aspect (GO terms, literature, cross references, diseases or participants) of a reaction as returned by
+ * the split reaction queries in {@link org.reactome.server.tools.sbml.data.DataFactory}. Only the fields of the
+ * queried aspect are set
+ */
+@SuppressWarnings("unused")
+public class ReactionAspect {
+
+    private Long dbId;
+    private List<String> goTerms;
+    private List<String> ecNumbers;
+    private List<String> literatureRefs;
+    private List<String> xrefs;
+    private List<String> diseases;
+    private List<ObjectProjection> inputs;
+    private List<ObjectProjection> outputs;
+    private List<ObjectProjection> catalysts;
+    private List<ObjectProjection> positiveRegulators;
+    private List<ObjectProjection> negativeRegulators;
+
+    public Long getDbId() {
+        return dbId;
+    }
+
+    public void setDbId(Long dbId) {
+        this.dbId = dbId;
+    }
+
+    public List<String> getGoTerms() {
+        return goTerms;
+    }
+
+    public void setGoTerms(List<String> goTerms) {
+        this.goTerms = goTerms;
+    }
+
+    public List<String> getEcNumbers() {
+        return ecNumbers;
+    }
+
+    public void setEcNumbers(List<String> ecNumbers) {
+        this.ecNumbers = ecNumbers;
+    }
+
+    public List<String> getLiteratureRefs() {
+        return literatureRefs;
+    }
+
+    public void setLiteratureRefs(List<String> literatureRefs) {
+        this.literatureRefs = literatureRefs;
+    }
+
+    public List<String> getXrefs() {
+        return xrefs;
+    }
+
+    public void setXrefs(List<String> xrefs) {
+        this.xrefs = xrefs;
+    }
+
+    public List<String> getDiseases() {
+        return diseases;
+    }
+
+    public void setDiseases(List<String> diseases) {
+        this.diseases = diseases;
+    }
+
+    public List<ObjectProjection> getInputs() {
+        return inputs;
+    }
+
+    public void setInputs(List<ObjectProjection> inputs) {
+        this.inputs = inputs;
+    }
+
+    public List<ObjectProjection> getOutputs() {
+        return outputs;
+    }
+
+    public void setOutputs(List<ObjectProjection> outputs) {
+        this.outputs = outputs;
+    }
+
+    public List<ObjectProjection> getCatalysts() {
+        return catalysts;
+    }
+
+    public void setCatalysts(List<ObjectProjection> catalysts) {
+        this.catalysts = catalysts;
+    }
+
+    public List<ObjectProjection> getPositiveRegulators() {
+        return positiveRegulators;
+    }
+
+    public void setPositiveRegulators(List<ObjectProjection> positiveRegulators) {
+        this.positiveRegulators = positiveRegulators;
+    }
+
+    public List<ObjectProjection> getNegativeRegulators() {
+        return negativeRegulators;
+    }
+
+    public void setNegativeRegulators(List<ObjectProjection> negativeRegulators) {
+        this.negativeRegulators = negativeRegulators;
+    }
+}
@@ -0,0 +1,182 @@
+package org.reactome.server.tools.sbml.data.model;
+
+import java.util.List;
+
+/**
+ * Holds the scalar data of a given reaction as returned by the projection query in {@link org.reactome.server.tools.sbml.data.DataFactory}
+ */
+@SuppressWarnings("unused")
+public class ReactionProjection {
+
+    private Long dbId;
+    private String stId;
+    private String displayName;
+    private String schemaClass;
+    private List<ObjectProjection> compartments;
+    private List<String> summations;
+    private String goBiologicalProcess;
+    private List<String> literatureReferences;
+    private List<EditProjection> edits;
+    private List<String> goTerms;
+    private List<String> ecNumbers;
+    private List<String> literatureRefs;
+    private List<String> xrefs;
+    private List<String> diseases;
+    private List<ObjectProjection> inputs;
+    private List<ObjectProjection> outputs;
+    private List<ObjectProjection> catalysts;
+    private List<ObjectProjection> positiveRegulators;
+    private List<ObjectProjection> negativeRegulators;
+
+    public Long getDbId() {
+        return dbId;
+    }
+
+    public void setDbId(Long dbId) {
+        this.dbId = dbId;
+    }
+
+    public String getStId() {
+        return stId;
+    }
+
+    public void setStId(String stId) {
+        this.stId = stId;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public void setDisplayName(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getSchemaClass() {
+        return schemaClass;
+    }
+
+    public void setSchemaClass(String schemaClass) {
+        this.schemaClass = schemaClass;
+    }
+
+    public List<ObjectProjection> getCompartments() {
+        return compartments;
+    }
+
+    public void setCompartments(List<ObjectProjection> compartments) {
+        this.compartments = compartments;
+    }
+
+    public List<String> getSummations() {
+        return summations;
+    }
+
+    public void setSummations(List<String> summations) {
+        this.summations = summations;
+    }
+
+    public String getGoBiologicalProcess() {
+        return goBiologicalProcess;
+    }
+
+    public void setGoBiologicalProcess(String goBiologicalProcess) {
+        this.goBiologicalProcess = goBiologicalProcess;
+    }
+
+    public List<String> getLiteratureReferences() {
+        return literatureReferences;
+    }
+
+    public void setLiteratureReferences(List<String> literatureReferences) {
+        this.literatureReferences = literatureReferences;
+    }
+
+    public List<EditProjection> getEdits() {
+        return edits;
+    }
+
+    public void setEdits(List<EditProjection> edits) {
+        this.edits = edits;
+    }
+
+    public List<String> getGoTerms() {
+        return goTerms;
+    }
+
+    public void setGoTerms(List<String> goTerms) {
+        this.goTerms = goTerms;
+    }
+
+    public List<String> getEcNumbers() {
+        return ecNumbers;
+    }
+
+    public void setEcNumbers(List<String> ecNumbers) {
+        this.ecNumbers = ecNumbers;
+    }
+
+    public List<String> getLiteratureRefs() {
+        return literatureRefs;
+    }
+
+    public void setLiteratureRefs(List<String> literatureRefs) {
+        this.literatureRefs = literatureRefs;
+    }
+
+    public List<String> getXrefs() {
+        return xrefs;
+    }
+
+    public void setXrefs(List<String> xrefs) {
+        this.xrefs = xrefs;
+    }
+
+    public List<String> getDiseases() {
+        return diseases;
+    }
+
+    public void setDiseases(List<String> diseases) {
+        this.diseases = diseases;
+    }
+
+    public List<ObjectProjection> getInputs() {
+        return inputs;
+    }
+
+    public void setInputs(List<ObjectProjection> inputs) {
+        this.inputs = inputs;
+    }
+
+    public List<ObjectProjection> getOutputs() {
+        return outputs;
+    }
+
+    public void setOutputs(List<ObjectProjection> outputs) {
+        this.outputs = outputs;
+    }
+
+    public List<ObjectProjection> getCatalysts() {
+        return catalysts;
+    }
+
+    public void setCatalysts(List<ObjectProjection> catalysts) {
+        this.catalysts = catalysts;
+    }
+
+    public List<ObjectProjection> getPositiveRegulators() {
+        return positiveRegulators;
+    }
+
+    public void setPositiveRegulators(List<ObjectProjection> positiveRegulators) {
+        this.positiveRegulators = positiveRegulators;
+    }
+
+    public List<ObjectProjection> getNegativeRegulators() {
+        return negativeRegulators;
+    }
+
+    public void setNegativeRegulators(List<ObjectProjection> negativeRegulators) {
+        this.negativeRegulators = negativeRegulators;
+    }
+}
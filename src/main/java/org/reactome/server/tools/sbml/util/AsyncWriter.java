@@ -0,0 +1,262 @@
+package org.reactome.server.tools.sbml.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Write-behind stage decoupling the conversion threads from the file system. Serialized documents are taken through
+ * a bounded queue and written with NIO channels by a small pool of I/O threads. Channels are fsync'ed (and closed)
+ * in batches: when a thread has written the configured number of files and when the queue runs dry. Every batch is
+ * also a checkpoint for the converters: when queueing the last document of a batch, the caller waits until no more
+ * than a batch of documents is left unsynced, so a crash can only lose the documents of the last two batches.
+ * {@link #checkpoint()} and {@link #close()} wait for all of them.
+ *
+ * When the queue is full, {@link Backpressure#BLOCK} makes the converter wait for a free slot whereas
+ * {@link Backpressure#CALLER_RUNS} writes the document on the converter thread.
+ */
+public class AsyncWriter implements Closeable {
+
+    private static Logger logger = LoggerFactory.getLogger("sbml-exporter");
+
+    private static final long IDLE_MILLIS = 100L;
+
+    public enum Backpressure {
+        BLOCK, CALLER_RUNS
+    }
+
+    private final BlockingQueue<Task> queue;
+    private final ExecutorService pool;
+    private final int syncEvery;
+    private final Backpressure backpressure;
+    private volatile boolean closing = false;
+    // Callers waiting for documents to be synced
+    private final AtomicInteger waiting = new AtomicInteger(0);
+
+    private final Object lock = new Object();
+    private long submitted = 0L;
+    private long done = 0L;
+
+    //Metrics
+    private final AtomicLong written = new AtomicLong(0L);
+    private final AtomicLong failed = new AtomicLong(0L);
+    private final AtomicLong bytes = new AtomicLong(0L);
+    private final AtomicLong latency = new AtomicLong(0L);
+    private final AtomicLong maxLatency = new AtomicLong(0L);
+    private final AtomicLong depth = new AtomicLong(0L);
+    private final AtomicLong maxDepth = new AtomicLong(0L);
+
+    private static class Task {
+        private final File target;
+        private final byte[] data;
+        private final int length;
+        private final Runnable onSuccess;
+        private final long enqueued = System.nanoTime();
+        private FileChannel channel;
+
+        Task(File target, byte[] data, int length, Runnable onSuccess) {
+            this.target = target;
+            this.data = data;
+            this.length = length;
+            this.onSuccess = onSuccess;
+        }
+    }
+
+    public AsyncWriter(int threads, int capacity, int syncEvery, Backpressure backpressure) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.syncEvery = syncEvery;
+        this.backpressure = backpressure;
+        this.pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "sbml-writer");
+            t.setDaemon(true);
+            return t;
+        });
+        for (int i = 0; i < threads; i++) pool.submit(this::run);
+    }
+
+    /**
+     * Queues the first length bytes of data to be written to target. The array must not be modified afterwards.
+     *
+     * @param onSuccess executed once the file has been written and synced (may be null)
+     */
+    public void write(File target, byte[] data, int length, Runnable onSuccess) throws IOException {
+        if (closing) throw new IllegalStateException("The writer has been closed");
+        Task task = new Task(target, data, length, onSuccess);
+        long n;
+        synchronized (lock) {
+            n = ++submitted;
+        }
+        queue(task);
+        if (n % syncEvery == 0) {
+            try {
+                await(syncEvery);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the files to be synced", e);
+            }
+        }
+    }
+
+    private void queue(Task task) throws IOException {
+        if (backpressure == Backpressure.CALLER_RUNS) {
+            if (!queue.offer(task)) {
+                List<Task> batch = new ArrayList<>();
+                write(task, batch);
+                sync(batch);
+                return;
+            }
+        } else {
+            try {
+                queue.put(task);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                finished(1);
+                throw new IOException("Interrupted while queueing " + task.target.getName(), e);
+            }
+        }
+        long d = depth.incrementAndGet();
+        maxDepth.accumulateAndGet(d, Math::max);
+    }
+
+    /**
+     * Blocks until every document queued so far has been written and synced
+     */
+    public void checkpoint() throws InterruptedException {
+        await(0);
+    }
+
+    /**
+     * Blocks until no more than the given number of queued documents are left to be written and synced
+     */
+    private void await(long pending) throws InterruptedException {
+        waiting.incrementAndGet();
+        try {
+            synchronized (lock) {
+                while (submitted - done > pending) lock.wait();
+            }
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return the number of documents queued but not written and synced yet
+     */
+    public long getPending() {
+        synchronized (lock) {
+            return submitted - done;
+        }
+    }
+
+    private void run() {
+        List<Task> batch = new ArrayList<>();
+        while (true) {
+            Task task;
+            try {
+                // The batch is given some time to fill up unless a checkpoint is waiting for it
+                task = waiting.get() > 0 && !batch.isEmpty() ? queue.poll() : queue.poll(IDLE_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (task == null) {
+                sync(batch);
+                if (closing && queue.isEmpty()) break;
+                continue;
+            }
+            depth.decrementAndGet();
+            write(task, batch);
+            if (batch.size() >= syncEvery) sync(batch);
+        }
+        sync(batch);
+    }
+
+    private void write(Task task, List<Task> batch) {
+        try {
+            task.channel = FileChannel.open(task.target.toPath(), CREATE, WRITE, TRUNCATE_EXISTING);
+            ByteBuffer buffer = ByteBuffer.wrap(task.data, 0, task.length);
+            while (buffer.hasRemaining()) task.channel.write(buffer);
+            batch.add(task);
+            bytes.addAndGet(task.length);
+        } catch (IOException e) {
+            logger.error(String.format("Error writing '%s'", task.target.getAbsolutePath()), e);
+            failed.incrementAndGet();
+            close(task.channel);
+            finished(1);
+        }
+    }
+
+    private void sync(List<Task> batch) {
+        if (batch.isEmpty()) return;
+        for (Task task : batch) {
+            try {
+                task.channel.force(true);
+                long l = System.nanoTime() - task.enqueued;
+                latency.addAndGet(l);
+                maxLatency.accumulateAndGet(l, Math::max);
+                written.incrementAndGet();
+                if (task.onSuccess != null) task.onSuccess.run();
+            } catch (IOException e) {
+                logger.error(String.format("Error syncing '%s'", task.target.getAbsolutePath()), e);
+                failed.incrementAndGet();
+            } finally {
+                close(task.channel);
+            }
+        }
+        finished(batch.size());
+        batch.clear();
+    }
+
+    private void finished(int n) {
+        synchronized (lock) {
+            done += n;
+            lock.notifyAll();
+        }
+    }
+
+    private static void close(FileChannel channel) {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.error(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closing = true;
+        try {
+            checkpoint();
+            pool.shutdown();
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while closing the writer", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        long n = written.get();
+        return String.format("%d files (%d bytes) written, %d failed, max queue depth %d, write latency avg %.1f ms / max %.1f ms",
+                n, bytes.get(), failed.get(), maxDepth.get(), n == 0 ? 0 : latency.get() / 1e6 / n, maxLatency.get() / 1e6);
+    }
+}
@@ -0,0 +1,119 @@
+package org.reactome.server.tools.sbml.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps the SHA-256 of the content of every written file so unchanged documents are not rewritten in the following
+ * runs. The date in the provenance note ("SBML generated from Reactome version N on [date] using JSBML...") changes
+ * in every run, so it is left out of the hash.
+ *
+ * File format: one tab separated (file name, hash) pair per line.
+ */
+public class ContentHashes {
+
+    public static final String FILE_NAME = "content-hashes.tsv";
+
+    private static final byte[] PROVENANCE = "SBML generated from Reactome version ".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] DATE_START = " on ".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] DATE_END = " using JSBML version".getBytes(StandardCharsets.UTF_8);
+
+    private final File file;
+    private final Map<String, String> hashes = new ConcurrentHashMap<>();
+    private final AtomicInteger skipped = new AtomicInteger(0);
+
+    private ContentHashes(File file) {
+        this.file = file;
+    }
+
+    /**
+     * @return the hashes stored in the given file (none if it does not exist yet)
+     */
+    public static ContentHashes load(File file) throws IOException {
+        ContentHashes rtn = new ContentHashes(file);
+        if (!file.exists()) return rtn;
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                String[] tokens = line.split("\t");
+                if (tokens.length == 2) rtn.hashes.put(tokens[0], tokens[1]);
+            }
+        }
+        return rtn;
+    }
+
+    public void save() throws IOException {
+        try (PrintWriter pw = new PrintWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)))) {
+            for (Map.Entry<String, String> entry : new TreeMap<>(hashes).entrySet()) {
+                pw.println(entry.getKey() + "\t" + entry.getValue());
+            }
+            if (pw.checkError()) throw new IOException("Error writing " + file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * @return true if the given file exists and was written with the same content hash
+     */
+    boolean isUnchanged(File target, String hash) {
+        boolean rtn = target.exists() && hash.equals(hashes.get(target.getName()));
+        if (rtn) skipped.incrementAndGet();
+        return rtn;
+    }
+
+    void put(File target, String hash) {
+        hashes.put(target.getName(), hash);
+    }
+
+    public int getSkipped() {
+        return skipped.get();
+    }
+
+    /**
+     * @return the hex encoded SHA-256 of the document excluding the date of the provenance note
+     */
+    static String hash(byte[] data, int length) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        int provenance = indexOf(data, length, PROVENANCE, 0);
+        int from = provenance < 0 ? -1 : indexOf(data, length, DATE_START, provenance + PROVENANCE.length);
+        int to = from < 0 ? -1 : indexOf(data, length, DATE_END, from);
+        if (to < 0) {
+            digest.update(data, 0, length);
+        } else {
+            digest.update(data, 0, from);
+            digest.update(data, to, length - to);
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) sb.append(String.format("%02x", b));
+        return sb.toString();
+    }
+
+    private static int indexOf(byte[] data, int length, byte[] target, int from) {
+        outer:
+        for (int i = from; i <= length - target.length; i++) {
+            for (int j = 0; j < target.length; j++) {
+                if (data[i + j] != target[j]) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+}
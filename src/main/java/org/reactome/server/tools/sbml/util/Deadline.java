@@ -0,0 +1,51 @@
+package org.reactome.server.tools.sbml.util;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Time budget of a conversion. The budget starts counting when {@link #start()} is called, so work done ahead (e.g.
+ * laying out the diagram on another thread) is only bounded once the conversion itself has started. The long running
+ * loops call {@link #check()}, which cancels the conversion by throwing a {@link CancellationException} once the
+ * budget has been used up.
+ */
+public class Deadline {
+
+    private final long budget;
+    private volatile boolean started = false;
+    private volatile long end;
+
+    /**
+     * @param budget time budget in milliseconds
+     */
+    public Deadline(long budget) {
+        this.budget = budget;
+    }
+
+    public void start() {
+        end = System.nanoTime() + budget * 1_000_000L;
+        started = true;
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    /**
+     * @return the milliseconds left (Long.MAX_VALUE if not started yet)
+     */
+    public long getRemaining() {
+        if (!started) return Long.MAX_VALUE;
+        return Math.max(0, (end - System.nanoTime()) / 1_000_000L);
+    }
+
+    public boolean isExpired() {
+        return started && System.nanoTime() - end > 0;
+    }
+
+    /**
+     * @throws CancellationException if the budget has been used up
+     */
+    public void check() {
+        if (isExpired()) throw new CancellationException(String.format("Time budget of %d ms exceeded", budget));
+    }
+}
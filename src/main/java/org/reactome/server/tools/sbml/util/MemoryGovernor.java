@@ -0,0 +1,173 @@
+package org.reactome.server.tools.sbml.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Decides when the caches have to be cleared and how many pathways can be worked on at once from the heap occupancy
+ * and the GC pressure reported by the management beans, instead of clearing the caches every given number of
+ * pathways.
+ *
+ * The heap occupancy is taken from the usage of the heap pools after their last collection (the live data) when the
+ * JVM reports it and from the current heap usage otherwise. When it goes over the threshold, or when more than
+ * {@link #GC_OVERHEAD_LIMIT} of the time since the previous check has been spent collecting garbage, the registered
+ * caches are cleared and, if the occupancy is critical or the GC pressure persists, the number of workers is halved. The workers are added back
+ * one at a time while the occupancy stays under half the threshold.
+ *
+ * Only the look-ahead is throttled: the workers are the pathways whose diagrams are laid out ahead by the layout
+ * threads, so the maximum is the number of layout threads (--layout-threads). The pathways themselves are still
+ * converted one after the other, and with no layout threads the governor only clears the caches.
+ */
+public class MemoryGovernor {
+
+    private static Logger logger = LoggerFactory.getLogger("sbml-exporter");
+
+    private static final double GC_OVERHEAD_LIMIT = 0.1;
+    private static final double CRITICAL_OCCUPANCY = 0.9;
+
+    private final double threshold;
+    private final int maxWorkers;
+    private volatile int workers;
+    private final List<Runnable> caches = new CopyOnWriteArrayList<>();
+
+    private final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+    private long lastCheck = System.nanoTime();
+    private long lastGcMillis = getGcMillis();
+    // The occupancy is only measured again after a collection
+    private long clearedAtGcCount = -1;
+
+    //Metrics
+    private int checks = 0;
+    private int clears = 0;
+    private int throttles = 0;
+    private int minWorkers;
+    private double maxOccupancy = 0;
+    private double maxGcOverhead = 0;
+
+    /**
+     * @param threshold  heap occupancy (0-1) over which the caches are cleared
+     * @param maxWorkers maximum number of workers to be returned by {@link #getWorkers()}, i.e. the number of
+     *                   pathways laid out ahead
+     */
+    public MemoryGovernor(double threshold, int maxWorkers) {
+        this.threshold = threshold;
+        this.maxWorkers = maxWorkers;
+        this.workers = maxWorkers;
+        this.minWorkers = maxWorkers;
+    }
+
+    /**
+     * @param clear clears a cache, called when memory is needed
+     */
+    public void addCache(Runnable clear) {
+        caches.add(clear);
+    }
+
+    /**
+     * @return the number of workers that can be active at the moment (between 1 and the maximum, or 0 if the
+     * maximum is 0)
+     */
+    public int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * To be called between units of work (e.g. after every pathway)
+     */
+    public synchronized void check() {
+        checks++;
+        double occupancy = getOccupancy();
+        double gcOverhead = getGcOverhead();
+        maxOccupancy = Math.max(maxOccupancy, occupancy);
+        maxGcOverhead = Math.max(maxGcOverhead, gcOverhead);
+        boolean measured = getGcCount() != clearedAtGcCount;
+        if ((occupancy > threshold && measured) || gcOverhead > GC_OVERHEAD_LIMIT) {
+            logger.debug(String.format("Heap occupancy %.0f%%, GC overhead %.0f%%: clearing caches", occupancy * 100, gcOverhead * 100));
+            clearCaches();
+            if ((occupancy > CRITICAL_OCCUPANCY || gcOverhead > GC_OVERHEAD_LIMIT) && workers > 1) {
+                workers = Math.max(1, workers / 2);
+                minWorkers = Math.min(minWorkers, workers);
+                throttles++;
+                logger.debug("Workers reduced to " + workers);
+            }
+        } else if (occupancy < threshold / 2 && workers < maxWorkers) {
+            workers++;
+        }
+    }
+
+    private void clearCaches() {
+        clears++;
+        clearedAtGcCount = getGcCount();
+        for (Runnable cache : caches) {
+            try {
+                cache.run();
+            } catch (RuntimeException e) {
+                logger.error("Error clearing a cache", e);
+            }
+        }
+    }
+
+    /**
+     * @return the live data of the heap pools after their last collection (or the current heap usage if not
+     * reported) over the maximum heap size
+     */
+    double getOccupancy() {
+        double rtn = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP || !pool.isCollectionUsageThresholdSupported()) continue;
+            MemoryUsage usage = pool.getCollectionUsage();
+            if (usage == null || usage.getMax() <= 0) continue;
+            rtn = Math.max(rtn, (double) usage.getUsed() / usage.getMax());
+        }
+        if (rtn > 0) return rtn;
+        MemoryUsage heap = memoryBean.getHeapMemoryUsage();
+        long max = heap.getMax() > 0 ? heap.getMax() : heap.getCommitted();
+        return (double) heap.getUsed() / max;
+    }
+
+    /**
+     * @return the fraction of the time since the previous check spent collecting garbage
+     */
+    double getGcOverhead() {
+        long now = System.nanoTime();
+        long gcMillis = getGcMillis();
+        double elapsed = (now - lastCheck) / 1e6;
+        double rtn = elapsed <= 0 ? 0 : (gcMillis - lastGcMillis) / elapsed;
+        lastCheck = now;
+        lastGcMillis = gcMillis;
+        return rtn;
+    }
+
+    long getGcCount() {
+        long rtn = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            long count = gc.getCollectionCount();
+            if (count > 0) rtn += count;
+        }
+        return rtn;
+    }
+
+    private static long getGcMillis() {
+        long rtn = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            long time = gc.getCollectionTime();
+            if (time > 0) rtn += time;
+        }
+        return rtn;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d checks, caches cleared %d times, workers reduced %d times (min %d / max %d), max heap occupancy %.0f%%, max GC overhead %.0f%%",
+                checks, clears, throttles, minWorkers, maxWorkers, maxOccupancy * 100, maxGcOverhead * 100);
+    }
+}
@@ -0,0 +1,79 @@
+package org.reactome.server.tools.sbml.util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Keeps the size of every written file before and after compression together with the time spent writing it, so
+ * the compression ratio and throughput can be reported at the end of the run.
+ */
+public class OutputSummary {
+
+    private final Queue<Entry> entries = new ConcurrentLinkedQueue<>();
+
+    private static class Entry {
+        private final String fileName;
+        private final long bytes;
+        private final long compressedBytes;
+        private final long nanos;
+
+        Entry(String fileName, long bytes, long compressedBytes, long nanos) {
+            this.fileName = fileName;
+            this.bytes = bytes;
+            this.compressedBytes = compressedBytes;
+            this.nanos = nanos;
+        }
+    }
+
+    public void add(String fileName, long bytes, long compressedBytes, long nanos) {
+        entries.add(new Entry(fileName, bytes, compressedBytes, nanos));
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Writes one tab separated line per file with its sizes, compression ratio and throughput (MB/s of input)
+     */
+    public void write(File file) throws IOException {
+        try (PrintWriter pw = new PrintWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)))) {
+            pw.println("file\tbytes\tcompressed\tratio\tMB/s");
+            for (Entry e : entries) {
+                pw.println(String.format("%s\t%d\t%d\t%.2f\t%.1f", e.fileName, e.bytes, e.compressedBytes, ratio(e.bytes, e.compressedBytes), throughput(e.bytes, e.nanos)));
+            }
+            if (pw.checkError()) throw new IOException("Error writing " + file.getAbsolutePath());
+        }
+    }
+
+    @Override
+    public String toString() {
+        long bytes = 0, compressedBytes = 0, nanos = 0;
+        for (Entry e : entries) {
+            bytes += e.bytes;
+            compressedBytes += e.compressedBytes;
+            nanos += e.nanos;
+        }
+        return String.format("%d files, %d bytes compressed to %d (ratio %.2f) at %.1f MB/s per writer",
+                entries.size(), bytes, compressedBytes, ratio(bytes, compressedBytes), throughput(bytes, nanos));
+    }
+
+    private static double ratio(long bytes, long compressedBytes) {
+        return compressedBytes == 0 ? 0 : (double) bytes / compressedBytes;
+    }
+
+    private static double throughput(long bytes, long nanos) {
+        return nanos == 0 ? 0 : (bytes / (1024d * 1024d)) / (nanos / 1e9);
+    }
+}
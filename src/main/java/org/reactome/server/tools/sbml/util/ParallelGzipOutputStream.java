@@ -0,0 +1,130 @@
+package org.reactome.server.tools.sbml.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses the data in fixed size blocks, each one as an independent gzip member, in the way pigz does. The blocks
+ * are compressed in parallel by a shared pool and written in order, so the result is a valid gzip file (concatenated
+ * members) that any gzip reader decompresses. Data fitting in a single block is compressed on the calling thread.
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+    private static ExecutorService executor;
+
+    private final OutputStream out;
+    private final int blockSize;
+    private final int maxPending;
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+
+    private byte[] buffer;
+    private int count = 0;
+    private boolean written = false;
+    private boolean closed = false;
+
+    public ParallelGzipOutputStream(OutputStream out) {
+        this(out, DEFAULT_BLOCK_SIZE);
+    }
+
+    public ParallelGzipOutputStream(OutputStream out, int blockSize) {
+        this.out = out;
+        this.blockSize = blockSize;
+        this.maxPending = 2 * Runtime.getRuntime().availableProcessors();
+        this.buffer = new byte[blockSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        buffer[count++] = (byte) b;
+        if (count == blockSize) submitBlock();
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = Math.min(len, blockSize - count);
+            System.arraycopy(b, off, buffer, count, n);
+            count += n;
+            off += n;
+            len -= n;
+            if (count == blockSize) submitBlock();
+        }
+    }
+
+    /**
+     * Writes the blocks already compressed. The current block is not cut short, so this does not affect the ratio.
+     */
+    @Override
+    public void flush() throws IOException {
+        while (!pending.isEmpty() && pending.peek().isDone()) writeNext();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            if (pending.isEmpty() && !written) {
+                out.write(compress(buffer, count)); //single block (or empty member for no data)
+            } else {
+                if (count > 0) submitBlock();
+                while (!pending.isEmpty()) writeNext();
+            }
+        } finally {
+            buffer = null;
+            out.close();
+        }
+    }
+
+    private void submitBlock() throws IOException {
+        final byte[] block = buffer;
+        final int length = count;
+        pending.add(getExecutor().submit(() -> compress(block, length)));
+        buffer = new byte[blockSize];
+        count = 0;
+        while (pending.size() > maxPending) writeNext();
+    }
+
+    private void writeNext() throws IOException {
+        try {
+            out.write(pending.poll().get());
+            written = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing");
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static byte[] compress(byte[] block, int length) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bos, 8192)) {
+            gzip.write(block, 0, length);
+        }
+        return bos.toByteArray();
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+                Thread t = new Thread(r, "sbml-gzip");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return executor;
+    }
+}
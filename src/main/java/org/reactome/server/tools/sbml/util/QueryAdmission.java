@@ -0,0 +1,101 @@
+package org.reactome.server.tools.sbml.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Admission control of the queries sent to a shared database: bounds the number of queries in flight and,
+ * optionally, the number of queries per second. Both are granted first come first served, and since a worker waits
+ * for its query to be answered before sending the next one, the workers get an equal share of the database when it
+ * is contended. The time spent waiting for admission is recorded so the number of workers can be tuned against the
+ * database capacity.
+ *
+ * A query issued while another one is being run on the same thread (e.g. an adaptor method calling another one) is
+ * admitted with its parent, so a worker never waits for itself.
+ */
+public class QueryAdmission {
+
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    // Nanoseconds between two queries (0 for no rate limit)
+    private final long interval;
+    private final ReentrantLock rateLock = new ReentrantLock(true);
+    private long nextSlot = System.nanoTime();
+    private final ThreadLocal<int[]> depth = ThreadLocal.withInitial(() -> new int[1]);
+
+    //Metrics
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder waited = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger peak = new AtomicInteger();
+
+    /**
+     * @param maxInFlight maximum number of queries in flight (0 for no limit)
+     * @param maxPerSecond maximum number of queries per second (0 for no limit)
+     */
+    public QueryAdmission(int maxInFlight, double maxPerSecond) {
+        this.maxInFlight = maxInFlight;
+        this.inFlight = maxInFlight > 0 ? new Semaphore(maxInFlight, true) : null;
+        this.interval = maxPerSecond > 0 ? (long) (1e9 / maxPerSecond) : 0;
+    }
+
+    /**
+     * Runs the query once admitted
+     */
+    public <T> T call(Callable<T> query) throws Exception {
+        int[] d = depth.get();
+        if (d[0] > 0) return query.call();
+        long start = System.nanoTime();
+        if (inFlight != null) inFlight.acquire();
+        try {
+            if (interval > 0) waitForSlot();
+            record(System.nanoTime() - start);
+            d[0]++;
+            try {
+                return query.call();
+            } finally {
+                d[0]--;
+                running.decrementAndGet();
+            }
+        } finally {
+            if (inFlight != null) inFlight.release();
+        }
+    }
+
+    private void waitForSlot() throws InterruptedException {
+        // The fair lock keeps the waiting queries in order while the first one sleeps
+        rateLock.lockInterruptibly();
+        try {
+            long now = System.nanoTime();
+            long slot = Math.max(now, nextSlot);
+            nextSlot = slot + interval;
+            if (slot > now) TimeUnit.NANOSECONDS.sleep(slot - now);
+        } finally {
+            rateLock.unlock();
+        }
+    }
+
+    private void record(long wait) {
+        queries.increment();
+        if (wait > TimeUnit.MILLISECONDS.toNanos(1)) waited.increment();
+        waitNanos.add(wait);
+        maxWaitNanos.accumulateAndGet(wait, Math::max);
+        peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+    }
+
+    @Override
+    public String toString() {
+        long n = queries.sum();
+        double avg = n == 0 ? 0 : waitNanos.sum() / 1e6 / n;
+        return String.format("%d queries (max %s in flight, peak %d), %d waited over 1 ms, average wait %.2f ms, max wait %d ms, total wait %s",
+                n, maxInFlight > 0 ? String.valueOf(maxInFlight) : "unlimited", peak.get(), waited.sum(), avg,
+                TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get()), Utils.getTimeFormatted(TimeUnit.NANOSECONDS.toMillis(waitNanos.sum())));
+    }
+}
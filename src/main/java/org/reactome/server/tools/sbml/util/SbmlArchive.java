@@ -0,0 +1,103 @@
+package org.reactome.server.tools.sbml.util;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Streams the documents of a whole species into a single ZIP file as they are produced, instead of creating one small
+ * file per pathway. Entries are written one at a time straight into the archive (no temporary files) and a manifest
+ * with the size and CRC32 of every entry is added as the last entry and as a companion file next to the archive.
+ */
+public class SbmlArchive implements Closeable {
+
+    public static final String MANIFEST = "manifest.tsv";
+
+    private final File file;
+    private final ZipOutputStream zip;
+    private final List<String> manifest = new ArrayList<>();
+    private boolean entryOpen = false;
+
+    public SbmlArchive(File file) throws IOException {
+        this.file = file;
+        this.zip = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+    }
+
+    /**
+     * @return the archive file name for the given species, e.g. "Homo_sapiens.zip"
+     */
+    public static String getFileName(String speciesName) {
+        return speciesName.replaceAll("[^A-Za-z0-9._-]+", "_") + ".zip";
+    }
+
+    /**
+     * Starts a new entry in the archive. The returned stream has to be closed before opening the next entry and
+     * closing it does not close the archive.
+     */
+    public synchronized OutputStream openEntry(String name) throws IOException {
+        if (entryOpen) throw new IllegalStateException(String.format("Cannot open '%s' while another entry is being written", name));
+        zip.putNextEntry(new ZipEntry(name));
+        entryOpen = true;
+        final CRC32 crc = new CRC32();
+        return new FilterOutputStream(zip) {
+            private long size = 0;
+            private boolean closed = false;
+
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                crc.update(b);
+                size++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                crc.update(b, off, len);
+                size += len;
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (closed) return;
+                closed = true;
+                closeEntry(name, size, crc.getValue());
+            }
+        };
+    }
+
+    private synchronized void closeEntry(String name, long size, long crc) throws IOException {
+        zip.closeEntry();
+        entryOpen = false;
+        manifest.add(String.format("%s\t%d\t%08x", name, size, crc));
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (entryOpen) zip.closeEntry();
+        StringBuilder content = new StringBuilder("entry\tbytes\tcrc32\n");
+        for (String line : manifest) content.append(line).append('\n');
+        byte[] bytes = content.toString().getBytes(StandardCharsets.UTF_8);
+
+        zip.putNextEntry(new ZipEntry(MANIFEST));
+        zip.write(bytes);
+        zip.closeEntry();
+        zip.close();
+
+        String name = file.getName();
+        if (name.endsWith(".zip")) name = name.substring(0, name.length() - 4);
+        try (OutputStream os = new FileOutputStream(new File(file.getParentFile(), name + "." + MANIFEST))) {
+            os.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package org.reactome.server.tools.sbml.util;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Concatenates all the documents into a single pack file so they can be served without directory scans and per-file
+ * opens (see {@link SbmlPackReader}). Every document is appended as soon as it is complete and a line with its
+ * stable identifier, offset, length and compressed flag is added to the tab separated index file ("[pack].idx").
+ */
+public class SbmlPack implements Closeable {
+
+    public static final String PACK_FILE = "sbml.pack";
+
+    private final FileChannel channel;
+    private final PrintWriter index;
+    private long offset = 0L;
+
+    public SbmlPack(File file) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), CREATE, WRITE, TRUNCATE_EXISTING);
+        this.index = new PrintWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(getIndexFile(file)), StandardCharsets.UTF_8)));
+    }
+
+    public static File getIndexFile(File pack) {
+        return new File(pack.getPath() + ".idx");
+    }
+
+    /**
+     * The document is kept in memory until the returned stream is closed and then appended to the pack
+     *
+     * @param compressed whether the data written to the returned stream is gzipped, as recorded in the index
+     */
+    public OutputStream openEntry(final String stId, final boolean compressed) {
+        return new ByteArrayOutputStream(1 << 16) {
+            private boolean closed = false;
+
+            @Override
+            public void close() throws IOException {
+                if (closed) return;
+                closed = true;
+                append(stId, compressed, buf, count);
+            }
+        };
+    }
+
+    private synchronized void append(String stId, boolean compressed, byte[] data, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data, 0, length);
+        while (buffer.hasRemaining()) channel.write(buffer);
+        index.println(stId + "\t" + offset + "\t" + length + "\t" + compressed);
+        offset += length;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            channel.force(true);
+            channel.close();
+        } finally {
+            index.close();
+        }
+        if (index.checkError()) throw new IOException("Error writing the pack index");
+    }
+}
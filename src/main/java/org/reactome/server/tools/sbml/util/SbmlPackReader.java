@@ -0,0 +1,124 @@
+package org.reactome.server.tools.sbml.util;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Random access to the documents of a pack file written by {@link SbmlPack}. The pack is memory-mapped once and
+ * every document is returned as a read-only slice of the mapping, so lookups neither copy the data nor open files.
+ * Packs bigger than what a single mapping can hold (2GB) map the region of every requested document instead.
+ */
+public class SbmlPackReader implements Closeable {
+
+    private final FileChannel channel;
+    private final MappedByteBuffer mapping;
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    private static class Entry {
+        private final long offset;
+        private final int length;
+        private final boolean compressed;
+
+        Entry(long offset, int length, boolean compressed) {
+            this.offset = offset;
+            this.length = length;
+            this.compressed = compressed;
+        }
+    }
+
+    public SbmlPackReader(File pack) throws IOException {
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(SbmlPack.getIndexFile(pack)), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                String[] tokens = line.split("\t");
+                entries.put(tokens[0], new Entry(Long.parseLong(tokens[1]), Integer.parseInt(tokens[2]), Boolean.parseBoolean(tokens[3])));
+            }
+        }
+        this.channel = FileChannel.open(pack.toPath(), StandardOpenOption.READ);
+        long size = channel.size();
+        this.mapping = size <= Integer.MAX_VALUE ? channel.map(FileChannel.MapMode.READ_ONLY, 0, size) : null;
+    }
+
+    public Set<String> getIdentifiers() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    public boolean contains(String stId) {
+        return entries.containsKey(stId);
+    }
+
+    public boolean isCompressed(String stId) {
+        Entry entry = entries.get(stId);
+        return entry != null && entry.compressed;
+    }
+
+    /**
+     * @return the document as stored in the pack (gzipped when {@link #isCompressed(String)}) or null if not found
+     */
+    public ByteBuffer getBuffer(String stId) throws IOException {
+        Entry entry = entries.get(stId);
+        if (entry == null) return null;
+        if (mapping == null) return channel.map(FileChannel.MapMode.READ_ONLY, entry.offset, entry.length);
+        ByteBuffer rtn = mapping.duplicate();
+        rtn.position((int) entry.offset);
+        rtn.limit((int) entry.offset + entry.length);
+        return rtn.slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * @return the uncompressed document or null if not found
+     */
+    public InputStream getInputStream(String stId) throws IOException {
+        ByteBuffer buffer = getBuffer(stId);
+        if (buffer == null) return null;
+        InputStream is = new ByteBufferInputStream(buffer);
+        return isCompressed(stId) ? new GZIPInputStream(is) : is;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (!buffer.hasRemaining()) return -1;
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.reactome.server.tools.sbml.util;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Places the output files under a species directory (taken from the stable identifier, e.g. "HSA") and a two hex
+ * digit hash-prefix subdirectory, e.g. "HSA/3f/R-HSA-69620.sbml", so no directory grows to tens of thousands of
+ * entries. The tab separated index file lists the relative path of every stable identifier so consumers can find
+ * the files without listing directories.
+ */
+public class ShardedLayout implements Closeable {
+
+    public static final String INDEX_FILE = "index.tsv";
+
+    private static final Pattern STABLE_ID = Pattern.compile("^R-([A-Z]{3})-\\d+");
+    private static final String NO_SPECIES = "other";
+
+    private final File root;
+    private final PrintWriter index;
+    private final Set<String> indexed = ConcurrentHashMap.newKeySet();
+
+    public ShardedLayout(File root) throws IOException {
+        this.root = root;
+        this.index = new PrintWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(root, INDEX_FILE)), StandardCharsets.UTF_8)));
+        this.index.println("stId\tpath");
+    }
+
+    /**
+     * @return the path of the file relative to the output directory, e.g. "HSA/3f/R-HSA-69620.sbml"
+     */
+    public static String getRelativePath(String fileName) {
+        Matcher m = STABLE_ID.matcher(fileName);
+        String species = m.find() ? m.group(1) : NO_SPECIES;
+        String prefix = String.format("%02x", fileName.hashCode() & 0xff);
+        return species + "/" + prefix + "/" + fileName;
+    }
+
+    /**
+     * Creates the directories for the given file when needed and adds it to the index
+     */
+    File getFile(String fileName, String extension) throws IOException {
+        String path = getRelativePath(fileName) + extension;
+        File file = new File(root, path);
+        File folder = file.getParentFile();
+        if (!folder.exists() && !folder.mkdirs() && !folder.exists()) {
+            throw new IOException(String.format("'%s' cannot be created", folder.getAbsolutePath()));
+        }
+        if (indexed.add(path)) {
+            synchronized (index) {
+                index.println(fileName + "\t" + path);
+            }
+        }
+        return file;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (index) {
+            index.close();
+            if (index.checkError()) throw new IOException("Error writing " + new File(root, INDEX_FILE).getAbsolutePath());
+        }
+    }
+}
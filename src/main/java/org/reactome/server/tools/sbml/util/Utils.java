@@ -6,14 +6,52 @@ import org.sbml.jsbml.TidySBMLWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.concurrent.TimeUnit;
 
 public class Utils {
 
     private static Logger logger = LoggerFactory.getLogger("sbml-exporter");
 
-    private static SBMLWriter writer = new TidySBMLWriter();
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // Writers keep state while writing, so every thread gets its own
+    private static final ThreadLocal<SBMLWriter> tidyWriter = ThreadLocal.withInitial(TidySBMLWriter::new);
+    private static final ThreadLocal<SBMLWriter> compactWriter = ThreadLocal.withInitial(() -> new SBMLWriter(' ', (short) 0));
+
+    private static boolean compact = false;
+    private static boolean compress = false;
+
+    private static final OutputSummary summary = new OutputSummary();
+
+    // When set, documents are written as entries of this archive instead of individual files
+    private static volatile SbmlArchive archive = null;
+
+    // When set, every document is appended to this pack file (Main does not allow it together with the archive)
+    private static SbmlPack pack = null;
+
+    // When set, files whose content has not changed since the previous run are not rewritten
+    private static ContentHashes contentHashes = null;
+
+    // When set, files are handed to this write-behind stage instead of being written by the converter thread
+    private static AsyncWriter asyncWriter = null;
+
+    // When set, individual files are placed in species and hash-prefix subdirectories instead of a flat directory
+    private static ShardedLayout shardedLayout = null;
+
+    /**
+     * When set, documents are written without the tidy formatting (indentation) of {@link TidySBMLWriter}, which
+     * saves a second pass over every document in bulk exports where nobody reads the files
+     */
+    public static void setCompact(boolean compact) {
+        Utils.compact = compact;
+    }
 
     public static void outputCheck(String output){
         File folder = new File(output);
@@ -24,15 +62,161 @@ public class Utils {
         }
     }
 
+    /**
+     * When set, files are written gzipped ("[fileName].sbml.gz") using {@link ParallelGzipOutputStream} and their
+     * compression ratio and throughput are added to the {@link #getSummary() summary}
+     */
+    public static void setCompress(boolean compress) {
+        Utils.compress = compress;
+    }
+
+    /**
+     * Sets the archive where the following documents are written (null to go back to one file per document)
+     */
+    public static void setArchive(SbmlArchive archive) {
+        Utils.archive = archive;
+    }
+
+    /**
+     * Sets the pack file where all the following documents are appended (null to go back to individual files).
+     * Documents are stored gzipped when {@link #setCompress(boolean)} is set.
+     */
+    public static void setPack(SbmlPack pack) {
+        Utils.pack = pack;
+    }
+
+    /**
+     * Sets the content hashes used to skip the files that would be rewritten with the same content (null to always
+     * write them). Only applies to individual files, not to the archive or pack outputs.
+     */
+    public static void setContentHashes(ContentHashes contentHashes) {
+        Utils.contentHashes = contentHashes;
+    }
+
+    /**
+     * Sets the write-behind stage for the individual files (null to write them on the calling thread)
+     */
+    public static void setAsyncWriter(AsyncWriter asyncWriter) {
+        Utils.asyncWriter = asyncWriter;
+    }
+
+    /**
+     * Sets the sharded layout for the individual files (null to write them all in the output directory)
+     */
+    public static void setShardedLayout(ShardedLayout shardedLayout) {
+        Utils.shardedLayout = shardedLayout;
+    }
+
+    public static OutputSummary getSummary() {
+        return summary;
+    }
+
+    /**
+     * Opens the output stream for the given file name according to the output options. The caller has to close it.
+     */
+    public static OutputStream getOutputStream(String outputDirectory, String fileName) throws IOException {
+        if (pack != null) {
+            OutputStream entry = pack.openEntry(fileName, compress);
+            return compress ? getGzipOutputStream(entry, fileName) : entry;
+        }
+        SbmlArchive archive = Utils.archive;
+        if (archive != null) return archive.openEntry(fileName + ".sbml");
+        String extension = compress ? ".sbml.gz" : ".sbml";
+        final File target = shardedLayout != null ? shardedLayout.getFile(fileName, extension) : new File(outputDirectory, fileName + extension);
+        final ContentHashes hashes = contentHashes;
+        final AsyncWriter async = asyncWriter;
+        if (hashes == null && async == null) return getFileOutputStream(target);
+        // The document is kept in memory until it is complete so its hash can be checked before touching the file
+        // and it can be handed over to the write-behind stage
+        return new ByteArrayOutputStream(BUFFER_SIZE) {
+            private boolean closed = false;
+
+            @Override
+            public void close() throws IOException {
+                if (closed) return;
+                closed = true;
+                final String hash = hashes == null ? null : ContentHashes.hash(buf, count);
+                if (hash != null && hashes.isUnchanged(target, hash)) return;
+                if (async != null) {
+                    byte[] bytes = buf;
+                    int length = count;
+                    if (compress) {
+                        long start = System.nanoTime();
+                        ByteArrayOutputStream compressed = new ByteArrayOutputStream(count / 4 + 64);
+                        try (OutputStream os = new ParallelGzipOutputStream(compressed)) {
+                            os.write(buf, 0, count);
+                        }
+                        bytes = compressed.toByteArray();
+                        length = bytes.length;
+                        summary.add(target.getName(), count, length, System.nanoTime() - start);
+                    }
+                    async.write(target, bytes, length, hash == null ? null : () -> hashes.put(target, hash));
+                } else {
+                    try (OutputStream os = getFileOutputStream(target)) {
+                        os.write(buf, 0, count);
+                    }
+                    if (hash != null) hashes.put(target, hash);
+                }
+            }
+        };
+    }
+
+    private static OutputStream getFileOutputStream(final File target) throws IOException {
+        OutputStream os = new BufferedOutputStream(new FileOutputStream(target), BUFFER_SIZE);
+        return compress ? getGzipOutputStream(os, target.getName()) : os;
+    }
+
+    /**
+     * Gzips the data written to the given stream with {@link ParallelGzipOutputStream} and adds the sizes and the
+     * time spent to the {@link #getSummary() summary} once closed
+     */
+    private static OutputStream getGzipOutputStream(OutputStream os, final String name) {
+        final long start = System.nanoTime();
+        final CountingOutputStream compressed = new CountingOutputStream(os);
+        return new CountingOutputStream(new ParallelGzipOutputStream(compressed)) {
+            private boolean closed = false;
+
+            @Override
+            public void close() throws IOException {
+                super.close();
+                if (!closed) {
+                    closed = true;
+                    summary.add(name, count, compressed.count, System.nanoTime() - start);
+                }
+            }
+        };
+    }
+
     public static void writeSBML(String outputDirectory, String fileName, SBMLDocument sbmlDocument){
         try {
-            File sbmlFile = new File(outputDirectory + File.separator + fileName + ".sbml");
-            writer.write(sbmlDocument, sbmlFile);
+            try (OutputStream os = getOutputStream(outputDirectory, fileName)) {
+                (compact ? compactWriter : tidyWriter).get().write(sbmlDocument, os);
+            }
         } catch (Exception e) {
             logger.error(String.format("Error writing SBML file for '%s'", sbmlDocument.getModel().getId()), e);
         }
     }
 
+    private static class CountingOutputStream extends FilterOutputStream {
+        long count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
     public static String getTimeFormatted(Long millis) {
         return String.format("%02d:%02d:%02d", TimeUnit.MILLISECONDS.toHours(millis),
                 TimeUnit.MILLISECONDS.toMinutes(millis) % TimeUnit.HOURS.toMinutes(1),
@@ -0,0 +1,120 @@
+package org.reactome.sbml.rel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.gk.model.ReactomeJavaConstants;
+import org.junit.Test;
+import org.reactome.server.tools.sbml.TestDatabases;
+import org.reactome.server.tools.sbml.util.QueryAdmission;
+
+public class AdmittedConnectionTest {
+
+    @Test
+    public void testStatementsAreExecutedOnceAdmitted() throws Exception {
+        List<String> executed = new ArrayList<>();
+        QueryAdmission admission = new QueryAdmission(1, 0);
+        Connection connection = AdmittedConnection.wrap(connection(executed), admission);
+
+        PreparedStatement ps = connection.prepareStatement("SELECT DB_ID FROM DatabaseObject WHERE DB_ID = ?");
+        ps.setLong(1, 69620L);
+        assertTrue(ps.execute());
+        ps.executeQuery();
+        Statement statement = connection.createStatement();
+        statement.executeUpdate("SET NAMES utf8");
+        // Neither preparing nor checking the connection is a query
+        assertTrue(connection.isValid(5));
+        assertEquals(3, executed.size());
+        assertTrue(admission.toString(), admission.toString().startsWith("3 queries"));
+
+        assertSame(connection, ps.getConnection());
+        assertSame(connection, statement.getConnection());
+        assertSame(connection, AdmittedConnection.wrap(connection, admission));
+        assertTrue(AdmittedConnection.isWrapped(connection));
+        assertEquals(connection, connection);
+    }
+
+    @Test
+    public void testNestedStatementsAreAdmittedWithTheirParent() throws Exception {
+        QueryAdmission admission = new QueryAdmission(1, 0);
+        Connection connection = AdmittedConnection.wrap(connection(new ArrayList<>()), admission);
+        // As an adaptor method admitted as a whole running its queries
+        admission.call(() -> connection.createStatement().executeQuery("SELECT 1"));
+        assertTrue(admission.toString(), admission.toString().startsWith("1 queries"));
+    }
+
+    @Test(expected = SQLException.class)
+    public void testQueryFailuresAreReported() throws Exception {
+        Connection connection = AdmittedConnection.wrap(connection(new ArrayList<>()), new QueryAdmission(1, 0));
+        connection.createStatement().executeQuery("FAIL");
+    }
+
+    @Test
+    public void testAdaptorQueriesAreAdmitted() throws Exception {
+        TestDatabases.assumeMySQL();
+        QueryAdmission admission = new QueryAdmission(2, 0);
+        AdmittedMySQLAdaptor dba = new AdmittedMySQLAdaptor(TestDatabases.getMySQLHost(),
+                                                            System.getProperty("mysql.db", "release_current"),
+                                                            System.getProperty("mysql.user"),
+                                                            System.getProperty("mysql.password"),
+                                                            TestDatabases.getMySQLPort(),
+                                                            admission);
+        long queries = getQueries(admission);
+        assertNotNull(dba.getReleaseNumber());
+        assertEquals(++queries, getQueries(admission));
+        assertFalse(dba.fetchInstancesByClass(ReactomeJavaConstants.Species).isEmpty());
+        assertEquals(++queries, getQueries(admission));
+        assertTrue(AdmittedConnection.isWrapped(dba.getConnection()));
+        dba.getConnection().createStatement().executeQuery("SELECT 1").close();
+        assertEquals(++queries, getQueries(admission));
+    }
+
+    private static long getQueries(QueryAdmission admission) {
+        return Long.parseLong(admission.toString().split(" ")[0]);
+    }
+
+    /**
+     * A connection whose statements record the queries they execute
+     */
+    private static Connection connection(List<String> executed) {
+        return (Connection) Proxy.newProxyInstance(getClassLoader(), new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "isValid":
+                    return true;
+                case "createStatement":
+                    return statement(Statement.class, null, executed);
+                case "prepareStatement":
+                    return statement(PreparedStatement.class, (String) args[0], executed);
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private static Object statement(Class<?> type, String sql, List<String> executed) {
+        return Proxy.newProxyInstance(getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if (!method.getName().startsWith("execute")) return null;
+            String query = sql != null ? sql : (String) args[0];
+            if (query.equals("FAIL")) throw new SQLException("Syntax error");
+            executed.add(query);
+            if (method.getReturnType() == boolean.class) return true;
+            if (method.getReturnType() == int.class) return 0;
+            return null;
+        });
+    }
+
+    private static ClassLoader getClassLoader() {
+        return AdmittedConnectionTest.class.getClassLoader();
+    }
+}
@@ -0,0 +1,91 @@
+package org.reactome.sbml.rel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import org.gk.persistence.MySQLAdaptor;
+import org.junit.Before;
+import org.junit.Test;
+import org.reactome.server.tools.sbml.TestDatabases;
+
+public class DatabaseReplicasTest {
+
+    @Before
+    public void setUp() throws Exception {
+        TestDatabases.assumeMySQL();
+    }
+
+    @Test
+    public void testConvertersAreSpreadAcrossTheHosts() {
+        String host = TestDatabases.getMySQLHost() + ":" + TestDatabases.getMySQLPort();
+        DatabaseReplicas replicas = replicas(host + "," + host);
+        assertTrue(replicas.canFailover());
+        MySQLAdaptor first = replicas.acquire();
+        MySQLAdaptor second = replicas.acquire();
+        assertNotSame(first, second);
+        assertSame(first, replicas.acquire());
+        assertTrue(replicas.check(first));
+        assertTrue(replicas.toString(), replicas.toString().contains("up, 2 pathways, 0 failures"));
+    }
+
+    @Test
+    public void testHostDownIsTakenOut() {
+        String host = TestDatabases.getMySQLHost() + ":" + TestDatabases.getMySQLPort();
+        // Nothing listens on port 1
+        DatabaseReplicas replicas = replicas(host + ",localhost:1");
+        MySQLAdaptor dba = replicas.acquire();
+        assertSame(dba, replicas.acquire());
+        assertTrue(replicas.toString(), replicas.toString().contains("localhost:1 down, 0 pathways, 1 failures"));
+    }
+
+    @Test(expected = DatabaseUnavailableException.class)
+    public void testEventNotLoadedFromAHostDown() {
+        SbmlConverterForRel converter = new SbmlConverterForRel("R-HSA-0", 77);
+        converter.setHostCheck(dba -> false);
+        converter.setDBA(replicas(TestDatabases.getMySQLHost()).acquire());
+    }
+
+    @Test
+    public void testNothingIsWrittenFromAHostGoneDown() throws Exception {
+        boolean[] up = {true};
+        SbmlConverterForRel converter = new SbmlConverterForRel(TestDatabases.getPathways()[0], 77);
+        converter.setHostCheck(dba -> up[0]);
+        converter.setDBA(replicas(TestDatabases.getMySQLHost()).acquire());
+        assertNotNull(converter.getDBA());
+
+        up[0] = false;
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try {
+            converter.convert(os);
+            throw new AssertionError("Host gone down not reported");
+        } catch (DatabaseUnavailableException e) {
+            assertEquals(0, os.size());
+        }
+        try {
+            converter.convert();
+            throw new AssertionError("Host gone down not reported");
+        } catch (DatabaseUnavailableException e) {
+            // Expected
+        }
+
+        up[0] = true;
+        converter.convert(os);
+        assertTrue(os.size() > 0);
+    }
+
+    private static DatabaseReplicas replicas(String hosts) {
+        return new DatabaseReplicas(Arrays.asList(hosts.split(",")),
+                                    TestDatabases.getMySQLPort(),
+                                    System.getProperty("mysql.db", "release_current"),
+                                    System.getProperty("mysql.user"),
+                                    System.getProperty("mysql.password"),
+                                    0,
+                                    0);
+    }
+}
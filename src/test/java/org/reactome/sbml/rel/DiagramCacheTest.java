@@ -0,0 +1,95 @@
+package org.reactome.sbml.rel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+
+import org.gk.render.Renderable;
+import org.gk.render.RenderablePathway;
+import org.junit.Test;
+
+public class DiagramCacheTest {
+
+    @Test
+    public void testCopiesAreReturned() {
+        DiagramCache cache = new DiagramCache(Long.MAX_VALUE);
+        RenderablePathway diagram = DiagramFixtures.diagram(2);
+        cache.put(1L, diagram);
+        diagram.setDisplayName("Changed after being cached");
+
+        RenderablePathway first = cache.get(1L);
+        assertNotNull(first);
+        assertNotSame(diagram, first);
+        assertEquals("Fixture diagram", first.getDisplayName());
+        assertEquals(diagram.getComponents().size(), first.getComponents().size());
+        // Changing a copy leaves the cached diagram as it was
+        ((Renderable) first.getComponents().get(0)).setDisplayName("Changed copy");
+        RenderablePathway second = cache.get(1L);
+        assertNotSame(first, second);
+        assertEquals("cytosol", ((Renderable) second.getComponents().get(0)).getDisplayName());
+
+        assertNull(cache.get(2L));
+        assertEquals(String.format("1 diagrams cached (%d bytes), 2 hits, 1 misses", size(diagram(2))), cache.toString());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedDiagramsAreEvicted() {
+        long size = size(diagram(2));
+        DiagramCache cache = new DiagramCache(2 * size + size / 2);
+        cache.put(1L, diagram(2));
+        cache.put(2L, diagram(2));
+        assertNotNull(cache.get(1L));
+        cache.put(3L, diagram(2));
+
+        assertNotNull(cache.get(1L));
+        assertNull(cache.get(2L));
+        assertNotNull(cache.get(3L));
+        assertTrue(cache.toString().startsWith(String.format("2 diagrams cached (%d bytes)", 2 * size)));
+    }
+
+    @Test
+    public void testDiagramsLargerThanTheBudgetAreNotCached() {
+        DiagramCache cache = new DiagramCache(size(diagram(2)) - 1);
+        cache.put(1L, diagram(2));
+        assertNull(cache.get(1L));
+        cache.put(2L, diagram(1));
+        assertNotNull(cache.get(2L));
+    }
+
+    @Test
+    public void testClearKeepsThePathwayMapping() {
+        DiagramCache cache = new DiagramCache(Long.MAX_VALUE);
+        cache.setDiagramId(100L, 1L);
+        cache.setDiagramId(200L, null);
+        cache.put(1L, diagram(1));
+        cache.clear();
+
+        assertNull(cache.get(1L));
+        assertEquals(Long.valueOf(1L), cache.getDiagramId(100L));
+        assertTrue(DiagramCache.isNoDiagram(cache.getDiagramId(200L)));
+        assertFalse(DiagramCache.isNoDiagram(cache.getDiagramId(100L)));
+        assertNull(cache.getDiagramId(300L));
+        assertTrue(cache.toString().startsWith("0 diagrams cached (0 bytes)"));
+    }
+
+    private static RenderablePathway diagram(int reactions) {
+        return DiagramFixtures.diagram(reactions);
+    }
+
+    private static long size(RenderablePathway diagram) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+            oos.writeObject(diagram);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return bos.size();
+    }
+}
@@ -0,0 +1,91 @@
+package org.reactome.sbml.rel;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+
+import org.gk.render.Node;
+import org.gk.render.Renderable;
+import org.gk.render.RenderableChemical;
+import org.gk.render.RenderableCompartment;
+import org.gk.render.RenderableComplex;
+import org.gk.render.RenderablePathway;
+import org.gk.render.RenderableProtein;
+import org.gk.render.RenderableReaction;
+import org.reactome.server.tools.sbml.converter.SbmlConverter;
+import org.sbml.jsbml.Model;
+import org.sbml.jsbml.SBMLDocument;
+
+/**
+ * Diagrams built in memory for the layout tests, so that no database is needed. Each call returns a new diagram
+ * with the same objects, IDs and geometry.
+ */
+final class DiagramFixtures {
+
+    static final long COMPARTMENT_ID = 70101L;
+    static final long FIRST_REACTION_ID = 69000L;
+    static final long FIRST_PROTEIN_ID = 100000L;
+    static final long FIRST_CHEMICAL_ID = 200000L;
+    static final long FIRST_COMPLEX_ID = 300000L;
+
+    private DiagramFixtures() {
+    }
+
+    /**
+     * @param reactions the number of reactions, one next to the other, each one with two inputs and one output
+     */
+    static RenderablePathway diagram(int reactions) {
+        RenderablePathway diagram = new RenderablePathway();
+        diagram.setDisplayName("Fixture diagram");
+        int[] ids = {1};
+        RenderableCompartment compartment = new RenderableCompartment();
+        compartment.setDisplayName("cytosol");
+        compartment.setReactomeId(COMPARTMENT_ID);
+        compartment.setBounds(new Rectangle(10, 10, 400 * reactions + 100, 400));
+        add(diagram, compartment, ids);
+        for (int i = 0; i < reactions; i++) {
+            int x = 400 * i + 50;
+            Node protein = node(diagram, new RenderableProtein(), FIRST_PROTEIN_ID + i, "CDK1 [cytosol] " + i, x, 100, ids);
+            Node chemical = node(diagram, new RenderableChemical(), FIRST_CHEMICAL_ID + i, "ATP [cytosol]", x, 250, ids);
+            Node complex = node(diagram, new RenderableComplex(), FIRST_COMPLEX_ID + i, "CDK1:ATP [cytosol] " + i, x + 260, 175, ids);
+            RenderableReaction reaction = new RenderableReaction();
+            reaction.setDisplayName("CDK1 binds ATP " + i);
+            reaction.setReactomeId(FIRST_REACTION_ID + i);
+            reaction.initPosition(new Point(x + 200, 195));
+            reaction.addInput(protein);
+            reaction.addInput(chemical);
+            reaction.addOutput(complex);
+            add(diagram, reaction, ids);
+        }
+        return diagram;
+    }
+
+    /**
+     * @return a document whose model has the compartment, species and reactions drawn in {@link #diagram(int)}
+     */
+    static SBMLDocument document(int reactions) {
+        SBMLDocument rtn = new SBMLDocument(3, 1);
+        Model model = rtn.createModel(SbmlConverter.PATHWAY_PREFIX + "1");
+        model.createCompartment(SbmlConverter.COMPARTMENT_PREFIX + COMPARTMENT_ID);
+        for (int i = 0; i < reactions; i++) {
+            model.createSpecies(SbmlConverter.SPECIES_PREFIX + (FIRST_PROTEIN_ID + i));
+            model.createSpecies(SbmlConverter.SPECIES_PREFIX + (FIRST_CHEMICAL_ID + i));
+            model.createSpecies(SbmlConverter.SPECIES_PREFIX + (FIRST_COMPLEX_ID + i));
+            model.createReaction(SbmlConverter.REACTION_PREFIX + (FIRST_REACTION_ID + i));
+        }
+        return rtn;
+    }
+
+    private static Node node(RenderablePathway diagram, Node node, long reactomeId, String name, int x, int y, int[] ids) {
+        node.setDisplayName(name);
+        node.setReactomeId(reactomeId);
+        node.setBounds(new Rectangle(x, y, 120, 40));
+        node.setPosition(new Point(x + 60, y + 20));
+        add(diagram, node, ids);
+        return node;
+    }
+
+    private static void add(RenderablePathway diagram, Renderable r, int[] ids) {
+        r.setID(ids[0]++);
+        diagram.addComponent(r);
+    }
+}
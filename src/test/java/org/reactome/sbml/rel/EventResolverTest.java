@@ -0,0 +1,74 @@
+package org.reactome.sbml.rel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.gk.model.GKInstance;
+import org.gk.persistence.MySQLAdaptor;
+import org.junit.Before;
+import org.junit.Test;
+import org.reactome.server.tools.sbml.TestDatabases;
+
+public class EventResolverTest {
+
+    private MySQLAdaptor dba;
+
+    @Before
+    public void setUp() throws Exception {
+        dba = TestDatabases.assumeMySQL();
+    }
+
+    @Test
+    public void testStableIdsAreResolved() throws Exception {
+        EventResolver resolver = new EventResolver(dba);
+        List<String> identifiers = new ArrayList<>(Arrays.asList(TestDatabases.getPathways()));
+        identifiers.add("R-HSA-0");
+        identifiers.add("not an identifier");
+        assertEquals(new HashSet<>(Arrays.asList("R-HSA-0", "not an identifier")), new HashSet<>(resolver.resolve(identifiers)));
+
+        // Checked against the events fetched one by one with another adaptor
+        MySQLAdaptor check = TestDatabases.assumeMySQL();
+        for (String stId : TestDatabases.getPathways()) {
+            EventResolver.ResolvedEvent event = resolver.get(stId);
+            assertNotNull(stId, event);
+            assertEquals(stId, event.getStId());
+            GKInstance instance = check.fetchInstance(event.getDbId());
+            assertNotNull(stId, instance);
+            assertEquals(instance.getDisplayName(), event.getDisplayName());
+        }
+        assertNull(resolver.get("R-HSA-0"));
+    }
+
+    @Test
+    public void testDbIdsAreResolvedToTheirStableIds() throws Exception {
+        EventResolver byStId = new EventResolver(dba);
+        byStId.resolve(Arrays.asList(TestDatabases.getPathways()));
+        List<String> dbIds = new ArrayList<>();
+        for (String stId : TestDatabases.getPathways()) dbIds.add(byStId.get(stId).getDbId().toString());
+
+        EventResolver byDbId = new EventResolver(dba);
+        dbIds.add("0");
+        assertEquals(Arrays.asList("0"), byDbId.resolve(dbIds));
+        for (String stId : TestDatabases.getPathways()) {
+            String dbId = byStId.get(stId).getDbId().toString();
+            assertEquals(stId, byDbId.get(dbId).getStId());
+            // Also found by the stable id it has been resolved to
+            assertEquals(byDbId.get(dbId), byDbId.get(stId));
+        }
+    }
+
+    @Test
+    public void testResolversDoNotShareTheirEvents() throws Exception {
+        String stId = TestDatabases.getPathways()[0];
+        EventResolver first = new EventResolver(dba);
+        first.resolve(Arrays.asList(stId));
+        assertNotNull(first.get(stId));
+        assertNull(new EventResolver(dba).get(stId));
+    }
+}
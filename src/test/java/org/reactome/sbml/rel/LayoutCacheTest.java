@@ -0,0 +1,82 @@
+package org.reactome.sbml.rel;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LayoutCacheTest {
+
+    private static final String XML = "<Process reactomeId=\"69620\"><Nodes/><Edges/></Process>";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testGeometryIsReusedAcrossRuns() throws Exception {
+        File dir = new File(folder.getRoot(), "layouts");
+        LayoutCache first = new LayoutCache(dir);
+        assertNull(first.get(new LayoutCache.Key(1L, XML, true)));
+        first.put(new LayoutCache.Key(1L, XML, true), geometry("CDK1"));
+        assertEquals("0 layouts reused, 1 computed (0 outdated), 1 stored", first.toString());
+
+        // A new cache on the same directory, as the next run does
+        LayoutCache second = new LayoutCache(dir);
+        LayoutGeometry geometry = second.get(new LayoutCache.Key(1L, XML, true));
+        assertNotNull(geometry);
+        assertEquals(1, geometry.nodes.size());
+        assertEquals("CDK1", geometry.nodes.get(0).displayName);
+        assertEquals(new Rectangle(10, 20, 120, 40), geometry.nodes.get(0).bounds);
+        assertEquals(new Rectangle(0, 0, 500, 400), geometry.diagramBounds);
+        assertEquals("1 layouts reused, 0 computed (0 outdated), 0 stored", second.toString());
+        // Only the entry is left, no temporary file
+        assertArrayEquals(new String[]{"1.layout"}, dir.list());
+    }
+
+    @Test
+    public void testEditedDiagramIsOutdated() throws Exception {
+        LayoutCache cache = new LayoutCache(folder.getRoot());
+        cache.put(new LayoutCache.Key(1L, XML, true), geometry("CDK1"));
+
+        assertNull(cache.get(new LayoutCache.Key(1L, XML.replace("69620", "69621"), true)));
+        // The headless validation is part of the key too
+        assertNull(cache.get(new LayoutCache.Key(1L, XML, false)));
+        assertNull(cache.get(new LayoutCache.Key(2L, XML, true)));
+        assertEquals("0 layouts reused, 3 computed (2 outdated), 1 stored", cache.toString());
+
+        // Computed again and overwritten
+        cache.put(new LayoutCache.Key(1L, XML, false), geometry("CDK2"));
+        assertEquals("CDK2", cache.get(new LayoutCache.Key(1L, XML, false)).nodes.get(0).displayName);
+        assertNull(cache.get(new LayoutCache.Key(1L, XML, true)));
+    }
+
+    @Test
+    public void testUnreadableEntryIsOutdated() throws Exception {
+        LayoutCache cache = new LayoutCache(folder.getRoot());
+        Files.write(new File(folder.getRoot(), "1.layout").toPath(), new byte[]{1, 2, 3});
+        assertNull(cache.get(new LayoutCache.Key(1L, XML, true)));
+        assertTrue(cache.toString().contains("(1 outdated)"));
+    }
+
+    private static LayoutGeometry geometry(String name) {
+        LayoutGeometry rtn = new LayoutGeometry();
+        LayoutGeometry.NodeShape node = new LayoutGeometry.NodeShape();
+        node.reactomeId = 100000L;
+        node.id = 2;
+        node.bounds = new Rectangle(10, 20, 120, 40);
+        node.textBounds = new Rectangle(15, 25, 110, 30);
+        node.displayName = name;
+        rtn.nodes.add(node);
+        rtn.diagramBounds = new Rectangle(0, 0, 500, 400);
+        return rtn;
+    }
+}
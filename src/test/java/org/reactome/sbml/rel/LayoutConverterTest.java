@@ -0,0 +1,166 @@
+package org.reactome.sbml.rel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.gk.model.GKInstance;
+import org.gk.model.InstanceUtilities;
+import org.gk.model.ReactomeJavaConstants;
+import org.gk.persistence.MySQLAdaptor;
+import org.gk.render.Node;
+import org.gk.render.Renderable;
+import org.gk.render.RenderableEntitySet;
+import org.gk.render.RenderablePathway;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.reactome.server.tools.sbml.TestDatabases;
+import org.reactome.server.tools.sbml.converter.SbmlTrees;
+import org.sbml.jsbml.SBMLDocument;
+import org.sbml.jsbml.SBMLWriter;
+import org.sbml.jsbml.ext.layout.Layout;
+import org.sbml.jsbml.ext.layout.LayoutConstants;
+import org.sbml.jsbml.ext.layout.LayoutModelPlugin;
+
+public class LayoutConverterTest {
+
+    @BeforeClass
+    public static void setUp() {
+        System.setProperty("java.awt.headless", "true");
+    }
+
+    @After
+    public void reset() {
+        LayoutConverter.setLayoutThreads(0);
+        LayoutConverter.setHeadless(false);
+    }
+
+    @Test
+    public void testHeadlessValidationMatchesTheImageBasedOne() {
+        LayoutConverter converter = new LayoutConverter();
+        RenderablePathway headless = DiagramFixtures.diagram(3);
+        converter.validateLayoutHeadless(headless);
+        RenderablePathway onImage = DiagramFixtures.diagram(3);
+        converter.validateLayoutOnImage(onImage);
+
+        Map<Integer, double[]> expected = getGeometry(converter, onImage);
+        Map<Integer, double[]> found = getGeometry(converter, headless);
+        assertEquals(expected.keySet(), found.keySet());
+        // The compartment, 3 nodes and the reaction of each step
+        assertEquals(1 + 3 * 4, found.size());
+        for (Integer id : expected.keySet()) {
+            double[] e = expected.get(id);
+            double[] f = found.get(id);
+            assertEquals(e.length, f.length);
+            for (int i = 0; i < e.length; i++) {
+                assertEquals(id + ": " + Arrays.toString(f) + " vs " + Arrays.toString(e), e[i], f[i], LayoutConverter.HEADLESS_TOLERANCE);
+            }
+        }
+    }
+
+    @Test
+    public void testHeadlessValidationSetsTheTextBounds() {
+        RenderablePathway diagram = DiagramFixtures.diagram(1);
+        new LayoutConverter().validateLayoutHeadless(diagram);
+        for (Object o : diagram.getComponents()) {
+            if (!(o instanceof Node)) continue;
+            Node node = (Node) o;
+            assertNotNull(node.getDisplayName(), node.getTextBounds());
+            assertTrue(node.getDisplayName(), node.getTextBounds().width > 0);
+        }
+    }
+
+    @Test
+    public void testLayoutThreadsGiveTheInlineLayout() throws Exception {
+        for (boolean headless : new boolean[]{false, true}) {
+            LayoutConverter.setHeadless(headless);
+            LayoutConverter.setLayoutThreads(0);
+            List<String> inline = layOut(4);
+            LayoutConverter.setLayoutThreads(2);
+            List<String> threads = layOut(4);
+            assertEquals(inline, threads);
+        }
+    }
+
+    /**
+     * Lays out several documents at once as a run does, each one with its own converter and diagram
+     *
+     * @return the canonical form of every document
+     */
+    private static List<String> layOut(int documents) throws Exception {
+        List<LayoutConverter> converters = new ArrayList<>();
+        List<RenderablePathway> diagrams = new ArrayList<>();
+        for (int i = 0; i < documents; i++) {
+            LayoutConverter converter = new LayoutConverter();
+            RenderablePathway diagram = DiagramFixtures.diagram(i + 1);
+            // Nothing is done unless the layout threads are used
+            converter.prepareLayout(diagram);
+            converters.add(converter);
+            diagrams.add(diagram);
+        }
+        List<String> rtn = new ArrayList<>();
+        for (int i = 0; i < documents; i++) {
+            SBMLDocument document = DiagramFixtures.document(i + 1);
+            converters.get(i).addLayout(document.getModel(), null, diagrams.get(i));
+            Layout layout = ((LayoutModelPlugin) document.getModel().getExtension(LayoutConstants.namespaceURI)).getLayout(0);
+            assertEquals(1, layout.getCompartmentGlyphCount());
+            assertEquals(3 * (i + 1), layout.getSpeciesGlyphCount());
+            assertEquals(i + 1, layout.getReactionGlyphCount());
+            rtn.add(SbmlTrees.canonical(new SBMLWriter().writeSBMLToString(document)));
+        }
+        return rtn;
+    }
+
+    @Test
+    public void testDrugSetsResolvedInBatchMatchTheSetsCheckedOneByOne() throws Exception {
+        MySQLAdaptor dba = TestDatabases.assumeMySQL();
+        // Another adaptor so that the sets are checked on instances not loaded in batch
+        MySQLAdaptor check = TestDatabases.assumeMySQL();
+        LayoutConverter converter = new LayoutConverter();
+        converter.setDBA(dba);
+        int sets = 0;
+        for (String stId : TestDatabases.getPathways()) {
+            RenderablePathway diagram = converter.getDiagram(getPathway(dba, stId));
+            if (diagram == null) continue;
+            Map<Long, String> terms = converter.getSBOTerms(diagram);
+            for (Object o : diagram.getComponents()) {
+                if (!(o instanceof RenderableEntitySet) || ((Renderable) o).getReactomeId() == null) continue;
+                Long dbId = ((Renderable) o).getReactomeId();
+                boolean hasDrug = InstanceUtilities.hasDrug(check.fetchInstance(dbId));
+                assertEquals(stId + ": " + dbId, hasDrug ? "SBO:0000298" : "SBO:0000289", terms.get(dbId));
+                sets++;
+            }
+        }
+        assertTrue("No entity set drawn in " + Arrays.toString(TestDatabases.getPathways()), sets > 0);
+    }
+
+    private static GKInstance getPathway(MySQLAdaptor dba, String stId) throws Exception {
+        Collection<GKInstance> stableIds = dba.fetchInstanceByAttribute(ReactomeJavaConstants.StableIdentifier,
+                                                                        ReactomeJavaConstants.identifier,
+                                                                        "=",
+                                                                        stId);
+        assertEquals(stId, 1, stableIds.size());
+        Collection<GKInstance> events = dba.fetchInstanceByAttribute(ReactomeJavaConstants.Event,
+                                                                     ReactomeJavaConstants.stableIdentifier,
+                                                                     "=",
+                                                                     stableIds.iterator().next());
+        assertEquals(stId, 1, events.size());
+        return events.iterator().next();
+    }
+
+    private static Map<Integer, double[]> getGeometry(LayoutConverter converter, RenderablePathway diagram) {
+        Map<Integer, double[]> rtn = new HashMap<>();
+        for (Map.Entry<Renderable, double[]> entry : converter.getGeometry(diagram).entrySet()) {
+            rtn.put(entry.getKey().getID(), entry.getValue());
+        }
+        return rtn;
+    }
+}
@@ -0,0 +1,57 @@
+package org.reactome.sbml.rel;
+
+import org.gk.render.RenderablePathway;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Compares the headless validation of the diagrams with the image based one on fixture diagrams of growing size, so
+ * that the cost of painting the whole diagram shows. Not part of the build, run it with
+ * <pre>
+ * mvn test -Dtest=LayoutValidationBenchmark -Dbenchmark.rounds=20 [-Dbenchmark.reactions=10,50,200]
+ * </pre>
+ */
+public class LayoutValidationBenchmark {
+
+    @BeforeClass
+    public static void setUp() {
+        Assume.assumeTrue("No benchmark rounds given (-Dbenchmark.rounds)", System.getProperty("benchmark.rounds") != null);
+        System.setProperty("java.awt.headless", "true");
+    }
+
+    @Test
+    public void compareValidations() {
+        int rounds = Integer.getInteger("benchmark.rounds");
+        LayoutConverter converter = new LayoutConverter();
+        // Warm up both validations before measuring
+        run(converter, true, 10, rounds);
+        run(converter, false, 10, rounds);
+        for (String reactions : System.getProperty("benchmark.reactions", "10,50,200").split(",")) {
+            int n = Integer.parseInt(reactions.trim());
+            report("headless", n, rounds, run(converter, true, n, rounds));
+            report("image", n, rounds, run(converter, false, n, rounds));
+        }
+    }
+
+    /**
+     * @return the elapsed time in milliseconds
+     */
+    private static long run(LayoutConverter converter, boolean headless, int reactions, int rounds) {
+        long elapsed = 0;
+        for (int i = 0; i < rounds; i++) {
+            // A new diagram each round: the validation changes the one it is given
+            RenderablePathway diagram = DiagramFixtures.diagram(reactions);
+            long start = System.currentTimeMillis();
+            if (headless) converter.validateLayoutHeadless(diagram);
+            else converter.validateLayoutOnImage(diagram);
+            elapsed += System.currentTimeMillis() - start;
+        }
+        return elapsed;
+    }
+
+    private static void report(String validation, int reactions, int rounds, long millis) {
+        System.out.println(String.format("%-8s %4d reactions: %d diagrams in %d ms (%.1f ms/diagram)",
+                                         validation, reactions, rounds, millis, millis / (double) Math.max(1, rounds)));
+    }
+}
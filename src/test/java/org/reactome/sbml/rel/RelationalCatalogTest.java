@@ -0,0 +1,78 @@
+package org.reactome.sbml.rel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.gk.model.GKInstance;
+import org.gk.model.ReactomeJavaConstants;
+import org.gk.persistence.MySQLAdaptor;
+import org.junit.Before;
+import org.junit.Test;
+import org.reactome.server.tools.sbml.TestDatabases;
+
+public class RelationalCatalogTest {
+
+    private MySQLAdaptor dba;
+    private RelationalCatalog catalog;
+
+    @Before
+    public void setUp() throws Exception {
+        dba = TestDatabases.assumeMySQL();
+        catalog = new RelationalCatalog(dba);
+    }
+
+    @Test
+    public void testReleaseNumber() throws Exception {
+        assertNotNull(catalog.getReleaseNumber());
+        assertEquals(dba.getReleaseNumber(), catalog.getReleaseNumber());
+    }
+
+    @Test
+    public void testSpeciesAreSortedAndHavePathways() throws Exception {
+        List<GKInstance> species = catalog.getSpecies();
+        assertFalse(species.isEmpty());
+        for (int i = 0; i < species.size(); i++) {
+            if (i > 0) assertTrue(species.get(i - 1).getDBID() < species.get(i).getDBID());
+            assertFalse(species.get(i).getDisplayName(), catalog.getPathways(species.get(i)).isEmpty());
+        }
+    }
+
+    @Test
+    public void testSpeciesAreFoundByNameOrDbId() throws Exception {
+        GKInstance human = catalog.getSpecies("homo sapiens");
+        assertNotNull(human);
+        assertEquals("Homo sapiens", human.getDisplayName());
+        assertEquals(human, catalog.getSpecies(human.getDBID().toString()));
+        assertNull(catalog.getSpecies("Not a species"));
+    }
+
+    @Test
+    public void testPathwaysAreTheOnesOfTheSpecies() throws Exception {
+        GKInstance human = catalog.getSpecies("Homo sapiens");
+        List<String> pathways = catalog.getPathways(human);
+        assertTrue(pathways.containsAll(Arrays.asList(TestDatabases.getPathways())));
+
+        // Checked against the pathways queried for the species on their own, with another adaptor
+        MySQLAdaptor check = TestDatabases.assumeMySQL();
+        Collection<GKInstance> expected = check.fetchInstanceByAttribute(ReactomeJavaConstants.Pathway,
+                                                                         ReactomeJavaConstants.species,
+                                                                         "=",
+                                                                         human.getDBID());
+        Set<String> stIds = new HashSet<>();
+        for (GKInstance pathway : expected) {
+            GKInstance stableId = (GKInstance) pathway.getAttributeValue(ReactomeJavaConstants.stableIdentifier);
+            if (stableId != null) stIds.add((String) stableId.getAttributeValue(ReactomeJavaConstants.identifier));
+        }
+        assertEquals(stIds, new HashSet<>(pathways));
+        assertEquals(stIds.size(), pathways.size());
+    }
+}
@@ -0,0 +1,67 @@
+package org.reactome.server.tools.sbml;
+
+import org.gk.persistence.MySQLAdaptor;
+import org.junit.Assume;
+import org.reactome.server.graph.utils.ReactomeGraphCore;
+import org.reactome.server.tools.sbml.config.GraphNeo4jConfig;
+
+/**
+ * Connections for the tests that need a release database. These tests are skipped unless the databases are given as
+ * system properties, e.g.
+ * <pre>
+ * mvn test -Dneo4j.password=... [-Dneo4j.host=localhost -Dneo4j.port=7474 -Dneo4j.user=neo4j -Dneo4j.driver=http]
+ * mvn test -Dmysql.user=... -Dmysql.password=... [-Dmysql.host=localhost -Dmysql.port=3306 -Dmysql.db=release_current]
+ * </pre>
+ */
+public final class TestDatabases {
+
+    private static boolean graphInitialised = false;
+
+    private TestDatabases() {
+    }
+
+    /**
+     * Skips the calling test unless the graph database is given, initialising ReactomeGraphCore the first time
+     */
+    public static synchronized void assumeGraph() {
+        String password = System.getProperty("neo4j.password");
+        Assume.assumeTrue("No graph database given (-Dneo4j.password)", password != null);
+        if (graphInitialised) return;
+        ReactomeGraphCore.initialise(System.getProperty("neo4j.host", "localhost"),
+                                     System.getProperty("neo4j.port", "7474"),
+                                     System.getProperty("neo4j.user", "neo4j"),
+                                     password,
+                                     GraphNeo4jConfig.class);
+        graphInitialised = true;
+    }
+
+    /**
+     * Skips the calling test unless the relational database is given
+     *
+     * @return a new adaptor of the relational database
+     */
+    public static MySQLAdaptor assumeMySQL() throws Exception {
+        Assume.assumeTrue("No mysql database given (-Dmysql.user and -Dmysql.password)",
+                          System.getProperty("mysql.user") != null && System.getProperty("mysql.password") != null);
+        return new MySQLAdaptor(getMySQLHost(),
+                                System.getProperty("mysql.db", "release_current"),
+                                System.getProperty("mysql.user"),
+                                System.getProperty("mysql.password"),
+                                getMySQLPort());
+    }
+
+    public static String getMySQLHost() {
+        return System.getProperty("mysql.host", "localhost");
+    }
+
+    public static int getMySQLPort() {
+        return Integer.getInteger("mysql.port", 3306);
+    }
+
+    /**
+     * @return the pathways to convert in the tests against the release databases (-Dsbml.pathways, comma separated)
+     */
+    public static String[] getPathways() {
+        return System.getProperty("sbml.pathways", "R-HSA-69620,R-HSA-400253,R-HSA-5205685").split(",");
+    }
+}
@@ -0,0 +1,128 @@
+package org.reactome.server.tools.sbml.config;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.neo4j.harness.ServerControls;
+import org.neo4j.harness.TestServerBuilders;
+import org.reactome.server.graph.service.AdvancedDatabaseObjectService;
+import org.reactome.server.tools.sbml.converter.Fixtures;
+import org.reactome.server.tools.sbml.data.DataFactory;
+import org.reactome.server.tools.sbml.data.model.ParticipantDetails;
+import org.reactome.server.tools.sbml.data.model.ReactionBase;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+/**
+ * Compares the HTTP and Bolt drivers on the {@link DataFactory} queries retrieving the reactions and participants of
+ * a pathway, run by several workers each one with its own session as {@link GraphNeo4jConfig#getSession()} provides.
+ * The queries are sent to an in-process Neo4j loaded with the pathway of {@link Fixtures} (fixture-pathway.cypher),
+ * through the AdvancedDatabaseObjectService of a context built on each driver. Not part of the build, run it with
+ * <pre>
+ * mvn test -Dtest=GraphDriverBenchmark -Dbenchmark.rounds=200 [-Dbenchmark.threads=8]
+ * </pre>
+ */
+public class GraphDriverBenchmark {
+
+    private static final List<Long> REACTIONS = Arrays.asList(68532L, 68533L);
+    private static final List<Long> PARTICIPANTS = Arrays.asList(29370L, 68524L, 68530L, 113592L);
+
+    private static Properties properties;
+    private static ServerControls server;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        Assume.assumeTrue("No benchmark rounds given (-Dbenchmark.rounds)", System.getProperty("benchmark.rounds") != null);
+        properties = (Properties) System.getProperties().clone();
+        server = TestServerBuilders.newInProcessBuilder().withFixture(getFixture()).newServer();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        if (server != null) server.close();
+        if (properties != null) System.setProperties(properties);
+    }
+
+    @Test
+    public void compareDrivers() throws Exception {
+        int threads = Integer.getInteger("benchmark.threads", 8);
+        int rounds = Integer.getInteger("benchmark.rounds");
+        for (String driver : new String[]{GraphNeo4jConfig.HTTP_DRIVER, GraphNeo4jConfig.BOLT_DRIVER}) {
+            try (AnnotationConfigApplicationContext context = getContext(driver, threads)) {
+                AdvancedDatabaseObjectService ads = context.getBean(AdvancedDatabaseObjectService.class);
+                // Both drivers have to retrieve the fixture pathway, which also warms them up before measuring
+                assertEquals(driver, REACTIONS, getDbIds(DataFactory.getReactionList(Fixtures.PATHWAY_ST_ID, ads)));
+                assertEquals(driver, PARTICIPANTS, DataFactory.getParticipantDetails(Fixtures.PATHWAY_ST_ID, ads).stream()
+                        .map(p -> p.getPhysicalEntity().getDbId())
+                        .collect(Collectors.toList()));
+                run(ads, threads, rounds);
+                for (int t : new int[]{1, threads}) report(driver, t, rounds, run(ads, t, rounds));
+            }
+        }
+    }
+
+    /**
+     * @return the elapsed time in milliseconds
+     */
+    private static long run(AdvancedDatabaseObjectService ads, int threads, int rounds) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long start = System.currentTimeMillis();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < rounds; i++) {
+                futures.add(executor.submit(() -> {
+                    Collection<ReactionBase> reactions = DataFactory.getReactionList(Fixtures.PATHWAY_ST_ID, ads);
+                    Collection<ParticipantDetails> participants = DataFactory.getParticipantDetails(Fixtures.PATHWAY_ST_ID, ads);
+                    return reactions.size() + participants.size();
+                }));
+            }
+            for (Future<?> future : futures) future.get();
+            return System.currentTimeMillis() - start;
+        } finally {
+            // The sessions of these workers are released when the context is closed
+            executor.shutdown();
+        }
+    }
+
+    private static AnnotationConfigApplicationContext getContext(String driver, int threads) {
+        URI uri = driver.equals(GraphNeo4jConfig.BOLT_DRIVER) ? server.boltURI() : server.httpURI();
+        System.setProperty("neo4j.driver", driver);
+        System.setProperty("neo4j.host", uri.getHost());
+        System.setProperty("neo4j.port", String.valueOf(uri.getPort()));
+        // The test server does not check them
+        System.setProperty("neo4j.user", "neo4j");
+        System.setProperty("neo4j.password", "neo4j");
+        System.setProperty("neo4j.pool", String.valueOf(threads));
+        return new AnnotationConfigApplicationContext(GraphNeo4jConfig.class);
+    }
+
+    private static String getFixture() throws Exception {
+        List<String> lines = Files.readAllLines(Paths.get(GraphDriverBenchmark.class.getResource("fixture-pathway.cypher").toURI()), StandardCharsets.UTF_8);
+        return lines.stream().filter(line -> !line.startsWith("//")).collect(Collectors.joining("\n"));
+    }
+
+    private static List<Long> getDbIds(Collection<ReactionBase> reactions) {
+        return reactions.stream().map(ReactionBase::getDbId).collect(Collectors.toList());
+    }
+
+    private static void report(String driver, int threads, int rounds, long millis) {
+        System.out.println(String.format("%-4s %2d worker%s: %d pathways (%d queries) in %d ms (%.1f pathways/s)",
+                                         driver, threads, threads == 1 ? " " : "s", rounds, rounds * 2, millis, rounds * 1000d / Math.max(1, millis)));
+    }
+}
@@ -0,0 +1,53 @@
+package org.reactome.server.tools.sbml.config;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.ogm.config.Configuration;
+
+public class GraphNeo4jConfigTest {
+
+    private Properties properties;
+
+    @Before
+    public void setUp() {
+        properties = (Properties) System.getProperties().clone();
+        System.setProperty("neo4j.host", "graph.example.org");
+        System.setProperty("neo4j.port", "7687");
+        System.setProperty("neo4j.user", "neo4j");
+        System.setProperty("neo4j.password", "secret");
+    }
+
+    @After
+    public void tearDown() {
+        System.setProperties(properties);
+    }
+
+    @Test
+    public void testHttpByDefault() {
+        System.clearProperty("neo4j.driver");
+        Configuration config = new GraphNeo4jConfig().getConfiguration();
+        assertEquals("org.neo4j.ogm.drivers.http.driver.HttpDriver", config.driverConfiguration().getDriverClassName());
+        assertEquals("http://graph.example.org:7687", config.driverConfiguration().getURI());
+    }
+
+    @Test
+    public void testBolt() {
+        System.setProperty("neo4j.driver", "BOLT");
+        System.setProperty("neo4j.pool", "32");
+        Configuration config = new GraphNeo4jConfig().getConfiguration();
+        assertEquals("org.neo4j.ogm.drivers.bolt.driver.BoltDriver", config.driverConfiguration().getDriverClassName());
+        assertEquals("bolt://graph.example.org:7687", config.driverConfiguration().getURI());
+        assertEquals(Integer.valueOf(32), config.driverConfiguration().getConnectionPoolSize());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownDriver() {
+        System.setProperty("neo4j.driver", "embedded");
+        new GraphNeo4jConfig().getConfiguration();
+    }
+}
@@ -0,0 +1,131 @@
+package org.reactome.server.tools.sbml.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Scope;
+import org.springframework.context.annotation.ScopedProxyMode;
+
+public class WorkerScopeTest {
+
+    private static final List<Worker> opened = new CopyOnWriteArrayList<>();
+
+    private AnnotationConfigApplicationContext context;
+
+    @Before
+    public void setUp() {
+        opened.clear();
+        context = new AnnotationConfigApplicationContext(WorkerConfig.class);
+    }
+
+    @After
+    public void tearDown() {
+        context.close();
+    }
+
+    @Test
+    public void testEveryThreadGetsItsOwnBean() throws Exception {
+        Worker proxy = context.getBean(Worker.class);
+        Thread here = proxy.getThread();
+        assertSame(Thread.currentThread(), here);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Thread there = executor.submit(proxy::getThread).get();
+            assertNotSame(here, there);
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(2, opened.size());
+        // Asked again on this thread, the bean is the same one
+        proxy.getThread();
+        assertEquals(2, opened.size());
+        assertEquals(2, context.getBean(WorkerScope.class).getWorkers());
+    }
+
+    @Test
+    public void testReleasedBeansAreDestroyed() {
+        Worker proxy = context.getBean(Worker.class);
+        proxy.getThread();
+        WorkerScope.release();
+        assertTrue(opened.get(0).isClosed());
+        assertEquals(0, context.getBean(WorkerScope.class).getWorkers());
+        // A new one once released
+        proxy.getThread();
+        assertEquals(2, opened.size());
+        assertFalse(opened.get(1).isClosed());
+    }
+
+    @Test
+    public void testBeansLeftAreDestroyedWithTheContext() throws Exception {
+        Worker proxy = context.getBean(Worker.class);
+        proxy.getThread();
+        Thread worker = new Thread(proxy::getThread);
+        worker.start();
+        worker.join();
+        assertEquals(2, opened.size());
+        context.close();
+        for (Worker w : opened) assertTrue(w.isClosed());
+        // The scope of a closed context is no longer released
+        WorkerScope.release();
+    }
+
+    public interface Worker {
+        Thread getThread();
+
+        boolean isClosed();
+
+        void close();
+    }
+
+    private static class ThreadWorker implements Worker {
+        private final Thread thread = Thread.currentThread();
+        private boolean closed = false;
+
+        @Override
+        public Thread getThread() {
+            return thread;
+        }
+
+        @Override
+        public boolean isClosed() {
+            return closed;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    @Configuration
+    static class WorkerConfig {
+
+        @Bean
+        public static WorkerScope getWorkerScope() {
+            return new WorkerScope(GraphNeo4jConfig.WORKER_SCOPE);
+        }
+
+        // As GraphNeo4jConfig#getSession()
+        @Bean(destroyMethod = "close")
+        @Scope(value = GraphNeo4jConfig.WORKER_SCOPE, proxyMode = ScopedProxyMode.INTERFACES)
+        public Worker getWorker() {
+            Worker worker = new ThreadWorker();
+            opened.add(worker);
+            return worker;
+        }
+    }
+}
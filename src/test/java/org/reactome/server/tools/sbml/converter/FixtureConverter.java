@@ -0,0 +1,51 @@
+package org.reactome.server.tools.sbml.converter;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.reactome.server.tools.sbml.data.model.ParticipantDetails;
+import org.reactome.server.tools.sbml.data.model.ReactionBase;
+
+/**
+ * Converts the given participants and reactions instead of retrieving them from the graph database
+ */
+public class FixtureConverter extends SbmlConverter {
+
+    private final List<ParticipantDetails> participants;
+    private final List<ReactionBase> reactions;
+
+    /**
+     * Converts {@link Fixtures#pathway()}
+     */
+    public FixtureConverter() {
+        this(Fixtures.participants(), Fixtures.reactions());
+    }
+
+    public FixtureConverter(List<ParticipantDetails> participants, List<ReactionBase> reactions) {
+        super(Fixtures.PATHWAY_ST_ID, Fixtures.VERSION);
+        this.pathway = Fixtures.pathway();
+        this.participants = participants;
+        this.reactions = reactions;
+    }
+
+    @Override
+    protected void forEachParticipant(Consumer<ParticipantDetails> action) {
+        participants.forEach(action);
+    }
+
+    @Override
+    protected void forEachReaction(Consumer<ReactionBase> action) {
+        reactions.forEach(action);
+    }
+
+    @Override
+    protected Collection<ParticipantDetails> getParticipantDetails() {
+        return participants;
+    }
+
+    @Override
+    protected Collection<ReactionBase> getReactionList() {
+        return reactions;
+    }
+}
@@ -0,0 +1,246 @@
+package org.reactome.server.tools.sbml.converter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.reactome.server.graph.domain.model.AbstractModifiedResidue;
+import org.reactome.server.graph.domain.model.Affiliation;
+import org.reactome.server.graph.domain.model.Compartment;
+import org.reactome.server.graph.domain.model.Complex;
+import org.reactome.server.graph.domain.model.EntityWithAccessionedSequence;
+import org.reactome.server.graph.domain.model.Event;
+import org.reactome.server.graph.domain.model.InstanceEdit;
+import org.reactome.server.graph.domain.model.LiteratureReference;
+import org.reactome.server.graph.domain.model.ModifiedResidue;
+import org.reactome.server.graph.domain.model.Pathway;
+import org.reactome.server.graph.domain.model.Person;
+import org.reactome.server.graph.domain.model.PhysicalEntity;
+import org.reactome.server.graph.domain.model.PsiMod;
+import org.reactome.server.graph.domain.model.Publication;
+import org.reactome.server.graph.domain.model.Reaction;
+import org.reactome.server.graph.domain.model.SimpleEntity;
+import org.reactome.server.graph.domain.model.Summation;
+import org.reactome.server.tools.sbml.data.model.IdentifierBase;
+import org.reactome.server.tools.sbml.data.model.Participant;
+import org.reactome.server.tools.sbml.data.model.ParticipantDetails;
+import org.reactome.server.tools.sbml.data.model.ReactionBase;
+
+/**
+ * A small pathway built from detached domain objects, so the converters can be tested without a database. Every call
+ * returns new objects since the conversion adds urls to the participants.
+ */
+public final class Fixtures {
+
+    public static final Integer VERSION = 77;
+    public static final String PATHWAY_ST_ID = "R-HSA-69620";
+
+    public static final String CYTOSOL_URL = "https://www.ebi.ac.uk/QuickGO/term/GO:0005829";
+    public static final String NUCLEOPLASM_URL = "https://www.ebi.ac.uk/QuickGO/term/GO:0005654";
+    public static final String PUBMED_URL = "http://www.ncbi.nlm.nih.gov/pubmed/2188730";
+    public static final String PSI_MOD_URL = "https://www.ebi.ac.uk/ols/ontologies/mod/terms?obo_id=MOD:00046";
+    public static final String GO_TERM_URL = "https://www.ebi.ac.uk/QuickGO/term/GO:0004693";
+    public static final String EC_NUMBER_URL = "https://identifiers.org/ec-code/2.7.11.22";
+
+    private Fixtures() {
+    }
+
+    public static Pathway pathway() {
+        Pathway pathway = new Pathway();
+        pathway.setDbId(69620L);
+        pathway.setStId(PATHWAY_ST_ID);
+        pathway.setDisplayName("Cell Cycle Checkpoints");
+        setEvent(pathway, nucleoplasm(), "A checkpoint is a <i>control</i> point");
+        return pathway;
+    }
+
+    public static List<ParticipantDetails> participants() {
+        return Arrays.asList(
+                details(atp(), ids(1, "CHEBI:30616"), "https://identifiers.org/CHEBI:30616"),
+                details(adp(), ids(1, "CHEBI:456216"), "https://identifiers.org/CHEBI:456216"),
+                details(cdk1(), ids(1, "P06493"), "https://identifiers.org/uniprot:P06493"),
+                details(cdk1Atp(), ids(1, "CHEBI:30616", 2, "P06493"), "https://identifiers.org/CHEBI:30616", "https://identifiers.org/uniprot:P06493"));
+    }
+
+    public static List<ReactionBase> reactions() {
+        Reaction phosphorylation = new Reaction();
+        phosphorylation.setDbId(68532L);
+        phosphorylation.setStId("R-HSA-68532");
+        phosphorylation.setDisplayName("CDK1 phosphorylates ATP");
+        setEvent(phosphorylation, nucleoplasm(), "CDK1 <b>transfers</b> a phosphate & releases ADP");
+
+        ReactionBase first = new ReactionBase();
+        first.setRle(phosphorylation);
+        first.setGoTerms(Collections.singletonList(GO_TERM_URL));
+        first.setEcNumbers(Collections.singletonList(EC_NUMBER_URL));
+        first.setLiteratureRefs(Collections.singletonList(PUBMED_URL));
+        first.setXrefs(new ArrayList<>());
+        first.setDiseases(new ArrayList<>());
+        first.setInputs(Arrays.asList(participant(atp(), 2), participant(cdk1(), 1)));
+        first.setOutputs(Arrays.asList(participant(adp(), 2), participant(cdk1Atp(), 1)));
+        first.setCatalysts(Collections.singletonList(participant(cdk1Atp(), 0)));
+        first.setPositiveRegulators(Collections.singletonList(participant(cdk1(), 0)));
+        first.setNegativeRegulators(Collections.singletonList(participant(adp(), 0)));
+
+        Reaction regeneration = new Reaction();
+        regeneration.setDbId(68533L);
+        regeneration.setStId("R-HSA-68533");
+        regeneration.setDisplayName("ADP is phosphorylated to ATP");
+        setEvent(regeneration, cytosol(), null);
+
+        ReactionBase second = new ReactionBase();
+        second.setRle(regeneration);
+        second.setGoTerms(new ArrayList<>());
+        second.setEcNumbers(new ArrayList<>());
+        second.setLiteratureRefs(new ArrayList<>());
+        second.setXrefs(new ArrayList<>());
+        second.setDiseases(new ArrayList<>());
+        second.setInputs(Collections.singletonList(participant(adp(), 1)));
+        second.setOutputs(Collections.singletonList(participant(atp(), 1)));
+        second.setCatalysts(new ArrayList<>());
+        second.setPositiveRegulators(new ArrayList<>());
+        second.setNegativeRegulators(new ArrayList<>());
+
+        return Arrays.asList(first, second);
+    }
+
+    /**
+     * @return the document with the date of the provenance note replaced, so two documents can be compared
+     */
+    public static String withoutProvenanceDate(String sbml) {
+        return sbml.replaceAll("(SBML generated from Reactome version \\d+ on ).*?( using JSBML)", "$1DATE$2");
+    }
+
+    static Compartment cytosol() {
+        return compartment(70101L, "cytosol", CYTOSOL_URL);
+    }
+
+    static Compartment nucleoplasm() {
+        return compartment(7660L, "nucleoplasm", NUCLEOPLASM_URL);
+    }
+
+    private static SimpleEntity atp() {
+        return entity(new SimpleEntity(), 113592L, "R-ALL-113592", "ATP [cytosol]", cytosol());
+    }
+
+    private static SimpleEntity adp() {
+        return entity(new SimpleEntity(), 29370L, "R-ALL-29370", "ADP [cytosol]", cytosol());
+    }
+
+    private static EntityWithAccessionedSequence cdk1() {
+        EntityWithAccessionedSequence ewas = entity(new EntityWithAccessionedSequence(), 68524L, "R-HSA-68524", "CDK1 [nucleoplasm]", nucleoplasm());
+        ewas.setSummation(summations("Cyclin-dependent kinase 1"));
+        ewas.setLiteratureReference(literature());
+        EntityWithAccessionedSequence inferred = new EntityWithAccessionedSequence();
+        inferred.setStId("R-MMU-68524");
+        ewas.setInferredTo(Collections.singletonList(inferred));
+        PsiMod psiMod = new PsiMod();
+        psiMod.setUrl(PSI_MOD_URL);
+        ModifiedResidue residue = new ModifiedResidue();
+        residue.setPsiMod(psiMod);
+        List<AbstractModifiedResidue> residues = new ArrayList<>();
+        residues.add(residue);
+        ewas.setHasModifiedResidue(residues);
+        return ewas;
+    }
+
+    private static Complex cdk1Atp() {
+        return entity(new Complex(), 68530L, "R-HSA-68530", "CDK1:ATP [nucleoplasm]", nucleoplasm());
+    }
+
+    private static <T extends PhysicalEntity> T entity(T pe, Long dbId, String stId, String displayName, Compartment compartment) {
+        pe.setDbId(dbId);
+        pe.setStId(stId);
+        pe.setDisplayName(displayName);
+        pe.setCompartment(Collections.singletonList(compartment));
+        pe.setSummation(new ArrayList<>());
+        pe.setLiteratureReference(new ArrayList<>());
+        pe.setInferredTo(new ArrayList<>());
+        pe.setInferredFrom(new ArrayList<>());
+        if (pe instanceof EntityWithAccessionedSequence) ((EntityWithAccessionedSequence) pe).setHasModifiedResidue(new ArrayList<>());
+        return pe;
+    }
+
+    private static void setEvent(Event event, Compartment compartment, String summation) {
+        event.setCompartment(Collections.singletonList(compartment));
+        event.setSummation(summation == null ? new ArrayList<>() : summations(summation));
+        event.setLiteratureReference(literature());
+        event.setCreated(edit(1L, "2004-01-20 10:00:00", person(2L, "Smith", "Jane", "EMBL-EBI")));
+        event.setModified(edit(3L, "2019-05-02 09:30:00", person(4L, "Jones", "Alex", null)));
+        event.setAuthored(Collections.singletonList(edit(5L, "2003-11-14 08:00:00", person(2L, "Smith", "Jane", "EMBL-EBI"))));
+        event.setRevised(new ArrayList<>());
+    }
+
+    private static Compartment compartment(Long dbId, String displayName, String url) {
+        Compartment compartment = new Compartment();
+        compartment.setDbId(dbId);
+        compartment.setDisplayName(displayName);
+        compartment.setUrl(url);
+        return compartment;
+    }
+
+    private static List<Summation> summations(String text) {
+        Summation summation = new Summation();
+        summation.setText(text);
+        return Collections.singletonList(summation);
+    }
+
+    private static List<Publication> literature() {
+        LiteratureReference literatureReference = new LiteratureReference();
+        literatureReference.setUrl(PUBMED_URL);
+        return Collections.singletonList(literatureReference);
+    }
+
+    private static InstanceEdit edit(Long dbId, String dateTime, Person author) {
+        InstanceEdit edit = new InstanceEdit();
+        edit.setDbId(dbId);
+        edit.setDateTime(dateTime);
+        edit.setAuthor(Collections.singletonList(author));
+        return edit;
+    }
+
+    private static Person person(Long dbId, String surname, String firstname, String affiliation) {
+        Person person = new Person();
+        person.setDbId(dbId);
+        person.setSurname(surname);
+        person.setFirstname(firstname);
+        if (affiliation == null) {
+            person.setAffiliation(new ArrayList<>());
+        } else {
+            Affiliation a = new Affiliation();
+            a.setName(Collections.singletonList(affiliation));
+            person.setAffiliation(Collections.singletonList(a));
+        }
+        return person;
+    }
+
+    private static ParticipantDetails details(PhysicalEntity pe, List<IdentifierBase> ids, String... urls) {
+        ParticipantDetails details = new ParticipantDetails();
+        details.setPhysicalEntity(pe);
+        for (IdentifierBase id : ids) details.addIdentifierBase(id);
+        for (String url : urls) details.addUrl(url);
+        return details;
+    }
+
+    private static Participant participant(PhysicalEntity pe, Integer n) {
+        Participant participant = new Participant();
+        participant.setPhysicalEntity(pe);
+        participant.setStoichiometry(n);
+        return participant;
+    }
+
+    /**
+     * @param pairs stoichiometry and identifier pairs
+     */
+    private static List<IdentifierBase> ids(Object... pairs) {
+        List<IdentifierBase> rtn = new ArrayList<>();
+        for (int i = 0; i < pairs.length; i += 2) {
+            IdentifierBase id = new IdentifierBase();
+            id.setN((Integer) pairs[i]);
+            id.setId((String) pairs[i + 1]);
+            rtn.add(id);
+        }
+        return rtn;
+    }
+}
@@ -0,0 +1,120 @@
+package org.reactome.server.tools.sbml.converter;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Test;
+import org.reactome.server.tools.sbml.util.Deadline;
+import org.sbml.jsbml.SBMLWriter;
+
+public class SbmlConverterTest {
+
+    @After
+    public void reset() {
+        SbmlConverter.setBuilderThreads(0);
+        Helper.setUseIdentifierURL(false);
+    }
+
+    @Test
+    public void testBuilderThreadsGiveTheSequentialDocument() throws Exception {
+        String expected = convert();
+        SbmlConverter.setBuilderThreads(4);
+        for (int i = 0; i < 5; i++) assertEquals(expected, convert());
+    }
+
+    @Test
+    public void testConcurrentConversionsShareTheBuilderThreads() throws Exception {
+        // The identifier URLs are loaded lazily by the first builder thread needing them
+        Helper.setUseIdentifierURL(true);
+        String expected = convert();
+        SbmlConverter.setBuilderThreads(2);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> documents = new ArrayList<>();
+            for (int i = 0; i < 8; i++) documents.add(executor.submit(SbmlConverterTest::convert));
+            for (Future<String> document : documents) assertEquals(expected, document.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testConversionIsCancelledWhenTheBudgetIsUsedUp() throws Exception {
+        checkCancelled();
+    }
+
+    @Test
+    public void testBuilderThreadsAreCancelledWhenTheBudgetIsUsedUp() throws Exception {
+        SbmlConverter.setBuilderThreads(2);
+        checkCancelled();
+    }
+
+    @Test
+    public void testStreamingIsCancelledWhenTheBudgetIsUsedUp() throws Exception {
+        FixtureConverter converter = new FixtureConverter();
+        converter.setDeadline(new Deadline(0));
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try {
+            converter.convert(os);
+            throw new AssertionError("Conversion not cancelled");
+        } catch (CancellationException e) {
+            // Nothing is written before everything has been retrieved
+            assertEquals(0, os.size());
+        }
+    }
+
+    @Test
+    public void testNothingIsWrittenWhenRejectedBeforeWriting() throws Exception {
+        boolean[] trusted = {false};
+        FixtureConverter converter = new FixtureConverter() {
+            @Override
+            protected void beforeWriting() {
+                if (!trusted[0]) throw new IllegalStateException("Not trusted");
+            }
+        };
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try {
+            converter.convert(os);
+            throw new AssertionError("Document not rejected");
+        } catch (IllegalStateException e) {
+            assertEquals(0, os.size());
+        }
+        try {
+            converter.convert();
+            throw new AssertionError("Document not rejected");
+        } catch (IllegalStateException e) {
+            // The rejected document is not kept
+        }
+        trusted[0] = true;
+        assertEquals(convert(), SbmlTrees.canonical(new SBMLWriter().writeSBMLToString(converter.convert())));
+    }
+
+    /**
+     * A conversion with no budget is cancelled, then done again with a larger budget as the timed out pathways are
+     */
+    private static void checkCancelled() throws Exception {
+        String expected = convert();
+        FixtureConverter converter = new FixtureConverter();
+        converter.setDeadline(new Deadline(0));
+        try {
+            converter.convert();
+            throw new AssertionError("Conversion not cancelled");
+        } catch (CancellationException e) {
+            // Expected
+        }
+        converter.setDeadline(new Deadline(60000));
+        assertEquals(expected, SbmlTrees.canonical(new SBMLWriter().writeSBMLToString(converter.convert())));
+    }
+
+    private static String convert() throws Exception {
+        return SbmlTrees.canonical(new SBMLWriter().writeSBMLToString(new FixtureConverter().convert()));
+    }
+}
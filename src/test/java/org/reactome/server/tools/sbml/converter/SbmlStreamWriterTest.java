@@ -0,0 +1,136 @@
+package org.reactome.server.tools.sbml.converter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Collection;
+
+import org.junit.Test;
+import org.sbml.jsbml.ListOf;
+import org.sbml.jsbml.Model;
+import org.sbml.jsbml.SBMLDocument;
+import org.sbml.jsbml.ext.layout.BoundingBox;
+import org.sbml.jsbml.ext.layout.CompartmentGlyph;
+import org.sbml.jsbml.ext.layout.Dimensions;
+import org.sbml.jsbml.ext.layout.Layout;
+import org.sbml.jsbml.ext.layout.LayoutConstants;
+import org.sbml.jsbml.ext.layout.LayoutModelPlugin;
+import org.sbml.jsbml.ext.layout.Point;
+import org.sbml.jsbml.ext.layout.ReactionGlyph;
+import org.sbml.jsbml.ext.layout.SpeciesGlyph;
+import org.sbml.jsbml.ext.layout.SpeciesReferenceGlyph;
+import org.sbml.jsbml.ext.layout.SpeciesReferenceRole;
+import org.sbml.jsbml.ext.layout.TextGlyph;
+
+/**
+ * The streamed document has to be the one written by JSBML, apart from the indentation
+ */
+public class SbmlStreamWriterTest {
+
+    @Test
+    public void testStreamedDocumentIsTheJSBMLDocument() throws Exception {
+        FixtureConverter built = new FixtureConverter();
+        built.convert();
+
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        new FixtureConverter().convert(streamed);
+
+        assertEquals(SbmlTrees.canonical(built.toString()), SbmlTrees.canonical(streamed.toByteArray()));
+    }
+
+    @Test
+    public void testStreamedLayoutIsTheJSBMLLayout() throws Exception {
+        LayoutFixtureConverter built = new LayoutFixtureConverter();
+        built.convert();
+
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        new LayoutFixtureConverter().convert(streamed);
+
+        String expected = SbmlTrees.canonical(built.toString());
+        assertTrue(expected.contains("{" + LayoutConstants.namespaceURI + "}speciesReferenceGlyph"));
+        assertEquals(expected, SbmlTrees.canonical(streamed.toByteArray()));
+    }
+
+    @Test
+    public void testProvenanceNotes() throws Exception {
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        new FixtureConverter().convert(streamed);
+        String document = SbmlTrees.canonical(streamed.toByteArray());
+        assertTrue(document.contains("SBML generated from Reactome version " + Fixtures.VERSION + " on DATE using JSBML"));
+    }
+
+    /**
+     * Adds the same layout as {@link org.reactome.sbml.rel.LayoutConverter} would (with the glyphs of every kind and
+     * numbers that are not integers) to the converted document and to the skeleton used when streaming
+     */
+    private static class LayoutFixtureConverter extends FixtureConverter {
+
+        @Override
+        public SBMLDocument convert() {
+            SBMLDocument document = super.convert();
+            addLayout(document.getModel());
+            return document;
+        }
+
+        @Override
+        protected ListOf<Layout> getLayouts(Collection<String> compartments, Collection<String> species, Collection<String> reactions) {
+            SBMLDocument skeleton = new SBMLDocument(SBML_LEVEL, SBML_VERSION);
+            Model model = skeleton.createModel();
+            compartments.forEach(model::createCompartment);
+            species.forEach(model::createSpecies);
+            reactions.forEach(model::createReaction);
+            return addLayout(model).getListOfLayouts();
+        }
+
+        private static LayoutModelPlugin addLayout(Model model) {
+            LayoutModelPlugin plugin = new LayoutModelPlugin(model);
+            model.addExtension(LayoutConstants.namespaceURI, plugin);
+            Layout layout = plugin.createLayout();
+
+            CompartmentGlyph cg = layout.createCompartmentGlyph("layout_1");
+            cg.setCompartment(SbmlConverter.COMPARTMENT_PREFIX + 7660);
+            cg.setBoundingBox(box(0, 0, 800.5, 600));
+            text(layout, "layout_1", "nucleoplasm", box(10, 580, 120, 15.25));
+
+            SpeciesGlyph atp = layout.createSpeciesGlyph("layout_2");
+            atp.setSpecies(SbmlConverter.SPECIES_PREFIX + 113592);
+            atp.setBoundingBox(box(100.125, 50, 60, 20));
+            text(layout, "layout_2", "ATP", box(100.125, 50, 60, 20));
+
+            SpeciesGlyph adp = layout.createSpeciesGlyph("layout_3");
+            adp.setSpecies(SbmlConverter.SPECIES_PREFIX + 29370);
+            adp.setBoundingBox(box(300, 50, 60, 20));
+
+            ReactionGlyph rg = layout.createReactionGlyph("layout_4");
+            rg.setReaction(SbmlConverter.REACTION_PREFIX + 68532);
+            rg.setBoundingBox(box(196, 56, 8, 8));
+            rg.createCurve().createLineSegment(new Point(160.125, 60), new Point(200, 60));
+            SpeciesReferenceGlyph input = rg.createSpeciesReferenceGlyph("layout_4_substrate_0");
+            input.setSpeciesGlyph("layout_2");
+            input.setRole(SpeciesReferenceRole.SUBSTRATE);
+            input.createCurve().createLineSegment(new Point(160.125, 60), new Point(200.001, 60.001));
+            SpeciesReferenceGlyph output = rg.createSpeciesReferenceGlyph("layout_4_product_0");
+            output.setSpeciesGlyph("layout_3");
+            output.createCurve().createLineSegment(new Point(200, 60), new Point(300, 60));
+            return plugin;
+        }
+
+        private static void text(Layout layout, String graphicalObject, String text, BoundingBox box) {
+            TextGlyph glyph = layout.createTextGlyph("text_" + graphicalObject);
+            glyph.setBoundingBox(box);
+            glyph.setText(text);
+            glyph.setGraphicalObject(graphicalObject);
+        }
+
+        private static BoundingBox box(double x, double y, double width, double height) {
+            BoundingBox box = new BoundingBox();
+            box.setPosition(new Point(x, y));
+            Dimensions dimensions = new Dimensions();
+            dimensions.setWidth(width);
+            dimensions.setHeight(height);
+            box.setDimensions(dimensions);
+            return box;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package org.reactome.server.tools.sbml.converter;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+
+/**
+ * Compares SBML documents as XML trees: the elements (as namespace and local name), their attributes in order and
+ * their text with the whitespace collapsed, one per line. The namespace prefixes, the attribute order, the
+ * indentation and the date of the provenance note are ignored.
+ */
+public final class SbmlTrees {
+
+    private SbmlTrees() {
+    }
+
+    public static String canonical(String sbml) throws Exception {
+        return canonical(new InputSource(new StringReader(sbml)));
+    }
+
+    public static String canonical(byte[] sbml) throws Exception {
+        try (InputStream is = new ByteArrayInputStream(sbml)) {
+            return canonical(new InputSource(is));
+        }
+    }
+
+    public static String canonical(File sbml) throws Exception {
+        try (InputStream is = new FileInputStream(sbml)) {
+            return canonical(new InputSource(is));
+        }
+    }
+
+    private static String canonical(InputSource sbml) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        Document document = factory.newDocumentBuilder().parse(sbml);
+        StringBuilder rtn = new StringBuilder();
+        append(document.getDocumentElement(), rtn, "");
+        return Fixtures.withoutProvenanceDate(rtn.toString());
+    }
+
+    private static void append(Node node, StringBuilder rtn, String indent) {
+        if (node.getNodeType() == Node.TEXT_NODE || node.getNodeType() == Node.CDATA_SECTION_NODE) {
+            String text = node.getNodeValue().trim().replaceAll("\\s+", " ");
+            if (!text.isEmpty()) rtn.append(indent).append(text).append("\n");
+            return;
+        }
+        if (node.getNodeType() != Node.ELEMENT_NODE) return;
+        rtn.append(indent).append("{").append(node.getNamespaceURI()).append("}").append(node.getLocalName());
+        Map<String, String> attributes = new TreeMap<>();
+        NamedNodeMap map = node.getAttributes();
+        for (int i = 0; i < map.getLength(); i++) {
+            Attr attr = (Attr) map.item(i);
+            if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(attr.getNamespaceURI())) continue;
+            String ns = attr.getNamespaceURI() == null ? "" : "{" + attr.getNamespaceURI() + "}";
+            attributes.put(ns + attr.getLocalName(), attr.getValue());
+        }
+        rtn.append(attributes).append("\n");
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            append(child, rtn, indent + "  ");
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.reactome.server.tools.sbml.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reactome.server.tools.sbml.converter.Fixtures;
+import org.reactome.server.tools.sbml.data.model.ParticipantDetails;
+
+public class CompositionTableTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        CompositionTable table = CompositionTable.build(new FixtureQueryService(), Fixtures.VERSION);
+        File file = folder.newFile("composition.tsv");
+        table.save(file);
+        CompositionTable loaded = CompositionTable.load(file);
+        assertEquals(Fixtures.VERSION, loaded.getVersion());
+        assertEquals(table.size(), loaded.size());
+        for (ParticipantDetails expected : Fixtures.participants()) {
+            ParticipantDetails details = new ParticipantDetails();
+            details.setPhysicalEntity(expected.getPhysicalEntity());
+            assertTrue(loaded.fill(details));
+            assertEquals(expected.getUrls(), details.getUrls());
+            assertEquals(expected.getIds().toString(), details.getIds().toString());
+        }
+    }
+
+    @Test
+    public void testMissingEntityIsNotFilled() throws Exception {
+        FixtureQueryService ads = new FixtureQueryService();
+        ParticipantDetails details = Fixtures.participants().get(0);
+        ads.withoutComposition.add(details.getPhysicalEntity().getDbId());
+        CompositionTable table = CompositionTable.build(ads, Fixtures.VERSION);
+        ParticipantDetails empty = new ParticipantDetails();
+        empty.setPhysicalEntity(details.getPhysicalEntity());
+        assertFalse(table.fill(empty));
+        assertEquals(null, empty.getUrls());
+    }
+
+    @Test
+    public void testInstanceReusedForTheSameVersion() throws Exception {
+        File file = new File(folder.getRoot(), "composition.tsv");
+        FixtureQueryService ads = new FixtureQueryService();
+        assertNotNull(CompositionTable.getInstance(file, Fixtures.VERSION, ads));
+        assertEquals(1, ads.queries.size());
+        assertNotNull(CompositionTable.getInstance(file, Fixtures.VERSION, ads));
+        assertEquals("Loaded from the file", 1, ads.queries.size());
+        CompositionTable rebuilt = CompositionTable.getInstance(file, Fixtures.VERSION + 1, ads);
+        assertEquals(2, ads.queries.size());
+        assertEquals(Integer.valueOf(Fixtures.VERSION + 1), rebuilt.getVersion());
+    }
+
+    @Test
+    public void testUnknownVersionIsRebuilt() throws Exception {
+        File file = folder.newFile("composition.tsv");
+        Files.write(file.toPath(), Collections.singletonList("#version\tnull"), StandardCharsets.UTF_8);
+        CompositionTable table = CompositionTable.getInstance(file, null, new FixtureQueryService());
+        assertNotNull(table);
+        assertEquals(null, table.getVersion());
+    }
+}
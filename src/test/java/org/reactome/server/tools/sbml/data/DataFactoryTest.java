@@ -0,0 +1,126 @@
+package org.reactome.server.tools.sbml.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+import org.reactome.server.tools.sbml.converter.Fixtures;
+import org.reactome.server.tools.sbml.converter.SbmlConverter;
+import org.reactome.server.tools.sbml.data.model.ParticipantDetails;
+import org.reactome.server.tools.sbml.data.model.ReactionBase;
+
+public class DataFactoryTest {
+
+    @After
+    public void tearDown() {
+        DataFactory.setPageSize(0);
+        DataFactory.setSplitQueries(false);
+        DataFactory.setCompositionTable(null);
+    }
+
+    @Test
+    public void testResultsSortedByDbId() {
+        FixtureQueryService ads = new FixtureQueryService();
+        assertEquals(getReactionIds(), getDbIds(DataFactory.getReactionList(Fixtures.PATHWAY_ST_ID, ads)));
+        assertEquals(getParticipantIds(), getParticipantIds(DataFactory.getParticipantDetails(Fixtures.PATHWAY_ST_ID, ads)));
+    }
+
+    @Test
+    public void testPagesInDbIdOrder() {
+        DataFactory.setPageSize(1);
+        FixtureQueryService ads = new FixtureQueryService();
+        List<ReactionBase> reactions = new ArrayList<>();
+        DataFactory.getReactionList(Fixtures.PATHWAY_ST_ID, ads, reactions::add);
+        assertEquals(getReactionIds(), getDbIds(reactions));
+        List<Long> participants = new ArrayList<>();
+        DataFactory.getParticipantDetails(Fixtures.PATHWAY_ST_ID, ads, p -> participants.add(p.getPhysicalEntity().getDbId()));
+        assertEquals(getParticipantIds(), participants);
+        // The identifiers, then one query per object
+        assertEquals(2 + reactions.size() + participants.size(), ads.queries.size());
+    }
+
+    @Test
+    public void testPagesGiveTheSameDocument() {
+        String expected = convert();
+        DataFactory.setPageSize(3);
+        assertEquals(expected, convert());
+    }
+
+    @Test
+    public void testSplitQueries() {
+        DataFactory.setSplitQueries(true);
+        FixtureQueryService ads = new FixtureQueryService();
+        assertEquals(getReactionIds(), getDbIds(DataFactory.getReactionList(Fixtures.PATHWAY_ST_ID, ads)));
+        // The reactions and one query per aspect, sent from the pool of the split queries
+        assertEquals(9, ads.queries.size());
+        assertFalse(ads.threads.contains(Thread.currentThread()));
+    }
+
+    @Test
+    public void testSplitQueriesGiveTheSameDocument() {
+        String expected = convert();
+        DataFactory.setSplitQueries(true);
+        assertEquals(expected, convert());
+    }
+
+    @Test
+    public void testCompositionTableGivesTheSameDocument() throws Exception {
+        String expected = convert();
+        DataFactory.setCompositionTable(CompositionTable.build(new FixtureQueryService(), Fixtures.VERSION));
+        assertEquals(expected, convert());
+    }
+
+    @Test
+    public void testParticipantsMissingFromTheCompositionTable() throws Exception {
+        FixtureQueryService ads = new FixtureQueryService();
+        Long missing = Fixtures.participants().get(3).getPhysicalEntity().getDbId();
+        ads.withoutComposition.add(missing);
+        DataFactory.setCompositionTable(CompositionTable.build(ads, Fixtures.VERSION));
+        ads.queries.clear();
+
+        List<ParticipantDetails> participants = new ArrayList<>(DataFactory.getParticipantDetails(Fixtures.PATHWAY_ST_ID, ads));
+        assertEquals(getParticipantIds(), getParticipantIds(participants));
+        for (ParticipantDetails expected : Fixtures.participants()) {
+            ParticipantDetails actual = participants.get(getParticipantIds().indexOf(expected.getPhysicalEntity().getDbId()));
+            assertEquals(expected.getUrls(), actual.getUrls());
+        }
+        // The lookup query and then the missing one with its composition
+        assertEquals(2, ads.queries.size());
+        assertTrue(ads.queries.get(1).startsWith("MATCH (pe:PhysicalEntity) WHERE pe.dbId IN {dbIds} "));
+    }
+
+    private static String convert() {
+        SbmlConverter converter = new SbmlConverter(Fixtures.pathway(), Fixtures.VERSION, new FixtureQueryService());
+        converter.convert();
+        return Fixtures.withoutProvenanceDate(converter.toString());
+    }
+
+    private static List<Long> getDbIds(Iterable<ReactionBase> reactions) {
+        List<Long> rtn = new ArrayList<>();
+        for (ReactionBase rxn : reactions) rtn.add(rxn.getDbId());
+        return rtn;
+    }
+
+    private static List<Long> getReactionIds() {
+        List<Long> rtn = getDbIds(Fixtures.reactions());
+        rtn.sort(null);
+        return rtn;
+    }
+
+    private static List<Long> getParticipantIds() {
+        List<Long> rtn = getParticipantIds(Fixtures.participants());
+        rtn.sort(null);
+        return rtn;
+    }
+
+    private static List<Long> getParticipantIds(Iterable<ParticipantDetails> participants) {
+        List<Long> rtn = new ArrayList<>();
+        for (ParticipantDetails p : participants) rtn.add(p.getPhysicalEntity().getDbId());
+        return rtn;
+    }
+}
@@ -0,0 +1,74 @@
+package org.reactome.server.tools.sbml.data;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.reactome.server.graph.service.AdvancedDatabaseObjectService;
+import org.reactome.server.tools.sbml.converter.Fixtures;
+import org.reactome.server.tools.sbml.data.model.ParticipantDetails;
+import org.reactome.server.tools.sbml.data.model.ParticipantProjection;
+import org.reactome.server.tools.sbml.data.model.ReactionBase;
+
+/**
+ * Answers the queries of {@link DataFactory} with the objects of {@link Fixtures}, in reverse order since the graph
+ * database does not guarantee any, and records the queries and the threads running them
+ */
+class FixtureQueryService extends AdvancedDatabaseObjectService {
+
+    final List<String> queries = Collections.synchronizedList(new ArrayList<>());
+    final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+    // Participants left out of the release-wide composition
+    final Set<Long> withoutComposition = new HashSet<>();
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> Collection<T> getCustomQueryResults(Class<T> clazz, String query, Map<String, Object> parametersMap) {
+        queries.add(query);
+        threads.add(Thread.currentThread());
+        Collection<?> dbIds = (Collection<?>) parametersMap.get("dbIds");
+        List<Object> rtn = new ArrayList<>();
+        if (clazz == Long.class) {
+            if (query.endsWith("RETURN DISTINCT rle.dbId ORDER BY rle.dbId")) {
+                for (ReactionBase rxn : Fixtures.reactions()) rtn.add(rxn.getDbId());
+            } else {
+                for (ParticipantDetails p : Fixtures.participants()) rtn.add(p.getPhysicalEntity().getDbId());
+            }
+            rtn.sort(null);
+            return (Collection<T>) rtn;
+        } else if (clazz == ReactionBase.class) {
+            for (ReactionBase rxn : Fixtures.reactions()) {
+                if (dbIds == null || dbIds.contains(rxn.getDbId())) rtn.add(rxn);
+            }
+        } else if (clazz == ParticipantDetails.class) {
+            boolean lookup = query.endsWith("RETURN pe");
+            for (ParticipantDetails p : Fixtures.participants()) {
+                if (dbIds != null && !dbIds.contains(p.getPhysicalEntity().getDbId())) continue;
+                if (lookup) {
+                    ParticipantDetails details = new ParticipantDetails();
+                    details.setPhysicalEntity(p.getPhysicalEntity());
+                    p = details;
+                }
+                rtn.add(p);
+            }
+        } else if (clazz == ParticipantProjection.class && query.endsWith("RETURN pe.dbId AS dbId, ids, urls")) {
+            for (ParticipantDetails p : Fixtures.participants()) {
+                if (withoutComposition.contains(p.getPhysicalEntity().getDbId())) continue;
+                ParticipantProjection row = new ParticipantProjection();
+                row.setDbId(p.getPhysicalEntity().getDbId());
+                row.setIds(p.getIds());
+                row.setUrls(p.getUrls());
+                rtn.add(row);
+            }
+        } else {
+            return Collections.emptyList();
+        }
+        Collections.reverse(rtn);
+        return (Collection<T>) rtn;
+    }
+}
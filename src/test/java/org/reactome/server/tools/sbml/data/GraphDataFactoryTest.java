@@ -0,0 +1,100 @@
+package org.reactome.server.tools.sbml.data;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.reactome.server.graph.domain.model.Event;
+import org.reactome.server.graph.service.AdvancedDatabaseObjectService;
+import org.reactome.server.graph.service.DatabaseObjectService;
+import org.reactome.server.graph.service.GeneralService;
+import org.reactome.server.graph.utils.ReactomeGraphCore;
+import org.reactome.server.tools.sbml.TestDatabases;
+import org.reactome.server.tools.sbml.converter.Fixtures;
+import org.reactome.server.tools.sbml.converter.SbmlConverter;
+
+/**
+ * Every way of retrieving the data has to give the same documents as the default one on real pathways. Needs the
+ * graph database (see {@link TestDatabases}).
+ */
+public class GraphDataFactoryTest {
+
+    private AdvancedDatabaseObjectService ads;
+    private DatabaseObjectService dos;
+    private Integer version;
+
+    @Before
+    public void setUp() {
+        TestDatabases.assumeGraph();
+        ads = ReactomeGraphCore.getService(AdvancedDatabaseObjectService.class);
+        dos = ReactomeGraphCore.getService(DatabaseObjectService.class);
+        version = ReactomeGraphCore.getService(GeneralService.class).getDBInfo().getVersion();
+    }
+
+    @After
+    public void tearDown() {
+        DataFactory.setUseProjections(false);
+        DataFactory.setPageSize(0);
+        DataFactory.setSplitQueries(false);
+        DataFactory.setCompositionTable(null);
+    }
+
+    @Test
+    public void testProjections() {
+        for (String stId : TestDatabases.getPathways()) {
+            String expected = convert(stId);
+            DataFactory.setUseProjections(true);
+            String actual = convert(stId);
+            DataFactory.setUseProjections(false);
+            assertEquals(stId, expected, actual);
+        }
+    }
+
+    @Test
+    public void testPages() {
+        for (String stId : TestDatabases.getPathways()) {
+            String expected = convert(stId);
+            DataFactory.setPageSize(7);
+            String actual = convert(stId);
+            DataFactory.setPageSize(0);
+            assertEquals(stId, expected, actual);
+        }
+    }
+
+    @Test
+    public void testSplitQueries() {
+        for (String stId : TestDatabases.getPathways()) {
+            String expected = convert(stId);
+            DataFactory.setSplitQueries(true);
+            String actual = convert(stId);
+            DataFactory.setUseProjections(true);
+            String projected = convert(stId);
+            DataFactory.setSplitQueries(false);
+            DataFactory.setUseProjections(false);
+            assertEquals(stId, expected, actual);
+            assertEquals(stId, expected, projected);
+        }
+    }
+
+    @Test
+    public void testCompositionTable() throws Exception {
+        CompositionTable table = CompositionTable.build(ads, version);
+        for (String stId : TestDatabases.getPathways()) {
+            String expected = convert(stId);
+            DataFactory.setCompositionTable(table);
+            String actual = convert(stId);
+            DataFactory.setCompositionTable(null);
+            assertEquals(stId, expected, actual);
+        }
+    }
+
+    private String convert(String stId) {
+        // The session cache is cleared so that no object loaded by a previous conversion is reused
+        ReactomeGraphCore.getService(GeneralService.class).clearCache();
+        Event event = dos.findById(stId);
+        SbmlConverter converter = new SbmlConverter(event, version, ads);
+        converter.convert();
+        return Fixtures.withoutProvenanceDate(converter.toString());
+    }
+}
@@ -0,0 +1,217 @@
+package org.reactome.server.tools.sbml.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.reactome.server.graph.domain.model.EntityWithAccessionedSequence;
+import org.reactome.server.graph.domain.model.LiteratureReference;
+import org.reactome.server.graph.domain.model.ModifiedResidue;
+import org.reactome.server.graph.domain.model.PhysicalEntity;
+import org.reactome.server.graph.domain.model.Reaction;
+import org.reactome.server.tools.sbml.converter.FixtureConverter;
+import org.reactome.server.tools.sbml.converter.Fixtures;
+import org.reactome.server.tools.sbml.data.model.EditProjection;
+import org.reactome.server.tools.sbml.data.model.IdentifierBase;
+import org.reactome.server.tools.sbml.data.model.ObjectProjection;
+import org.reactome.server.tools.sbml.data.model.ParticipantDetails;
+import org.reactome.server.tools.sbml.data.model.ParticipantProjection;
+import org.reactome.server.tools.sbml.data.model.ReactionAspect;
+import org.reactome.server.tools.sbml.data.model.ReactionBase;
+import org.reactome.server.tools.sbml.data.model.ReactionProjection;
+
+/**
+ * The rows below are the ones the projection queries return for {@link Fixtures}
+ */
+public class ProjectionMapperTest {
+
+    @Test
+    public void testProjectedObjectsGiveTheSameDocument() {
+        List<ParticipantDetails> participants = new ArrayList<>();
+        for (ParticipantProjection row : getParticipantRows()) participants.add(ProjectionMapper.toParticipantDetails(row));
+        List<ReactionBase> reactions = new ArrayList<>();
+        for (ReactionProjection row : getReactionRows()) reactions.add(ProjectionMapper.toReactionBase(row));
+
+        assertEquals(convert(new FixtureConverter()), convert(new FixtureConverter(participants, reactions)));
+    }
+
+    @Test
+    public void testParticipantFields() {
+        ParticipantDetails details = ProjectionMapper.toParticipantDetails(getParticipantRows().get(2));
+        PhysicalEntity pe = details.getPhysicalEntity();
+        assertTrue(pe instanceof EntityWithAccessionedSequence);
+        assertEquals("R-HSA-68524", pe.getStId());
+        assertEquals(Fixtures.NUCLEOPLASM_URL, pe.getCompartment().get(0).getUrl());
+        assertEquals(Fixtures.PUBMED_URL, ((LiteratureReference) pe.getLiteratureReference().get(0)).getUrl());
+        assertEquals("R-MMU-68524", pe.getInferredTo().get(0).getStId());
+        ModifiedResidue residue = (ModifiedResidue) ((EntityWithAccessionedSequence) pe).getHasModifiedResidue().get(0);
+        assertEquals(Fixtures.PSI_MOD_URL, residue.getPsiMod().getUrl());
+        assertEquals(Collections.singletonList("https://identifiers.org/uniprot:P06493"), details.getUrls());
+    }
+
+    @Test
+    public void testMissingCollectionsAreEmpty() {
+        ParticipantProjection row = new ParticipantProjection();
+        row.setDbId(1L);
+        row.setSchemaClass("SimpleEntity");
+        PhysicalEntity pe = ProjectionMapper.toParticipantDetails(row).getPhysicalEntity();
+        assertNotNull(pe.getCompartment());
+        assertNotNull(pe.getSummation());
+        assertNotNull(pe.getLiteratureReference());
+        assertNotNull(pe.getInferredTo());
+        assertNotNull(pe.getInferredFrom());
+    }
+
+    @Test
+    public void testInstanceEdits() {
+        Reaction rle = (Reaction) ProjectionMapper.toReactionBase(getReactionRows().get(0)).getReactionLikeEvent();
+        assertEquals("2004-01-20 10:00:00", rle.getCreated().getDateTime());
+        assertEquals("Smith", rle.getCreated().getAuthor().get(0).getSurname());
+        assertEquals("EMBL-EBI", rle.getCreated().getAuthor().get(0).getAffiliation().get(0).getName().get(0));
+        assertTrue(rle.getModified().getAuthor().get(0).getAffiliation().isEmpty());
+        assertEquals(1, rle.getAuthored().size());
+        assertTrue(rle.getRevised().isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownSchemaClass() {
+        ParticipantProjection row = new ParticipantProjection();
+        row.setSchemaClass("NotAClass");
+        ProjectionMapper.toParticipantDetails(row);
+    }
+
+    @Test
+    public void testMerge() {
+        ReactionBase rxn = ProjectionMapper.toReactionBase(getReactionRows().get(1));
+        ReactionAspect aspect = new ReactionAspect();
+        aspect.setDbId(rxn.getDbId());
+        aspect.setGoTerms(Collections.singletonList(Fixtures.GO_TERM_URL));
+        aspect.setCatalysts(Collections.singletonList(participant(68530L, "Complex", 0)));
+        ProjectionMapper.merge(rxn, aspect);
+        assertEquals(Collections.singletonList(Fixtures.GO_TERM_URL), rxn.getGoTerms());
+        assertEquals(Long.valueOf(68530L), rxn.getCatalysts().get(0).getPhysicalEntity().getDbId());
+        // Aspects that have not been retrieved are left untouched
+        assertEquals(1, rxn.getInputs().size());
+    }
+
+    private static String convert(FixtureConverter converter) {
+        converter.convert();
+        return Fixtures.withoutProvenanceDate(converter.toString());
+    }
+
+    private static List<ParticipantProjection> getParticipantRows() {
+        ParticipantProjection cdk1 = participant(68524L, "R-HSA-68524", "CDK1 [nucleoplasm]", "EntityWithAccessionedSequence", nucleoplasm(), ids(1, "P06493"), "https://identifiers.org/uniprot:P06493");
+        cdk1.setSummations(Collections.singletonList("Cyclin-dependent kinase 1"));
+        cdk1.setLiteratureReferences(Collections.singletonList(Fixtures.PUBMED_URL));
+        ObjectProjection inferredTo = new ObjectProjection();
+        inferredTo.setStId("R-MMU-68524");
+        inferredTo.setSchemaClass("EntityWithAccessionedSequence");
+        cdk1.setInferredTo(Collections.singletonList(inferredTo));
+        ObjectProjection residue = new ObjectProjection();
+        residue.setSchemaClass("ModifiedResidue");
+        residue.setUrl(Fixtures.PSI_MOD_URL);
+        cdk1.setModifiedResidues(Collections.singletonList(residue));
+        return Arrays.asList(
+                participant(113592L, "R-ALL-113592", "ATP [cytosol]", "SimpleEntity", cytosol(), ids(1, "CHEBI:30616"), "https://identifiers.org/CHEBI:30616"),
+                participant(29370L, "R-ALL-29370", "ADP [cytosol]", "SimpleEntity", cytosol(), ids(1, "CHEBI:456216"), "https://identifiers.org/CHEBI:456216"),
+                cdk1,
+                participant(68530L, "R-HSA-68530", "CDK1:ATP [nucleoplasm]", "Complex", nucleoplasm(), ids(1, "CHEBI:30616", 2, "P06493"), "https://identifiers.org/CHEBI:30616", "https://identifiers.org/uniprot:P06493"));
+    }
+
+    private static List<ReactionProjection> getReactionRows() {
+        ReactionProjection first = reaction(68532L, "R-HSA-68532", "CDK1 phosphorylates ATP", nucleoplasm(), "CDK1 <b>transfers</b> a phosphate & releases ADP");
+        first.setGoTerms(Collections.singletonList(Fixtures.GO_TERM_URL));
+        first.setEcNumbers(Collections.singletonList(Fixtures.EC_NUMBER_URL));
+        first.setLiteratureRefs(Collections.singletonList(Fixtures.PUBMED_URL));
+        first.setInputs(Arrays.asList(participant(113592L, "SimpleEntity", 2), participant(68524L, "EntityWithAccessionedSequence", 1)));
+        first.setOutputs(Arrays.asList(participant(29370L, "SimpleEntity", 2), participant(68530L, "Complex", 1)));
+        first.setCatalysts(Collections.singletonList(participant(68530L, "Complex", 0)));
+        first.setPositiveRegulators(Collections.singletonList(participant(68524L, "EntityWithAccessionedSequence", 0)));
+        first.setNegativeRegulators(Collections.singletonList(participant(29370L, "SimpleEntity", 0)));
+
+        ReactionProjection second = reaction(68533L, "R-HSA-68533", "ADP is phosphorylated to ATP", cytosol(), null);
+        second.setInputs(Collections.singletonList(participant(29370L, "SimpleEntity", 1)));
+        second.setOutputs(Collections.singletonList(participant(113592L, "SimpleEntity", 1)));
+        return Arrays.asList(first, second);
+    }
+
+    private static ParticipantProjection participant(Long dbId, String stId, String displayName, String schemaClass, ObjectProjection compartment, List<IdentifierBase> ids, String... urls) {
+        ParticipantProjection row = new ParticipantProjection();
+        row.setDbId(dbId);
+        row.setStId(stId);
+        row.setDisplayName(displayName);
+        row.setSchemaClass(schemaClass);
+        row.setCompartments(Collections.singletonList(compartment));
+        row.setIds(ids);
+        row.setUrls(Arrays.asList(urls));
+        return row;
+    }
+
+    private static ReactionProjection reaction(Long dbId, String stId, String displayName, ObjectProjection compartment, String summation) {
+        ReactionProjection row = new ReactionProjection();
+        row.setDbId(dbId);
+        row.setStId(stId);
+        row.setDisplayName(displayName);
+        row.setSchemaClass("Reaction");
+        row.setCompartments(Collections.singletonList(compartment));
+        if (summation != null) row.setSummations(Collections.singletonList(summation));
+        row.setLiteratureReferences(Collections.singletonList(Fixtures.PUBMED_URL));
+        row.setEdits(Arrays.asList(edit("created", 1L, "2004-01-20 10:00:00", 2L, "Smith", "Jane", "EMBL-EBI"),
+                                   edit("modified", 3L, "2019-05-02 09:30:00", 4L, "Jones", "Alex", null),
+                                   edit("authored", 5L, "2003-11-14 08:00:00", 2L, "Smith", "Jane", "EMBL-EBI")));
+        return row;
+    }
+
+    private static ObjectProjection participant(Long dbId, String schemaClass, Integer n) {
+        ObjectProjection row = new ObjectProjection();
+        row.setDbId(dbId);
+        row.setSchemaClass(schemaClass);
+        row.setN(n);
+        return row;
+    }
+
+    private static EditProjection edit(String type, Long dbId, String dateTime, Long person, String surname, String firstname, String affiliation) {
+        EditProjection row = new EditProjection();
+        row.setType(type);
+        row.setDbId(dbId);
+        row.setDateTime(dateTime);
+        row.setPerson(person);
+        row.setSurname(surname);
+        row.setFirstname(firstname);
+        row.setAffiliation(affiliation);
+        return row;
+    }
+
+    private static ObjectProjection cytosol() {
+        return compartment(70101L, "cytosol", Fixtures.CYTOSOL_URL);
+    }
+
+    private static ObjectProjection nucleoplasm() {
+        return compartment(7660L, "nucleoplasm", Fixtures.NUCLEOPLASM_URL);
+    }
+
+    private static ObjectProjection compartment(Long dbId, String displayName, String url) {
+        ObjectProjection row = new ObjectProjection();
+        row.setDbId(dbId);
+        row.setDisplayName(displayName);
+        row.setUrl(url);
+        return row;
+    }
+
+    private static List<IdentifierBase> ids(Object... pairs) {
+        List<IdentifierBase> rtn = new ArrayList<>();
+        for (int i = 0; i < pairs.length; i += 2) {
+            IdentifierBase id = new IdentifierBase();
+            id.setN((Integer) pairs[i]);
+            id.setId((String) pairs[i + 1]);
+            rtn.add(id);
+        }
+        return rtn;
+    }
+}
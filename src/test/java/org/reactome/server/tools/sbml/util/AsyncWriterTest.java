@@ -0,0 +1,106 @@
+package org.reactome.server.tools.sbml.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AsyncWriterTest {
+
+    private static final int SYNC_EVERY = 4;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testFilesAreWrittenAndSynced() throws Exception {
+        AtomicInteger synced = new AtomicInteger(0);
+        AsyncWriter writer = new AsyncWriter(2, 8, SYNC_EVERY, AsyncWriter.Backpressure.BLOCK);
+        for (int i = 0; i < 50; i++) write(writer, i, synced::incrementAndGet);
+        writer.close();
+
+        assertEquals(50, synced.get());
+        assertEquals(0, writer.getPending());
+        for (int i = 0; i < 50; i++) assertArrayEquals(getData(i), Files.readAllBytes(getFile(i).toPath()));
+        assertTrue(writer.toString().startsWith("50 files"));
+    }
+
+    @Test
+    public void testEveryBatchIsACheckpoint() throws Exception {
+        AtomicInteger synced = new AtomicInteger(0);
+        AsyncWriter writer = new AsyncWriter(2, 64, SYNC_EVERY, AsyncWriter.Backpressure.BLOCK);
+        for (int i = 0; i < 40; i++) {
+            write(writer, i, synced::incrementAndGet);
+            // At most the current batch and the previous one are left to be synced
+            assertTrue(writer.getPending() < 2 * SYNC_EVERY);
+            if ((i + 1) % SYNC_EVERY == 0) assertTrue(writer.getPending() <= SYNC_EVERY);
+            assertTrue(i + 1 - synced.get() < 2 * SYNC_EVERY);
+        }
+        writer.checkpoint();
+        assertEquals(40, synced.get());
+        assertEquals(0, writer.getPending());
+        writer.close();
+    }
+
+    @Test
+    public void testCheckpointWaitsForEveryQueuedFile() throws Exception {
+        AtomicInteger synced = new AtomicInteger(0);
+        // Larger batches than documents: only the checkpoint gets them synced before the writer goes idle
+        AsyncWriter writer = new AsyncWriter(1, 16, 100, AsyncWriter.Backpressure.BLOCK);
+        for (int i = 0; i < 10; i++) write(writer, i, synced::incrementAndGet);
+        writer.checkpoint();
+        assertEquals(10, synced.get());
+        for (int i = 0; i < 10; i++) assertTrue(getFile(i).exists());
+        writer.close();
+    }
+
+    @Test
+    public void testCallerRunsWhenTheQueueIsFull() throws Exception {
+        AtomicInteger synced = new AtomicInteger(0);
+        AsyncWriter writer = new AsyncWriter(1, 1, SYNC_EVERY, AsyncWriter.Backpressure.CALLER_RUNS);
+        for (int i = 0; i < 30; i++) write(writer, i, synced::incrementAndGet);
+        writer.close();
+        assertEquals(30, synced.get());
+        for (int i = 0; i < 30; i++) assertArrayEquals(getData(i), Files.readAllBytes(getFile(i).toPath()));
+    }
+
+    @Test
+    public void testFailedFilesAreCounted() throws Exception {
+        AtomicInteger synced = new AtomicInteger(0);
+        AsyncWriter writer = new AsyncWriter(1, 4, SYNC_EVERY, AsyncWriter.Backpressure.BLOCK);
+        File missing = new File(new File(folder.getRoot(), "missing"), "R-HSA-1.sbml");
+        writer.write(missing, getData(1), getData(1).length, synced::incrementAndGet);
+        write(writer, 2, synced::incrementAndGet);
+        writer.close();
+        assertEquals(1, synced.get());
+        assertTrue(writer.toString().contains("1 failed"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testWriteAfterClose() throws Exception {
+        AsyncWriter writer = new AsyncWriter(1, 4, SYNC_EVERY, AsyncWriter.Backpressure.BLOCK);
+        writer.close();
+        write(writer, 0, null);
+    }
+
+    private void write(AsyncWriter writer, int i, Runnable onSuccess) throws Exception {
+        byte[] data = getData(i);
+        writer.write(getFile(i), data, data.length, onSuccess);
+    }
+
+    private File getFile(int i) {
+        return new File(folder.getRoot(), "R-HSA-" + i + ".sbml");
+    }
+
+    private static byte[] getData(int i) {
+        return ("<sbml id=\"" + i + "\"/>").getBytes(StandardCharsets.UTF_8);
+    }
+}
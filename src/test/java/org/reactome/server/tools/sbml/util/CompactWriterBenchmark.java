@@ -0,0 +1,105 @@
+package org.reactome.server.tools.sbml.util;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reactome.server.graph.domain.model.Event;
+import org.reactome.server.graph.service.AdvancedDatabaseObjectService;
+import org.reactome.server.graph.service.DatabaseObjectService;
+import org.reactome.server.graph.service.GeneralService;
+import org.reactome.server.graph.utils.ReactomeGraphCore;
+import org.reactome.server.tools.sbml.TestDatabases;
+import org.reactome.server.tools.sbml.converter.FixtureConverter;
+import org.reactome.server.tools.sbml.converter.SbmlConverter;
+import org.sbml.jsbml.SBMLDocument;
+
+/**
+ * Compares the compact writer with the tidy one on the fixture document and, when the graph database is given (see
+ * {@link TestDatabases}), on the documents of its pathways. Reports the bytes written per second and the CPU time
+ * of the writing thread per file. Not part of the build, run it with
+ * <pre>
+ * mvn test -Dtest=CompactWriterBenchmark -Dbenchmark.rounds=50 [-Dneo4j.password=... -Dsbml.pathways=R-HSA-69620,...]
+ * </pre>
+ */
+public class CompactWriterBenchmark {
+
+    private static final String FIXTURE = "fixture";
+
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void setUp() {
+        Assume.assumeTrue("No benchmark rounds given (-Dbenchmark.rounds)", System.getProperty("benchmark.rounds") != null);
+        Assume.assumeTrue("No thread CPU time in this JVM", threads.isCurrentThreadCpuTimeSupported());
+        threads.setThreadCpuTimeEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+        Utils.setCompact(false);
+    }
+
+    @Test
+    public void compareWriters() throws Exception {
+        int rounds = Integer.getInteger("benchmark.rounds");
+        Map<String, SBMLDocument> documents = getDocuments();
+        File output = folder.newFolder();
+        // Warm up both writers before measuring
+        run(output, documents.get(FIXTURE), FIXTURE, false, rounds);
+        run(output, documents.get(FIXTURE), FIXTURE, true, rounds);
+        for (Map.Entry<String, SBMLDocument> document : documents.entrySet()) {
+            report("tidy", document.getKey(), rounds, run(output, document.getValue(), document.getKey(), false, rounds));
+            report("compact", document.getKey(), rounds, run(output, document.getValue(), document.getKey(), true, rounds));
+        }
+    }
+
+    /**
+     * @return the bytes of one file, the elapsed and the CPU time in nanoseconds of all the rounds
+     */
+    private static long[] run(File output, SBMLDocument document, String fileName, boolean compact, int rounds) {
+        Utils.setCompact(compact);
+        long cpu = 0;
+        long elapsed = 0;
+        for (int i = 0; i < rounds; i++) {
+            long startCpu = threads.getCurrentThreadCpuTime();
+            long start = System.nanoTime();
+            Utils.writeSBML(output.getPath(), fileName, document);
+            elapsed += System.nanoTime() - start;
+            cpu += threads.getCurrentThreadCpuTime() - startCpu;
+        }
+        return new long[]{new File(output, fileName + ".sbml").length(), elapsed, cpu};
+    }
+
+    private static Map<String, SBMLDocument> getDocuments() {
+        Map<String, SBMLDocument> rtn = new LinkedHashMap<>();
+        rtn.put(FIXTURE, new FixtureConverter().convert());
+        if (System.getProperty("neo4j.password") == null) return rtn;
+        TestDatabases.assumeGraph();
+        AdvancedDatabaseObjectService ads = ReactomeGraphCore.getService(AdvancedDatabaseObjectService.class);
+        DatabaseObjectService dos = ReactomeGraphCore.getService(DatabaseObjectService.class);
+        Integer version = ReactomeGraphCore.getService(GeneralService.class).getDBInfo().getVersion();
+        for (String stId : TestDatabases.getPathways()) {
+            Event event = dos.findById(stId);
+            rtn.put(stId, new SbmlConverter(event, version, ads).convert());
+        }
+        return rtn;
+    }
+
+    private static void report(String writer, String document, int rounds, long[] measures) {
+        long bytes = measures[0] * rounds;
+        System.out.println(String.format("%-7s %-14s %9d bytes/file: %.1f MB/s, %.2f ms CPU/file",
+                                         writer, document, measures[0], bytes / 1e6 / Math.max(1e-9, measures[1] / 1e9), measures[2] / 1e6 / rounds));
+    }
+}
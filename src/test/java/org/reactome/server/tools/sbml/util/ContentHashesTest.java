@@ -0,0 +1,97 @@
+package org.reactome.server.tools.sbml.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reactome.server.tools.sbml.converter.FixtureConverter;
+import org.reactome.server.tools.sbml.converter.Fixtures;
+
+public class ContentHashesTest {
+
+    private static final long LAST_MODIFIED = 946684800000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void reset() {
+        Utils.setContentHashes(null);
+    }
+
+    @Test
+    public void testSecondRunIsSkipped() throws Exception {
+        File output = folder.getRoot();
+        File target = new File(output, Fixtures.PATHWAY_ST_ID + ".sbml");
+
+        ContentHashes first = run(output, new FixtureConverter());
+        assertEquals(0, first.getSkipped());
+        // Set back so a rewrite would be noticed
+        target.setLastModified(LAST_MODIFIED);
+        long length = target.length();
+
+        ContentHashes second = run(output, new FixtureConverter());
+        assertEquals(1, second.getSkipped());
+        assertEquals(LAST_MODIFIED, target.lastModified());
+        assertEquals(length, target.length());
+    }
+
+    @Test
+    public void testChangedDocumentIsRewritten() throws Exception {
+        File output = folder.getRoot();
+        File target = new File(output, Fixtures.PATHWAY_ST_ID + ".sbml");
+
+        run(output, new FixtureConverter());
+        target.setLastModified(LAST_MODIFIED);
+
+        ContentHashes second = run(output, new FixtureConverter(Fixtures.participants(), Collections.singletonList(Fixtures.reactions().get(0))));
+        assertEquals(0, second.getSkipped());
+        assertNotEquals(LAST_MODIFIED, target.lastModified());
+    }
+
+    @Test
+    public void testDeletedFileIsRewritten() throws Exception {
+        File output = folder.getRoot();
+        File target = new File(output, Fixtures.PATHWAY_ST_ID + ".sbml");
+
+        run(output, new FixtureConverter());
+        long length = target.length();
+        target.delete();
+
+        ContentHashes second = run(output, new FixtureConverter());
+        assertEquals(0, second.getSkipped());
+        assertEquals(length, target.length());
+    }
+
+    @Test
+    public void testHashLeavesOutTheProvenanceDate() {
+        String document = "<notes>SBML generated from Reactome version 77 on %s using JSBML version 1.5.</notes><model id=\"%s\"/>";
+        assertEquals(hash(String.format(document, "1/1/20 10:00 AM", "pathway_1")), hash(String.format(document, "2/3/21 4:30 PM", "pathway_1")));
+        assertNotEquals(hash(String.format(document, "1/1/20 10:00 AM", "pathway_1")), hash(String.format(document, "1/1/20 10:00 AM", "pathway_2")));
+    }
+
+    /**
+     * Writes the document of the converter as a run with --skip-unchanged does
+     */
+    private static ContentHashes run(File output, FixtureConverter converter) throws Exception {
+        ContentHashes hashes = ContentHashes.load(new File(output, ContentHashes.FILE_NAME));
+        Utils.setContentHashes(hashes);
+        converter.convert();
+        converter.writeToFile(output.getPath());
+        Utils.setContentHashes(null);
+        hashes.save();
+        return hashes;
+    }
+
+    private static String hash(String document) {
+        byte[] data = document.getBytes(StandardCharsets.UTF_8);
+        return ContentHashes.hash(data, data.length);
+    }
+}
@@ -0,0 +1,56 @@
+package org.reactome.server.tools.sbml.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CancellationException;
+
+import org.junit.Test;
+
+public class DeadlineTest {
+
+    @Test
+    public void testNotStartedDeadlineNeverExpires() throws Exception {
+        Deadline deadline = new Deadline(0);
+        Thread.sleep(5);
+        assertFalse(deadline.isExpired());
+        assertEquals(Long.MAX_VALUE, deadline.getRemaining());
+        deadline.check();
+    }
+
+    @Test
+    public void testStartedDeadline() throws Exception {
+        Deadline deadline = new Deadline(60000);
+        deadline.start();
+        assertEquals(60000, deadline.getBudget());
+        assertFalse(deadline.isExpired());
+        assertTrue(deadline.getRemaining() <= 60000 && deadline.getRemaining() > 50000);
+        deadline.check();
+    }
+
+    @Test
+    public void testExpiredDeadline() throws Exception {
+        Deadline deadline = new Deadline(1);
+        deadline.start();
+        Thread.sleep(5);
+        assertTrue(deadline.isExpired());
+        assertEquals(0, deadline.getRemaining());
+        try {
+            deadline.check();
+            throw new AssertionError("Expired deadline not reported");
+        } catch (CancellationException e) {
+            assertEquals("Time budget of 1 ms exceeded", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testRestartedDeadline() throws Exception {
+        Deadline deadline = new Deadline(20);
+        deadline.start();
+        Thread.sleep(30);
+        assertTrue(deadline.isExpired());
+        deadline.start();
+        assertFalse(deadline.isExpired());
+    }
+}
@@ -0,0 +1,130 @@
+package org.reactome.server.tools.sbml.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class MemoryGovernorTest {
+
+    @Test
+    public void testCachesAreClearedOverTheThreshold() {
+        TestGovernor governor = new TestGovernor(4);
+        AtomicInteger cleared = new AtomicInteger(0);
+        governor.addCache(cleared::incrementAndGet);
+
+        governor.occupancy = 0.5;
+        governor.check();
+        assertEquals(0, cleared.get());
+
+        governor.occupancy = 0.8;
+        governor.check();
+        assertEquals(1, cleared.get());
+        // Not critical: the look-ahead is kept
+        assertEquals(4, governor.getWorkers());
+
+        // Not measured again until the next collection
+        governor.check();
+        assertEquals(1, cleared.get());
+        governor.gcCount++;
+        governor.check();
+        assertEquals(2, cleared.get());
+    }
+
+    @Test
+    public void testLookAheadIsThrottledAndGrowsBack() {
+        TestGovernor governor = new TestGovernor(4);
+        governor.occupancy = 0.95;
+        governor.check();
+        assertEquals(2, governor.getWorkers());
+        governor.gcCount++;
+        governor.check();
+        assertEquals(1, governor.getWorkers());
+        governor.gcCount++;
+        governor.check();
+        assertEquals(1, governor.getWorkers());
+
+        // Between half the threshold and the threshold: left as it is
+        governor.occupancy = 0.5;
+        governor.check();
+        assertEquals(1, governor.getWorkers());
+
+        governor.occupancy = 0.2;
+        for (int i = 2; i <= 4; i++) {
+            governor.check();
+            assertEquals(i, governor.getWorkers());
+        }
+        governor.check();
+        assertEquals(4, governor.getWorkers());
+        assertTrue(governor.toString(), governor.toString().contains("workers reduced 2 times (min 1 / max 4)"));
+    }
+
+    @Test
+    public void testGcPressureThrottlesTheLookAhead() {
+        TestGovernor governor = new TestGovernor(4);
+        AtomicInteger cleared = new AtomicInteger(0);
+        governor.addCache(cleared::incrementAndGet);
+        governor.occupancy = 0.3;
+        governor.gcOverhead = 0.2;
+        governor.check();
+        assertEquals(1, cleared.get());
+        assertEquals(2, governor.getWorkers());
+    }
+
+    @Test
+    public void testNoLookAheadWithoutLayoutThreads() {
+        TestGovernor governor = new TestGovernor(0);
+        AtomicInteger cleared = new AtomicInteger(0);
+        governor.addCache(cleared::incrementAndGet);
+        governor.occupancy = 0.95;
+        governor.check();
+        assertEquals(1, cleared.get());
+        assertEquals(0, governor.getWorkers());
+        governor.occupancy = 0.1;
+        governor.check();
+        assertEquals(0, governor.getWorkers());
+    }
+
+    @Test
+    public void testFailingCacheDoesNotStopTheOthers() {
+        TestGovernor governor = new TestGovernor(1);
+        AtomicInteger cleared = new AtomicInteger(0);
+        governor.addCache(() -> {
+            throw new IllegalStateException("Cache not available");
+        });
+        governor.addCache(cleared::incrementAndGet);
+        governor.occupancy = 0.8;
+        governor.check();
+        assertEquals(1, cleared.get());
+    }
+
+    /**
+     * Reports the given occupancy, GC overhead and collection count instead of the ones of the JVM
+     */
+    private static class TestGovernor extends MemoryGovernor {
+        private double occupancy = 0;
+        private double gcOverhead = 0;
+        private long gcCount = 0;
+
+        TestGovernor(int maxWorkers) {
+            super(0.75, maxWorkers);
+        }
+
+        @Override
+        double getOccupancy() {
+            return occupancy;
+        }
+
+        @Override
+        double getGcOverhead() {
+            return gcOverhead;
+        }
+
+        @Override
+        long getGcCount() {
+            return gcCount;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package org.reactome.server.tools.sbml.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reactome.server.tools.sbml.converter.FixtureConverter;
+import org.sbml.jsbml.SBMLDocument;
+
+public class ParallelGzipOutputStreamTest {
+
+    private static final int BLOCK_SIZE = 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void reset() {
+        Utils.setCompress(false);
+    }
+
+    @Test
+    public void testRoundTripAcrossBlocks() throws Exception {
+        byte[] data = getData(7 * BLOCK_SIZE / 2);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream os = new ParallelGzipOutputStream(compressed, BLOCK_SIZE)) {
+            // Single bytes and chunks that do not match the block boundaries
+            os.write(data[0]);
+            int off = 1;
+            for (int len = 1; off < data.length; len = 2 * len + 1) {
+                int n = Math.min(len, data.length - off);
+                os.write(data, off, n);
+                off += n;
+                os.flush();
+            }
+        }
+        assertArrayEquals(data, gunzip(compressed.toByteArray()));
+    }
+
+    @Test
+    public void testManyBlocks() throws Exception {
+        // More blocks than can be pending at once
+        byte[] data = getData(BLOCK_SIZE * (4 * Runtime.getRuntime().availableProcessors() + 3));
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream os = new ParallelGzipOutputStream(compressed, BLOCK_SIZE)) {
+            os.write(data);
+        }
+        assertArrayEquals(data, gunzip(compressed.toByteArray()));
+    }
+
+    @Test
+    public void testSingleBlockAndEmpty() throws Exception {
+        for (byte[] data : new byte[][]{getData(BLOCK_SIZE / 2), getData(BLOCK_SIZE), new byte[0]}) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (OutputStream os = new ParallelGzipOutputStream(compressed, BLOCK_SIZE)) {
+                os.write(data);
+            }
+            assertArrayEquals(data, gunzip(compressed.toByteArray()));
+        }
+    }
+
+    @Test
+    public void testCompressedFile() throws Exception {
+        SBMLDocument document = new FixtureConverter().convert();
+        File plain = folder.newFolder("plain");
+        File gzip = folder.newFolder("gzip");
+
+        Utils.writeSBML(plain.getPath(), "R-HSA-69620", document);
+        Utils.setCompress(true);
+        Utils.writeSBML(gzip.getPath(), "R-HSA-69620", document);
+
+        File plainFile = new File(plain, "R-HSA-69620.sbml");
+        File gzipFile = new File(gzip, "R-HSA-69620.sbml.gz");
+        assertTrue(gzipFile.length() < plainFile.length());
+        byte[] expected = Files.readAllBytes(plainFile.toPath());
+        try (InputStream is = new FileInputStream(gzipFile)) {
+            assertArrayEquals(expected, gunzip(is));
+        }
+        assertFalse(Utils.getSummary().isEmpty());
+    }
+
+    /**
+     * @return text that compresses, with some noise so the blocks differ
+     */
+    private static byte[] getData(int length) {
+        Random random = new Random(length);
+        StringBuilder sb = new StringBuilder(length);
+        while (sb.length() < length) {
+            sb.append("<species id=\"species_").append(random.nextInt(100000)).append("\"/>\n");
+        }
+        byte[] rtn = sb.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] data = new byte[length];
+        System.arraycopy(rtn, 0, data, 0, length);
+        return data;
+    }
+
+    private static byte[] gunzip(byte[] compressed) throws IOException {
+        return gunzip(new ByteArrayInputStream(compressed));
+    }
+
+    // GZIPInputStream reads the concatenated members one after the other
+    private static byte[] gunzip(InputStream compressed) throws IOException {
+        ByteArrayOutputStream rtn = new ByteArrayOutputStream();
+        try (InputStream is = new GZIPInputStream(compressed)) {
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = is.read(buffer)) > 0) rtn.write(buffer, 0, n);
+        }
+        return rtn.toByteArray();
+    }
+}
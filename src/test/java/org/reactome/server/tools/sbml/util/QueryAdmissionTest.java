@@ -0,0 +1,75 @@
+package org.reactome.server.tools.sbml.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class QueryAdmissionTest {
+
+    @Test
+    public void testQueriesInFlightAreBounded() throws Exception {
+        QueryAdmission admission = new QueryAdmission(2, 0);
+        AtomicInteger running = new AtomicInteger(0);
+        AtomicInteger peak = new AtomicInteger(0);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                int n = i;
+                results.add(executor.submit(() -> admission.call(() -> {
+                    peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    Thread.sleep(2);
+                    running.decrementAndGet();
+                    return n;
+                })));
+            }
+            for (int i = 0; i < 40; i++) assertEquals(i, results.get(i).get().intValue());
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(2, peak.get());
+        assertTrue(admission.toString(), admission.toString().startsWith("40 queries (max 2 in flight, peak 2)"));
+    }
+
+    @Test
+    public void testQueriesPerSecondAreBounded() throws Exception {
+        QueryAdmission admission = new QueryAdmission(0, 100);
+        long start = System.nanoTime();
+        for (int i = 0; i < 11; i++) admission.call(() -> null);
+        // The first query is sent right away, one every 10 ms after it
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 95);
+        assertTrue(admission.toString(), admission.toString().startsWith("11 queries (max unlimited in flight"));
+    }
+
+    @Test
+    public void testNestedQueriesAreAdmittedWithTheirParent() throws Exception {
+        QueryAdmission admission = new QueryAdmission(1, 0);
+        // It would wait for itself otherwise
+        assertEquals("nested", admission.call(() -> admission.call(() -> "nested")));
+        assertTrue(admission.toString(), admission.toString().startsWith("1 queries"));
+    }
+
+    @Test
+    public void testFailedQueryReleasesItsAdmission() throws Exception {
+        QueryAdmission admission = new QueryAdmission(1, 0);
+        try {
+            admission.call(() -> {
+                throw new IllegalStateException("Query failed");
+            });
+            throw new AssertionError("Failure not reported");
+        } catch (IllegalStateException e) {
+            assertEquals("Query failed", e.getMessage());
+        }
+        assertEquals("next", admission.call(() -> "next"));
+        assertTrue(admission.toString(), admission.toString().contains("peak 1"));
+    }
+}
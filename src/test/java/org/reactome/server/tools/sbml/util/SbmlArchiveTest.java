@@ -0,0 +1,113 @@
+package org.reactome.server.tools.sbml.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reactome.server.tools.sbml.converter.FixtureConverter;
+import org.sbml.jsbml.SBMLDocument;
+
+public class SbmlArchiveTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void reset() {
+        Utils.setArchive(null);
+    }
+
+    @Test
+    public void testDocumentsAreWrittenIntoTheArchive() throws Exception {
+        SBMLDocument document = new FixtureConverter().convert();
+        File plain = folder.newFolder("plain");
+        Utils.writeSBML(plain.getPath(), "R-HSA-69620", document);
+        byte[] expected = Files.readAllBytes(new File(plain, "R-HSA-69620.sbml").toPath());
+
+        File output = folder.newFolder("archive");
+        File file = new File(output, SbmlArchive.getFileName("Homo sapiens"));
+        assertEquals("Homo_sapiens.zip", file.getName());
+        try (SbmlArchive archive = new SbmlArchive(file)) {
+            Utils.setArchive(archive);
+            Utils.writeSBML(output.getPath(), "R-HSA-69620", document);
+            Utils.writeSBML(output.getPath(), "R-HSA-69621", document);
+        }
+        // Nothing is written next to the archive but its manifest
+        assertEquals(Arrays.asList("Homo_sapiens.manifest.tsv", "Homo_sapiens.zip"), list(output));
+
+        try (ZipFile zip = new ZipFile(file)) {
+            List<String> names = new ArrayList<>();
+            for (ZipEntry entry : Collections.list(zip.entries())) names.add(entry.getName());
+            assertEquals(Arrays.asList("R-HSA-69620.sbml", "R-HSA-69621.sbml", SbmlArchive.MANIFEST), names);
+            assertArrayEquals(expected, read(zip, "R-HSA-69620.sbml"));
+
+            CRC32 crc = new CRC32();
+            crc.update(expected);
+            String line = String.format("%d\t%08x", expected.length, crc.getValue());
+            String manifest = new String(read(zip, SbmlArchive.MANIFEST), StandardCharsets.UTF_8);
+            assertEquals("entry\tbytes\tcrc32\n" +
+                         "R-HSA-69620.sbml\t" + line + "\n" +
+                         "R-HSA-69621.sbml\t" + line + "\n", manifest);
+            assertEquals(manifest, new String(Files.readAllBytes(new File(output, "Homo_sapiens.manifest.tsv").toPath()), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testOneEntryAtATime() throws Exception {
+        try (SbmlArchive archive = new SbmlArchive(folder.newFile("test.zip"))) {
+            archive.openEntry("first.sbml");
+            archive.openEntry("second.sbml");
+        }
+    }
+
+    @Test
+    public void testEntryCanBeClosedTwice() throws Exception {
+        File file = folder.newFile("test.zip");
+        try (SbmlArchive archive = new SbmlArchive(file)) {
+            OutputStream os = archive.openEntry("first.sbml");
+            os.write(new byte[]{1, 2, 3});
+            os.close();
+            os.close();
+            archive.openEntry("second.sbml").close();
+        }
+        try (ZipFile zip = new ZipFile(file)) {
+            assertArrayEquals(new byte[]{1, 2, 3}, read(zip, "first.sbml"));
+            assertTrue(new String(read(zip, SbmlArchive.MANIFEST), StandardCharsets.UTF_8).contains("second.sbml\t0\t00000000"));
+        }
+    }
+
+    private static List<String> list(File directory) {
+        String[] names = directory.list();
+        Arrays.sort(names);
+        return Arrays.asList(names);
+    }
+
+    private static byte[] read(ZipFile zip, String name) throws IOException {
+        ByteArrayOutputStream rtn = new ByteArrayOutputStream();
+        try (InputStream is = zip.getInputStream(zip.getEntry(name))) {
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = is.read(buffer)) > 0) rtn.write(buffer, 0, n);
+        }
+        return rtn.toByteArray();
+    }
+}
@@ -0,0 +1,86 @@
+package org.reactome.server.tools.sbml.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reactome.server.tools.sbml.converter.FixtureConverter;
+import org.sbml.jsbml.SBMLDocument;
+
+public class SbmlPackTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void reset() {
+        Utils.setPack(null);
+        Utils.setCompress(false);
+    }
+
+    @Test
+    public void testDocumentsAreReadBack() throws Exception {
+        check(false);
+    }
+
+    @Test
+    public void testCompressedDocumentsAreReadBackAndSummarised() throws Exception {
+        int before = Utils.getSummary().size();
+        check(true);
+        assertEquals(before + 2, Utils.getSummary().size());
+    }
+
+    private void check(boolean compress) throws Exception {
+        SBMLDocument document = new FixtureConverter().convert();
+        File plain = folder.newFolder("plain");
+        Utils.writeSBML(plain.getPath(), "R-HSA-69620", document);
+        byte[] expected = Files.readAllBytes(new File(plain, "R-HSA-69620.sbml").toPath());
+
+        File output = folder.newFolder("pack");
+        File file = new File(output, SbmlPack.PACK_FILE);
+        Utils.setCompress(compress);
+        try (SbmlPack pack = new SbmlPack(file)) {
+            Utils.setPack(pack);
+            Utils.writeSBML(output.getPath(), "R-HSA-69620", document);
+            Utils.writeSBML(output.getPath(), "R-HSA-69621", document);
+        }
+        // Nothing is written next to the pack but its index
+        assertEquals(new HashSet<>(Arrays.asList(SbmlPack.PACK_FILE, SbmlPack.getIndexFile(file).getName())),
+                     new HashSet<>(Arrays.asList(output.list())));
+
+        try (SbmlPackReader reader = new SbmlPackReader(file)) {
+            assertEquals(new HashSet<>(Arrays.asList("R-HSA-69620", "R-HSA-69621")), reader.getIdentifiers());
+            for (String stId : reader.getIdentifiers()) {
+                assertEquals(compress, reader.isCompressed(stId));
+                assertArrayEquals(expected, read(reader.getInputStream(stId)));
+            }
+            assertFalse(reader.contains("R-HSA-1"));
+            assertNull(reader.getInputStream("R-HSA-1"));
+        }
+        if (compress) assertTrue(file.length() < 2L * expected.length);
+    }
+
+    private static byte[] read(InputStream is) throws IOException {
+        ByteArrayOutputStream rtn = new ByteArrayOutputStream();
+        try (InputStream in = is) {
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) > 0) rtn.write(buffer, 0, n);
+        }
+        return rtn.toByteArray();
+    }
+}
@@ -0,0 +1,72 @@
+package org.reactome.server.tools.sbml.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reactome.server.tools.sbml.converter.FixtureConverter;
+import org.sbml.jsbml.SBMLDocument;
+
+public class ShardedLayoutTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void reset() {
+        Utils.setShardedLayout(null);
+        Utils.setCompress(false);
+    }
+
+    @Test
+    public void testRelativePath() {
+        String path = ShardedLayout.getRelativePath("R-HSA-69620");
+        assertTrue(path, path.matches("HSA/[0-9a-f]{2}/R-HSA-69620"));
+        assertEquals(path, ShardedLayout.getRelativePath("R-HSA-69620"));
+        assertTrue(ShardedLayout.getRelativePath("R-MMU-69620").startsWith("MMU/"));
+        assertTrue(ShardedLayout.getRelativePath("69620").matches("other/[0-9a-f]{2}/69620"));
+    }
+
+    @Test
+    public void testFilesAreWrittenInTheirShardAndIndexed() throws Exception {
+        SBMLDocument document = new FixtureConverter().convert();
+        File plain = folder.newFolder("plain");
+        Utils.writeSBML(plain.getPath(), "R-HSA-69620", document);
+        byte[] expected = Files.readAllBytes(new File(plain, "R-HSA-69620.sbml").toPath());
+
+        File output = folder.newFolder("sharded");
+        try (ShardedLayout layout = new ShardedLayout(output)) {
+            Utils.setShardedLayout(layout);
+            Utils.writeSBML(output.getPath(), "R-HSA-69620", document);
+            Utils.writeSBML(output.getPath(), "R-MMU-69620", document);
+            // Written again: listed once
+            Utils.writeSBML(output.getPath(), "R-HSA-69620", document);
+            Utils.setCompress(true);
+            Utils.writeSBML(output.getPath(), "R-HSA-68875", document);
+        }
+        assertFalse(new File(output, "R-HSA-69620.sbml").exists());
+        File file = new File(output, ShardedLayout.getRelativePath("R-HSA-69620") + ".sbml");
+        assertArrayEquals(expected, Files.readAllBytes(file.toPath()));
+        assertTrue(new File(output, ShardedLayout.getRelativePath("R-MMU-69620") + ".sbml").exists());
+
+        List<String> index = Files.readAllLines(new File(output, ShardedLayout.INDEX_FILE).toPath(), StandardCharsets.UTF_8);
+        assertEquals(Arrays.asList("stId\tpath",
+                                   "R-HSA-69620\t" + ShardedLayout.getRelativePath("R-HSA-69620") + ".sbml",
+                                   "R-MMU-69620\t" + ShardedLayout.getRelativePath("R-MMU-69620") + ".sbml",
+                                   "R-HSA-68875\t" + ShardedLayout.getRelativePath("R-HSA-68875") + ".sbml.gz"), index);
+        for (String line : index.subList(1, index.size())) {
+            assertTrue(line, new File(output, line.split("\t")[1]).exists());
+        }
+    }
+}
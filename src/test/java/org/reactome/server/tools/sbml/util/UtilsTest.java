@@ -0,0 +1,41 @@
+package org.reactome.server.tools.sbml.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reactome.server.tools.sbml.converter.FixtureConverter;
+import org.reactome.server.tools.sbml.converter.SbmlTrees;
+import org.sbml.jsbml.SBMLDocument;
+
+public class UtilsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void reset() {
+        Utils.setCompact(false);
+    }
+
+    @Test
+    public void testCompactDocumentParsesAsTheTidyOne() throws Exception {
+        SBMLDocument document = new FixtureConverter().convert();
+        File tidy = folder.newFolder("tidy");
+        File compact = folder.newFolder("compact");
+
+        Utils.writeSBML(tidy.getPath(), "R-HSA-69620", document);
+        Utils.setCompact(true);
+        Utils.writeSBML(compact.getPath(), "R-HSA-69620", document);
+
+        File tidyFile = new File(tidy, "R-HSA-69620.sbml");
+        File compactFile = new File(compact, "R-HSA-69620.sbml");
+        assertTrue(compactFile.length() < tidyFile.length());
+        assertEquals(SbmlTrees.canonical(tidyFile), SbmlTrees.canonical(compactFile));
+    }
+}
@@ -0,0 +1,54 @@
+// The pathway of org.reactome.server.tools.sbml.converter.Fixtures, with the labels and properties of the release
+// graph database that the DataFactory queries rely on
+CREATE (cytosol:DatabaseObject:GO_Term:GO_CellularComponent:Compartment {dbId: 70101, displayName: 'cytosol', schemaClass: 'Compartment', url: 'https://www.ebi.ac.uk/QuickGO/term/GO:0005829'}),
+       (nucleoplasm:DatabaseObject:GO_Term:GO_CellularComponent:Compartment {dbId: 7660, displayName: 'nucleoplasm', schemaClass: 'Compartment', url: 'https://www.ebi.ac.uk/QuickGO/term/GO:0005654'}),
+       (pubmed:DatabaseObject:Publication:LiteratureReference {dbId: 2188730, displayName: 'Cell cycle control', schemaClass: 'LiteratureReference', url: 'http://www.ncbi.nlm.nih.gov/pubmed/2188730'}),
+       (goTerm:DatabaseObject:GO_Term:GO_MolecularFunction {dbId: 4693, displayName: 'cyclin-dependent protein serine/threonine kinase activity', schemaClass: 'GO_MolecularFunction', ecNumber: '2.7.11.22', url: 'https://www.ebi.ac.uk/QuickGO/term/GO:0004693'}),
+
+       (chebiAtp:DatabaseObject:ReferenceEntity:ReferenceMolecule {dbId: 8869364, displayName: 'ATP [ChEBI:30616]', schemaClass: 'ReferenceMolecule', identifier: '30616', url: 'https://identifiers.org/CHEBI:30616'}),
+       (chebiAdp:DatabaseObject:ReferenceEntity:ReferenceMolecule {dbId: 8869365, displayName: 'ADP [ChEBI:456216]', schemaClass: 'ReferenceMolecule', identifier: '456216', url: 'https://identifiers.org/CHEBI:456216'}),
+       (uniprotCdk1:DatabaseObject:ReferenceEntity:ReferenceSequence:ReferenceGeneProduct {dbId: 50814, displayName: 'UniProt:P06493 CDK1', schemaClass: 'ReferenceGeneProduct', identifier: 'P06493', url: 'https://identifiers.org/uniprot:P06493'}),
+
+       (atp:DatabaseObject:PhysicalEntity:SimpleEntity {dbId: 113592, stId: 'R-ALL-113592', displayName: 'ATP [cytosol]', schemaClass: 'SimpleEntity'}),
+       (adp:DatabaseObject:PhysicalEntity:SimpleEntity {dbId: 29370, stId: 'R-ALL-29370', displayName: 'ADP [cytosol]', schemaClass: 'SimpleEntity'}),
+       (cdk1:DatabaseObject:PhysicalEntity:GenomeEncodedEntity:EntityWithAccessionedSequence {dbId: 68524, stId: 'R-HSA-68524', displayName: 'CDK1 [nucleoplasm]', schemaClass: 'EntityWithAccessionedSequence'}),
+       (cdk1Atp:DatabaseObject:PhysicalEntity:Complex {dbId: 68530, stId: 'R-HSA-68530', displayName: 'CDK1:ATP [nucleoplasm]', schemaClass: 'Complex'}),
+       (atp)-[:compartment {order: 0}]->(cytosol),
+       (adp)-[:compartment {order: 0}]->(cytosol),
+       (cdk1)-[:compartment {order: 0}]->(nucleoplasm),
+       (cdk1Atp)-[:compartment {order: 0}]->(nucleoplasm),
+       (atp)-[:referenceEntity {stoichiometry: 1}]->(chebiAtp),
+       (adp)-[:referenceEntity {stoichiometry: 1}]->(chebiAdp),
+       (cdk1)-[:referenceEntity {stoichiometry: 1}]->(uniprotCdk1),
+       (cdk1Atp)-[:hasComponent {stoichiometry: 1}]->(atp),
+       (cdk1Atp)-[:hasComponent {stoichiometry: 2}]->(cdk1),
+
+       (pathway:DatabaseObject:Event:Pathway {dbId: 69620, stId: 'R-HSA-69620', displayName: 'Cell Cycle Checkpoints', schemaClass: 'Pathway'}),
+       (phosphorylation:DatabaseObject:Event:ReactionLikeEvent:Reaction {dbId: 68532, stId: 'R-HSA-68532', displayName: 'CDK1 phosphorylates ATP', schemaClass: 'Reaction'}),
+       (regeneration:DatabaseObject:Event:ReactionLikeEvent:Reaction {dbId: 68533, stId: 'R-HSA-68533', displayName: 'ADP is phosphorylated to ATP', schemaClass: 'Reaction'}),
+       (pathway)-[:compartment {order: 0}]->(nucleoplasm),
+       (pathway)-[:literatureReference {order: 0}]->(pubmed),
+       (pathway)-[:hasEvent {order: 0}]->(phosphorylation),
+       (pathway)-[:hasEvent {order: 1}]->(regeneration),
+
+       (catalyst:DatabaseObject:CatalystActivity {dbId: 68531, displayName: 'cyclin-dependent protein serine/threonine kinase activity of CDK1:ATP [nucleoplasm]', schemaClass: 'CatalystActivity'}),
+       (activation:DatabaseObject:Regulation:PositiveRegulation {dbId: 68534, displayName: 'Positive regulation by CDK1 [nucleoplasm]', schemaClass: 'PositiveRegulation'}),
+       (inhibition:DatabaseObject:Regulation:NegativeRegulation {dbId: 68535, displayName: 'Negative regulation by ADP [cytosol]', schemaClass: 'NegativeRegulation'}),
+       (catalyst)-[:activity {order: 0}]->(goTerm),
+       (catalyst)-[:physicalEntity {order: 0}]->(cdk1Atp),
+       (activation)-[:regulator {order: 0}]->(cdk1),
+       (inhibition)-[:regulator {order: 0}]->(adp),
+       (phosphorylation)-[:compartment {order: 0}]->(nucleoplasm),
+       (phosphorylation)-[:literatureReference {order: 0}]->(pubmed),
+       (phosphorylation)-[:input {order: 0, stoichiometry: 2}]->(atp),
+       (phosphorylation)-[:input {order: 1, stoichiometry: 1}]->(cdk1),
+       (phosphorylation)-[:output {order: 0, stoichiometry: 2}]->(adp),
+       (phosphorylation)-[:output {order: 1, stoichiometry: 1}]->(cdk1Atp),
+       (phosphorylation)-[:catalystActivity {order: 0}]->(catalyst),
+       (phosphorylation)-[:regulatedBy {order: 0}]->(activation),
+       (phosphorylation)-[:regulatedBy {order: 1}]->(inhibition),
+
+       (regeneration)-[:compartment {order: 0}]->(cytosol),
+       (regeneration)-[:literatureReference {order: 0}]->(pubmed),
+       (regeneration)-[:input {order: 0, stoichiometry: 1}]->(adp),
+       (regeneration)-[:output {order: 0, stoichiometry: 1}]->(atp)